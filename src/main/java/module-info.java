@@ -1,8 +1,22 @@
 open module ru.voidcyborg.logapi {
 
+    requires static jdk.management;
+
     exports ru.voidcyborg.logapi.appender;
     exports ru.voidcyborg.logapi.appender.appenders;
     exports ru.voidcyborg.logapi.level;
     exports ru.voidcyborg.logapi.logger;
     exports ru.voidcyborg.logapi.settings;
+
+    uses ru.voidcyborg.logapi.appender.AppenderProvider;
+
+    provides ru.voidcyborg.logapi.appender.AppenderProvider with
+            ru.voidcyborg.logapi.appender.appenders.BuiltInAppenders.Console,
+            ru.voidcyborg.logapi.appender.appenders.BuiltInAppenders.Metrics,
+            ru.voidcyborg.logapi.appender.appenders.BuiltInAppenders.RollingFile,
+            ru.voidcyborg.logapi.appender.appenders.BuiltInAppenders.Routing,
+            ru.voidcyborg.logapi.appender.appenders.BuiltInAppenders.SharedRing,
+            ru.voidcyborg.logapi.appender.appenders.BuiltInAppenders.Socket,
+            ru.voidcyborg.logapi.appender.appenders.BuiltInAppenders.Syslog,
+            ru.voidcyborg.logapi.appender.appenders.BuiltInAppenders.Void;
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package ru.voidcyborg.logapi.appender;
 
 import ru.voidcyborg.logapi.settings.SettingsInitException;
 
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -22,9 +23,11 @@ import java.util.Map;
  * <p>
  * <p>
  * Класс должен иметь конструктор без параметров. Так как в дальнейшем будут создаваться экземпляры класса в Settings.
+ * Вместо этого можно зарегистрировать {@code AppenderProvider}, тогда Settings создаст Appender без рефлексии.
  * <p>
  * <p>
  * The class must have a parameterless constructor. Since in the future instances of the class will be created in Settings.
+ * Instead, an {@code AppenderProvider} can be registered, then Settings creates the Appender without reflection.
  * <p>
  *
  * @author VoidCyborg
@@ -73,6 +76,85 @@ public interface Appender {
     boolean append(String text);
 
 
+    /**
+     * Данный метод предназначен для записи события вместе с его признаками. Его вызывает Logger.
+     * Реализация по умолчанию записывает только строку события через {@code append(String text)},
+     * переопределять его нужно Appender'ам, которым важны уровень, группа или метка события.
+     * <p>
+     * This method is for appending an event together with its attributes. It is called by the Logger.
+     * The default implementation appends only the string of the event with {@code append(String text)},
+     * it should be overridden by Appenders that care about the level, the group or the marker of the event.
+     * <p>
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param event Событие которое необходимо записать. The event to be appended.
+     * @return Возвращает true если событие передано в запись. Returns true if the event was passed to be written.
+     */
+    default boolean append(LogEvent event) {
+        if (event == null) return false;
+        return append(event.getText());
+    }
+
+
+    /**
+     * Данный метод сообщает, нужна ли Appender'у отформатированная строка события.
+     * Если событие нужно только Appender'ам без строки, то Logger его не форматирует, а {@code LogEvent.getText()} возвращает null.
+     * Реализация по умолчанию возвращает true.
+     * <p>
+     * This method tells whether the Appender needs the formatted string of the event.
+     * If an event is needed only by Appenders without the string, the Logger does not format it, and {@code LogEvent.getText()} returns null.
+     * The default implementation returns true.
+     * <p>
+     *
+     * @return true если строка нужна. true if the string is needed.
+     */
+    default boolean needsText() {
+        return true;
+    }
+
+
+    /**
+     * Данный метод сообщает, нужно ли Appender'у место вызова события. Вызывается, только если строка не нужна.
+     * Если место вызова не нужно никому, то Logger не ищет его в стеке. Реализация по умолчанию возвращает true.
+     * <p>
+     * This method tells whether the Appender needs the call site of the event. It is called only if the string is not needed.
+     * If nobody needs the call site, the Logger does not look for it in the stack. The default implementation returns true.
+     * <p>
+     *
+     * @return true если место вызова нужно. true if the call site is needed.
+     */
+    default boolean needsCallSite() {
+        return true;
+    }
+
+
+    /**
+     * Данный метод ожидает, пока все уже переданные строки будут записаны, но не дольше указанного времени.
+     * Возвращает количество строк, которые не успели записаться. Реализация по умолчанию ничего не ждёт и возвращает 0,
+     * это подходит для Appender'ов, которые пишут сразу в вызывающем потоке.
+     * <p>
+     * This method waits until all strings already passed are written, but no longer than the given time.
+     * Returns the number of strings that were not written in time. The default implementation waits for nothing and returns 0,
+     * which suits Appenders that write directly on the calling thread.
+     * <p>
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param timeout Максимальное время ожидания. Maximum time to wait.
+     * @return Количество не записанных строк. Number of strings not written.
+     */
+    default long flush(Duration timeout) {
+        return 0;
+    }
+
+
     /**
      * Данный метод предназначен для уничтожения appender'a.
      * <p>
@@ -0,0 +1,48 @@
+package ru.voidcyborg.logapi.appender;
+
+/**
+ * Интерфейс {@code AppenderProvider} позволяет создавать Appender'ы по короткому имени из настроек без рефлексии,
+ * например {@code appender1=rollingFile}. Реализации находятся через {@code java.util.ServiceLoader}:
+ * в модуле через {@code provides ru.voidcyborg.logapi.appender.AppenderProvider with ...},
+ * на classpath через файл {@code META-INF/services/ru.voidcyborg.logapi.appender.AppenderProvider}.
+ * <p>
+ * The {@code AppenderProvider} interface allows creating Appenders by a short name from the settings without reflection,
+ * for example {@code appender1=rollingFile}. Implementations are found with {@code java.util.ServiceLoader}:
+ * in a module with {@code provides ru.voidcyborg.logapi.appender.AppenderProvider with ...},
+ * on the classpath with the {@code META-INF/services/ru.voidcyborg.logapi.appender.AppenderProvider} file.
+ * <p>
+ * В настройках можно указать как имя, так и полное имя класса Appender'а, который возвращает {@code getType()}.
+ * Если ни один провайдер не подошёл, то класс создаётся через рефлексию, как и раньше.
+ * <p>
+ * The settings may contain either the name or the full class name of the Appender returned by {@code getType()}.
+ * If no provider matches, the class is created with reflection as before.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.settings.Settings
+ * @see ru.voidcyborg.logapi.appender.appenders.BuiltInAppenders
+ */
+public interface AppenderProvider {
+
+    /**
+     * Возвращает короткое имя Appender'а для настроек. Регистр не важен.
+     * <p>
+     * Returns the short name of the Appender for the settings. Case does not matter.
+     */
+    String getName();
+
+    /**
+     * Возвращает класс создаваемого Appender'а.
+     * <p>
+     * Returns the class of the created Appender.
+     */
+    Class<? extends Appender> getType();
+
+    /**
+     * Создаёт новый экземпляр Appender'а без настроек.
+     * <p>
+     * Creates a new Appender instance without settings.
+     */
+    Appender create();
+}
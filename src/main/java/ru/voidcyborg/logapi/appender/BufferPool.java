@@ -0,0 +1,290 @@
+package ru.voidcyborg.logapi.appender;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс {@code BufferPool} представляет из себя общий для Appender'ов пул прямых (off-heap) {@code ByteBuffer}'ов.
+ * Буферы делятся на классы размеров от 256 байт до 64 КБ, у каждого потока {@code IOScheduler} есть небольшой собственный кеш буферов,
+ * а общий объём прямой памяти ограничен. Строки кодируются сразу в прямой буфер, поэтому при записи в {@code FileChannel}
+ * нет промежуточного массива в куче и лишнего копирования.
+ * <p>
+ * The {@code BufferPool} class is a pool of direct (off-heap) {@code ByteBuffer}s shared by Appenders.
+ * Buffers are split into size classes from 256 bytes to 64 KB, every {@code IOScheduler} thread has a small cache of buffers of its own,
+ * and the total amount of direct memory is bounded. Strings are encoded straight into a direct buffer, so writing to a {@code FileChannel}
+ * needs no intermediate heap array and no extra copy.
+ * <p>
+ * Если лимит прямой памяти исчерпан или запрошен буфер больше 64 КБ, то возвращается обычный буфер в куче,
+ * пул никогда не блокирует и не выбрасывает ошибку из-за нехватки памяти.
+ * <p>
+ * If the direct memory limit is exhausted or a buffer larger than 64 KB is requested, a regular heap buffer is returned,
+ * the pool never blocks and never throws because of a lack of memory.
+ * <p>
+ * Общий пул настраивается в файле настроек: {@code BufferPoolSize=33554432}.
+ * Для тестов можно включить поиск утечек свойством {@code -Dlogapi.bufferLeakDetection=true}.
+ * <p>
+ * The shared pool is configured in the settings file: {@code BufferPoolSize=33554432}.
+ * For tests leak detection can be enabled with the {@code -Dlogapi.bufferLeakDetection=true} property.
+ * <p>
+ * Пример использования:
+ * <p>
+ * Usage example:
+ * <blockquote><pre>
+ *     ByteBuffer buffer = BufferPool.getDefault().encode(text);
+ *     try {
+ *         channel.write(buffer);
+ *     } finally {
+ *         BufferPool.getDefault().release(buffer);
+ *     }
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.appender.appenders.RollingFileAppender
+ */
+public final class BufferPool {
+
+    private static final int MIN_SHIFT = 8;
+    private static final int MAX_SHIFT = 16;
+    private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+    private static final int THREAD_CACHE = 4;
+
+    private static volatile BufferPool defaultPool;
+    private static long defaultMaxBytes = 32L << 20;
+
+    private final long maxBytes;
+    private final List<Queue<ByteBuffer>> shared;
+    private final AtomicLong reserved = new AtomicLong();
+    private final ThreadLocal<ByteBuffer[][]> caches = new ThreadLocal<>();
+    private final ThreadLocal<CharsetEncoder> encoders = ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
+    private final Map<ByteBuffer, Throwable> outstanding;
+
+
+    /**
+     * Создаёт пул.
+     * <p>
+     * Creates a pool.
+     *
+     * @param maxBytes      Максимальный объём прямой памяти в байтах. Maximum amount of direct memory in bytes.
+     * @param leakDetection Запоминать место получения каждого буфера, чтобы найти невозвращённые. Remember where every buffer was acquired to find unreleased ones.
+     */
+    public BufferPool(long maxBytes, boolean leakDetection) {
+        this.maxBytes = Math.max(maxBytes, 0);
+        List<Queue<ByteBuffer>> shared = new ArrayList<>(CLASSES);
+        for (int i = 0; i < CLASSES; i++) {
+            shared.add(new ConcurrentLinkedQueue<>());
+        }
+        this.shared = List.copyOf(shared);
+        //ByteBuffer.equals сравнивает содержимое, поэтому нужна IdentityHashMap.
+        this.outstanding = leakDetection ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+    }
+
+    /**
+     * Задаёт лимит прямой памяти общего пула. Работает только до первого вызова {@code getDefault()}.
+     * <p>
+     * Sets the direct memory limit of the shared pool. Works only before the first call of {@code getDefault()}.
+     *
+     * @param maxBytes Максимальный объём прямой памяти в байтах. Maximum amount of direct memory in bytes.
+     * @return true если параметры применены. true if the parameters were applied.
+     */
+    public static synchronized boolean configureDefault(long maxBytes) {
+        if (defaultPool != null) return defaultPool.maxBytes == Math.max(maxBytes, 0);
+        defaultMaxBytes = maxBytes;
+        return true;
+    }
+
+    /**
+     * Возвращает общий пул, при первом вызове создаёт его.
+     * <p>
+     * Returns the shared pool, creates it on the first call.
+     *
+     * @return Общий пул. The shared pool.
+     */
+    public static BufferPool getDefault() {
+        BufferPool pool = defaultPool;
+        if (pool != null) return pool;
+
+        synchronized (BufferPool.class) {
+            if (defaultPool == null)
+                defaultPool = new BufferPool(defaultMaxBytes, Boolean.getBoolean("logapi.bufferLeakDetection"));
+            return defaultPool;
+        }
+    }
+
+    /**
+     * Возвращает очищенный буфер вместимостью не меньше указанной.
+     * После использования буфер нужно вернуть через {@code release(ByteBuffer buffer)}.
+     * <p>
+     * Returns a cleared buffer with a capacity of at least the given size.
+     * After use the buffer must be returned with {@code release(ByteBuffer buffer)}.
+     *
+     * @param size Необходимый размер в байтах. Required size in bytes.
+     * @return Буфер. The buffer.
+     */
+    public ByteBuffer acquire(int size) {
+        int index = classOf(size);
+        if (index < 0) return ByteBuffer.allocate(Math.max(size, 0));
+
+        ByteBuffer buffer = null;
+        ByteBuffer[][] caches = cache();
+        if (caches != null) {
+            ByteBuffer[] cache = caches[index];
+            for (int i = THREAD_CACHE - 1; i >= 0; i--) {
+                if (cache[i] != null) {
+                    buffer = cache[i];
+                    cache[i] = null;
+                    break;
+                }
+            }
+        }
+        if (buffer == null) buffer = shared.get(index).poll();
+        if (buffer == null) buffer = allocate(index);
+
+        buffer.clear();
+        if (outstanding != null && buffer.isDirect()) outstanding.put(buffer, new Throwable("Buffer acquired here"));
+        return buffer;
+    }
+
+    /**
+     * Кодирует строку в UTF-8 в буфер из пула. Буфер готов к чтению, после использования его нужно вернуть.
+     * <p>
+     * Encodes a string as UTF-8 into a buffer from the pool. The buffer is ready for reading, after use it must be returned.
+     *
+     * @param text Строка. The string.
+     * @return Буфер с байтами строки. Buffer with the bytes of the string.
+     */
+    public ByteBuffer encode(CharSequence text) {
+        CharsetEncoder encoder = encoders.get();
+        //Сначала пробую размер для ASCII, если не хватило, то беру размер для худшего случая.
+        ByteBuffer buffer = acquire(text.length() + 16);
+        if (!encode(encoder, text, buffer)) {
+            release(buffer);
+            buffer = acquire((int) Math.min((long) text.length() * 3 + 16, Integer.MAX_VALUE - 8));
+            encode(encoder, text, buffer);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Возвращает буфер в пул. Буферы в куче и чужие буферы просто отбрасываются.
+     * При включённом поиске утечек повторный возврат буфера выбрасывает {@code IllegalStateException}.
+     * <p>
+     * Returns a buffer to the pool. Heap buffers and foreign buffers are simply dropped.
+     * With leak detection enabled, returning a buffer a second time throws {@code IllegalStateException}.
+     *
+     * @param buffer Буфер полученный из {@code acquire(int size)} или {@code encode(CharSequence text)}. Buffer obtained from {@code acquire(int size)} or {@code encode(CharSequence text)}.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        int capacity = buffer.capacity();
+        int index = classOf(capacity);
+        if (index < 0 || capacity != 1 << (index + MIN_SHIFT)) return;
+        if (outstanding != null && outstanding.remove(buffer) == null)
+            throw new IllegalStateException("Buffer was released twice or was not acquired from this pool");
+
+        ByteBuffer[][] caches = cache();
+        if (caches != null) {
+            ByteBuffer[] cache = caches[index];
+            for (int i = 0; i < THREAD_CACHE; i++) {
+                if (cache[i] == null) {
+                    cache[i] = buffer;
+                    return;
+                }
+            }
+        }
+        shared.get(index).offer(buffer);
+    }
+
+    /**
+     * Возвращает объём прямой памяти, уже выделенной пулом.
+     * <p>
+     * Returns the amount of direct memory already allocated by the pool.
+     */
+    public long getOffHeapBytes() {
+        return reserved.get();
+    }
+
+    /**
+     * Возвращает лимит прямой памяти пула.
+     * <p>
+     * Returns the direct memory limit of the pool.
+     */
+    public long getMaxOffHeapBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Возвращает места получения буферов, которые ещё не возвращены в пул.
+     * Если поиск утечек выключен, то возвращает пустой список.
+     * <p>
+     * Returns the places where buffers that have not been returned to the pool yet were acquired.
+     * If leak detection is disabled, returns an empty list.
+     *
+     * @return Места получения невозвращённых буферов. Places where unreleased buffers were acquired.
+     */
+    public List<Throwable> getLeaks() {
+        if (outstanding == null) return List.of();
+        synchronized (outstanding) {
+            return new ArrayList<>(outstanding.values());
+        }
+    }
+
+    //Выделяет новый прямой буфер, если он укладывается в лимит, иначе буфер в куче, который не возвращается в пул.
+    private ByteBuffer allocate(int index) {
+        int capacity = 1 << (index + MIN_SHIFT);
+        while (true) {
+            long current = reserved.get();
+            if (current + capacity > maxBytes) return ByteBuffer.allocate(capacity);
+            if (reserved.compareAndSet(current, current + capacity)) return ByteBuffer.allocateDirect(capacity);
+        }
+    }
+
+    private static boolean encode(CharsetEncoder encoder, CharSequence text, ByteBuffer buffer) {
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(text), buffer, true);
+        if (result.isOverflow()) return false;
+        return !encoder.flush(buffer).isOverflow();
+    }
+
+    //Номер класса размера для буфера не меньше size, -1 если размер больше максимального класса.
+    private static int classOf(int size) {
+        if (size <= 1 << MIN_SHIFT) return 0;
+        if (size > 1 << MAX_SHIFT) return -1;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    //Кеш есть только у потоков планировщика: буферы в кеше потока приложения терялись бы вместе с лимитом, когда поток завершается.
+    //Виртуальные потоки тоже не потоки планировщика. Кеш завершённого потока планировщика возвращается в общий пул.
+    private ByteBuffer[][] cache() {
+        if (!(Thread.currentThread() instanceof IOScheduler.Worker worker)) return null;
+        ByteBuffer[][] cache = caches.get();
+        if (cache != null) return cache;
+        ByteBuffer[][] created = new ByteBuffer[CLASSES][THREAD_CACHE];
+        caches.set(created);
+        worker.onExit(() -> returnCache(created));
+        return created;
+    }
+
+    private void returnCache(ByteBuffer[][] cache) {
+        for (int index = 0; index < CLASSES; index++) {
+            for (ByteBuffer buffer : cache[index]) {
+                if (buffer != null) shared.get(index).offer(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package ru.voidcyborg.logapi.appender;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Класс {@code IOScheduler} представляет из себя общий для всех Appender'ов планировщик ввода-вывода.
+ * Вместо отдельного потока на каждый Appender, каждый Appender получает свою очередь {@code Lane},
+ * а небольшой общий пул потоков по кругу разбирает очереди пачками. Задачи одной очереди выполняются строго по порядку и никогда параллельно.
+ * <p>
+ * The {@code IOScheduler} class is an I/O scheduler shared by all Appenders.
+ * Instead of a dedicated thread per Appender, each Appender gets its own queue {@code Lane},
+ * and a small shared thread pool drains the queues in batches in round-robin order. Tasks of one queue run strictly in order and never in parallel.
+ * <p>
+ * Планировщик может работать на платформенных потоках с фиксированным пулом или на виртуальных потоках.
+ * Виртуальные потоки доступны начиная с Java 21, на более старых версиях используется фиксированный пул.
+ * <p>
+ * The scheduler can run on a fixed pool of platform threads or on virtual threads.
+ * Virtual threads are available starting with Java 21, on older versions the fixed pool is used.
+ * <p>
+ * Общий планировщик настраивается в файле настроек: {@code IOThreads=2} и {@code IOMode=platform} или {@code IOMode=virtual}.
+ * <p>
+ * The shared scheduler is configured in the settings file: {@code IOThreads=2} and {@code IOMode=platform} or {@code IOMode=virtual}.
+ * <p>
+ * Пример использования:
+ * <p>
+ * Usage example:
+ * <blockquote><pre>
+ *     IOScheduler.Lane lane = IOScheduler.getDefault().newLane();
+ *     lane.execute(() -> channel.write(buffer));
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.appender.appenders.RollingFileAppender
+ */
+public final class IOScheduler {
+
+    private static final int BATCH = 64;
+
+    private static final ThreadLocal<IOScheduler> current = new ThreadLocal<>();
+    private static volatile IOScheduler defaultScheduler;
+    private static volatile ScheduledExecutorService timer;
+    private static int defaultThreads = 2;
+    private static boolean defaultVirtual;
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final int threads;
+
+
+    /**
+     * Создаёт планировщик.
+     * Если виртуальные потоки не поддерживаются данной версией Java, то используется фиксированный пул, его потоки запускаются сразу.
+     * <p>
+     * Creates a scheduler.
+     * If virtual threads are not supported by this Java version, the fixed pool is used, its threads are started right away.
+     *
+     * @param threads Количество платформенных потоков, минимум 1. Number of platform threads, at least 1.
+     * @param virtual Использовать виртуальные потоки. Use virtual threads.
+     */
+    public IOScheduler(int threads, boolean virtual) {
+        this.threads = Math.max(threads, 1);
+
+        ExecutorService executor = virtual ? newVirtualExecutor() : null;
+        this.virtual = executor != null;
+        if (executor == null) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(this.threads, new DaemonFactory());
+            pool.prestartAllCoreThreads();
+            executor = pool;
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Задаёт параметры общего планировщика. Работает только до первого вызова {@code getDefault()}.
+     * <p>
+     * Sets the parameters of the shared scheduler. Works only before the first call of {@code getDefault()}.
+     *
+     * @param threads Количество платформенных потоков. Number of platform threads.
+     * @param virtual Использовать виртуальные потоки. Use virtual threads.
+     * @return true если параметры применены. true if the parameters were applied.
+     */
+    public static synchronized boolean configureDefault(int threads, boolean virtual) {
+        if (defaultScheduler != null) return defaultScheduler.threads == Math.max(threads, 1) && defaultScheduler.virtual == virtual;
+        defaultThreads = threads;
+        defaultVirtual = virtual;
+        return true;
+    }
+
+    /**
+     * Возвращает общий планировщик, при первом вызове создаёт его.
+     * <p>
+     * Returns the shared scheduler, creates it on the first call.
+     *
+     * @return Общий планировщик. The shared scheduler.
+     */
+    public static IOScheduler getDefault() {
+        IOScheduler scheduler = defaultScheduler;
+        if (scheduler != null) return scheduler;
+
+        synchronized (IOScheduler.class) {
+            if (defaultScheduler == null) defaultScheduler = new IOScheduler(defaultThreads, defaultVirtual);
+            return defaultScheduler;
+        }
+    }
+
+    /**
+     * Возвращает планировщик, привязанный к текущему потоку через {@code setCurrent(IOScheduler scheduler)}, или null, тогда используется общий.
+     * Appender'ы запоминают его в {@code parseSettings}, так Appender'ы изолированного {@code LoggingContext} пишут в его собственных потоках.
+     * Общий планировщик при этом не создаётся, чтобы его ещё можно было настроить.
+     * <p>
+     * Returns the scheduler bound to the current thread with {@code setCurrent(IOScheduler scheduler)}, or null, then the shared one is used.
+     * Appenders remember it in {@code parseSettings}, this way the Appenders of an isolated {@code LoggingContext} write on its own threads.
+     * The shared scheduler is not created by this, so that it can still be configured.
+     *
+     * @return Планировщик или null. The scheduler or null.
+     */
+    public static IOScheduler getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * Привязывает планировщик к текущему потоку, null снимает привязку. Привязку нужно снять после настройки Appender'ов.
+     * <p>
+     * Binds the scheduler to the current thread, null removes the binding. The binding must be removed after the Appenders are configured.
+     *
+     * @param scheduler Планировщик или null. The scheduler or null.
+     * @return Прежняя привязка или null. The previous binding or null.
+     */
+    public static IOScheduler setCurrent(IOScheduler scheduler) {
+        IOScheduler previous = current.get();
+        if (scheduler == null) current.remove();
+        else current.set(scheduler);
+        return previous;
+    }
+
+    /**
+     * Создаёт новую очередь задач в данном планировщике.
+     * <p>
+     * Creates a new task queue in this scheduler.
+     *
+     * @return Новая очередь. New queue.
+     */
+    public Lane newLane() {
+        return new Lane();
+    }
+
+    /**
+     * Возвращает true если планировщик работает на виртуальных потоках.
+     * <p>
+     * Returns true if the scheduler runs on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Возвращает количество платформенных потоков планировщика.
+     * <p>
+     * Returns the number of platform threads of the scheduler.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Останавливает планировщик. Уже поставленные задачи будут выполнены.
+     * Общий планировщик останавливать не нужно, его потоки являются демонами.
+     * <p>
+     * Stops the scheduler. Tasks already queued will be executed.
+     * The shared scheduler does not need to be stopped, its threads are daemons.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    //Один поток-таймер на все планировщики, он только перекладывает отложенные задачи в их очереди.
+    private static ScheduledExecutorService timer() {
+        ScheduledExecutorService timer = IOScheduler.timer;
+        if (timer != null) return timer;
+
+        synchronized (IOScheduler.class) {
+            if (IOScheduler.timer == null) IOScheduler.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "LogAPI-Timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            return IOScheduler.timer;
+        }
+    }
+
+    //Executors.newVirtualThreadPerTaskExecutor() есть только начиная с Java 21, поэтому ищу его через рефлексию.
+    private static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Очередь задач одного Appender'а. Задачи выполняются по порядку, не более одной одновременно.
+     * После пачки задач очередь уступает потоки планировщика другим очередям.
+     * <p>
+     * The task queue of one Appender. Tasks run in order, at most one at a time.
+     * After a batch of tasks the queue yields the scheduler threads to other queues.
+     */
+    public final class Lane {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Lane() {
+        }
+
+        /**
+         * Ставит задачу в очередь. Не блокирует вызывающий поток.
+         * <p>
+         * Queues a task. Does not block the calling thread.
+         *
+         * @param task Задача. The task.
+         * @return false если очередь закрыта. false if the queue is closed.
+         */
+        public boolean execute(Runnable task) {
+            if (task == null || closed) return false;
+            tasks.offer(task);
+            size.incrementAndGet();
+            schedule();
+            return true;
+        }
+
+        /**
+         * Ставит задачу в очередь после указанной задержки. Не блокирует вызывающий поток.
+         * Задача выполняется в этой же очереди, поэтому ей не нужна синхронизация с остальными задачами очереди.
+         * Если к моменту срабатывания очередь закрыта, то задача не выполняется.
+         * <p>
+         * Queues a task after the given delay. Does not block the calling thread.
+         * The task runs in this same queue, so it needs no synchronization with the other tasks of the queue.
+         * If the queue is closed by the time the delay expires, the task is not executed.
+         *
+         * @param task  Задача. The task.
+         * @param delay Задержка. The delay.
+         * @return false если очередь закрыта. false if the queue is closed.
+         */
+        public boolean executeLater(Runnable task, Duration delay) {
+            if (task == null || closed) return false;
+            try {
+                timer().schedule(() -> execute(task), Math.max(delay.toNanos(), 0), TimeUnit.NANOSECONDS);
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        /**
+         * Возвращает количество задач, которые ещё не выполнены.
+         * <p>
+         * Returns the number of tasks that have not been executed yet.
+         */
+        public int getPending() {
+            return size.get();
+        }
+
+        /**
+         * Ожидает выполнения всех задач, поставленных до вызова данного метода, но не дольше указанного времени.
+         * <p>
+         * Waits for all tasks queued before this call to complete, but no longer than the given time.
+         *
+         * @param timeout Максимальное время ожидания. Maximum time to wait.
+         * @return true если все задачи выполнены. true if all tasks have completed.
+         */
+        public boolean await(Duration timeout) {
+            if (size.get() == 0) return true;
+
+            CountDownLatch latch = new CountDownLatch(1);
+            tasks.offer(latch::countDown);
+            size.incrementAndGet();
+            schedule();
+            try {
+                return latch.await(Math.max(timeout.toNanos(), 0), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Закрывает очередь для новых задач. Уже поставленные задачи будут выполнены.
+         * <p>
+         * Closes the queue for new tasks. Tasks already queued will be executed.
+         */
+        public void close() {
+            closed = true;
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            try {
+                executor.execute(this::drain);
+            } catch (Exception e) {
+                scheduled.set(false);
+            }
+        }
+
+        private void drain() {
+            for (int i = 0; i < BATCH; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) break;
+                try {
+                    task.run();
+                } catch (Exception ignore) {
+                } finally {
+                    size.decrementAndGet();
+                }
+            }
+
+            scheduled.set(false);
+            if (!tasks.isEmpty()) schedule();
+        }
+    }
+
+    //Потоки планировщика не должны мешать завершению приложения.
+    private static final class DaemonFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Worker thread = new Worker(runnable, "LogAPI-IO-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    //Поток планировщика. BufferPool держит кеш буферов только в таких потоках и возвращает его в общий пул, когда поток завершается.
+    static final class Worker extends Thread {
+        private final List<Runnable> exitHooks = new ArrayList<>();
+
+        private Worker(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+
+        //Вызывается только самим потоком, поэтому синхронизация не нужна.
+        void onExit(Runnable hook) {
+            exitHooks.add(hook);
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                for (Runnable hook : exitHooks) {
+                    try {
+                        hook.run();
+                    } catch (Exception ignore) {
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package ru.voidcyborg.logapi.appender;
+
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.util.Map;
+
+/**
+ * Класс {@code LogEvent} представляет из себя уже отформатированное событие вместе с его признаками:
+ * уровнем, именем группы, классом логгера, меткой и контекстом потока. По этим признакам Appender может, например, разложить события по разным файлам,
+ * не разбирая саму строку.
+ * <p>
+ * The {@code LogEvent} class is an already formatted event together with its attributes:
+ * the level, the group name, the logger class, the marker and the thread context. By these attributes an Appender can, for example, split events into different files
+ * without parsing the string itself.
+ * <p>
+ * Экземпляры неизменяемы и создаются Logger'ом один раз на событие для всех Appender'ов.
+ * <p>
+ * Instances are immutable and are created by the Logger once per event for all Appenders.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.appender.appenders.RoutingAppender
+ */
+public final class LogEvent {
+
+    private final String text;
+    private final LogLevel level;
+    private final String group;
+    private final Class<?> logger;
+    private final String marker;
+    private final long time;
+    private final Map<String, String> context;
+    private final String callerFile;
+    private final String callerMethod;
+    private final String callerLine;
+    private final String message;
+
+
+    /**
+     * Создаёт событие.
+     * <p>
+     * Creates an event.
+     *
+     * @param text   Отформатированная строка. The formatted string.
+     * @param level  Уровень события. Level of the event.
+     * @param group  Имя группы или null для групп без имени. Name of the group or null for unnamed groups.
+     * @param logger Класс логгера. Class of the logger.
+     * @param marker Имя метки или null. Name of the marker or null.
+     * @param time   Время события в миллисекундах. Time of the event in milliseconds.
+     */
+    public LogEvent(String text, LogLevel level, String group, Class<?> logger, String marker, long time) {
+        this(text, level, group, logger, marker, time, Map.of());
+    }
+
+    /**
+     * Создаёт событие с контекстом потока.
+     * <p>
+     * Creates an event with the thread context.
+     *
+     * @param text    Отформатированная строка. The formatted string.
+     * @param level   Уровень события. Level of the event.
+     * @param group   Имя группы или null для групп без имени. Name of the group or null for unnamed groups.
+     * @param logger  Класс логгера. Class of the logger.
+     * @param marker  Имя метки или null. Name of the marker or null.
+     * @param time    Время события в миллисекундах. Time of the event in milliseconds.
+     * @param context Неизменяемый снимок контекста потока. Immutable snapshot of the thread context.
+     */
+    public LogEvent(String text, LogLevel level, String group, Class<?> logger, String marker, long time, Map<String, String> context) {
+        this(text, level, group, logger, marker, time, context, null, null);
+    }
+
+    /**
+     * Создаёт событие с контекстом потока, местом вызова и исходным сообщением.
+     * <p>
+     * Creates an event with the thread context, the call site and the original message.
+     *
+     * @param text     Отформатированная строка. The formatted string.
+     * @param level    Уровень события. Level of the event.
+     * @param group    Имя группы или null для групп без имени. Name of the group or null for unnamed groups.
+     * @param logger   Класс логгера. Class of the logger.
+     * @param marker   Имя метки или null. Name of the marker or null.
+     * @param time     Время события в миллисекундах. Time of the event in milliseconds.
+     * @param context  Неизменяемый снимок контекста потока. Immutable snapshot of the thread context.
+     * @param callSite Место вызова {@code {файл, метод, строка}} или null. Массив не сохраняется.
+     *                 The call site {@code {file, method, line}} or null. The array is not kept.
+     * @param message  Сообщение до форматирования или null. The message before formatting or null.
+     */
+    public LogEvent(String text, LogLevel level, String group, Class<?> logger, String marker, long time, Map<String, String> context,
+                    String[] callSite, String message) {
+        boolean known = callSite != null && callSite.length >= 3;
+        this.callerFile = known ? callSite[0] : null;
+        this.callerMethod = known ? callSite[1] : null;
+        this.callerLine = known ? callSite[2] : null;
+        this.message = message;
+        this.context = context == null ? Map.of() : context;
+        this.text = text;
+        this.level = level;
+        this.group = group;
+        this.logger = logger;
+        this.marker = marker;
+        this.time = time;
+    }
+
+    /**
+     * Возвращает отформатированную строку события или null, если она не нужна ни одному Appender'у события.
+     * <p>
+     * Returns the formatted string of the event or null if none of the Appenders of the event needs it.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Возвращает уровень события.
+     * <p>
+     * Returns the level of the event.
+     */
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Возвращает имя группы, null если группа создана через {@code createCustomLoggerGroup}.
+     * <p>
+     * Returns the name of the group, null if the group was created with {@code createCustomLoggerGroup}.
+     */
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * Возвращает класс логгера.
+     * <p>
+     * Returns the class of the logger.
+     */
+    public Class<?> getLoggerClass() {
+        return logger;
+    }
+
+    /**
+     * Возвращает имя метки события или null.
+     * <p>
+     * Returns the name of the marker of the event or null.
+     */
+    public String getMarker() {
+        return marker;
+    }
+
+    /**
+     * Возвращает время события в миллисекундах.
+     * <p>
+     * Returns the time of the event in milliseconds.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Возвращает неизменяемый снимок контекста потока, в котором произошло событие.
+     * <p>
+     * Returns an immutable snapshot of the context of the thread in which the event happened.
+     */
+    public Map<String, String> getContext() {
+        return context;
+    }
+
+    /**
+     * Возвращает имя файла места вызова или null, если место вызова не известно.
+     * <p>
+     * Returns the file name of the call site or null if the call site is unknown.
+     */
+    public String getCallerFile() {
+        return callerFile;
+    }
+
+    /**
+     * Возвращает имя метода места вызова или null.
+     * <p>
+     * Returns the method name of the call site or null.
+     */
+    public String getCallerMethod() {
+        return callerMethod;
+    }
+
+    /**
+     * Возвращает номер строки места вызова или null.
+     * <p>
+     * Returns the line number of the call site or null.
+     */
+    public String getCallerLine() {
+        return callerLine;
+    }
+
+    /**
+     * Возвращает место вызова в виде {@code File.java:method:line} или null. Строка создаётся при каждом вызове.
+     * <p>
+     * Returns the call site as {@code File.java:method:line} or null. The string is created on every call.
+     */
+    public String getCallSite() {
+        return callerFile == null ? null : callerFile + ':' + callerMethod + ':' + callerLine;
+    }
+
+    /**
+     * Возвращает сообщение, переданное в Logger, до форматирования и без объекта, или null.
+     * Одинаковые сообщения из разных мест дают одинаковую строку, поэтому по ней удобно считать события.
+     * <p>
+     * Returns the message passed to the Logger, before formatting and without the object, or null.
+     * The same messages from different places give the same string, so it is convenient for counting events.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,190 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.AppenderProvider;
+
+/**
+ * Класс {@code BuiltInAppenders} содержит провайдеров Appender'ов данной библиотеки, их имена для настроек:
+ * {@code console}, {@code metrics}, {@code rollingFile}, {@code routing}, {@code sharedRing}, {@code socket}, {@code syslog}, {@code void}.
+ * <p>
+ * The {@code BuiltInAppenders} class contains the providers of the Appenders of this library, their names for the settings:
+ * {@code console}, {@code metrics}, {@code rollingFile}, {@code routing}, {@code sharedRing}, {@code socket}, {@code syslog}, {@code void}.
+ * <p>
+ * Пример настроек:
+ * <p>
+ * Settings example:
+ * <blockquote><pre>
+ *     appender=rollingFile
+ *     appender.fileName=app.log
+ *     appender2=console
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.AppenderProvider
+ */
+public final class BuiltInAppenders {
+
+    private BuiltInAppenders() {
+    }
+
+
+    /**
+     * Провайдер {@code ConsoleAppender}. Provider of {@code ConsoleAppender}.
+     */
+    public static final class Console implements AppenderProvider {
+        @Override
+        public String getName() {
+            return "console";
+        }
+
+        @Override
+        public Class<? extends Appender> getType() {
+            return ConsoleAppender.class;
+        }
+
+        @Override
+        public Appender create() {
+            return new ConsoleAppender();
+        }
+    }
+
+    /**
+     * Провайдер {@code MetricsAppender}. Provider of {@code MetricsAppender}.
+     */
+    public static final class Metrics implements AppenderProvider {
+        @Override
+        public String getName() {
+            return "metrics";
+        }
+
+        @Override
+        public Class<? extends Appender> getType() {
+            return MetricsAppender.class;
+        }
+
+        @Override
+        public Appender create() {
+            return new MetricsAppender();
+        }
+    }
+
+    /**
+     * Провайдер {@code RollingFileAppender}. Provider of {@code RollingFileAppender}.
+     */
+    public static final class RollingFile implements AppenderProvider {
+        @Override
+        public String getName() {
+            return "rollingFile";
+        }
+
+        @Override
+        public Class<? extends Appender> getType() {
+            return RollingFileAppender.class;
+        }
+
+        @Override
+        public Appender create() {
+            return new RollingFileAppender();
+        }
+    }
+
+    /**
+     * Провайдер {@code RoutingAppender}. Provider of {@code RoutingAppender}.
+     */
+    public static final class Routing implements AppenderProvider {
+        @Override
+        public String getName() {
+            return "routing";
+        }
+
+        @Override
+        public Class<? extends Appender> getType() {
+            return RoutingAppender.class;
+        }
+
+        @Override
+        public Appender create() {
+            return new RoutingAppender();
+        }
+    }
+
+    /**
+     * Провайдер {@code SharedRingAppender}. Provider of {@code SharedRingAppender}.
+     */
+    public static final class SharedRing implements AppenderProvider {
+        @Override
+        public String getName() {
+            return "sharedRing";
+        }
+
+        @Override
+        public Class<? extends Appender> getType() {
+            return SharedRingAppender.class;
+        }
+
+        @Override
+        public Appender create() {
+            return new SharedRingAppender();
+        }
+    }
+
+    /**
+     * Провайдер {@code SocketAppender}. Provider of {@code SocketAppender}.
+     */
+    public static final class Socket implements AppenderProvider {
+        @Override
+        public String getName() {
+            return "socket";
+        }
+
+        @Override
+        public Class<? extends Appender> getType() {
+            return SocketAppender.class;
+        }
+
+        @Override
+        public Appender create() {
+            return new SocketAppender();
+        }
+    }
+
+    /**
+     * Провайдер {@code SyslogAppender}. Provider of {@code SyslogAppender}.
+     */
+    public static final class Syslog implements AppenderProvider {
+        @Override
+        public String getName() {
+            return "syslog";
+        }
+
+        @Override
+        public Class<? extends Appender> getType() {
+            return SyslogAppender.class;
+        }
+
+        @Override
+        public Appender create() {
+            return new SyslogAppender();
+        }
+    }
+
+    /**
+     * Провайдер {@code VoidAppender}. Provider of {@code VoidAppender}.
+     */
+    public static final class Void implements AppenderProvider {
+        @Override
+        public String getName() {
+            return "void";
+        }
+
+        @Override
+        public Class<? extends Appender> getType() {
+            return VoidAppender.class;
+        }
+
+        @Override
+        public Appender create() {
+            return new VoidAppender();
+        }
+    }
+}
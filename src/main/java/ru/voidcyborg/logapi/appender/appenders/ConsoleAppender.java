@@ -1,6 +1,8 @@
 package ru.voidcyborg.logapi.appender.appenders;
 
 import ru.voidcyborg.logapi.appender.Appender;
+
+import java.time.Duration;
 import java.util.Map;
 
 /**
@@ -72,6 +74,21 @@ public final class ConsoleAppender implements Appender {
         System.out.print(text);
         return true;
     }
+
+    /**
+     * Сбрасывает буфер системной консоли. Строки пишутся сразу, поэтому всегда возвращает 0.
+     * <p>
+     * Flushes the system console buffer. Strings are written immediately, so it always returns 0.
+     *
+     * @param timeout Не используется. Not used.
+     * @return 0.
+     */
+    @Override
+    public long flush(Duration timeout) {
+        System.out.flush();
+        return 0;
+    }
+
     /**
      * Ничего не делает так как является прокладкой.
      */
@@ -0,0 +1,437 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.level.LogLevel;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Класс {@code MetricsAppender} ничего не пишет, а считает события по минутам: по уровню, классу логгера, месту вызова и сообщению.
+ * Так строки, которые нужны только для графиков, превращаются в счётчики и не попадают на диск.
+ * <p>
+ * <p>
+ * The {@code MetricsAppender} class writes nothing, it counts events per minute: by level, logger class, call site and message.
+ * This way lines that are only needed for dashboards become counters and do not reach the disk.
+ * <p>
+ * <p>
+ * Счётчики - это {@code LongAdder}'ы в {@code ConcurrentHashMap}, поэтому запись события не берёт блокировок.
+ * Количество разных счётчиков за минуту ограничено, события сверх лимита считаются в общем счётчике уровня с местом вызова {@code #other}.
+ * Снимок счётчиков возвращает {@code getSnapshot()}, сам Appender можно найти через {@code Settings.getAppenders()} или {@code LoggerGroup.getAppenderStats()}.
+ * <p>
+ * Counters are {@code LongAdder}s in a {@code ConcurrentHashMap}, so counting an event takes no locks.
+ * The number of distinct counters per minute is bounded, events over the limit are counted in a shared counter of the level with the {@code #other} call site.
+ * The snapshot of the counters is returned by {@code getSnapshot()}, the Appender itself can be found with {@code Settings.getAppenders()} or {@code LoggerGroup.getAppenderStats()}.
+ * <p>
+ * Чтобы события только считались, их уровень или логгер должен проходить фильтр этого Appender'а, но не фильтры остальных:
+ * <p>
+ * To have events only counted, their level or logger must pass the filter of this Appender, but not the filters of the others:
+ * <blockquote><pre>
+ *     LogLevel=TRACE
+ *     appender1=rollingFile
+ *     appender1.level=INFO
+ *     appender2=metrics
+ *     appender2.keys=level,callSite
+ * </pre></blockquote><p>
+ * Или по метке: событие с меткой {@code COUNTED} идёт только в счётчики и не форматируется.
+ * <p>
+ * Or by marker: an event with the {@code COUNTED} marker goes only to the counters and is not formatted.
+ * <blockquote><pre>
+ *     appender1.markers=!COUNTED
+ *     appender2.markers=COUNTED
+ * </pre></blockquote><p>
+ * Серия повторов, схлопнутая настройкой {@code RepeatWindow}, считается как одно событие.
+ * <p>
+ * A run of repeats collapsed by the {@code RepeatWindow} setting is counted as one event.
+ * <p>
+ * <p>
+ * Данный класс поддерживает несколько настроек:
+ * <p><b>keys</b> - по каким признакам разделять счётчики через запятую: {@code level}, {@code logger}, {@code callSite}, {@code message}. По умолчанию все.
+ * Which attributes split the counters, comma separated: {@code level}, {@code logger}, {@code callSite}, {@code message}. All by default.
+ * <p><b>maxSeries</b> - максимальное количество разных счётчиков за минуту, по умолчанию 10000.
+ * Maximum number of distinct counters per minute, 10000 by default.
+ * <p><b>minutes</b> - сколько завершённых минут хранить, по умолчанию 60.
+ * How many finished minutes to keep, 60 by default.
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.appender.LogEvent
+ * @see ru.voidcyborg.logapi.logger.AppenderFilter
+ */
+public final class MetricsAppender implements Appender {
+
+    private static final long MINUTE = 60_000;
+    private static final String OTHER = "#other";
+
+    private final ArrayDeque<Window> history = new ArrayDeque<>();
+
+    private boolean byLevel;
+    private boolean byLogger;
+    private boolean byCallSite;
+    private boolean byMessage;
+    private int maxSeries;
+    private int minutes;
+
+    private volatile Window current;
+    private volatile boolean destroyed;
+
+
+    /**
+     * Данный метод предназначен инициализации настроек для данного Appender'а.
+     * Если настройки уже инициализированы, будет выбрашена ошибка.
+     * <p>
+     * This method is intended to initialize the settings for this Appender.
+     * If the settings are already initialized, an error will be thrown.
+     * <p>
+     *
+     * @param settings Настройки в виде мапы. Map settings.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    @Override
+    public synchronized void parseSettings(Map<String, String> settings) throws SettingsInitException {
+        if (settings == null) throw new SettingsInitException("Settings of MetricsAppender can't be null.");
+        if (current != null) throw new SettingsInitException("Settings of MetricsAppender can't be parsed second time.");
+
+        try {
+            parseKeys(settings.get("keys"));
+            maxSeries = parseInt(settings.get("maxSeries"), 10_000);
+            minutes = parseInt(settings.get("minutes"), 60);
+        } catch (Exception e) {
+            throw new SettingsInitException("Failed to parse settings of MetricsAppender because of " + e);
+        }
+        current = new Window(System.currentTimeMillis() / MINUTE);
+    }
+
+    /**
+     * Считает строку без признаков. Обычно Logger передаёт события через {@code append(LogEvent event)}.
+     * <p>
+     * Counts a string without attributes. Usually the Logger passes events through {@code append(LogEvent event)}.
+     * <p>
+     *
+     * @param text Строка события. The string of the event.
+     * @return Возвращает true если событие посчитано. Returns true if the event was counted.
+     */
+    @Override
+    public boolean append(String text) {
+        if (text == null) return false;
+        return count(null, System.currentTimeMillis());
+    }
+
+    /**
+     * Увеличивает счётчик события в минуте, на которую приходится его время. Метод не блокирующий.
+     * <p>
+     * Increments the counter of the event in the minute of its time. The method is not blocking.
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param event Событие. The event.
+     * @return Возвращает true если событие посчитано. Returns true if the event was counted.
+     */
+    @Override
+    public boolean append(LogEvent event) {
+        if (event == null) return false;
+        return count(event, event.getTime());
+    }
+
+    /**
+     * Счётчикам строка события не нужна, поэтому событие, которое идёт только в этот Appender, не форматируется.
+     * <p>
+     * The counters do not need the string of the event, so an event that goes only to this Appender is not formatted.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean needsText() {
+        return false;
+    }
+
+    /**
+     * Место вызова нужно, только если по нему разделяются счётчики.
+     * <p>
+     * The call site is needed only if the counters are split by it.
+     *
+     * @return true если в {@code keys} есть {@code callSite}. true if {@code keys} contains {@code callSite}.
+     */
+    @Override
+    public boolean needsCallSite() {
+        return byCallSite;
+    }
+
+    /**
+     * Возвращает снимок счётчиков всех хранимых минут, включая текущую, по минутам от старых к новым, внутри минуты по убыванию.
+     * <p>
+     * Returns a snapshot of the counters of all kept minutes, including the current one, by minute from old to new, within a minute in descending order.
+     *
+     * @return Список счётчиков. List of counters.
+     */
+    public List<Counter> getSnapshot() {
+        return getSnapshot(Long.MIN_VALUE);
+    }
+
+    /**
+     * Возвращает снимок счётчиков минут, которые начинаются не раньше указанного времени.
+     * <p>
+     * Returns a snapshot of the counters of the minutes that start no earlier than the given time.
+     *
+     * @param since Время в миллисекундах. Time in milliseconds.
+     * @return Список счётчиков. List of counters.
+     */
+    public List<Counter> getSnapshot(long since) {
+        List<Window> windows;
+        synchronized (history) {
+            windows = new ArrayList<>(history);
+            if (current != null) windows.add(current);
+        }
+
+        List<Counter> result = new ArrayList<>();
+        for (Window window : windows) {
+            if (window.minute * MINUTE < since) continue;
+            int start = result.size();
+            for (Map.Entry<Key, LongAdder> entry : window.counters.entrySet()) {
+                long count = entry.getValue().sum();
+                if (count > 0) result.add(new Counter(window.minute * MINUTE, entry.getKey(), count));
+            }
+            result.subList(start, result.size()).sort(Comparator.comparingLong((Counter counter) -> counter.count).reversed());
+        }
+        return result;
+    }
+
+    /**
+     * Очищает все счётчики.
+     * <p>
+     * Clears all counters.
+     */
+    public void reset() {
+        synchronized (history) {
+            history.clear();
+            if (current != null) current = new Window(System.currentTimeMillis() / MINUTE);
+        }
+    }
+
+    /**
+     * После уничтожения события больше не считаются, но снимок остаётся доступен.
+     * <p>
+     * After destruction events are no longer counted, but the snapshot stays available.
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+    }
+
+    //Счётчик ищется без блокировок, новый добавляется через computeIfAbsent. Сверх лимита счётчиков событие уходит в общий счётчик уровня.
+    private boolean count(LogEvent event, long time) {
+        if (destroyed) return false;
+        Window window = window(time / MINUTE);
+        if (window == null) return false;
+
+        Key key = key(event);
+        LongAdder adder = window.counters.get(key);
+        if (adder == null) {
+            if (window.counters.size() >= maxSeries) key = new Key(key.level, null, OTHER, null, null, null);
+            adder = window.counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        adder.increment();
+        return true;
+    }
+
+    //Возвращает окно минуты, при наступлении новой минуты текущее окно уходит в историю.
+    //Опоздавшие события из прошлых минут считаются в текущей.
+    private Window window(long minute) {
+        Window window = current;
+        if (window == null || window.minute >= minute) return window;
+        synchronized (history) {
+            window = current;
+            if (window.minute >= minute) return window;
+            if (!window.counters.isEmpty()) history.addLast(window);
+            while (history.size() > minutes) history.pollFirst();
+            current = window = new Window(minute);
+            return window;
+        }
+    }
+
+    private Key key(LogEvent event) {
+        if (event == null) return new Key(null, null, null, null, null, null);
+        return new Key(byLevel ? event.getLevel() : null,
+                byLogger ? event.getLoggerClass() : null,
+                byCallSite ? event.getCallerFile() : null,
+                byCallSite ? event.getCallerMethod() : null,
+                byCallSite ? event.getCallerLine() : null,
+                byMessage ? event.getMessage() : null);
+    }
+
+    //Парсит признаки счётчиков, если настройки нет, то используются все.
+    private void parseKeys(String s) {
+        if (s == null || s.isBlank()) {
+            byLevel = byLogger = byCallSite = byMessage = true;
+            return;
+        }
+        for (String key : s.split(",")) {
+            switch (key.trim().toLowerCase(Locale.ROOT)) {
+                case "level" -> byLevel = true;
+                case "logger" -> byLogger = true;
+                case "callsite" -> byCallSite = true;
+                case "message" -> byMessage = true;
+                case "" -> {
+                }
+                default -> throw new IllegalArgumentException("Unknown key: " + key);
+            }
+        }
+    }
+
+    //Парсит положительное число, если настройка не указана то возвращает значение по умолчанию.
+    private int parseInt(String s, int defaultValue) {
+        if (s == null || s.isBlank()) return defaultValue;
+        int value = Integer.parseInt(s.replace("_", "").trim());
+        if (value <= 0) throw new IllegalArgumentException("Value must be positive: " + s);
+        return value;
+    }
+
+
+    /**
+     * Снимок одного счётчика за минуту. Признаки, по которым счётчики не разделяются, равны null.
+     * <p>
+     * Snapshot of one counter for a minute. Attributes by which counters are not split are null.
+     */
+    public static final class Counter {
+        private final long minute;
+        private final LogLevel level;
+        private final String logger;
+        private final String callSite;
+        private final String message;
+        private final long count;
+
+        private Counter(long minute, Key key, long count) {
+            this.minute = minute;
+            this.level = key.level;
+            this.logger = key.logger == null ? null : key.logger.getName();
+            this.callSite = key.file == null ? null : key.method == null ? key.file : key.file + ':' + key.method + ':' + key.line;
+            this.message = key.message;
+            this.count = count;
+        }
+
+        /**
+         * Возвращает время начала минуты в миллисекундах.
+         * <p>
+         * Returns the start time of the minute in milliseconds.
+         */
+        public long getMinute() {
+            return minute;
+        }
+
+        /**
+         * Возвращает уровень событий или null.
+         * <p>
+         * Returns the level of the events or null.
+         */
+        public LogLevel getLevel() {
+            return level;
+        }
+
+        /**
+         * Возвращает имя класса логгера или null.
+         * <p>
+         * Returns the name of the logger class or null.
+         */
+        public String getLogger() {
+            return logger;
+        }
+
+        /**
+         * Возвращает место вызова в виде {@code File.java:method:line}, {@code #other} для событий сверх лимита или null.
+         * <p>
+         * Returns the call site as {@code File.java:method:line}, {@code #other} for events over the limit or null.
+         */
+        public String getCallSite() {
+            return callSite;
+        }
+
+        /**
+         * Возвращает сообщение до форматирования или null.
+         * <p>
+         * Returns the message before formatting or null.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Возвращает количество событий за минуту.
+         * <p>
+         * Returns the number of events in the minute.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "Counter{minute=" + minute + ", level=" + level + ", logger=" + logger + ", callSite=" + callSite
+                    + ", message=" + message + ", count=" + count + '}';
+        }
+    }
+
+
+    //Счётчики одной минуты.
+    private static final class Window {
+        private final long minute;
+        private final ConcurrentHashMap<Key, LongAdder> counters = new ConcurrentHashMap<>();
+
+        private Window(long minute) {
+            this.minute = minute;
+        }
+    }
+
+
+    private static final class Key {
+        private final LogLevel level;
+        private final Class<?> logger;
+        private final String file;
+        private final String method;
+        private final String line;
+        private final String message;
+        private final int hash;
+
+        private Key(LogLevel level, Class<?> logger, String file, String method, String line, String message) {
+            this.level = level;
+            this.logger = logger;
+            this.file = file;
+            this.method = method;
+            this.line = line;
+            this.message = message;
+            //Без Objects.hash, чтобы не создавать массив аргументов на каждое событие.
+            int hash = Objects.hashCode(level);
+            hash = 31 * hash + Objects.hashCode(logger);
+            hash = 31 * hash + Objects.hashCode(file);
+            hash = 31 * hash + Objects.hashCode(method);
+            hash = 31 * hash + Objects.hashCode(line);
+            this.hash = 31 * hash + Objects.hashCode(message);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return level == key.level && logger == key.logger && Objects.equals(file, key.file) && Objects.equals(method, key.method)
+                    && Objects.equals(line, key.line) && Objects.equals(message, key.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,19 +1,20 @@
 package ru.voidcyborg.logapi.appender.appenders;
 
 import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.BufferPool;
+import ru.voidcyborg.logapi.appender.IOScheduler;
 import ru.voidcyborg.logapi.settings.SettingsInitException;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
 
 
 /**
@@ -49,41 +50,54 @@ import java.util.concurrent.Executors;
  * Maximum number of files to rotate, if 0 or less then there will be an infinite number of files.
  * <p><b>folderPath</b> - путь к директории в которой будут генерироваться файлы.
  * Path to the directory where files will be generated.
+ * <p><b>preallocate</b> - {@code true} чтобы заранее выделять место под файл кусками по 1 МБ, но не больше maxFileSize.
+ * Запись в уже выделенное место не обновляет метаданные файловой системы. При ротации и закрытии файл обрезается до реального размера.
+ * Место выделяется записью нулей, поэтому объём записи на диск примерно удваивается. По умолчанию {@code false}.
+ * {@code true} to allocate space for the file in advance in chunks of 1 MB, but not beyond maxFileSize.
+ * Writing into already allocated space does not update the file system metadata. On rollover and close the file is truncated to its real size.
+ * The space is allocated by writing zeros, so the amount of disk writes roughly doubles. {@code false} by default.
+ * <p><b>compress</b> - {@code gzip} чтобы сразу писать сжатый поток, {@code none} без сжатия. По умолчанию {@code none}.
+ * Файл остаётся читаемым через {@code zcat} во время записи, maxFileSize считается по сжатым байтам и может быть немного превышен.
+ * Расширение файла лучше задать {@code .gz}. Не совместимо с preallocate.
+ * {@code gzip} to write a compressed stream directly, {@code none} without compression. {@code none} by default.
+ * The file stays readable with {@code zcat} while being written, maxFileSize is counted in compressed bytes and may be slightly exceeded.
+ * It is better to set the file extension to {@code .gz}. Not compatible with preallocate.
+ * <p><b>compressFlushSize</b> - через сколько байт строк сжатые данные выталкиваются в файл. По умолчанию 65536.
+ * After how many bytes of strings the compressed data is pushed to the file. 65536 by default.
+ * <p><b>compressFlushInterval</b> - через сколько миллисекунд сжатые данные выталкиваются в файл, даже если строк мало. 0 выключает. По умолчанию 1000.
+ * After how many milliseconds the compressed data is pushed to the file, even if there are few strings. 0 disables it. 1000 by default.
+ * <p>
+ * Запись идёт в очереди общего планировщика {@code IOScheduler}, отдельный поток на каждый Appender не создаётся.
+ * Очередь, директория и файл создаются только при первой строке, поэтому неиспользуемый Appender ничего не стоит при запуске.
+ * <p>
+ * Writing goes through a queue of the shared {@code IOScheduler}, no dedicated thread is created per Appender.
+ * The queue, the directory and the file are created only on the first string, so an unused Appender costs nothing at startup.
  *
  * @author VoidCyborg
  * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.appender.IOScheduler
  * @see ru.voidcyborg.logapi.logger.Logger
  * @see java.util.Map
  * @see java.lang.String
  */
 public final class RollingFileAppender implements Appender {
 
+    static final Duration RETRY_DELAY = Duration.ofMillis(20);
 
-    private static final String PID;
-
-    static {
-        String temp;
-        try {
-            temp = ProcessHandle.current().pid() + "-";
-        } catch (Exception e) {
-            temp = (Math.random() * (Integer.MAX_VALUE / 50)) + "-";
-        }
-        PID = temp;
-    }
-
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ReentrantLock settingsLock = new ReentrantLock();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong reported = new AtomicLong();
 
-    private volatile FileChannel channel;
-    private volatile FileLock lock;
+    private volatile IOScheduler.Lane lane;
+    private IOScheduler scheduler;
+    private volatile RollingFileWriter writer;
+    private long compressFlushInterval;
+    private boolean retryScheduled;
+    private volatile int deferred;
 
     private volatile boolean settingsParsed;
-    private volatile String name;
-    private volatile String type;
-    private volatile Path path;
-    private volatile int maxSize = 1024_000;
-    private volatile int maxFiles = -1;
-
-    private volatile int index = 0;
+    private volatile boolean destroyed;
 
 
     /**
@@ -99,22 +113,27 @@ public final class RollingFileAppender implements Appender {
      * @throws ru.voidcyborg.logapi.settings.SettingsInitException
      */
     @Override
-    public synchronized void parseSettings(Map<String, String> settings) throws SettingsInitException {
-        if (settings == null) throw new SettingsInitException("Settings of RollingFileAppender can't be null.");
-        if (settingsParsed)
-            throw new SettingsInitException("Settings of RollingFileAppender can't be parsed second time.");
-
+    public void parseSettings(Map<String, String> settings) throws SettingsInitException {
+        settingsLock.lock();
         try {
-            String[] nameType = separateNameAndType(settings.get("fileName"));
-            name = nameType[0];
-            type = nameType[1];
-            maxSize = parseSize(settings.get("maxFileSize"));
-            maxFiles = parseMaxFiles(settings.get("maxFiles"));
-            path = parsePath(settings.get("folderPath"));
-        } catch (Exception e) {
-            throw new SettingsInitException("Failed to parse settings of RollingFileAppender because of " + e);
+            if (settings == null) throw new SettingsInitException("Settings of RollingFileAppender can't be null.");
+            if (settingsParsed)
+                throw new SettingsInitException("Settings of RollingFileAppender can't be parsed second time.");
+
+            try {
+                String[] nameType = separateNameAndType(settings.get("fileName"));
+                writer = new RollingFileWriter(parsePath(settings.get("folderPath")), nameType[0], nameType[1],
+                        parseSize(settings.get("maxFileSize")), parseMaxFiles(settings.get("maxFiles")), parsePreallocate(settings.get("preallocate")),
+                        parseCompress(settings.get("compress")), (int) parseLong(settings.get("compressFlushSize"), 64 * 1024, 1, Integer.MAX_VALUE));
+                compressFlushInterval = parseLong(settings.get("compressFlushInterval"), 1000, 0, Long.MAX_VALUE);
+            } catch (Exception e) {
+                throw new SettingsInitException("Failed to parse settings of RollingFileAppender because of " + e);
+            }
+            scheduler = IOScheduler.getCurrent();
+            settingsParsed = true;
+        } finally {
+            settingsLock.unlock();
         }
-        settingsParsed = true;
     }
 
     /**
@@ -134,131 +153,187 @@ public final class RollingFileAppender implements Appender {
      * @return Возвращает true если строка была передана в запись в файл. Returns true if the string was passed to write to a file.
      */
     @Override
-    public synchronized boolean append(String text) {
+    public boolean append(String text) {
         if (text == null) return false;
         if (text.isEmpty()) return false;
         if (!settingsParsed) return false;
 
-        executor.execute(() -> {
-            ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
-
-            String fileName;
-            while (true) {
-                fileName = generateName();
-                buffer.rewind();
-
-                try {
-                    if (channel == null) this.createChannel(this.path.resolve(fileName));
-
-
-                    if (channel.size() + buffer.remaining() > maxSize || channel == null) {
-                        if (maxFiles > 0 && index + 1 >= maxFiles) index = 0;
-                        else index++;
+        IOScheduler.Lane lane = this.lane;
+        if (lane == null && (lane = start()) == null) return false;
 
-                        fileName = generateName();
-
-                        if (Files.exists(this.path.resolve(fileName))) Files.delete(this.path.resolve(fileName));
-
-                        this.closeChannel();
-                        continue;
-                    }
-
-                    if (!this.writeToChannel(buffer)) continue;
-
-                    return;
-                } catch (Exception e) {
-                    this.closeChannel();
-                    break;
-                }
-            }
-        });
-
-        return true;
+        pending.incrementAndGet();
+        if (lane.execute(() -> write(text))) return true;
+        pending.decrementAndGet();
+        return false;
     }
 
     /**
-     * Останавливает работу executor
+     * Ожидает, пока все уже переданные строки будут записаны в файл, но не дольше указанного времени.
+     * Строки, отложенные пока файл занят старым Appender'ом, тоже считаются не записанными,
+     * а строки, отброшенные с прошлого вызова, прибавляются к результату.
+     * <p>
+     * Waits until all strings already passed are written to the file, but no longer than the given time.
+     * Strings deferred while the file is held by an old Appender also count as not written,
+     * and strings dropped since the previous call are added to the result.
+     * <p>
+     *
+     * @param timeout Максимальное время ожидания. Maximum time to wait.
+     * @return Количество строк, которые не успели записаться или были отброшены. Number of strings not written in time or dropped.
      */
     @Override
-    public synchronized void destroy() {
-        try {
-            this.executor.shutdown();
-        } catch (Exception ignore) {
-        }
+    public long flush(Duration timeout) {
+        IOScheduler.Lane lane = this.lane;
+        if (lane == null) return pending.get();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        RollingFileWriter writer = this.writer;
+        if (writer.isCompressed()) lane.execute(writer::syncFlush);
+        if (writer.isCompressed() || pending.get() > 0) lane.await(timeout);
+        awaitDeferred(() -> deferred, deadline);
+        return pending.get() + deferred + takeUnreported(dropped, reported);
+    }
+
+    /**
+     * Возвращает количество строк, отброшенных из-за ошибки записи или потому, что файл слишком долго был занят старым Appender'ом.
+     * <p>
+     * Returns the number of strings dropped because of a write error or because the file was held by an old Appender for too long.
+     *
+     * @return Количество отброшенных строк. Number of dropped strings.
+     */
+    public long getDropped() {
+        return dropped.get();
     }
 
-    //Безопасно пишет в канал, если не удалось, возвращает false;
-    private boolean writeToChannel(ByteBuffer buffer) {
+    //Очередь в планировщике создаётся при первой строке, а файл и директория - при первой записи.
+    //Так создание Appender'а из настроек не запускает потоки и не трогает диск, пока логгирование не началось.
+    private IOScheduler.Lane start() {
+        settingsLock.lock();
         try {
-            if (channel != null) {
-                this.channel.position(this.channel.size());
-                this.channel.write(buffer);
-                return true;
+            if (lane == null && !destroyed) {
+                lane = (scheduler != null ? scheduler : IOScheduler.getDefault()).newLane();
+                if (writer.isCompressed() && compressFlushInterval > 0) lane.executeLater(this::syncFlush, Duration.ofMillis(compressFlushInterval));
             }
-        } catch (Exception ignore) {
-            this.closeChannel();
+            return lane;
+        } finally {
+            settingsLock.unlock();
         }
-        return false;
     }
 
-    //Создаёт канал с замком, чтобы файл был доступен только данному классу.
-    private void createChannel(Path path) {
+    //Строка кодируется сразу в прямой буфер из общего пула, канал пишет его без копирования в свой буфер.
+    //Выполняется только в очереди планировщика.
+    private void write(String text) {
+        BufferPool pool = BufferPool.getDefault();
+        ByteBuffer buffer = null;
         try {
-            if (!Files.exists(path)) {
-                Files.createDirectories(this.path);
-                Files.createFile(path);
-            }
-            RandomAccessFile temp = new RandomAccessFile(path.toString(), "rw");
-            this.channel = temp.getChannel();
-            this.lock = this.channel.lock();
-
-            return;
-        } catch (Exception e) {
-            try {
-                if (this.channel != null) channel.close();
-            } catch (Exception ignore) {
-            }
+            buffer = pool.encode(text);
+            writer.write(buffer);
+            dropped.addAndGet(writer.takeDropped());
+            deferred = writer.getBacklog();
+            if (deferred > 0) scheduleRetry();
+        } finally {
+            pool.release(buffer);
+            pending.decrementAndGet();
         }
-        this.channel = null;
-        this.lock = null;
     }
 
-    //Безопасно закрывает канал и замок.
-    private void closeChannel() {
-        try {
-            if (lock != null) lock.release();
-        } catch (Exception ignore) {
+    //Файл ещё занят старым Appender'ом после перезагрузки настроек, отложенные строки пишутся повторно, пока он не освободится.
+    //Выполняется только в очереди планировщика.
+    private void scheduleRetry() {
+        IOScheduler.Lane lane = this.lane;
+        if (retryScheduled || destroyed || lane == null) return;
+        retryScheduled = lane.executeLater(() -> {
+            retryScheduled = false;
+            boolean done = writer.retry();
+            dropped.addAndGet(writer.takeDropped());
+            deferred = writer.getBacklog();
+            if (!done) scheduleRetry();
+        }, RETRY_DELAY);
+    }
+
+    //Отложенные строки пишутся повторными задачами, поэтому их ожидание - опрос с шагом повтора до дедлайна.
+    static void awaitDeferred(IntSupplier deferred, long deadline) {
+        long left;
+        while (deferred.getAsInt() > 0 && (left = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(Math.min(left, RETRY_DELAY.toNanos()));
         }
+    }
+
+    //Отброшенные строки попадают в результат flush() один раз, даже если flush() вызывается повторно.
+    static long takeUnreported(AtomicLong dropped, AtomicLong reported) {
+        long total = dropped.get();
+        return total - reported.getAndSet(total);
+    }
+
+    //Периодически выталкивает сжатые данные в файл, чтобы редкие строки не зависали в Deflater'е. Выполняется только в очереди планировщика.
+    private void syncFlush() {
+        writer.syncFlush();
+        IOScheduler.Lane lane = this.lane;
+        if (!destroyed && lane != null) lane.executeLater(this::syncFlush, Duration.ofMillis(compressFlushInterval));
+    }
+
+    /**
+     * Закрывает очередь для новых строк. Уже поставленные строки будут записаны, после чего файл будет закрыт.
+     * <p>
+     * Closes the queue for new strings. Strings already queued will be written, after which the file will be closed.
+     */
+    @Override
+    public void destroy() {
+        settingsLock.lock();
         try {
-            if (channel != null) channel.close();
+            destroyed = true;
+            IOScheduler.Lane lane = this.lane;
+            if (lane == null) return;
+            RollingFileWriter writer = this.writer;
+            lane.execute(() -> {
+                writer.retry();
+                dropped.addAndGet(writer.takeDropped());
+                deferred = writer.getBacklog();
+                writer.close();
+            });
+            lane.close();
         } catch (Exception ignore) {
+        } finally {
+            settingsLock.unlock();
         }
-        lock = null;
-        channel = null;
     }
 
-    //Генерирует имя файла основываять на ид программы, имени файла, индексе и типе.
-    private String generateName() {
-        return PID + name + "-" + index + type;
-    }
-
-    //Парсит путь к директории в которую будут сохраняться файлы логов.
-    private Path parsePath(String s) throws IOException {
+    //Парсит путь к директории в которую будут сохраняться файлы логов. Сама директория создаётся при первой записи.
+    static Path parsePath(String s) throws IOException {
         Path path = Path.of(s);
 
-        Files.createDirectories(path);
-        if (!Files.isDirectory(path)) throw new NullPointerException();
+        if (Files.exists(path) && !Files.isDirectory(path)) throw new IOException("Not a directory: " + path);
 
         return path;
     }
 
+    //Парсит включение предвыделения места под файл, если настройки нет, то предвыделение выключено.
+    static boolean parsePreallocate(String s) {
+        if (s == null || s.isBlank() || s.trim().equalsIgnoreCase("false")) return false;
+        if (s.trim().equalsIgnoreCase("true")) return true;
+        throw new IllegalArgumentException("preallocate must be true or false: " + s);
+    }
+
+    //Парсит режим сжатия, если настройки нет, то сжатия нет.
+    static boolean parseCompress(String s) {
+        if (s == null || s.isBlank() || s.trim().equalsIgnoreCase("none")) return false;
+        if (s.trim().equalsIgnoreCase("gzip")) return true;
+        throw new IllegalArgumentException("compress must be gzip or none: " + s);
+    }
+
+    //Парсит число в заданных пределах, если настройки нет, то возвращает значение по умолчанию.
+    static long parseLong(String s, long defaultValue, long min, long max) {
+        if (s == null || s.isBlank()) return defaultValue;
+        long value = Long.parseLong(s.trim());
+        if (value < min || value > max) throw new IllegalArgumentException("Value out of range [" + min + ", " + max + "]: " + s);
+        return value;
+    }
+
     //Парсит максимальное кол-во файлов, если будет <= 0 то будет разрешено бесконечное кол-во файлов.
-    private int parseMaxFiles(String s) {
+    static int parseMaxFiles(String s) {
         return Integer.parseInt(s);
     }
 
     //Парсит максимальный размер файла, если меньше 1024 то вернёт 1024 байта.
-    private int parseSize(String s) {
+    static int parseSize(String s) {
         int size = Integer.parseInt(s);
         if (size < 1024) size = 1024;
 
@@ -266,7 +341,7 @@ public final class RollingFileAppender implements Appender {
     }
 
     //Выковыривает какое имя будет у файла, и какое у него будет расширение. Пример: log.txt -> 18104-log-0.txt -> pid-name-index.type
-    private String[] separateNameAndType(String fileName) {
+    static String[] separateNameAndType(String fileName) {
         if (fileName == null || fileName.isBlank()) throw new NullPointerException("File name is null or blank.");
 
         String[] result = new String[2];
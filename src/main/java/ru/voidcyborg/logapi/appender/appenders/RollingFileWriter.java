@@ -0,0 +1,559 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.ByteOrder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Класс {@code RollingFileWriter} пишет байты в ротирующиеся файлы одной серии: {@code pid-name-index.type}.
+ * Когда файл заполнен, запись переходит к следующему индексу, а после {@code maxFiles} файлов снова к первому.
+ * Класс не потокобезопасный, все методы должны вызываться из одной очереди планировщика.
+ * <p>
+ * The {@code RollingFileWriter} class writes bytes into rotating files of one series: {@code pid-name-index.type}.
+ * When a file is full, writing moves to the next index, and after {@code maxFiles} files back to the first one.
+ * The class is not thread safe, all methods must be called from one scheduler queue.
+ * <p>
+ * Канал открывается при первой записи и может быть закрыт в любой момент через {@code close()},
+ * следующая запись откроет его снова и продолжит тот же файл.
+ * <p>
+ * The channel is opened on the first write and can be closed at any moment with {@code close()},
+ * the next write opens it again and continues the same file.
+ * <p>
+ * С включённым предвыделением файл заранее расширяется нулями кусками по {@code PREALLOCATE_CHUNK}, но не больше {@code maxSize},
+ * поэтому обычная запись не меняет размер файла и не обновляет метаданные файловой системы. Конец данных хранится в памяти,
+ * а при закрытии файл обрезается до него. Если процесс упал и файл не обрезан, то при открытии конец данных находится по хвосту из нулей.
+ * Так как в имени файла есть PID, файлы упавшего процесса больше никто не открывает, поэтому при первом открытии писатель обрезает
+ * хвосты из нулей у всех незаблокированных файлов своей серии с любым PID.
+ * Нули реально пишутся на диск, поэтому предвыделение примерно удваивает объём записи. Оно окупается только там,
+ * где обновление метаданных при каждом расширении файла дороже лишней записи, например на сетевых и журналируемых файловых системах.
+ * <p>
+ * With preallocation enabled the file is extended with zeros in advance in chunks of {@code PREALLOCATE_CHUNK}, but not beyond {@code maxSize},
+ * so a regular write does not change the file size and does not update the file system metadata. The end of data is kept in memory,
+ * and on close the file is truncated to it. If the process crashed and the file was not truncated, the end of data is found on open by the trailing zeros.
+ * Since the file name contains the PID, nobody opens the files of a crashed process again, so on the first open the writer truncates
+ * the trailing zeros of all unlocked files of its series with any PID.
+ * The zeros are really written to disk, so preallocation roughly doubles the amount of writes. It only pays off
+ * where a metadata update on every file extension costs more than the extra writes, for example on network and journaling file systems.
+ * <p>
+ * Со сжатием файл пишется в формате gzip одним постоянным {@code Deflater}'ом. Через каждые {@code flushSize} байт строк
+ * и по {@code syncFlush()} выполняется SYNC_FLUSH, после него всё записанное можно прочитать через {@code zcat} или {@code zless}, не дожидаясь закрытия.
+ * Размер файла для ротации считается по сжатым байтам. При закрытии gzip-поток завершается, а следующее открытие того же файла
+ * дописывает новый gzip-поток, что тоже допустимо форматом. Файл, который не был закрыт этим процессом, не дописывается, запись переходит к следующему индексу.
+ * <p>
+ * With compression the file is written in the gzip format by one persistent {@code Deflater}. After every {@code flushSize} bytes of strings
+ * and on {@code syncFlush()} a SYNC_FLUSH is done, after it everything written can be read with {@code zcat} or {@code zless} without waiting for the close.
+ * The file size for rollover is counted in compressed bytes. On close the gzip stream is finished, and the next open of the same file
+ * appends a new gzip stream, which the format allows as well. A file that was not closed by this process is not appended to, writing moves to the next index.
+ * <p>
+ * Если файл ещё заблокирован другим писателем этой же JVM, например старым Appender'ом во время перезагрузки настроек,
+ * то строки откладываются в память и пишутся через {@code retry()}, когда старый писатель закроет файл.
+ * Отложенные строки ограничены {@code MAX_BACKLOG} байтами и {@code BACKLOG_TIMEOUT}, после этого они отбрасываются.
+ * Освободившийся файл получает самый старый из ждущих писателей.
+ * <p>
+ * If the file is still locked by another writer of the same JVM, for example by the old Appender during a settings reload,
+ * the strings are kept in memory and written with {@code retry()} once the old writer closes the file.
+ * The kept strings are bounded by {@code MAX_BACKLOG} bytes and {@code BACKLOG_TIMEOUT}, after that they are dropped.
+ * A released file goes to the oldest of the waiting writers.
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.appenders.RollingFileAppender
+ * @see ru.voidcyborg.logapi.appender.appenders.RoutingAppender
+ */
+final class RollingFileWriter {
+
+    //Идентификатор процесса, его же использует SyslogAppender в заголовке сообщений.
+    static final String PID;
+
+    //Размер куска предвыделения и блок нулей, которым файл расширяется.
+    static final int PREALLOCATE_CHUNK = 1 << 20;
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(64 * 1024).asReadOnlyBuffer();
+    //Заголовок gzip без имени файла и времени: сигнатура, метод deflate, флаги, время, доп. флаги, ОС unknown.
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] NO_INPUT = new byte[0];
+    static final int MAX_BACKLOG = 8 << 20;
+    static final long BACKLOG_TIMEOUT = 30_000;
+    //Самый старый писатель этой JVM, который ждёт освобождения файла. Более новые писатели не занимают файл раньше него.
+    private static final ConcurrentHashMap<Path, Long> CLAIMS = new ConcurrentHashMap<>();
+    private static final AtomicLong SERIALS = new AtomicLong();
+
+    static {
+        String temp;
+        try {
+            temp = String.valueOf(ProcessHandle.current().pid());
+        } catch (Exception e) {
+            temp = String.valueOf(Math.random() * (Integer.MAX_VALUE / 50));
+        }
+        PID = temp;
+    }
+
+    private final Path path;
+    private final String name;
+    private final String type;
+    private final int maxSize;
+    private final int maxFiles;
+    private final boolean preallocate;
+    private final int flushSize;
+    private final Deflater deflater;
+    private final CRC32 crc;
+    private final ByteBuffer compressed;
+    private final long serial = SERIALS.incrementAndGet();
+
+    private FileChannel channel;
+    private Path file;
+    private FileLock lock;
+    private int index = 0;
+    private boolean indexed;
+    private boolean cleaned;
+    private boolean fresh;
+    private long end;
+    private long allocated;
+    private long lastWrite;
+    private boolean member;
+    private long memberSize;
+    private long unflushed;
+    private Path finishedFile;
+    private long finishedEnd;
+    private final ArrayDeque<ByteBuffer> backlog = new ArrayDeque<>();
+    private long backlogBytes;
+    private long dropped;
+    private long busySince;
+    private boolean busy;
+    private Path claimed;
+
+
+    RollingFileWriter(Path path, String name, String type, int maxSize, int maxFiles) {
+        this(path, name, type, maxSize, maxFiles, false);
+    }
+
+    RollingFileWriter(Path path, String name, String type, int maxSize, int maxFiles, boolean preallocate) {
+        this(path, name, type, maxSize, maxFiles, preallocate, false, 0);
+    }
+
+    //gzip включает сжатие, flushSize - сколько байт строк сжимается между SYNC_FLUSH. Сжатие и предвыделение вместе не используются.
+    RollingFileWriter(Path path, String name, String type, int maxSize, int maxFiles, boolean preallocate, boolean gzip, int flushSize) {
+        if (gzip && preallocate) throw new IllegalArgumentException("Compression can't be used with preallocation.");
+        this.deflater = gzip ? new Deflater(Deflater.BEST_SPEED, true) : null;
+        this.crc = gzip ? new CRC32() : null;
+        this.compressed = gzip ? ByteBuffer.allocate(64 * 1024) : null;
+        this.flushSize = Math.max(flushSize, 1);
+        this.preallocate = preallocate;
+        this.path = path;
+        this.name = name;
+        this.type = type;
+        this.maxSize = maxSize;
+        this.maxFiles = maxFiles;
+    }
+
+    //Записывает байты от position до limit в текущий файл, при переполнении переходит к следующему.
+    //Если файл занят другим писателем этой JVM, то строка откладывается. Возвращает false если записать не удалось,
+    //такая строка учитывается в takeDropped().
+    boolean write(ByteBuffer buffer) {
+        if (!backlog.isEmpty() && !retry()) return defer(buffer);
+        busy = false;
+        if (writeNow(buffer)) return true;
+        if (busy) return defer(buffer);
+        dropped++;
+        return false;
+    }
+
+    //Пишет отложенные строки по порядку. Возвращает true если отложенных строк не осталось.
+    //Строка, которую не удалось записать по другой причине, отбрасывается, как и при обычной записи.
+    //Отброшенные строки, в том числе все отложенные после BACKLOG_TIMEOUT, учитываются в takeDropped().
+    boolean retry() {
+        while (!backlog.isEmpty()) {
+            ByteBuffer first = backlog.peekFirst();
+            int length = first.remaining();
+            busy = false;
+            if (!writeNow(first)) {
+                if (busy) {
+                    first.position(first.limit() - length);
+                    if (System.currentTimeMillis() - busySince <= BACKLOG_TIMEOUT) return false;
+                    dropped += backlog.size();
+                    backlog.clear();
+                    backlogBytes = 0;
+                    unclaim();
+                    return true;
+                }
+                dropped++;
+            }
+            backlog.pollFirst();
+            backlogBytes -= length;
+        }
+        return true;
+    }
+
+    //Есть ли строки, которые ждут освобождения файла.
+    boolean hasBacklog() {
+        return !backlog.isEmpty();
+    }
+
+    //Сколько строк ждут освобождения файла.
+    int getBacklog() {
+        return backlog.size();
+    }
+
+    //Возвращает количество строк, отброшенных с прошлого вызова, и сбрасывает его.
+    long takeDropped() {
+        long count = dropped;
+        dropped = 0;
+        return count;
+    }
+
+    //Копирует строку в очередь отложенных, буфер строки вернётся в пул. Строка сверх MAX_BACKLOG отбрасывается.
+    private boolean defer(ByteBuffer buffer) {
+        if (backlog.isEmpty()) busySince = System.currentTimeMillis();
+        if (backlogBytes + buffer.remaining() > MAX_BACKLOG) {
+            dropped++;
+            return false;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate()).flip();
+        backlog.addLast(copy);
+        backlogBytes += copy.remaining();
+        return true;
+    }
+
+    private boolean writeNow(ByteBuffer buffer) {
+        if (!indexed) findIndex();
+        if (preallocate && !cleaned) truncateLeftovers();
+        lastWrite = System.currentTimeMillis();
+        int start = buffer.position();
+        String fileName;
+        while (true) {
+            fileName = generateName();
+            buffer.position(start);
+
+            try {
+                if (channel == null || fresh) this.createChannel(this.path.resolve(fileName));
+                if (channel == null) return false;
+
+                //Строка длиннее maxSize пишется в пустой файл целиком, иначе переход к следующему файлу повторялся бы бесконечно.
+                //Сжатый размер строки заранее не известен, поэтому сжатый файл переполнен, когда на диске уже maxSize байт.
+                if (end > 0 && (deflater == null ? end + buffer.remaining() > maxSize : end >= maxSize || !member && !resumable())) {
+                    if (maxFiles > 0 && index + 1 >= maxFiles) index = 0;
+                    else index++;
+
+                    //Текущий файл закрывается только после замка на следующий, а старый файл с этим индексом обрезается под замком.
+                    //Иначе другой писатель этой JVM, например новый Appender после перезагрузки, мог бы занять следующий файл между ними.
+                    fresh = true;
+                    continue;
+                }
+
+                if (deflater != null) return this.compress(buffer);
+                if (!this.writeToChannel(buffer)) continue;
+
+                return true;
+            } catch (Exception e) {
+                this.close();
+                return false;
+            }
+        }
+    }
+
+    boolean isOpen() {
+        return channel != null;
+    }
+
+    //Время последней записи в миллисекундах.
+    long getLastWrite() {
+        return lastWrite;
+    }
+
+    boolean isCompressed() {
+        return deflater != null;
+    }
+
+    //Выталкивает из Deflater'а всё сжатое с выравниванием по байту, чтобы записанное можно было распаковать.
+    //Без сжатия или если с прошлого раза ничего не записано ничего не делает.
+    void syncFlush() {
+        if (!member || unflushed == 0) return;
+        try {
+            deflate(Deflater.SYNC_FLUSH);
+            unflushed = 0;
+        } catch (Exception e) {
+            member = false;
+            finishedFile = null;
+            this.close();
+        }
+    }
+
+    //Безопасно закрывает канал и замок. Предвыделенный хвост файла обрезается, gzip-поток завершается.
+    void close() {
+        finishMember();
+        try {
+            if (channel != null && allocated > end) channel.truncate(end);
+        } catch (Exception ignore) {
+        }
+        try {
+            if (lock != null) lock.release();
+        } catch (Exception ignore) {
+        }
+        try {
+            if (channel != null) channel.close();
+        } catch (Exception ignore) {
+        }
+        lock = null;
+        channel = null;
+        end = 0;
+        allocated = 0;
+        unclaim();
+    }
+
+    //Сжимает строку в текущий gzip-поток, начиная его при необходимости. Если не удалось, закрывает файл и возвращает false.
+    //Буфер строки вернётся в пул, поэтому Deflater не должен держать ссылку на него после выхода из метода.
+    private boolean compress(ByteBuffer buffer) {
+        try {
+            if (!member) {
+                deflater.reset();
+                crc.reset();
+                memberSize = 0;
+                unflushed = 0;
+                member = true;
+                writeFully(ByteBuffer.wrap(GZIP_HEADER));
+            }
+            int length = buffer.remaining();
+            crc.update(buffer.duplicate());
+            deflater.setInput(buffer);
+            while (!deflater.needsInput()) deflate(Deflater.NO_FLUSH);
+            deflater.setInput(NO_INPUT);
+            memberSize += length;
+            unflushed += length;
+            if (unflushed >= flushSize) syncFlush();
+            return channel != null;
+        } catch (Exception ignore) {
+            deflater.setInput(NO_INPUT);
+            member = false;
+            this.close();
+            return false;
+        }
+    }
+
+    //Вызывает deflate, пока выходной буфер заполняется целиком, и пишет результат в канал.
+    private void deflate(int flush) throws IOException {
+        int written;
+        do {
+            compressed.clear();
+            written = deflater.deflate(compressed, flush);
+            compressed.flip();
+            writeFully(compressed);
+        } while (written == compressed.capacity());
+    }
+
+    //Завершает gzip-поток хвостом с CRC32 и размером. Файл с завершённым потоком можно будет продолжить новым потоком.
+    private void finishMember() {
+        if (!member) return;
+        member = false;
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed.clear();
+                deflater.deflate(compressed);
+                compressed.flip();
+                writeFully(compressed);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue()).putInt((int) memberSize).flip();
+            writeFully(trailer);
+            finishedFile = file;
+            finishedEnd = end;
+        } catch (Exception ignore) {
+            finishedFile = null;
+        }
+    }
+
+    //Сжатый файл можно продолжить, только если он пуст или его последний gzip-поток завершил этот же процесс.
+    private boolean resumable() {
+        return end == 0 || end == finishedEnd && file.equals(finishedFile);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            end += this.channel.write(buffer, end);
+        }
+    }
+
+    //Безопасно пишет в канал, если не удалось, возвращает false;
+    private boolean writeToChannel(ByteBuffer buffer) {
+        try {
+            if (channel != null) {
+                if (preallocate) allocate(end + buffer.remaining());
+                while (buffer.hasRemaining()) {
+                    end += this.channel.write(buffer, end);
+                }
+                return true;
+            }
+        } catch (Exception ignore) {
+            this.close();
+        }
+        return false;
+    }
+
+    //Создаёт канал с замком, чтобы файл был доступен только данному классу.
+    //При ротации предыдущий файл ещё открыт, он закрывается только после того, как получен замок на новый.
+    //Если файл ждёт более старый писатель, то файл считается занятым: иначе новый Appender после перезагрузки
+    //занимал бы файл раньше предыдущего, и отложенные строки предыдущего ждали бы до таймаута.
+    private void createChannel(Path path) {
+        FileChannel channel = null;
+        try {
+            if (path.equals(this.file)) this.close();
+            Long first = CLAIMS.get(path);
+            if (first != null && first < serial) throw new OverlappingFileLockException();
+            if (!Files.exists(path)) {
+                Files.createDirectories(this.path);
+                Files.createFile(path);
+            }
+            channel = new RandomAccessFile(path.toString(), "rw").getChannel();
+            FileLock lock = channel.lock();
+            this.close();
+            if (fresh) channel.truncate(0);
+            fresh = false;
+            this.channel = channel;
+            this.file = path;
+            this.lock = lock;
+            this.allocated = channel.size();
+            this.end = preallocate ? findEnd(channel, this.allocated) : this.allocated;
+            return;
+        } catch (Exception e) {
+            //Замок держит другой канал этой же JVM, строки можно отложить до его закрытия.
+            //Пока файл занят, старый писатель может перейти к следующему файлу, поэтому индекс ищется заново.
+            busy = e instanceof OverlappingFileLockException;
+            if (busy) indexed = false;
+            try {
+                if (channel != null && channel != this.channel) channel.close();
+            } catch (Exception ignore) {
+            }
+        }
+        this.close();
+        if (busy) claim(path);
+    }
+
+    //Встаёт в очередь на файл. Из нескольких ждущих писателей в CLAIMS остаётся самый старый.
+    private void claim(Path path) {
+        claimed = path;
+        CLAIMS.merge(path, serial, Math::min);
+    }
+
+    private void unclaim() {
+        if (claimed == null) return;
+        CLAIMS.remove(claimed, serial);
+        claimed = null;
+    }
+
+    //Расширяет файл нулями кусками, чтобы следующие записи шли в уже выделенное место.
+    private void allocate(long required) throws IOException {
+        if (required <= allocated) return;
+        long target = Math.max(Math.min(allocated + PREALLOCATE_CHUNK, maxSize), required);
+        while (allocated < target) {
+            ByteBuffer zeros = ZEROS.duplicate();
+            if (zeros.remaining() > target - allocated) zeros.limit((int) (target - allocated));
+            allocated += channel.write(zeros, allocated);
+        }
+    }
+
+    //Ищет конец данных, проходя файл с конца блоками, пока не встретится не нулевой байт.
+    //В строках логов нулевых байтов нет, поэтому всё после последнего не нулевого байта - это предвыделенное место.
+    static long findEnd(FileChannel channel, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(ZEROS.capacity());
+        long position = size;
+        while (position > 0) {
+            int length = (int) Math.min(block.capacity(), position);
+            block.clear().limit(length);
+            long start = position - length;
+            while (block.hasRemaining()) {
+                if (channel.read(block, start + block.position()) < 0) break;
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) != 0) return start + i + 1;
+            }
+            position = start;
+        }
+        return 0;
+    }
+
+    //Новый писатель продолжает с последнего изменённого файла своей серии, например после перезагрузки настроек.
+    //Иначе он начал бы с первого файла и при ротации удалил бы следующий, в который только что писал старый писатель.
+    private void findIndex() {
+        indexed = true;
+        fresh = false;
+        String prefix = PID + "-" + name + "-";
+        long newest = Long.MIN_VALUE;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.path)) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                if (!fileName.startsWith(prefix) || !fileName.endsWith(type)) continue;
+                int found;
+                try {
+                    found = Integer.parseInt(fileName.substring(prefix.length(), fileName.length() - type.length()));
+                } catch (Exception e) {
+                    continue;
+                }
+                if (found < 0 || maxFiles > 0 && found >= maxFiles) continue;
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (modified > newest || modified == newest && found > index) {
+                    newest = modified;
+                    index = found;
+                }
+            }
+        } catch (Exception ignore) {
+        }
+    }
+
+    //Обрезает предвыделенные хвосты файлов серии, которые остались после падения процессов, в том числе с другим PID.
+    //Файлы, заблокированные живым процессом или другим писателем этой JVM, пропускаются.
+    private void truncateLeftovers() {
+        cleaned = true;
+        String infix = "-" + name + "-";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.path)) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                int dash = fileName.indexOf('-');
+                if (dash <= 0 || !fileName.endsWith(type) || !fileName.startsWith(infix, dash)) continue;
+                if (!isNumber(fileName.substring(0, dash)) && !fileName.startsWith(PID + infix)) continue;
+                if (!isNumber(fileName.substring(dash + infix.length(), fileName.length() - type.length()))) continue;
+                truncateLeftover(file);
+            }
+        } catch (Exception ignore) {
+        }
+    }
+
+    private static void truncateLeftover(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) return;
+            try {
+                long size = channel.size();
+                long end = findEnd(channel, size);
+                if (end < size) channel.truncate(end);
+            } finally {
+                lock.release();
+            }
+        } catch (Exception ignore) {
+        }
+    }
+
+    private static boolean isNumber(String s) {
+        if (s.isEmpty()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+        }
+        return true;
+    }
+
+    //Генерирует имя файла основываять на ид программы, имени файла, индексе и типе.
+    private String generateName() {
+        return PID + "-" + name + "-" + index + type;
+    }
+}
@@ -0,0 +1,399 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.BufferPool;
+import ru.voidcyborg.logapi.appender.IOScheduler;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Класс {@code RoutingAppender} раскладывает события по отдельным ротирующимся файлам в зависимости от имени группы,
+ * уровня, метки или ключа контекста потока события. Файл для нового значения создаётся при первом событии, поэтому не нужно объявлять Appender на каждый файл.
+ * <p>
+ * The {@code RoutingAppender} class splits events into separate rotating files depending on the group name,
+ * the level, the marker or a thread context key of the event. The file for a new value is created on the first event, so there is no need to declare an Appender per file.
+ * <p>
+ * Открытые файлы хранятся в LRU ограниченного размера: при превышении {@code maxOpenFiles} закрывается файл, в который дольше всего не писали,
+ * а файлы, в которые не писали дольше {@code idleTimeout}, закрываются сами. Закрытый файл открывается снова при следующей записи.
+ * Все файлы пишутся в одной очереди общего планировщика {@code IOScheduler}.
+ * <p>
+ * Open files are kept in a bounded LRU: when {@code maxOpenFiles} is exceeded, the file least recently written to is closed,
+ * and files not written to for longer than {@code idleTimeout} are closed on their own. A closed file is opened again on the next write.
+ * All files are written in one queue of the shared {@code IOScheduler}.
+ * <p>
+ * Данный класс поддерживает несколько настроек:
+ * <p><b>routeBy</b> - признак события, по которому выбирается файл: {@code group}, {@code level}, {@code marker} или {@code context}. По умолчанию {@code group}.
+ * The event attribute by which the file is chosen: {@code group}, {@code level}, {@code marker} or {@code context}. {@code group} by default.
+ * <p><b>routeKey</b> - ключ контекста потока для {@code routeBy=context} (пример: tenant).
+ * The thread context key for {@code routeBy=context} (example: tenant).
+ * <p><b>fileName</b> - шаблон имени файла, {@code {route}} заменяется на значение признака (пример: log-{route}.txt).
+ * Если шаблона нет, то значение добавляется в конец имени. События без признака пишутся в маршрут {@code default}.
+ * File name template, {@code {route}} is replaced with the attribute value (example: log-{route}.txt).
+ * If there is no placeholder, the value is appended to the name. Events without the attribute are written to the {@code default} route.
+ * <p>
+ * В имени файла всё кроме букв, цифр, точки, дефиса и подчёркивания заменяется на подчёркивание. Если значение пришлось изменить,
+ * или оно совпадает с {@code default} или {@code overflow}, то к нему добавляется хеш значения, чтобы разные маршруты не попали в один файл.
+ * Everything except letters, digits, dot, hyphen and underscore is replaced with an underscore in the file name. If the value had to be changed,
+ * or it is equal to {@code default} or {@code overflow}, the hash of the value is appended, so that different routes do not end up in one file.
+ * <p><b>maxFileSize</b>, <b>maxFiles</b>, <b>folderPath</b>, <b>preallocate</b> - как у {@code RollingFileAppender}, для каждого маршрута отдельно.
+ * As for {@code RollingFileAppender}, for every route separately.
+ * <p><b>maxOpenFiles</b> - максимальное количество одновременно открытых файлов, по умолчанию 64.
+ * Maximum number of files open at the same time, 64 by default.
+ * <p><b>idleTimeout</b> - через сколько миллисекунд без записи файл закрывается, по умолчанию 60000. 0 или меньше выключает.
+ * After how many milliseconds without writes a file is closed, 60000 by default. 0 or less disables it.
+ * <p><b>maxRoutes</b> - максимальное количество маршрутов, события новых маршрутов сверх лимита пишутся в маршрут {@code overflow}. По умолчанию 1024.
+ * Maximum number of routes, events of new routes over the limit are written to the {@code overflow} route. 1024 by default.
+ * <p>
+ * Пример настроек:
+ * <p>
+ * Settings example:
+ * <blockquote><pre>
+ *     appender1=ru.voidcyborg.logapi.appender.appenders.RoutingAppender
+ *     appender1.routeBy=group
+ *     appender1.fileName=log-{route}.txt
+ *     appender1.maxFileSize=10485760
+ *     appender1.maxFiles=5
+ *     appender1.folderPath=logs
+ *     appender1.maxOpenFiles=32
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.appender.LogEvent
+ * @see ru.voidcyborg.logapi.appender.appenders.RollingFileAppender
+ */
+public final class RoutingAppender implements Appender {
+
+    private static final String DEFAULT_ROUTE = "default";
+    private static final String OVERFLOW_ROUTE = "overflow";
+
+    private final ReentrantLock settingsLock = new ReentrantLock();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong reported = new AtomicLong();
+
+    //Карты используются только в очереди планировщика. Маршрут null - события без признака.
+    //routes - суффикс имени файла для каждого маршрута, writers и open - файлы по суффиксу имени.
+    private final Map<String, String> routes = new HashMap<>();
+    private final Map<String, RollingFileWriter> writers = new HashMap<>();
+    private final Set<RollingFileWriter> waiting = new LinkedHashSet<>();
+    private final LinkedHashMap<String, RollingFileWriter> open = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RollingFileWriter> eldest) {
+            if (size() <= maxOpenFiles) return false;
+            eldest.getValue().close();
+            return true;
+        }
+    };
+
+    private volatile IOScheduler.Lane lane;
+    private IOScheduler scheduler;
+    private volatile int openFiles;
+
+    private String routeBy;
+    private String routeKey;
+    private Path path;
+    private String name;
+    private String type;
+    private int maxSize;
+    private int maxFiles;
+    private boolean preallocate;
+    private int maxOpenFiles;
+    private long idleTimeout;
+    private int maxRoutes;
+
+    private volatile boolean settingsParsed;
+    private volatile boolean destroyed;
+    private boolean retryScheduled;
+    private volatile int deferred;
+
+
+    /**
+     * Данный метод предназначен инициализации настроек для данного Appender'а.
+     * Метод блокирующий, если настройки инициализированы и метод вызван повторно будет выбрашена ошибка.
+     * <p>
+     * This method is intended to initialize the settings for this Appender.
+     * The method is blocking, if the settings are initialized and the method is called again, an error will be thrown.
+     * <p>
+     *
+     * @param settings Настройки в виде мапы. Map settings.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    @Override
+    public void parseSettings(Map<String, String> settings) throws SettingsInitException {
+        settingsLock.lock();
+        try {
+            if (settings == null) throw new SettingsInitException("Settings of RoutingAppender can't be null.");
+            if (settingsParsed)
+                throw new SettingsInitException("Settings of RoutingAppender can't be parsed second time.");
+
+            try {
+                String routeBy = settings.getOrDefault("routeBy", "group").trim().toLowerCase();
+                if (!routeBy.equals("group") && !routeBy.equals("level") && !routeBy.equals("marker") && !routeBy.equals("context"))
+                    throw new IllegalArgumentException("Unknown routeBy: " + routeBy);
+                this.routeBy = routeBy;
+                String routeKey = settings.get("routeKey");
+                this.routeKey = routeKey == null ? null : routeKey.trim();
+                if (routeBy.equals("context") && (this.routeKey == null || this.routeKey.isEmpty()))
+                    throw new IllegalArgumentException("routeKey is required for routeBy=context");
+
+                String[] nameType = RollingFileAppender.separateNameAndType(settings.get("fileName"));
+                this.name = nameType[0].contains("{route}") ? nameType[0] : nameType[0] + "-{route}";
+                this.type = nameType[1];
+                this.path = RollingFileAppender.parsePath(settings.get("folderPath"));
+                this.maxSize = RollingFileAppender.parseSize(settings.get("maxFileSize"));
+                this.maxFiles = RollingFileAppender.parseMaxFiles(settings.get("maxFiles"));
+                this.preallocate = RollingFileAppender.parsePreallocate(settings.get("preallocate"));
+                this.maxOpenFiles = Math.max(Integer.parseInt(settings.getOrDefault("maxOpenFiles", "64").trim()), 1);
+                this.idleTimeout = Long.parseLong(settings.getOrDefault("idleTimeout", "60000").trim());
+                this.maxRoutes = Math.max(Integer.parseInt(settings.getOrDefault("maxRoutes", "1024").trim()), 1);
+            } catch (Exception e) {
+                throw new SettingsInitException("Failed to parse settings of RoutingAppender because of " + e);
+            }
+            scheduler = IOScheduler.getCurrent();
+            settingsParsed = true;
+        } finally {
+            settingsLock.unlock();
+        }
+    }
+
+    /**
+     * Записывает строку в маршрут {@code default}.
+     * <p>
+     * Appends the string to the {@code default} route.
+     *
+     * @param text Строка которую необходимо записать. The string to be appended.
+     * @return Возвращает true если строка была передана в запись в файл. Returns true if the string was passed to write to a file.
+     */
+    @Override
+    public boolean append(String text) {
+        return append(null, text);
+    }
+
+    /**
+     * Записывает событие в файл маршрута, выбранного по признаку события.
+     * Метод не блокирующий, то что он вернул true или false не значит что строка уже записана в файл.
+     * <p>
+     * Appends the event to the file of the route chosen by the attribute of the event.
+     * The method is not blocking, the fact that it returned true or false does not mean that the line has already been written to the file.
+     *
+     * @param event Событие которое необходимо записать. The event to be appended.
+     * @return Возвращает true если событие было передано в запись в файл. Returns true if the event was passed to write to a file.
+     */
+    @Override
+    public boolean append(LogEvent event) {
+        if (event == null || !settingsParsed) return false;
+        return append(route(event), event.getText());
+    }
+
+    /**
+     * Ожидает, пока все уже переданные строки будут записаны в файлы, но не дольше указанного времени.
+     * Строки, отложенные пока файл занят старым Appender'ом, тоже считаются не записанными,
+     * а строки, отброшенные с прошлого вызова, прибавляются к результату.
+     * <p>
+     * Waits until all strings already passed are written to the files, but no longer than the given time.
+     * Strings deferred while a file is held by an old Appender also count as not written,
+     * and strings dropped since the previous call are added to the result.
+     * <p>
+     *
+     * @param timeout Максимальное время ожидания. Maximum time to wait.
+     * @return Количество строк, которые не успели записаться или были отброшены. Number of strings not written in time or dropped.
+     */
+    @Override
+    public long flush(Duration timeout) {
+        IOScheduler.Lane lane = this.lane;
+        if (lane == null) return pending.get();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        if (pending.get() > 0) lane.await(timeout);
+        RollingFileAppender.awaitDeferred(() -> deferred, deadline);
+        return pending.get() + deferred + RollingFileAppender.takeUnreported(dropped, reported);
+    }
+
+    /**
+     * Возвращает количество строк, отброшенных из-за ошибки записи или потому, что файл слишком долго был занят старым Appender'ом.
+     * <p>
+     * Returns the number of strings dropped because of a write error or because a file was held by an old Appender for too long.
+     *
+     * @return Количество отброшенных строк. Number of dropped strings.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Возвращает количество открытых сейчас файлов.
+     * <p>
+     * Returns the number of currently open files.
+     */
+    public int getOpenFiles() {
+        return openFiles;
+    }
+
+    /**
+     * Закрывает очередь для новых строк. Уже поставленные строки будут записаны, после чего все файлы будут закрыты.
+     * <p>
+     * Closes the queue for new strings. Strings already queued will be written, after which all files will be closed.
+     */
+    @Override
+    public void destroy() {
+        settingsLock.lock();
+        try {
+            destroyed = true;
+            IOScheduler.Lane lane = this.lane;
+            if (lane == null) return;
+            lane.execute(this::closeAll);
+            lane.close();
+        } catch (Exception ignore) {
+        } finally {
+            settingsLock.unlock();
+        }
+    }
+
+    private boolean append(String route, String text) {
+        if (text == null) return false;
+        if (text.isEmpty()) return false;
+        if (!settingsParsed) return false;
+
+        IOScheduler.Lane lane = this.lane;
+        if (lane == null && (lane = start()) == null) return false;
+
+        pending.incrementAndGet();
+        if (lane.execute(() -> write(route, text))) return true;
+        pending.decrementAndGet();
+        return false;
+    }
+
+    //Значение признака события, по которому выбирается файл.
+    private String route(LogEvent event) {
+        String route = switch (routeBy) {
+            case "level" -> event.getLevel() == null ? null : event.getLevel().name();
+            case "marker" -> event.getMarker();
+            case "context" -> event.getContext().get(routeKey);
+            default -> event.getGroup();
+        };
+        return route == null || route.isBlank() ? null : route;
+    }
+
+    //Очередь создаётся при первой строке, вместе с ней запускается периодическое закрытие простаивающих файлов.
+    private IOScheduler.Lane start() {
+        settingsLock.lock();
+        try {
+            if (lane == null && !destroyed) {
+                lane = (scheduler != null ? scheduler : IOScheduler.getDefault()).newLane();
+                if (idleTimeout > 0) lane.executeLater(this::closeIdle, Duration.ofMillis(idleTimeout));
+            }
+            return lane;
+        } finally {
+            settingsLock.unlock();
+        }
+    }
+
+    //Выполняется только в очереди планировщика. Файл попадает в LRU до записи, чтобы лишний файл закрылся раньше, чем откроется новый.
+    private void write(String route, String text) {
+        BufferPool pool = BufferPool.getDefault();
+        ByteBuffer buffer = null;
+        try {
+            String file = file(route);
+            RollingFileWriter writer = writers.computeIfAbsent(file, f -> new RollingFileWriter(path, name.replace("{route}", f), type, maxSize, maxFiles, preallocate));
+            open.put(file, writer);
+            buffer = pool.encode(text);
+            writer.write(buffer);
+            dropped.addAndGet(writer.takeDropped());
+            if (writer.hasBacklog() && waiting.add(writer)) scheduleRetry();
+            if (!waiting.isEmpty()) deferred = countDeferred();
+        } finally {
+            pool.release(buffer);
+            openFiles = open.size();
+            pending.decrementAndGet();
+        }
+    }
+
+    //Суффикс имени файла маршрута. Маршруты сверх лимита пишутся в один общий файл и не запоминаются.
+    private String file(String route) {
+        String file = routes.get(route);
+        if (file != null) return file;
+        if (routes.size() >= maxRoutes) return OVERFLOW_ROUTE;
+
+        file = route == null ? DEFAULT_ROUTE : sanitize(route);
+        routes.put(route, file);
+        return file;
+    }
+
+    //Закрывает файлы, в которые не писали дольше idleTimeout. В LRU первыми идут самые старые, поэтому можно остановиться на первом свежем.
+    private void closeIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<RollingFileWriter> iterator = open.values().iterator();
+        while (iterator.hasNext()) {
+            RollingFileWriter writer = iterator.next();
+            if (now - writer.getLastWrite() < idleTimeout) break;
+            writer.close();
+            iterator.remove();
+        }
+        openFiles = open.size();
+
+        IOScheduler.Lane lane = this.lane;
+        if (!destroyed && lane != null) lane.executeLater(this::closeIdle, Duration.ofMillis(Math.max(idleTimeout / 2, 1)));
+    }
+
+    //Файлы ещё заняты старым Appender'ом после перезагрузки настроек, отложенные строки пишутся повторно, пока файлы не освободятся.
+    private void scheduleRetry() {
+        IOScheduler.Lane lane = this.lane;
+        if (retryScheduled || destroyed || lane == null) return;
+        retryScheduled = lane.executeLater(() -> {
+            retryScheduled = false;
+            waiting.removeIf(this::retry);
+            deferred = countDeferred();
+            if (!waiting.isEmpty()) scheduleRetry();
+        }, RollingFileAppender.RETRY_DELAY);
+    }
+
+    //Повторяет отложенные строки файла и учитывает отброшенные. Возвращает true если отложенных строк не осталось.
+    private boolean retry(RollingFileWriter writer) {
+        boolean done = writer.retry();
+        dropped.addAndGet(writer.takeDropped());
+        return done;
+    }
+
+    //Сколько строк всех файлов ждут их освобождения.
+    private int countDeferred() {
+        int count = 0;
+        for (RollingFileWriter writer : waiting) count += writer.getBacklog();
+        return count;
+    }
+
+    private void closeAll() {
+        for (RollingFileWriter writer : writers.values()) {
+            retry(writer);
+            writer.close();
+        }
+        deferred = countDeferred();
+        open.clear();
+        openFiles = 0;
+    }
+
+    //Значение признака попадает в имя файла, поэтому всё кроме букв, цифр, точки, дефиса и подчёркивания заменяется.
+    //Если значение изменилось или совпало со служебным маршрутом, то добавляется хеш, он одинаков между запусками.
+    static String sanitize(String route) {
+        StringBuilder builder = new StringBuilder(route.length());
+        for (int i = 0; i < route.length(); i++) {
+            char c = route.charAt(i);
+            builder.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' || (c == '.' && i > 0) ? c : '_');
+        }
+        String file = builder.toString();
+        if (file.equals(route) && !file.equals(DEFAULT_ROUTE) && !file.equals(OVERFLOW_ROUTE)) return file;
+        return file + '-' + Integer.toHexString(route.hashCode());
+    }
+}
@@ -0,0 +1,286 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Класс {@code SharedRing} представляет из себя кольцевой буфер в отображённом в память файле,
+ * в который могут писать несколько процессов одновременно.
+ * <p>
+ * The {@code SharedRing} class is a ring buffer in a memory-mapped file that several processes can write to at the same time.
+ * <p>
+ * Буфер состоит из заголовка и слотов одинакового размера. Запись занимает один или несколько подряд идущих слотов.
+ * Писатель захватывает слоты через CAS курсора захвата, затем через CAS состояния слота отмечает, что пишет в него,
+ * пишет данные и публикует слот тем же CAS. Читатель один, он двигает курсор чтения только после того, как прочитал запись.
+ * Если писатель упал или завис между захватом и публикацией, читатель по таймауту отмечает слот пропущенным.
+ * В состоянии слота хранится номер слота, поэтому опоздавший писатель не может ни занять, ни опубликовать слот,
+ * который уже пропущен или захвачен писателем следующего круга.
+ * <p>
+ * The buffer consists of a header and slots of the same size. A record occupies one or more consecutive slots.
+ * A writer claims slots with a CAS on the claim cursor, then marks each slot as being written with a CAS on the slot state,
+ * writes the data and publishes the slot with the same CAS. There is a single reader, it moves the read cursor only after the record is read.
+ * If a writer crashed or stalled between the claim and the publication, the reader marks the slot as skipped after a timeout.
+ * The slot state holds the slot sequence, so a late writer can neither take nor publish a slot
+ * that was already skipped or taken by a writer of the next lap.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.appenders.SharedRingAppender
+ * @see ru.voidcyborg.logapi.appender.appenders.SharedRingCollector
+ */
+final class SharedRing {
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int MAGIC = 0x4C4F4752;
+    private static final int VERSION = 2;
+
+    //Курсоры лежат в разных кеш-линиях, чтобы писатели и читатель не мешали друг другу.
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int SLOT_SIZE_OFFSET = 12;
+    private static final int CLAIM_OFFSET = 64;
+    private static final int READ_OFFSET = 128;
+    private static final int HEADER_SIZE = 192;
+
+    //Заголовок слота: состояние, длина данных в слоте, количество слотов в записи (только в первом слоте).
+    //Состояние - номер слота + 1 со сдвигом на два бита и признаком: пишется, опубликован или пропущен. 0 - слот ни разу не занимали.
+    private static final int STATE = 0;
+    private static final int LENGTH = 8;
+    private static final int PARTS = 12;
+    private static final int SLOT_HEADER = 16;
+    private static final int WRITING = 1;
+    private static final int PUBLISHED = 2;
+    private static final int SKIPPED = 3;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final int slotSize;
+    private final int payload;
+    private final int maxParts;
+
+
+    private SharedRing(FileChannel channel, MappedByteBuffer buffer, int slots, int slotSize) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slots = slots;
+        this.slotSize = slotSize;
+        this.payload = slotSize - SLOT_HEADER;
+        this.maxParts = Math.max(1, slots / 4);
+    }
+
+    //Открывает буфер, если файла нет то создаёт его с указанными размерами.
+    //Если файл уже существует, то берутся размеры из его заголовка.
+    //Синхронизация на классе нужна, так как FileLock не защищает от двух каналов внутри одной JVM.
+    static synchronized SharedRing open(Path path, int slots, int slotSize) throws IOException {
+        if (slots < 4) throw new IllegalArgumentException("Shared ring needs at least 4 slots.");
+        slotSize = (Math.max(slotSize, 64) + 7) & ~7;
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.lock();
+            try {
+                if (channel.size() >= HEADER_SIZE) {
+                    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                    header.order(ByteOrder.nativeOrder());
+                    if (header.getInt(MAGIC_OFFSET) == MAGIC) {
+                        if (header.getInt(VERSION_OFFSET) != VERSION)
+                            throw new IOException("Unsupported shared ring version: " + header.getInt(VERSION_OFFSET));
+                        slots = header.getInt(SLOTS_OFFSET);
+                        slotSize = header.getInt(SLOT_SIZE_OFFSET);
+                        return map(channel, slots, slotSize, false);
+                    }
+                }
+                return map(channel, slots, slotSize, true);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static SharedRing map(FileChannel channel, int slots, int slotSize, boolean create) throws IOException {
+        long size = HEADER_SIZE + (long) slots * slotSize;
+        if (size > Integer.MAX_VALUE) throw new IOException("Shared ring is too big: " + size);
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+
+        if (create) {
+            for (int i = 0; i < size; i += 8) {
+                buffer.putLong(i, 0);
+            }
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            buffer.putInt(SLOTS_OFFSET, slots);
+            buffer.putInt(SLOT_SIZE_OFFSET, slotSize);
+            VarHandle.fullFence();
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.force();
+        }
+
+        return new SharedRing(channel, buffer, slots, slotSize);
+    }
+
+    int getSlots() {
+        return slots;
+    }
+
+    int getSlotSize() {
+        return slotSize;
+    }
+
+    boolean offer(byte[] bytes) {
+        return offer(ByteBuffer.wrap(bytes));
+    }
+
+    //Записывает байты от position до limit в буфер. Если места нет, то возвращает false, писатель никогда не ждёт читателя.
+    //Слишком длинная строка обрезается до maxParts слотов, не разрывая многобайтовый символ UTF-8.
+    boolean offer(ByteBuffer bytes) {
+        int start = bytes.position();
+        int length = bytes.remaining();
+        if (length > maxParts * payload) {
+            length = maxParts * payload;
+            while (length > 0 && (bytes.get(start + length) & 0xC0) == 0x80) length--;
+        }
+        int parts = Math.max(1, (length + payload - 1) / payload);
+
+        long claim = claim(parts);
+        return claim >= 0 && publish(claim, bytes, start, length, parts);
+    }
+
+    //Захватывает подряд идущие слоты. Возвращает номер первого, или -1 если места нет.
+    long claim(int parts) {
+        while (true) {
+            long claim = (long) LONG.getVolatile(buffer, CLAIM_OFFSET);
+            long read = (long) LONG.getVolatile(buffer, READ_OFFSET);
+            if (claim + parts - read > slots) return -1;
+            if (LONG.compareAndSet(buffer, CLAIM_OFFSET, claim, claim + parts)) return claim;
+        }
+    }
+
+    //Пишет и публикует захваченные слоты по одному. Перед записью слот занимается CAS'ом состояния,
+    //если слот уже пропущен читателем или занят следующим кругом, то запись прекращается и возвращается false.
+    boolean publish(long claim, ByteBuffer bytes, int start, int length, int parts) {
+        int written = 0;
+        for (int k = 0; k < parts; k++) {
+            long sequence = claim + k;
+            int offset = offset(sequence);
+            if (!take(offset, sequence)) return false;
+            int chunk = Math.min(payload, length - written);
+
+            buffer.putInt(offset + LENGTH, chunk);
+            buffer.putInt(offset + PARTS, k == 0 ? parts : 0);
+            buffer.put(offset + SLOT_HEADER, bytes, start + written, chunk);
+            written += chunk;
+
+            if (!LONG.compareAndSet(buffer, offset + STATE, state(sequence, WRITING), state(sequence, PUBLISHED))) return false;
+        }
+        return true;
+    }
+
+    //Занимает слот для записи, если в нём лежит состояние одного из прошлых кругов.
+    private boolean take(int offset, long sequence) {
+        while (true) {
+            long current = (long) LONG.getVolatile(buffer, offset + STATE);
+            if (sequence(current) >= sequence) return false;
+            if (LONG.compareAndSet(buffer, offset + STATE, current, state(sequence, WRITING))) return true;
+        }
+    }
+
+    //Отмечает слот пропущенным, после этого писатель этого слота не сможет его опубликовать.
+    //Возвращает false, если слот успели опубликовать, тогда его нужно прочитать.
+    boolean skip(long sequence) {
+        int offset = offset(sequence);
+        while (true) {
+            long current = (long) LONG.getVolatile(buffer, offset + STATE);
+            if (current == state(sequence, PUBLISHED)) return false;
+            if (sequence(current) > sequence || current == state(sequence, SKIPPED)) return true;
+            if (LONG.compareAndSet(buffer, offset + STATE, current, state(sequence, SKIPPED))) return true;
+        }
+    }
+
+    //Номер первого непрочитанного слота.
+    long readCursor() {
+        return (long) LONG.getVolatile(buffer, READ_OFFSET);
+    }
+
+    //Номер следующего слота, который будет захвачен писателем.
+    long claimCursor() {
+        return (long) LONG.getVolatile(buffer, CLAIM_OFFSET);
+    }
+
+    //Опубликован ли слот с данным номером.
+    boolean isCommitted(long sequence) {
+        return (long) LONG.getAcquire(buffer, offset(sequence) + STATE) == state(sequence, PUBLISHED);
+    }
+
+    //Количество слотов в записи, начинающейся с данного слота. 0 если слот не является началом записи.
+    int parts(long sequence) {
+        int parts = buffer.getInt(offset(sequence) + PARTS);
+        return parts <= 0 || parts > maxParts ? 0 : parts;
+    }
+
+    //Читает запись из уже опубликованных слотов.
+    String read(long sequence, int parts) {
+        int total = 0;
+        for (int k = 0; k < parts; k++) {
+            total += clampLength(buffer.getInt(offset(sequence + k) + LENGTH));
+        }
+
+        byte[] bytes = new byte[total];
+        int position = 0;
+        for (int k = 0; k < parts; k++) {
+            int offset = offset(sequence + k);
+            int chunk = clampLength(buffer.getInt(offset + LENGTH));
+            buffer.get(offset + SLOT_HEADER, bytes, position, chunk);
+            position += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //Освобождает слоты до данного номера, после этого писатели могут их переиспользовать.
+    void release(long sequence) {
+        LONG.setRelease(buffer, READ_OFFSET, sequence);
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (Exception ignore) {
+        }
+    }
+
+    private int clampLength(int length) {
+        return Math.max(0, Math.min(length, payload));
+    }
+
+    private static long state(long sequence, int tag) {
+        return (sequence + 1) << 2 | tag;
+    }
+
+    //Номер слота, к которому относится состояние. -1 у слота, который ни разу не занимали.
+    private static long sequence(long state) {
+        return (state >>> 2) - 1;
+    }
+
+    private int offset(long sequence) {
+        return HEADER_SIZE + (int) Math.floorMod(sequence, (long) slots) * slotSize;
+    }
+}
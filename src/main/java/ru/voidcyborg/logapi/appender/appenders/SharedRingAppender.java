@@ -0,0 +1,142 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.BufferPool;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Класс {@code SharedRingAppender} предствляет из себя реализацию записи строк в общий для нескольких JVM кольцевой буфер в памяти.
+ * Строки из буфера забирает {@code SharedRingCollector}, который может работать в любом процессе на этом же хосте,
+ * и передаёт их обычным Appender'ам. Так несколько JVM пишут в один общий поток логов.
+ * <p>
+ * <p>
+ * The {@code SharedRingAppender} class is an implementation of writing strings to an in-memory ring buffer shared by several JVMs.
+ * Strings are taken from the buffer by {@code SharedRingCollector}, which can run in any process on the same host,
+ * and passed to regular Appenders. This way several JVMs write into one merged log stream.
+ * <p>
+ * <p>
+ * Метод {@code append(String s)} никогда не ждёт: если буфер заполнен, строка отбрасывается и учитывается в {@code getDropped()}.
+ * <p>
+ * The {@code append(String s)} method never waits: if the buffer is full, the string is dropped and counted in {@code getDropped()}.
+ * <p>
+ * <p>
+ * Данный класс поддерживает несколько настроек:
+ * <p><b>filePath</b> - путь к файлу буфера, общий для всех процессов.
+ * Path to the buffer file, shared by all processes.
+ * <p><b>slots</b> - количество слотов в буфере, по умолчанию 8192. Используется только при создании файла.
+ * Number of slots in the buffer, 8192 by default. Used only when the file is created.
+ * <p><b>slotSize</b> - размер слота в байтах, по умолчанию 512. Длинная строка занимает несколько слотов. Используется только при создании файла.
+ * Slot size in bytes, 512 by default. A long string occupies several slots. Used only when the file is created.
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.appender.appenders.SharedRingCollector
+ * @see java.util.Map
+ * @see java.lang.String
+ */
+public final class SharedRingAppender implements Appender {
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile SharedRing ring;
+
+
+    /**
+     * Данный метод предназначен инициализации настроек для данного Appender'а.
+     * Открывает буфер, если файла нет то создаёт его. Если настройки уже инициализированы, будет выбрашена ошибка.
+     * <p>
+     * This method is intended to initialize the settings for this Appender.
+     * Opens the buffer, if there is no file then creates it. If the settings are already initialized, an error will be thrown.
+     * <p>
+     *
+     * @param settings Настройки в виде мапы. Map settings.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    @Override
+    public synchronized void parseSettings(Map<String, String> settings) throws SettingsInitException {
+        if (settings == null) throw new SettingsInitException("Settings of SharedRingAppender can't be null.");
+        if (ring != null) throw new SettingsInitException("Settings of SharedRingAppender can't be parsed second time.");
+
+        try {
+            String filePath = settings.get("filePath");
+            if (filePath == null || filePath.isBlank()) throw new NullPointerException("File path is null or blank.");
+            int slots = parseInt(settings.get("slots"), 8192);
+            int slotSize = parseInt(settings.get("slotSize"), 512);
+
+            ring = SharedRing.open(Path.of(filePath), slots, slotSize);
+        } catch (Exception e) {
+            throw new SettingsInitException("Failed to parse settings of SharedRingAppender because of " + e);
+        }
+    }
+
+    /**
+     * Данный метод предназначен для записи строки в общий буфер.
+     * Метод не блокирующий, если буфер заполнен, то строка отбрасывается и возвращается false.
+     * <p>
+     * This method is for writing a string to the shared buffer.
+     * The method is not blocking, if the buffer is full, the string is dropped and false is returned.
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param text Строка которую необходимо записать. The string to be appended.
+     * @return Возвращает true если строка была записана в буфер. Returns true if the string was written to the buffer.
+     */
+    @Override
+    public boolean append(String text) {
+        if (text == null || text.isEmpty()) return false;
+        SharedRing ring = this.ring;
+        if (ring == null) return false;
+
+        BufferPool pool = BufferPool.getDefault();
+        ByteBuffer buffer = null;
+        try {
+            buffer = pool.encode(text);
+            if (ring.offer(buffer)) return true;
+        } catch (Exception ignore) {
+        } finally {
+            pool.release(buffer);
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Возвращает количество строк, которые были отброшены из-за заполненного буфера.
+     * <p>
+     * Returns the number of strings that were dropped because the buffer was full.
+     *
+     * @return Количество отброшенных строк. Number of dropped strings.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Закрывает файл буфера. Уже записанные строки остаются в буфере и будут прочитаны {@code SharedRingCollector}.
+     * <p>
+     * Closes the buffer file. Strings already written stay in the buffer and will be read by {@code SharedRingCollector}.
+     */
+    @Override
+    public synchronized void destroy() {
+        SharedRing ring = this.ring;
+        this.ring = null;
+        if (ring != null) ring.close();
+    }
+
+    //Парсит положительное число, если настройка не указана то возвращает значение по умолчанию.
+    private int parseInt(String s, int defaultValue) {
+        if (s == null || s.isBlank()) return defaultValue;
+        int value = Integer.parseInt(s.replace("_", "").trim());
+        if (value <= 0) throw new IllegalArgumentException("Value must be positive: " + s);
+        return value;
+    }
+}
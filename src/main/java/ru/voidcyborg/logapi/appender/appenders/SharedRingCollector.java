@@ -0,0 +1,259 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import ru.voidcyborg.logapi.appender.Appender;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Класс {@code SharedRingCollector} забирает строки из общего кольцевого буфера {@code SharedRingAppender}
+ * и передаёт их указанным Appender'ам, например {@code RollingFileAppender}.
+ * <p>
+ * The {@code SharedRingCollector} class takes strings from the shared ring buffer of {@code SharedRingAppender}
+ * and passes them to the given Appenders, for example {@code RollingFileAppender}.
+ * <p>
+ * На хосте может работать только один сборщик для одного буфера, это гарантирует блокировка файла {@code filePath.lock}.
+ * Если писатель упал не опубликовав захваченный слот, то слот пропускается через {@code stallTimeout} миллисекунд
+ * и учитывается в {@code getLost()}.
+ * <p>
+ * Only one collector per buffer can run on a host, this is guaranteed by a lock on the {@code filePath.lock} file.
+ * If a writer crashed without publishing a claimed slot, the slot is skipped after {@code stallTimeout} milliseconds
+ * and counted in {@code getLost()}.
+ * <p>
+ * Пример использования:
+ * <p>
+ * Usage example:
+ * <blockquote><pre>
+ *     Appender file = new RollingFileAppender();
+ *     file.parseSettings(settings);
+ *
+ *     SharedRingCollector collector = new SharedRingCollector(Path.of("/dev/shm/app.ring"), file).start();
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.appenders.SharedRingAppender
+ * @see ru.voidcyborg.logapi.appender.Appender
+ */
+public final class SharedRingCollector {
+
+    private final SharedRing ring;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Appender[] appenders;
+    private final long stallTimeout;
+    private final Thread thread;
+
+    private final AtomicLong collected = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    private volatile boolean running;
+    private long stalledSequence = -1;
+    private long stalledSince;
+
+
+    /**
+     * Открывает буфер с размерами по умолчанию и таймаутом зависшего слота 5 секунд.
+     * <p>
+     * Opens the buffer with default sizes and a stalled slot timeout of 5 seconds.
+     *
+     * @param path      Путь к файлу буфера. Path to the buffer file.
+     * @param appenders Appender'ы в которые передаются строки. Appenders the strings are passed to.
+     * @throws IOException Если не удалось открыть буфер или уже работает другой сборщик. If the buffer could not be opened or another collector is already running.
+     */
+    public SharedRingCollector(Path path, Appender... appenders) throws IOException {
+        this(path, 8192, 512, 5000, appenders);
+    }
+
+    /**
+     * Открывает буфер, если файла нет то создаёт его с указанными размерами.
+     * <p>
+     * Opens the buffer, if there is no file then creates it with the given sizes.
+     *
+     * @param path         Путь к файлу буфера. Path to the buffer file.
+     * @param slots        Количество слотов, если файл создаётся. Number of slots if the file is created.
+     * @param slotSize     Размер слота, если файл создаётся. Slot size if the file is created.
+     * @param stallTimeout Через сколько миллисекунд пропускается неопубликованный слот. After how many milliseconds an unpublished slot is skipped.
+     * @param appenders    Appender'ы в которые передаются строки. Appenders the strings are passed to.
+     * @throws IOException Если не удалось открыть буфер или уже работает другой сборщик. If the buffer could not be opened or another collector is already running.
+     */
+    public SharedRingCollector(Path path, int slots, int slotSize, long stallTimeout, Appender... appenders) throws IOException {
+        if (path == null) throw new NullPointerException("Path to shared ring can't be null");
+        if (appenders == null) throw new NullPointerException("Appenders can't be null");
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        this.lockChannel = FileChannel.open(Path.of(path + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (Exception e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Another collector is already running for " + path);
+        }
+        this.lock = lock;
+
+        try {
+            this.ring = SharedRing.open(path, slots, slotSize);
+        } catch (IOException | RuntimeException e) {
+            releaseLock();
+            throw e;
+        }
+
+        this.appenders = appenders.clone();
+        this.stallTimeout = Math.max(stallTimeout, 1);
+        this.thread = new Thread(this::run, "SharedRingCollector");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Запускает поток сборщика.
+     * <p>
+     * Starts the collector thread.
+     *
+     * @return Данный сборщик. This collector.
+     */
+    public synchronized SharedRingCollector start() {
+        if (!running && !thread.isAlive()) {
+            running = true;
+            thread.start();
+        }
+        return this;
+    }
+
+    /**
+     * Останавливает сборщик. Перед остановкой забирает все уже опубликованные строки.
+     * Appender'ы не уничтожаются, так как ими владеет вызывающий.
+     * <p>
+     * Stops the collector. Before stopping it takes all strings that are already published.
+     * The Appenders are not destroyed, since they are owned by the caller.
+     */
+    public synchronized void destroy() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ring.close();
+        releaseLock();
+    }
+
+    /**
+     * Возвращает количество строк переданных Appender'ам.
+     * <p>
+     * Returns the number of strings passed to the Appenders.
+     */
+    public long getCollected() {
+        return collected.get();
+    }
+
+    /**
+     * Возвращает количество строк потерянных из-за писателей, которые не опубликовали захваченные слоты.
+     * <p>
+     * Returns the number of strings lost because of writers that did not publish the claimed slots.
+     */
+    public long getLost() {
+        return lost.get();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (drain() == 0) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            drain();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Забирает все опубликованные записи по порядку. Возвращает количество прочитанных записей.
+    private int drain() {
+        int count = 0;
+        while (true) {
+            long read = ring.readCursor();
+            if (read >= ring.claimCursor()) return count;
+
+            if (!ring.isCommitted(read)) {
+                skipIfStalled(read);
+                return count;
+            }
+
+            int parts = ring.parts(read);
+            if (parts == 0) {
+                //Продолжение записи, начало которой уже пропущено.
+                ring.release(read + 1);
+                continue;
+            }
+
+            for (int k = 1; k < parts; k++) {
+                if (!ring.isCommitted(read + k)) {
+                    skipIfStalled(read + k);
+                    return count;
+                }
+            }
+
+            String text = ring.read(read, parts);
+            ring.release(read + parts);
+            stalledSequence = -1;
+
+            deliver(text);
+            collected.incrementAndGet();
+            count++;
+        }
+    }
+
+    //Если слот не публикуется дольше таймаута, то запись пропускается до этого слота включительно.
+    //Оставшиеся опубликованные слоты этой записи будут пропущены как продолжение без начала.
+    //Если писатель успел опубликовать слот в момент пропуска, то слот будет прочитан при следующем проходе.
+    private void skipIfStalled(long sequence) {
+        long now = System.currentTimeMillis();
+        if (stalledSequence != sequence) {
+            stalledSequence = sequence;
+            stalledSince = now;
+            return;
+        }
+        if (now - stalledSince < stallTimeout) return;
+
+        stalledSequence = -1;
+        if (!ring.skip(sequence)) return;
+        ring.release(sequence + 1);
+        lost.incrementAndGet();
+    }
+
+    private void deliver(String text) {
+        for (Appender appender : appenders) {
+            try {
+                appender.append(text);
+            } catch (Exception ignore) {
+            }
+        }
+    }
+
+    private void releaseLock() {
+        try {
+            lock.release();
+        } catch (Exception ignore) {
+        }
+        try {
+            lockChannel.close();
+        } catch (Exception ignore) {
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.IOScheduler;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Класс {@code SocketAppender} передаёт строки по TCP коллектору логов, локальному или удалённому.
+ * Строки кодируются в вызывающем потоке, а отправляются пачками в очереди общего планировщика {@code IOScheduler}.
+ * <p>
+ * The {@code SocketAppender} class sends strings over TCP to a log collector, local or remote.
+ * Strings are encoded on the calling thread and sent in batches in a queue of the shared {@code IOScheduler}.
+ * <p>
+ * Соединение устанавливается и пишется без блокировки потоков планировщика. Если соединения нет, то строки копятся в ограниченном буфере,
+ * а переподключение повторяется с экспоненциально растущей задержкой. Строки, которые не поместились в буфер, отбрасываются.
+ * <p>
+ * The connection is established and written without blocking the scheduler threads. While there is no connection, strings are kept in a bounded buffer,
+ * and reconnection is retried with an exponentially growing delay. Strings that do not fit into the buffer are dropped.
+ * <p>
+ * Данный класс поддерживает несколько настроек:
+ * <p><b>host</b> - адрес коллектора. Address of the collector.
+ * <p><b>port</b> - порт коллектора. Port of the collector.
+ * <p><b>framing</b> - {@code newline} (по умолчанию) - строки как есть, каждая заканчивается переводом строки,
+ * или {@code length} - перед каждой строкой её длина в байтах, 4 байта big-endian. Для многострочных событий нужен {@code length}.
+ * {@code newline} (default) - strings as is, each one ends with a line feed,
+ * or {@code length} - every string is preceded by its length in bytes, 4 bytes big-endian. Multi-line events need {@code length}.
+ * <p><b>bufferSize</b> - сколько байт можно держать в памяти, пока они не отправлены, по умолчанию 1048576.
+ * How many bytes can be kept in memory until they are sent, 1048576 by default.
+ * <p><b>batchSize</b> - максимальный размер одной записи в сокет в байтах, по умолчанию 65536.
+ * Maximum size of one write to the socket in bytes, 65536 by default.
+ * <p><b>reconnectDelay</b> - первая задержка переподключения в миллисекундах, по умолчанию 100.
+ * First reconnection delay in milliseconds, 100 by default.
+ * <p><b>maxReconnectDelay</b> - максимальная задержка переподключения в миллисекундах, по умолчанию 30000.
+ * Maximum reconnection delay in milliseconds, 30000 by default.
+ * <p><b>spillPath</b> - директория для сброса строк на диск. Если указана, то строки, которые не помещаются в половину {@code bufferSize},
+ * пишутся в файлы-сегменты с контрольными суммами и отправляются по порядку, когда коллектор снова доступен. По умолчанию выключено.
+ * Directory for spilling strings to disk. If set, strings that do not fit into half of {@code bufferSize}
+ * are written into segment files with checksums and are sent in order once the collector is available again. Disabled by default.
+ * <p><b>spillSize</b> - сколько байт можно держать на диске, по умолчанию 67108864. How many bytes can be kept on disk, 67108864 by default.
+ * <p><b>spillSegmentSize</b> - размер одного сегмента в байтах, по умолчанию 4194304. Size of one segment in bytes, 4194304 by default.
+ * <p>
+ * Пример настроек:
+ * <p>
+ * Settings example:
+ * <blockquote><pre>
+ *     appender1=ru.voidcyborg.logapi.appender.appenders.SocketAppender
+ *     appender1.host=127.0.0.1
+ *     appender1.port=5170
+ *     appender1.framing=length
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.appender.IOScheduler
+ */
+public final class SocketAppender implements Appender {
+
+    //Как часто проверять, завершилось ли подключение, и как скоро повторить запись, если буфер сокета заполнен.
+    private static final Duration CONNECT_POLL = Duration.ofMillis(5);
+    private static final Duration WRITE_RETRY = Duration.ofMillis(1);
+    private static final long CONNECT_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private final ReentrantLock settingsLock = new ReentrantLock();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+
+    //Используются только в очереди планировщика.
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> inFlight = new ArrayDeque<>();
+    private SpillBuffer spill;
+    private long queueBytes;
+    private ByteBuffer batch;
+    private ByteBuffer direct;
+    private SocketChannel channel;
+    private long connectStarted;
+    private long retryAt;
+    private long delay;
+    private boolean delayed;
+    private boolean pumpQueued;
+
+    private volatile IOScheduler.Lane lane;
+    private IOScheduler scheduler;
+    private volatile boolean connected;
+
+    private InetSocketAddress address;
+    private boolean lengthFraming;
+    private long bufferSize;
+    private int batchSize;
+    private long reconnectDelay;
+    private long maxReconnectDelay;
+    private Path spillPath;
+    private long spillSize;
+    private int spillSegmentSize;
+
+    private volatile boolean settingsParsed;
+    private volatile boolean destroyed;
+
+
+    /**
+     * Данный метод предназначен инициализации настроек для данного Appender'а.
+     * Метод блокирующий, если настройки инициализированы и метод вызван повторно будет выбрашена ошибка.
+     * Метод не подключается к коллектору, подключение происходит при первой строке.
+     * <p>
+     * This method is intended to initialize the settings for this Appender.
+     * The method is blocking, if the settings are initialized and the method is called again, an error will be thrown.
+     * The method does not connect to the collector, the connection is made on the first string.
+     * <p>
+     *
+     * @param settings Настройки в виде мапы. Map settings.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    @Override
+    public void parseSettings(Map<String, String> settings) throws SettingsInitException {
+        settingsLock.lock();
+        try {
+            if (settings == null) throw new SettingsInitException("Settings of SocketAppender can't be null.");
+            if (settingsParsed)
+                throw new SettingsInitException("Settings of SocketAppender can't be parsed second time.");
+
+            try {
+                String host = settings.get("host");
+                if (host == null || host.isBlank()) throw new IllegalArgumentException("host is required");
+                int port = Integer.parseInt(settings.get("port").trim());
+                this.address = InetSocketAddress.createUnresolved(host.trim(), port);
+
+                String framing = settings.getOrDefault("framing", "newline").trim().toLowerCase();
+                if (!framing.equals("newline") && !framing.equals("length"))
+                    throw new IllegalArgumentException("Unknown framing: " + framing);
+                this.lengthFraming = framing.equals("length");
+
+                this.bufferSize = Math.max(Long.parseLong(settings.getOrDefault("bufferSize", "1048576").trim()), 1024);
+                this.batchSize = Math.max(Integer.parseInt(settings.getOrDefault("batchSize", "65536").trim()), 512);
+                this.reconnectDelay = Math.max(Long.parseLong(settings.getOrDefault("reconnectDelay", "100").trim()), 1);
+                this.maxReconnectDelay = Math.max(Long.parseLong(settings.getOrDefault("maxReconnectDelay", "30000").trim()), reconnectDelay);
+
+                String spillPath = settings.get("spillPath");
+                this.spillPath = spillPath == null || spillPath.isBlank() ? null : RollingFileAppender.parsePath(spillPath.trim());
+                this.spillSize = Math.max(Long.parseLong(settings.getOrDefault("spillSize", "67108864").trim()), 0);
+                this.spillSegmentSize = Math.max(Integer.parseInt(settings.getOrDefault("spillSegmentSize", "4194304").trim()), 4096);
+            } catch (Exception e) {
+                throw new SettingsInitException("Failed to parse settings of SocketAppender because of " + e);
+            }
+            scheduler = IOScheduler.getCurrent();
+            settingsParsed = true;
+            //Строки, оставшиеся на диске с прошлого запуска, отправляются сразу, не дожидаясь новых.
+            if (spillPath != null) start();
+        } finally {
+            settingsLock.unlock();
+        }
+    }
+
+    /**
+     * Данный метод предназначен для передачи строки коллектору.
+     * Метод не блокирующий, то что он вернул true не значит что строка уже отправлена.
+     * Возвращает false если буфер неотправленных строк заполнен.
+     * <p>
+     * This method is for sending a string to the collector.
+     * The method is not blocking, the fact that it returned true does not mean that the string has already been sent.
+     * Returns false if the buffer of unsent strings is full.
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param text Строка которую необходимо записать. The string to be appended.
+     * @return Возвращает true если строка была передана в отправку. Returns true if the string was passed to be sent.
+     */
+    @Override
+    public boolean append(String text) {
+        if (text == null) return false;
+        if (text.isEmpty()) return false;
+        if (!settingsParsed) return false;
+
+        return send(frame(text));
+    }
+
+    //Ставит в отправку уже закодированные байты с рамкой, их пишет SyslogAppender со своей рамкой.
+    boolean send(byte[] frame) {
+        if (frame == null || frame.length == 0 || !settingsParsed) return false;
+
+        IOScheduler.Lane lane = this.lane;
+        if (lane == null && (lane = start()) == null) return false;
+
+        if (bufferedBytes.addAndGet(frame.length) > bufferSize) {
+            bufferedBytes.addAndGet(-frame.length);
+            dropped.incrementAndGet();
+            return false;
+        }
+        pending.incrementAndGet();
+        if (lane.execute(() -> enqueue(frame))) return true;
+        pending.decrementAndGet();
+        bufferedBytes.addAndGet(-frame.length);
+        return false;
+    }
+
+    /**
+     * Ожидает, пока все уже переданные строки будут отправлены, но не дольше указанного времени.
+     * <p>
+     * Waits until all strings already passed are sent, but no longer than the given time.
+     * <p>
+     *
+     * @param timeout Максимальное время ожидания. Maximum time to wait.
+     * @return Количество строк, которые не успели отправиться. Number of strings not sent in time.
+     */
+    @Override
+    public long flush(Duration timeout) {
+        long deadline = System.nanoTime() + Math.max(timeout.toNanos(), 0);
+        //Отправка может ждать переподключения в отложенной задаче, поэтому одного ожидания очереди недостаточно.
+        while (pending.get() > 0 && deadline - System.nanoTime() > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return pending.get();
+    }
+
+    /**
+     * Возвращает true если соединение с коллектором установлено.
+     * <p>
+     * Returns true if the connection to the collector is established.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Возвращает количество отправленных строк.
+     * <p>
+     * Returns the number of sent strings.
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Возвращает количество отброшенных строк: не поместившихся в буфер или потерянных при обрыве соединения.
+     * <p>
+     * Returns the number of dropped strings: those that did not fit into the buffer or were lost when the connection broke.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Возвращает количество строк, сброшенных на диск.
+     * <p>
+     * Returns the number of strings spilled to disk.
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * Закрывает очередь для новых строк и закрывает соединение. Строки, которые ещё не отправлены, теряются,
+     * поэтому перед уничтожением стоит вызвать {@code flush(Duration timeout)}.
+     * <p>
+     * Closes the queue for new strings and closes the connection. Strings not sent yet are lost,
+     * so {@code flush(Duration timeout)} should be called before destroying.
+     */
+    @Override
+    public void destroy() {
+        settingsLock.lock();
+        try {
+            destroyed = true;
+            IOScheduler.Lane lane = this.lane;
+            if (lane == null) return;
+            lane.execute(this::closeAll);
+            lane.close();
+        } catch (Exception ignore) {
+        } finally {
+            settingsLock.unlock();
+        }
+    }
+
+    private IOScheduler.Lane start() {
+        settingsLock.lock();
+        try {
+            if (lane == null && !destroyed) {
+                lane = (scheduler != null ? scheduler : IOScheduler.getDefault()).newLane();
+                if (spillPath != null) lane.execute(this::openSpill);
+            }
+            return lane;
+        } finally {
+            settingsLock.unlock();
+        }
+    }
+
+    //Кодирует строку вместе с рамкой, чтобы в очереди планировщика оставалось только скопировать байты в пачку.
+    private byte[] frame(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (lengthFraming) {
+            byte[] frame = new byte[bytes.length + 4];
+            ByteBuffer.wrap(frame).putInt(bytes.length).put(bytes);
+            return frame;
+        }
+        if (bytes[bytes.length - 1] == '\n') return bytes;
+        byte[] frame = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, frame, 0, bytes.length);
+        frame[bytes.length] = '\n';
+        return frame;
+    }
+
+    //Дальше все методы выполняются только в очереди планировщика.
+    //Отправка ставится в очередь планировщика после строк, которые уже в ней, поэтому одна запись забирает их все.
+    //Пока на диске есть строки, новые тоже идут на диск, иначе они обогнали бы старые.
+    private void enqueue(byte[] frame) {
+        if (spill != null && (!spill.isEmpty() || queueBytes + frame.length > bufferSize / 2)) {
+            bufferedBytes.addAndGet(-frame.length);
+            if (spill.write(frame)) {
+                spilled.incrementAndGet();
+            } else {
+                dropped.incrementAndGet();
+                pending.decrementAndGet();
+            }
+        } else {
+            queue.add(frame);
+            queueBytes += frame.length;
+        }
+        schedulePump();
+    }
+
+    private void schedulePump() {
+        if (delayed || pumpQueued) return;
+        pumpQueued = true;
+        lane.execute(() -> {
+            pumpQueued = false;
+            pump();
+        });
+    }
+
+    //Отложенный вызов pump, не больше одного одновременно.
+    private void pumpLater(Duration delay) {
+        if (delayed || destroyed) return;
+        delayed = true;
+        if (!lane.executeLater(() -> {
+            delayed = false;
+            pump();
+        }, delay)) delayed = false;
+    }
+
+    private void pump() {
+        if (destroyed) return;
+        try {
+            if (!connect()) return;
+            while (true) {
+                if (batch == null || !batch.hasRemaining()) {
+                    if (batch != null) completeBatch();
+                    if (queue.isEmpty() && !replay()) return;
+                    fillBatch();
+                }
+                channel.write(batch);
+                if (batch.hasRemaining()) {
+                    //Буфер сокета заполнен, продолжим чуть позже, не занимая поток планировщика.
+                    pumpLater(WRITE_RETRY);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            disconnect();
+            pumpLater(Duration.ofMillis(delay));
+        }
+    }
+
+    //Возвращает true если соединение готово к записи. Иначе начинает или продолжает подключение и откладывает pump.
+    private boolean connect() throws IOException {
+        if (connected) return true;
+        long now = System.nanoTime();
+        if (channel == null) {
+            if (now - retryAt < 0) {
+                pumpLater(Duration.ofNanos(retryAt - now));
+                return false;
+            }
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connectStarted = now;
+            InetSocketAddress resolved = new InetSocketAddress(address.getHostString(), address.getPort());
+            if (resolved.isUnresolved()) throw new IOException("Failed to resolve " + address.getHostString());
+            if (channel.connect(resolved)) return connected();
+        }
+        if (channel.finishConnect()) return connected();
+        if (now - connectStarted > CONNECT_TIMEOUT) throw new IOException("Connect timed out");
+        pumpLater(CONNECT_POLL);
+        return false;
+    }
+
+    private boolean connected() {
+        connected = true;
+        delay = 0;
+        return true;
+    }
+
+    //Сегменты прошлого запуска тоже нужно отправить, их строки добавляются к неотправленным.
+    private void openSpill() {
+        try {
+            SpillBuffer spill = new SpillBuffer(spillPath, spillSize, spillSegmentSize);
+            pending.addAndGet(spill.open());
+            this.spill = spill;
+            if (!spill.isEmpty()) schedulePump();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Когда очередь в памяти опустела, а соединение есть, то строки с диска по порядку переносятся в очередь.
+    private boolean replay() throws IOException {
+        if (spill == null || spill.isEmpty()) return false;
+        byte[] frame;
+        while (queueBytes < bufferSize / 2 && (frame = spill.read()) != null) {
+            queue.add(frame);
+            queueBytes += frame.length;
+            bufferedBytes.addAndGet(frame.length);
+        }
+        return !queue.isEmpty();
+    }
+
+    //Собирает строки из очереди в одну запись. Строка больше пачки отправляется отдельной записью.
+    private void fillBatch() {
+        byte[] first = queue.peek();
+        if (first.length > batchSize) {
+            inFlight.add(queue.poll());
+            queueBytes -= first.length;
+            batch = ByteBuffer.wrap(first);
+            return;
+        }
+        if (direct == null) direct = ByteBuffer.allocateDirect(batchSize);
+        direct.clear();
+        while (!queue.isEmpty() && queue.peek().length <= direct.remaining()) {
+            byte[] frame = queue.poll();
+            queueBytes -= frame.length;
+            direct.put(frame);
+            inFlight.add(frame);
+        }
+        direct.flip();
+        batch = direct;
+    }
+
+    private void completeBatch() {
+        long bytes = 0;
+        for (byte[] frame : inFlight) bytes += frame.length;
+        sent.addAndGet(inFlight.size());
+        release(inFlight.size(), bytes);
+        inFlight.clear();
+        batch = null;
+    }
+
+    //Закрывает соединение после ошибки. Строки пачки, которые ушли целиком, считаются отправленными, строка, которая ушла частично, теряется,
+    //иначе на новом соединении коллектор получил бы обрывок рамки. Остальные строки пачки возвращаются в начало очереди.
+    private void disconnect() {
+        if (batch != null) {
+            int written = batch.position();
+            int offset = 0;
+            long bytes = 0;
+            int done = 0;
+            int lost = 0;
+            ArrayDeque<byte[]> unsent = new ArrayDeque<>();
+            for (byte[] frame : inFlight) {
+                if (offset + frame.length <= written) {
+                    done++;
+                    bytes += frame.length;
+                } else if (offset < written) {
+                    lost++;
+                    bytes += frame.length;
+                } else {
+                    unsent.add(frame);
+                }
+                offset += frame.length;
+            }
+            sent.addAndGet(done);
+            dropped.addAndGet(lost);
+            release(done + lost, bytes);
+            while (!unsent.isEmpty()) {
+                byte[] frame = unsent.pollLast();
+                queue.addFirst(frame);
+                queueBytes += frame.length;
+            }
+            inFlight.clear();
+            batch = null;
+        }
+
+        close();
+        delay = delay == 0 ? reconnectDelay : Math.min(delay * 2, maxReconnectDelay);
+        retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+
+    private void release(int events, long bytes) {
+        bufferedBytes.addAndGet(-bytes);
+        pending.addAndGet(-events);
+    }
+
+    private void close() {
+        connected = false;
+        try {
+            if (channel != null) channel.close();
+        } catch (Exception ignore) {
+        }
+        channel = null;
+    }
+
+    private void closeAll() {
+        if (spill != null) keep();
+        close();
+        long bytes = 0;
+        for (byte[] frame : inFlight) bytes += frame.length;
+        for (byte[] frame : queue) bytes += frame.length;
+        int events = inFlight.size() + queue.size();
+        dropped.addAndGet(events);
+        release(events, bytes);
+        inFlight.clear();
+        queue.clear();
+        queueBytes = 0;
+        batch = null;
+    }
+
+    //Перед остановкой строки из памяти сохраняются на диск перед теми, что уже там лежат: в памяти всегда более старые строки.
+    //Следующий запуск отправит их первыми.
+    private void keep() {
+        disconnect();
+        long bytes = 0;
+        for (byte[] frame : queue) bytes += frame.length;
+        int events = queue.size();
+        long stored = spill.size();
+        if (spill.close(queue)) {
+            spilled.addAndGet(events);
+        } else {
+            dropped.addAndGet(events);
+        }
+        release(events, bytes);
+        pending.addAndGet(-stored);
+        queue.clear();
+        queueBytes = 0;
+        spill = null;
+    }
+}
@@ -0,0 +1,302 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Класс {@code SpillBuffer} хранит на локальном диске события сетевого Appender'а, которые не поместились в память, пока приёмник недоступен.
+ * События пишутся последовательно в файлы-сегменты записями {@code [длина][CRC32C][байты]} и читаются обратно в том же порядке.
+ * Прочитанный сегмент удаляется, общий размер сегментов ограничен.
+ * <p>
+ * The {@code SpillBuffer} class keeps on the local disk the events of a network Appender that did not fit into memory while the receiver is unavailable.
+ * Events are written sequentially into segment files as {@code [length][CRC32C][bytes]} records and are read back in the same order.
+ * A segment that has been read is deleted, the total size of the segments is bounded.
+ * <p>
+ * Сегменты, оставшиеся от прошлого запуска, читаются первыми. Запись с неверной контрольной суммой или обрезанная запись
+ * означает, что остаток сегмента повреждён, он пропускается.
+ * Класс не потокобезопасный, все методы должны вызываться из одной очереди планировщика.
+ * <p>
+ * Segments left from the previous run are read first. A record with a wrong checksum or a truncated record
+ * means that the rest of the segment is damaged, it is skipped.
+ * The class is not thread safe, all methods must be called from one scheduler queue.
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.appenders.SocketAppender
+ */
+final class SpillBuffer {
+
+    private static final String PREFIX = "spill-";
+    private static final String SUFFIX = ".seg";
+    private static final int HEADER = 8;
+    //Номера начинаются не с нуля, чтобы перед первым сегментом можно было поставить ещё один.
+    private static final long FIRST_SEQUENCE = 1L << 32;
+
+    private final Path folder;
+    private final long maxBytes;
+    private final int segmentSize;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER);
+    private final ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private final CRC32C crc = new CRC32C();
+
+    private FileChannel writer;
+    private FileChannel reader;
+    private long bytes;
+    private long sequence;
+    private long records;
+    private long corrupted;
+
+
+    SpillBuffer(Path folder, long maxBytes, int segmentSize) {
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+        this.segmentSize = segmentSize;
+    }
+
+    //Находит сегменты прошлого запуска и возвращает количество целых записей в них.
+    long open() throws IOException {
+        Files.createDirectories(folder);
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) found.add(file);
+        }
+        found.sort(null);
+
+        long count = 0;
+        sequence = FIRST_SEQUENCE;
+        for (Path file : found) {
+            Segment segment = new Segment(file, Files.size(file));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long position = 0;
+                while (readRecord(channel, segment.size, position) != null) {
+                    position += HEADER + header.getInt(0);
+                    count++;
+                }
+            }
+            segments.add(segment);
+            bytes += segment.size;
+            sequence = Math.max(sequence, parseSequence(file) + 1);
+        }
+        records = count;
+        return count;
+    }
+
+    boolean isEmpty() {
+        return records == 0;
+    }
+
+    //Количество записей, которые ещё не прочитаны.
+    long size() {
+        return records;
+    }
+
+    long getCorrupted() {
+        return corrupted;
+    }
+
+    //Дописывает запись в последний сегмент. Возвращает false если запись не помещается в лимит диска.
+    boolean write(byte[] frame) {
+        int length = HEADER + frame.length;
+        if (bytes + pending.position() + length > maxBytes) return false;
+        try {
+            Segment last = segments.peekLast();
+            if (writer == null || last.size + pending.position() + length > segmentSize && last.size + pending.position() > 0) {
+                flush();
+                closeWriter();
+                last = new Segment(folder.resolve(String.format("%s%020d%s", PREFIX, sequence++, SUFFIX)), 0);
+                writer = FileChannel.open(last.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                segments.add(last);
+            }
+
+            crc.reset();
+            crc.update(frame);
+            if (length > pending.remaining()) flush();
+            if (length > pending.capacity()) {
+                ByteBuffer record = ByteBuffer.allocate(length).putInt(frame.length).putInt((int) crc.getValue()).put(frame).flip();
+                writeFully(record, last);
+            } else {
+                pending.putInt(frame.length).putInt((int) crc.getValue()).put(frame);
+            }
+            records++;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    //Читает следующую запись от старых к новым. Возвращает null если записей нет.
+    byte[] read() throws IOException {
+        if (records == 0) return null;
+        flush();
+        while (!segments.isEmpty()) {
+            Segment segment = segments.peekFirst();
+            if (reader == null) reader = FileChannel.open(segment.file, StandardOpenOption.READ);
+
+            byte[] frame = readRecord(reader, segment.size, segment.read);
+            if (frame != null) {
+                segment.read += HEADER + frame.length;
+                if (--records == 0) clear();
+                return frame;
+            }
+
+            //Сегмент прочитан до конца или дальше он повреждён.
+            if (segment.read < segment.size) corrupted++;
+            deleteFirst();
+        }
+        clear();
+        return null;
+    }
+
+    //Записывает накопленные записи в файл, данные после этого видны для чтения.
+    void flush() throws IOException {
+        if (pending.position() == 0) return;
+        pending.flip();
+        writeFully(pending, segments.peekLast());
+        pending.clear();
+    }
+
+    void close() {
+        try {
+            flush();
+        } catch (IOException ignore) {
+        }
+        closeWriter();
+        closeReader();
+    }
+
+    //Закрывает буфер, сохраняя перед всеми записями на диске более старые записи из памяти.
+    //Непрочитанный остаток первого сегмента переносится туда же, иначе следующий запуск повторил бы уже прочитанные записи.
+    //Возвращает false если записи из памяти сохранить не удалось.
+    boolean close(Collection<byte[]> older) {
+        close();
+        Segment first = segments.peekFirst();
+        if (older.isEmpty() && (first == null || first.read == 0)) return true;
+
+        long number = first == null ? sequence++ : parseSequence(first.file) - 1;
+        Path file = folder.resolve(String.format("%s%020d%s", PREFIX, number, SUFFIX));
+        try (FileChannel head = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer record = ByteBuffer.allocate(64 * 1024);
+            for (byte[] frame : older) {
+                if (record.remaining() < HEADER + frame.length) {
+                    drain(head, record);
+                    if (record.capacity() < HEADER + frame.length) record = ByteBuffer.allocate(HEADER + frame.length);
+                }
+                crc.reset();
+                crc.update(frame);
+                record.putInt(frame.length).putInt((int) crc.getValue()).put(frame);
+            }
+            drain(head, record);
+            if (first != null && first.read > 0) {
+                try (FileChannel rest = FileChannel.open(first.file, StandardOpenOption.READ)) {
+                    long position = first.read;
+                    while (position < first.size) position += rest.transferTo(position, first.size - position, head);
+                }
+                deleteFirst();
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer, Segment segment) throws IOException {
+        while (buffer.hasRemaining()) {
+            segment.size += writer.write(buffer, segment.size);
+        }
+        bytes += buffer.limit();
+    }
+
+    //Возвращает тело записи, если она целая и контрольная сумма совпадает, иначе null. Длина остаётся в header.
+    private byte[] readRecord(FileChannel channel, long size, long position) throws IOException {
+        if (position + HEADER > size) return null;
+        header.clear();
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0) return null;
+        }
+        int length = header.getInt(0);
+        if (length < 0 || position + HEADER + length > size) return null;
+
+        ByteBuffer body = ByteBuffer.allocate(length);
+        while (body.hasRemaining()) {
+            if (channel.read(body, position + HEADER + body.position()) < 0) return null;
+        }
+        crc.reset();
+        crc.update(body.array());
+        if ((int) crc.getValue() != header.getInt(4)) return null;
+        return body.array();
+    }
+
+    //Все записи прочитаны, сегменты больше не нужны. Следующая запись начнёт новый сегмент.
+    private void clear() {
+        while (!segments.isEmpty()) deleteFirst();
+        closeWriter();
+        pending.clear();
+        records = 0;
+        bytes = 0;
+    }
+
+    private void deleteFirst() {
+        Segment segment = segments.pollFirst();
+        closeReader();
+        if (segment == null) return;
+        if (segments.isEmpty()) closeWriter();
+        bytes -= segment.size;
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void closeWriter() {
+        try {
+            if (writer != null) writer.close();
+        } catch (IOException ignore) {
+        }
+        writer = null;
+    }
+
+    private void closeReader() {
+        try {
+            if (reader != null) reader.close();
+        } catch (IOException ignore) {
+        }
+        reader = null;
+    }
+
+    private static long parseSequence(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+
+    private static final class Segment {
+        private final Path file;
+        private long size;
+        private long read;
+
+        private Segment(Path file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+}
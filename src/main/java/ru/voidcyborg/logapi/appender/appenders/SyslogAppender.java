@@ -0,0 +1,368 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.IOScheduler;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.level.LogLevel;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Класс {@code SyslogAppender} отправляет события в syslog в формате RFC 5424 по UDP или TCP.
+ * Уровень события переводится в severity syslog: FATAL - 2, ERROR - 3, WARN - 4, INFO - 6, DEBUG и TRACE - 7.
+ * <p>
+ * The {@code SyslogAppender} class sends events to syslog in the RFC 5424 format over UDP or TCP.
+ * The level of an event is mapped to the syslog severity: FATAL - 2, ERROR - 3, WARN - 4, INFO - 6, DEBUG and TRACE - 7.
+ * <p>
+ * Неизменные части заголовка - приоритет для каждого уровня, имя хоста, имя приложения и PID - кодируются один раз,
+ * для каждого сообщения кодируется только время и текст. По UDP каждое сообщение отправляется отдельной датаграммой (RFC 5426),
+ * по TCP сообщения отправляются пачками с рамкой octet-counting (RFC 6587) через {@code SocketAppender},
+ * вместе с его буфером и переподключением.
+ * <p>
+ * The constant parts of the header - the priority for every level, the host name, the application name and the PID - are encoded once,
+ * only the time and the text are encoded for every message. Over UDP every message is sent in its own datagram (RFC 5426),
+ * over TCP messages are sent in batches with octet-counting framing (RFC 6587) through {@code SocketAppender},
+ * together with its buffer and reconnection.
+ * <p>
+ * Данный класс поддерживает несколько настроек:
+ * <p><b>host</b>, <b>port</b> - адрес syslog сервера. Address of the syslog server.
+ * <p><b>protocol</b> - {@code udp} (по умолчанию) или {@code tcp}. {@code udp} (default) or {@code tcp}.
+ * <p><b>facility</b> - номер facility от 0 до 23, по умолчанию 1 (user). Facility number from 0 to 23, 1 (user) by default.
+ * <p><b>appName</b> - имя приложения, по умолчанию logapi. Application name, logapi by default.
+ * <p><b>hostname</b> - имя хоста, по умолчанию имя локального хоста. Host name, the local host name by default.
+ * <p><b>maxMessageSize</b> - максимальный размер UDP сообщения в байтах, длинные обрезаются, по умолчанию 2048.
+ * Maximum size of a UDP message in bytes, longer ones are truncated, 2048 by default.
+ * <p>
+ * Остальные настройки TCP, например {@code bufferSize}, {@code reconnectDelay} и {@code spillPath}, передаются {@code SocketAppender}.
+ * <p>
+ * Other TCP settings, for example {@code bufferSize}, {@code reconnectDelay} and {@code spillPath}, are passed to {@code SocketAppender}.
+ * <p>
+ * Пример настроек:
+ * <p>
+ * Settings example:
+ * <blockquote><pre>
+ *     appender1=ru.voidcyborg.logapi.appender.appenders.SyslogAppender
+ *     appender1.host=127.0.0.1
+ *     appender1.port=514
+ *     appender1.protocol=udp
+ *     appender1.facility=16
+ *     appender1.appName=billing
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.appender.Appender
+ * @see ru.voidcyborg.logapi.appender.appenders.SocketAppender
+ */
+public final class SyslogAppender implements Appender {
+
+    private static final byte[] NIL = "-".getBytes(StandardCharsets.US_ASCII);
+    private static final ThreadLocal<Clock> clocks = ThreadLocal.withInitial(Clock::new);
+
+    private final ReentrantLock settingsLock = new ReentrantLock();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    //Приоритет "<PRI>1 " для каждого уровня и часть заголовка после времени " HOSTNAME APP-NAME PROCID - - ".
+    private final byte[][] priorities = new byte[LogLevel.values().length][];
+    private byte[] header;
+
+    private SocketAppender tcp;
+    private InetSocketAddress address;
+    private int maxMessageSize;
+
+    //Используется только в очереди планировщика.
+    private DatagramChannel udp;
+
+    private volatile IOScheduler.Lane lane;
+    private IOScheduler scheduler;
+    private volatile boolean settingsParsed;
+    private volatile boolean destroyed;
+
+
+    /**
+     * Данный метод предназначен инициализации настроек для данного Appender'а.
+     * Метод блокирующий, если настройки инициализированы и метод вызван повторно будет выбрашена ошибка.
+     * <p>
+     * This method is intended to initialize the settings for this Appender.
+     * The method is blocking, if the settings are initialized and the method is called again, an error will be thrown.
+     * <p>
+     *
+     * @param settings Настройки в виде мапы. Map settings.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    @Override
+    public void parseSettings(Map<String, String> settings) throws SettingsInitException {
+        settingsLock.lock();
+        try {
+            if (settings == null) throw new SettingsInitException("Settings of SyslogAppender can't be null.");
+            if (settingsParsed)
+                throw new SettingsInitException("Settings of SyslogAppender can't be parsed second time.");
+
+            try {
+                String protocol = settings.getOrDefault("protocol", "udp").trim().toLowerCase();
+                if (!protocol.equals("udp") && !protocol.equals("tcp"))
+                    throw new IllegalArgumentException("Unknown protocol: " + protocol);
+
+                int facility = Integer.parseInt(settings.getOrDefault("facility", "1").trim());
+                if (facility < 0 || facility > 23) throw new IllegalArgumentException("Facility must be from 0 to 23: " + facility);
+                for (LogLevel level : LogLevel.values()) {
+                    priorities[level.ordinal()] = ("<" + (facility * 8 + severity(level)) + ">1 ").getBytes(StandardCharsets.US_ASCII);
+                }
+
+                String hostname = settings.get("hostname");
+                if (hostname == null || hostname.isBlank()) hostname = localHostName();
+                String appName = settings.getOrDefault("appName", "logapi");
+                header = (" " + field(hostname, 255) + " " + field(appName, 48) + " " + field(RollingFileWriter.PID, 128) + " - - ")
+                        .getBytes(StandardCharsets.US_ASCII);
+                maxMessageSize = Math.max(Integer.parseInt(settings.getOrDefault("maxMessageSize", "2048").trim()), 480);
+
+                if (protocol.equals("tcp")) {
+                    Map<String, String> socket = new HashMap<>(settings);
+                    socket.remove("framing");
+                    tcp = new SocketAppender();
+                    tcp.parseSettings(socket);
+                } else {
+                    address = InetSocketAddress.createUnresolved(settings.get("host").trim(), Integer.parseInt(settings.get("port").trim()));
+                }
+            } catch (Exception e) {
+                throw new SettingsInitException("Failed to parse settings of SyslogAppender because of " + e);
+            }
+            scheduler = IOScheduler.getCurrent();
+            settingsParsed = true;
+        } finally {
+            settingsLock.unlock();
+        }
+    }
+
+    /**
+     * Отправляет строку с severity 6 (informational).
+     * <p>
+     * Sends the string with severity 6 (informational).
+     *
+     * @param text Строка которую необходимо записать. The string to be appended.
+     * @return Возвращает true если строка была передана в отправку. Returns true if the string was passed to be sent.
+     */
+    @Override
+    public boolean append(String text) {
+        return append(LogLevel.INFO, text, System.currentTimeMillis());
+    }
+
+    /**
+     * Отправляет событие с severity по его уровню и временем события в заголовке.
+     * Метод не блокирующий, то что он вернул true не значит что сообщение уже отправлено.
+     * <p>
+     * Sends the event with the severity by its level and the time of the event in the header.
+     * The method is not blocking, the fact that it returned true does not mean that the message has already been sent.
+     *
+     * @param event Событие которое необходимо записать. The event to be appended.
+     * @return Возвращает true если событие было передано в отправку. Returns true if the event was passed to be sent.
+     */
+    @Override
+    public boolean append(LogEvent event) {
+        if (event == null) return false;
+        return append(event.getLevel(), event.getText(), event.getTime());
+    }
+
+    /**
+     * Ожидает, пока все уже переданные сообщения будут отправлены, но не дольше указанного времени.
+     * <p>
+     * Waits until all messages already passed are sent, but no longer than the given time.
+     * <p>
+     *
+     * @param timeout Максимальное время ожидания. Maximum time to wait.
+     * @return Количество сообщений, которые не успели отправиться. Number of messages not sent in time.
+     */
+    @Override
+    public long flush(Duration timeout) {
+        if (tcp != null) return tcp.flush(timeout);
+        IOScheduler.Lane lane = this.lane;
+        if (lane != null && pending.get() > 0) lane.await(timeout);
+        return pending.get();
+    }
+
+    /**
+     * Возвращает количество отправленных сообщений.
+     * <p>
+     * Returns the number of sent messages.
+     */
+    public long getSent() {
+        return tcp != null ? tcp.getSent() : sent.get();
+    }
+
+    /**
+     * Возвращает количество отброшенных сообщений.
+     * <p>
+     * Returns the number of dropped messages.
+     */
+    public long getDropped() {
+        return tcp != null ? tcp.getDropped() : dropped.get();
+    }
+
+    /**
+     * Закрывает очередь для новых сообщений и закрывает соединение.
+     * <p>
+     * Closes the queue for new messages and closes the connection.
+     */
+    @Override
+    public void destroy() {
+        settingsLock.lock();
+        try {
+            destroyed = true;
+            if (tcp != null) tcp.destroy();
+            IOScheduler.Lane lane = this.lane;
+            if (lane == null) return;
+            lane.execute(this::close);
+            lane.close();
+        } catch (Exception ignore) {
+        } finally {
+            settingsLock.unlock();
+        }
+    }
+
+    private boolean append(LogLevel level, String text, long time) {
+        if (text == null) return false;
+        if (text.isEmpty()) return false;
+        if (!settingsParsed) return false;
+
+        if (tcp != null) return tcp.send(encode(level, text, time, true));
+
+        IOScheduler.Lane lane = this.lane;
+        if (lane == null && (lane = start()) == null) return false;
+
+        byte[] message = encode(level, text, time, false);
+        pending.incrementAndGet();
+        if (lane.execute(() -> send(message))) return true;
+        pending.decrementAndGet();
+        return false;
+    }
+
+    private IOScheduler.Lane start() {
+        settingsLock.lock();
+        try {
+            if (lane == null && !destroyed) lane = (scheduler != null ? scheduler : IOScheduler.getDefault()).newLane();
+            return lane;
+        } finally {
+            settingsLock.unlock();
+        }
+    }
+
+    //Собирает сообщение из заранее закодированных частей. Для TCP перед сообщением пишется его длина и пробел.
+    //Перевод строки в конце текста не нужен, syslog сам разделяет сообщения.
+    private byte[] encode(LogLevel level, String text, long time, boolean octetCounting) {
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) end--;
+        byte[] msg = text.substring(0, end).getBytes(StandardCharsets.UTF_8);
+        byte[] priority = priorities[(level == null ? LogLevel.INFO : level).ordinal()];
+        int length = priority.length + Clock.LENGTH + header.length + msg.length;
+        if (!octetCounting && length > maxMessageSize) {
+            int cut = Math.max(msg.length - (length - maxMessageSize), 0);
+            //Не разрываю многобайтовый символ UTF-8.
+            while (cut > 0 && (msg[cut] & 0xC0) == 0x80) cut--;
+            length -= msg.length - cut;
+            msg = Arrays.copyOf(msg, cut);
+        }
+
+        byte[] prefix = octetCounting ? (length + " ").getBytes(StandardCharsets.US_ASCII) : new byte[0];
+        ByteBuffer buffer = ByteBuffer.allocate(prefix.length + length);
+        buffer.put(prefix).put(priority);
+        clocks.get().write(buffer, time);
+        buffer.put(header).put(msg);
+        return buffer.array();
+    }
+
+    //Выполняется только в очереди планировщика. UDP не держит соединение, поэтому при ошибке канал просто открывается заново.
+    private void send(byte[] message) {
+        try {
+            if (udp == null) {
+                udp = DatagramChannel.open();
+                udp.configureBlocking(false);
+                udp.connect(new InetSocketAddress(address.getHostString(), address.getPort()));
+            }
+            if (udp.write(ByteBuffer.wrap(message)) > 0) sent.incrementAndGet();
+            else dropped.incrementAndGet();
+        } catch (Exception e) {
+            dropped.incrementAndGet();
+            close();
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private void close() {
+        try {
+            if (udp != null) udp.close();
+        } catch (Exception ignore) {
+        }
+        udp = null;
+    }
+
+    //Severity по RFC 5424.
+    static int severity(LogLevel level) {
+        return switch (level) {
+            case FATAL -> 2;
+            case ERROR -> 3;
+            case WARN -> 4;
+            case INFO, ALL, OFF -> 6;
+            case DEBUG, TRACE -> 7;
+        };
+    }
+
+    //Поле заголовка: только печатные ASCII символы без пробелов, не длиннее max, пустое поле заменяется на "-".
+    private static String field(String value, int max) {
+        if (value == null || value.isBlank()) return new String(NIL, StandardCharsets.US_ASCII);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < value.length() && builder.length() < max; i++) {
+            char c = value.charAt(i);
+            builder.append(c > 32 && c < 127 ? c : '_');
+        }
+        return builder.toString();
+    }
+
+    private static String localHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "-";
+        }
+    }
+
+
+    //Время RFC 3339 в UTC с миллисекундами. Часть до секунд кодируется один раз в секунду для каждого потока.
+    private static final class Clock {
+        private static final int LENGTH = 24;
+
+        private long second = Long.MIN_VALUE;
+        private byte[] prefix;
+
+        private void write(ByteBuffer buffer, long time) {
+            long second = Math.floorDiv(time, 1000);
+            if (second != this.second) {
+                LocalDateTime date = LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+                prefix = String.format("%04d-%02d-%02dT%02d:%02d:%02d.", date.getYear(), date.getMonthValue(), date.getDayOfMonth(),
+                        date.getHour(), date.getMinute(), date.getSecond()).getBytes(StandardCharsets.US_ASCII);
+                this.second = second;
+            }
+            int millis = Math.floorMod(time, 1000);
+            buffer.put(prefix)
+                    .put((byte) ('0' + millis / 100))
+                    .put((byte) ('0' + millis / 10 % 10))
+                    .put((byte) ('0' + millis % 10))
+                    .put((byte) 'Z');
+        }
+    }
+}
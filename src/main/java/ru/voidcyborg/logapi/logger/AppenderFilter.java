@@ -0,0 +1,225 @@
+package ru.voidcyborg.logapi.logger;
+
+import ru.voidcyborg.logapi.level.LogLevel;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Класс {@code AppenderFilter} представляет из себя неизменяемую цепочку условий, по которым Appender отбирает события:
+ * минимальный уровень, префиксы классов логгеров и метки. Событие проходит, только если выполнены все условия.
+ * Пустой список префиксов или меток означает, что это условие не проверяется.
+ * Метка с {@code !} исключает события с ней, события без метки при этом проходят, если других меток не указано.
+ * <p>
+ * The {@code AppenderFilter} class is an immutable chain of conditions by which an Appender selects events:
+ * the minimum level, prefixes of logger classes and markers. An event passes only if all conditions hold.
+ * An empty list of prefixes or markers means that this condition is not checked.
+ * A marker with {@code !} excludes events with it, events without a marker still pass if no other markers are given.
+ * <p>
+ * Группа заранее сводит фильтры всех Appender'ов в битовую маску уровней для каждого логгера,
+ * поэтому если событие не нужно ни одному Appender'у, то оно даже не форматируется.
+ * <p>
+ * The group compiles the filters of all Appenders in advance into a bit mask of levels for every logger,
+ * so if no Appender needs an event, it is not even formatted.
+ * <p>
+ * В файле настроек фильтр задаётся настройками Appender'а:
+ * <p>
+ * In the settings file the filter is set with the settings of the Appender:
+ * <blockquote><pre>
+ *     appender2.level=WARN
+ *     appender2.loggers=com.example.billing.,com.example.auth.
+ *     appender2.markers=AUDIT,SECURITY
+ *     appender3.markers=!COUNTED
+ * </pre></blockquote><p>
+ * Пример использования в коде:
+ * <p>
+ * Usage example in code:
+ * <blockquote><pre>
+ *     group.addAppender(appender, AppenderFilter.level(LogLevel.WARN).loggers("com.example.billing."));
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.LoggerGroup
+ * @see ru.voidcyborg.logapi.logger.Marker
+ */
+public final class AppenderFilter {
+
+    /**
+     * Фильтр, который пропускает все события.
+     * <p>
+     * A filter that passes all events.
+     */
+    public static final AppenderFilter ACCEPT_ALL = new AppenderFilter(LogLevel.ALL, new String[0], new Marker[0], new Marker[0]);
+
+    private final LogLevel level;
+    private final String[] loggers;
+    private final Marker[] markers;
+    private final Marker[] excluded;
+    private final int levelMask;
+
+
+    private AppenderFilter(LogLevel level, String[] loggers, Marker[] markers, Marker[] excluded) {
+        this.level = level;
+        this.loggers = loggers;
+        this.markers = markers;
+        this.excluded = excluded;
+
+        int mask = 0;
+        for (LogLevel type : LogLevel.values()) {
+            if (type == LogLevel.ALL || type == LogLevel.OFF) continue;
+            if (level == LogLevel.ALL || (level != LogLevel.OFF && type.ordinal() >= level.ordinal())) mask |= 1 << type.ordinal();
+        }
+        this.levelMask = mask;
+    }
+
+    /**
+     * Создаёт фильтр с минимальным уровнем событий.
+     * <p>
+     * Creates a filter with the minimum level of events.
+     *
+     * @param level Минимальный уровень. The minimum level.
+     * @return Новый фильтр. New filter.
+     */
+    public static AppenderFilter level(LogLevel level) {
+        return ACCEPT_ALL.withLevel(level);
+    }
+
+    /**
+     * Возвращает копию фильтра с другим минимальным уровнем.
+     * <p>
+     * Returns a copy of the filter with another minimum level.
+     *
+     * @param level Минимальный уровень. The minimum level.
+     * @return Новый фильтр. New filter.
+     */
+    public AppenderFilter withLevel(LogLevel level) {
+        return new AppenderFilter(level == null ? LogLevel.ALL : level, loggers, markers, excluded);
+    }
+
+    /**
+     * Возвращает копию фильтра, который пропускает только события логгеров классов с указанными префиксами.
+     * <p>
+     * Returns a copy of the filter that passes only events of loggers of classes with the given prefixes.
+     *
+     * @param prefixes Префиксы полных имён классов. Prefixes of fully qualified class names.
+     * @return Новый фильтр. New filter.
+     */
+    public AppenderFilter loggers(String... prefixes) {
+        String[] result = prefixes == null ? new String[0] : Arrays.stream(prefixes)
+                .filter(s -> s != null && !s.isBlank())
+                .map(String::trim)
+                .toArray(String[]::new);
+        return new AppenderFilter(level, result, markers, excluded);
+    }
+
+    /**
+     * Возвращает копию фильтра, который пропускает только события с одной из указанных меток.
+     * Имя с {@code !} в начале, например {@code "!COUNTED"}, наоборот отбрасывает события с этой меткой.
+     * <p>
+     * Returns a copy of the filter that passes only events with one of the given markers.
+     * A name starting with {@code !}, for example {@code "!COUNTED"}, drops events with this marker instead.
+     *
+     * @param names Имена меток. Names of the markers.
+     * @return Новый фильтр. New filter.
+     */
+    public AppenderFilter markers(String... names) {
+        String[] valid = names == null ? new String[0] : Arrays.stream(names)
+                .filter(s -> s != null && !s.isBlank())
+                .map(String::trim)
+                .filter(s -> !s.equals("!"))
+                .toArray(String[]::new);
+        Marker[] accepted = Arrays.stream(valid).filter(s -> s.charAt(0) != '!').map(Marker::of).toArray(Marker[]::new);
+        Marker[] excluded = Arrays.stream(valid).filter(s -> s.charAt(0) == '!').map(s -> Marker.of(s.substring(1))).toArray(Marker[]::new);
+        return new AppenderFilter(level, loggers, accepted, excluded);
+    }
+
+    /**
+     * Создаёт фильтр из настроек Appender'а {@code level}, {@code loggers} и {@code markers}.
+     * Если ни одна из них не указана, возвращает {@code ACCEPT_ALL}.
+     * <p>
+     * Creates a filter from the Appender settings {@code level}, {@code loggers} and {@code markers}.
+     * If none of them is specified, returns {@code ACCEPT_ALL}.
+     *
+     * @param settings Настройки Appender'а. Settings of the Appender.
+     * @return Фильтр. The filter.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    public static AppenderFilter parse(Map<String, String> settings) throws SettingsInitException {
+        if (settings == null) return ACCEPT_ALL;
+        String level = settings.get("level");
+        String loggers = settings.get("loggers");
+        String markers = settings.get("markers");
+        if (level == null && loggers == null && markers == null) return ACCEPT_ALL;
+
+        AppenderFilter filter = ACCEPT_ALL;
+        try {
+            if (level != null) filter = filter.withLevel(LogLevel.valueOf(level.trim()));
+        } catch (Exception e) {
+            throw new SettingsInitException("Failed to parse Appender level: " + level);
+        }
+        if (loggers != null) filter = filter.loggers(loggers.split(","));
+        if (markers != null) filter = filter.markers(markers.split(","));
+        return filter;
+    }
+
+    /**
+     * Возвращает минимальный уровень событий.
+     * <p>
+     * Returns the minimum level of events.
+     */
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Проверяет, проходит ли событие через фильтр.
+     * <p>
+     * Checks whether an event passes the filter.
+     *
+     * @param type   Уровень события. Level of the event.
+     * @param logger Класс логгера. Class of the logger.
+     * @param marker Метка события или null. Marker of the event or null.
+     * @return true если событие проходит. true if the event passes.
+     */
+    public boolean accepts(LogLevel type, Class<?> logger, Marker marker) {
+        return (levelMask & (1 << type.ordinal())) != 0 && acceptsLogger(logger) && acceptsMarker(marker);
+    }
+
+    //Биты уровней, которые проходят через фильтр.
+    int levelMask() {
+        return levelMask;
+    }
+
+    //Пропускает ли фильтр события без метки.
+    boolean acceptsUnmarked() {
+        return markers.length == 0;
+    }
+
+    boolean acceptsLogger(Class<?> logger) {
+        if (loggers.length == 0) return true;
+        if (logger == null) return false;
+        String name = logger.getName();
+        for (String prefix : loggers) {
+            if (name.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private boolean acceptsMarker(Marker marker) {
+        for (Marker dropped : excluded) {
+            if (dropped == marker) return false;
+        }
+        if (markers.length == 0) return true;
+        for (Marker accepted : markers) {
+            if (accepted == marker) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "AppenderFilter{level=" + level + ", loggers=" + Arrays.toString(loggers) + ", markers=" + Arrays.toString(markers)
+                + ", excluded=" + Arrays.toString(excluded) + '}';
+    }
+}
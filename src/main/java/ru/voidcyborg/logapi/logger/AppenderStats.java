@@ -0,0 +1,82 @@
+package ru.voidcyborg.logapi.logger;
+
+import ru.voidcyborg.logapi.appender.Appender;
+
+/**
+ * Класс {@code AppenderStats} представляет из себя снимок счётчиков очереди одного Appender'а при асинхронной доставке.
+ * <p>
+ * The {@code AppenderStats} class is a snapshot of the queue counters of one Appender with asynchronous delivery.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.LoggerGroup
+ * @see ru.voidcyborg.logapi.appender.Appender
+ */
+public final class AppenderStats {
+
+    private final Appender appender;
+    private final int queued;
+    private final long delivered;
+    private final long dropped;
+    private final long failed;
+
+
+    AppenderStats(Appender appender, int queued, long delivered, long dropped, long failed) {
+        this.appender = appender;
+        this.queued = queued;
+        this.delivered = delivered;
+        this.dropped = dropped;
+        this.failed = failed;
+    }
+
+    /**
+     * Возвращает Appender, к которому относятся счётчики.
+     * <p>
+     * Returns the Appender the counters belong to.
+     */
+    public Appender getAppender() {
+        return appender;
+    }
+
+    /**
+     * Возвращает количество строк в очереди на момент снимка.
+     * <p>
+     * Returns the number of strings in the queue at the time of the snapshot.
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Возвращает количество строк, которые Appender принял.
+     * <p>
+     * Returns the number of strings the Appender accepted.
+     */
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Возвращает количество строк, отброшенных из-за переполнения очереди.
+     * <p>
+     * Returns the number of strings dropped because the queue was full.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Возвращает количество строк, которые Appender отклонил или на которых выбросил исключение.
+     * <p>
+     * Returns the number of strings the Appender rejected or threw an exception on.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return appender.getClass().getSimpleName() + "{queued=" + queued + ", delivered=" + delivered
+                + ", dropped=" + dropped + ", failed=" + failed + '}';
+    }
+}
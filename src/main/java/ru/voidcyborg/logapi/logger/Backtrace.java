@@ -0,0 +1,130 @@
+package ru.voidcyborg.logapi.logger;
+
+import ru.voidcyborg.logapi.level.LogLevel;
+
+/**
+ * Класс {@code Backtrace} хранит в памяти последние события уровней ниже уровня группы, отдельно для каждого потока.
+ * Обычно они просто перезаписываются по кругу и никуда не пишутся, а когда в этом же потоке случается ERROR или FATAL,
+ * они записываются по порядку перед ошибкой. Так в логе оказываются подробности, которые привели к ошибке, без постоянной записи DEBUG.
+ * <p>
+ * The {@code Backtrace} class keeps in memory the latest events of levels below the group level, separately for every thread.
+ * Normally they are just overwritten in a circle and never written anywhere, and when an ERROR or FATAL happens on the same thread,
+ * they are written in order before the error. This way the log gets the details that led to the error without writing DEBUG all the time.
+ * <p>
+ * Кольцо каждого потока выделяется один раз при первом событии и дальше не растёт по числу событий, но хранит ссылки на строки,
+ * поэтому память одного кольца - это {@code size} ссылок плюс сами строки, какой бы длины они ни были.
+ * Кольцо живёт в {@code ThreadLocal} до смерти потока или до {@code clear()} в этом потоке, так что у пула из N потоков
+ * держится до N колец на каждую группу. События старше {@code maxAge} при выгрузке пропускаются.
+ * <p>
+ * The ring of every thread is allocated once on the first event and does not grow in the number of events, but it keeps references to strings,
+ * so the memory of one ring is {@code size} references plus the strings themselves, whatever their length.
+ * The ring lives in a {@code ThreadLocal} until the thread dies or {@code clear()} is called on that thread, so a pool of N threads
+ * keeps up to N rings for every group. Events older than {@code maxAge} are skipped on drain.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.Logger
+ * @see ru.voidcyborg.logapi.logger.LoggerGroup
+ */
+final class Backtrace {
+
+    private final ThreadLocal<Ring> rings = new ThreadLocal<>();
+
+    private volatile int mask;
+    private volatile int size;
+    private volatile long maxAge;
+
+
+    //Уровень, начиная с которого события запоминаются, размер кольца и возраст в миллисекундах, после которого событие не выгружается.
+    //OFF или размер 0 выключают запоминание, возраст 0 снимает ограничение.
+    void configure(LogLevel level, int size, long maxAge) {
+        int mask = 0;
+        if (level != null && level != LogLevel.OFF && size > 0) {
+            for (LogLevel type : LogLevel.values()) {
+                if (type == LogLevel.ALL || type == LogLevel.OFF) continue;
+                if (type.ordinal() < LogLevel.ERROR.ordinal() && (level == LogLevel.ALL || type.ordinal() >= level.ordinal()))
+                    mask |= 1 << type.ordinal();
+            }
+        }
+        this.size = Math.max(size, 0);
+        this.maxAge = Math.max(maxAge, 0);
+        this.mask = mask;
+    }
+
+    //Биты уровней, которые запоминаются.
+    int mask() {
+        return mask;
+    }
+
+    //Ошибка, после которой нужно записать запомненные события.
+    static boolean isTrigger(LogLevel type) {
+        return type == LogLevel.ERROR || type == LogLevel.FATAL;
+    }
+
+    //Запоминает событие текущего потока, самое старое затирается.
+    void record(LogLevel type, String text, long time) {
+        int size = this.size;
+        if (size <= 0) return;
+        Ring ring = rings.get();
+        if (ring == null || ring.texts.length != size) rings.set(ring = new Ring(size));
+        ring.add(type, text, time);
+    }
+
+    //Передаёт запомненные события текущего потока от старых к новым и очищает кольцо. События старше maxAge отбрасываются.
+    void drain(Sink sink, long now) {
+        Ring ring = rings.get();
+        if (ring == null || ring.count == 0) return;
+        long maxAge = this.maxAge;
+        ring.drain(sink, maxAge > 0 ? now - maxAge : Long.MIN_VALUE);
+    }
+
+    //Забывает события текущего потока и освобождает его кольцо.
+    void clear() {
+        rings.remove();
+    }
+
+    interface Sink {
+        void accept(LogLevel type, String text);
+    }
+
+
+    //Кольцо одного потока. Используется только своим потоком, поэтому синхронизация не нужна.
+    private static final class Ring {
+        private final String[] texts;
+        private final LogLevel[] levels;
+        private final long[] times;
+        private int head;
+        private int count;
+
+        private Ring(int size) {
+            this.texts = new String[size];
+            this.levels = new LogLevel[size];
+            this.times = new long[size];
+        }
+
+        private void add(LogLevel type, String text, long time) {
+            int index = (head + count) % texts.length;
+            texts[index] = text;
+            levels[index] = type;
+            times[index] = time;
+            if (count < texts.length) count++;
+            else head = (head + 1) % texts.length;
+        }
+
+        private void drain(Sink sink, long since) {
+            //Сначала очищаю, чтобы ошибка внутри записи не привела к повторной выгрузке тех же событий.
+            int head = this.head;
+            int count = this.count;
+            this.head = 0;
+            this.count = 0;
+            for (int i = 0; i < count; i++) {
+                int index = (head + i) % texts.length;
+                String text = texts[index];
+                LogLevel type = levels[index];
+                texts[index] = null;
+                levels[index] = null;
+                if (times[index] >= since) sink.accept(type, text);
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package ru.voidcyborg.logapi.logger;
+
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.IOScheduler;
+import ru.voidcyborg.logapi.appender.LogEvent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс {@code Dispatcher} асинхронно доставляет строки группы логгирования её Appender'ам.
+ * Вызывающий поток делает одну постановку в очередь группы независимо от количества Appender'ов.
+ * Дальше строка раздаётся в отдельные очереди каждого Appender'а, поэтому медленный Appender не задерживает остальные и сам поток приложения.
+ * У каждой очереди своя ёмкость и свой учёт отброшенных строк и ошибок.
+ * <p>
+ * The {@code Dispatcher} class asynchronously delivers the strings of a logging group to its Appenders.
+ * The calling thread does a single enqueue into the group queue regardless of the number of Appenders.
+ * From there the string is handed out to a separate queue of every Appender, so a slow Appender delays neither the others nor the application thread itself.
+ * Each queue has its own capacity and its own accounting of dropped strings and failures.
+ * <p>
+ * Appender, который завис в {@code append}, держит свой поток. Поэтому очереди не делят маленький пул {@code IOScheduler} с файловыми Appender'ами:
+ * на виртуальных потоках каждая очередь разбирается своим виртуальным потоком, а на платформенных у очереди группы и у очереди каждого Appender'а
+ * свой поток-демон. Поток останавливается, когда Appender убран из группы или группа уничтожена.
+ * <p>
+ * An Appender stuck in {@code append} holds its thread. So the queues do not share the small pool of {@code IOScheduler} with the file Appenders:
+ * on virtual threads every queue is drained by its own virtual thread, and on platform threads the group queue and the queue of every Appender
+ * have their own daemon thread. The thread stops when the Appender is removed from the group or the group is destroyed.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.LoggerGroup
+ * @see ru.voidcyborg.logapi.appender.IOScheduler
+ */
+final class Dispatcher {
+
+    private final Map<Appender, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final IOScheduler scheduler;
+
+    private volatile IOScheduler.Lane fanOut;
+    private IOScheduler fanOutScheduler;
+    private volatile int capacity;
+
+
+    //Планировщик контекста группы, null - общий планировщик, он создаётся только при включении доставки.
+    Dispatcher(IOScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    //Ёмкость очереди каждого Appender'а, 0 или меньше выключает асинхронную доставку.
+    //Очереди текущих Appender'ов создаются до того, как очередь группы начнёт принимать события.
+    synchronized void setCapacity(int capacity, Appender[] appenders) {
+        if (capacity > 0 && fanOut == null) {
+            fanOutScheduler = dedicated();
+            IOScheduler.Lane fanOut = (fanOutScheduler != null ? fanOutScheduler : scheduler()).newLane();
+            for (Appender appender : appenders) lanes.computeIfAbsent(appender, this::newLane);
+            this.fanOut = fanOut;
+        }
+        this.capacity = Math.max(capacity, 0);
+    }
+
+    boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    //Ставит событие в очередь группы. Возвращает false если доставка выключена, тогда строку нужно записать синхронно.
+    //Appender'ы передаются вместе со строкой, чтобы уже поставленная строка дошла до тех Appender'ов, которые были при записи.
+    boolean dispatch(LogEvent event, Appender[] appenders) {
+        IOScheduler.Lane fanOut = this.fanOut;
+        int capacity = this.capacity;
+        if (fanOut == null || capacity <= 0) return false;
+
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return true;
+        }
+        if (!fanOut.execute(() -> fanOut(event, appenders))) {
+            queued.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    //Создаёт очереди Appender'ов при добавлении Appender'а, до того как события для него попадут в очередь группы.
+    //Только здесь и в setCapacity очереди создаются, поэтому убранный Appender не получит очередь снова.
+    synchronized void prepare(Appender[] appenders) {
+        if (fanOut == null) return;
+        for (Appender appender : appenders) {
+            lanes.computeIfAbsent(appender, this::newLane);
+        }
+    }
+
+    //Раздаёт событие очередям всех Appender'ов. Выполняется в очереди группы.
+    //Событие, поставленное до того, как Appender убрали из группы, ему уже не доставляется и считается отброшенным.
+    private void fanOut(LogEvent event, Appender[] appenders) {
+        try {
+            int capacity = Math.max(this.capacity, 1);
+            for (Appender appender : appenders) {
+                Lane lane = lanes.get(appender);
+                if (lane != null) lane.offer(event, capacity);
+                else dropped.incrementAndGet();
+            }
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    //Ожидает доставки всех поставленных строк. Возвращает количество строк, которые не успели доставиться.
+    long flush(Duration timeout) {
+        long deadline = System.nanoTime() + Math.max(timeout.toNanos(), 0);
+        IOScheduler.Lane fanOut = this.fanOut;
+        if (fanOut != null) fanOut.await(timeout);
+
+        long lost = 0;
+        for (Lane lane : lanes.values()) {
+            lane.lane.await(Duration.ofNanos(Math.max(deadline - System.nanoTime(), 0)));
+            lost += lane.queued.get();
+        }
+        return lost + queued.get();
+    }
+
+    //Снимок счётчиков всех очередей.
+    List<AppenderStats> getStats() {
+        List<AppenderStats> result = new ArrayList<>();
+        for (Lane lane : lanes.values()) {
+            result.add(new AppenderStats(lane.appender, lane.queued.get(), lane.delivered.get(), lane.dropped.get(), lane.failed.get()));
+        }
+        return result;
+    }
+
+    //Количество строк отброшенных из-за переполнения очереди группы и доставок Appender'ам, которые уже убраны.
+    long getDropped() {
+        return dropped.get();
+    }
+
+    //Забывает очереди всех Appender'ов и останавливает их потоки. После этого строки пишутся синхронно.
+    synchronized void clear() {
+        for (Lane lane : lanes.values()) lane.close();
+        lanes.clear();
+        IOScheduler.Lane fanOut = this.fanOut;
+        this.fanOut = null;
+        if (fanOut != null) fanOut.close();
+        if (fanOutScheduler != null) fanOutScheduler.shutdown();
+        fanOutScheduler = null;
+    }
+
+    //Забывает очереди убранных Appender'ов, которых нет среди текущих.
+    synchronized void forget(Appender[] removed, Appender[] current) {
+        Set<Appender> keep = Collections.newSetFromMap(new IdentityHashMap<>());
+        keep.addAll(Arrays.asList(current));
+        for (Appender appender : removed) {
+            if (keep.contains(appender)) continue;
+            Lane lane = lanes.remove(appender);
+            if (lane != null) lane.close();
+        }
+    }
+
+
+    private IOScheduler scheduler() {
+        return scheduler != null ? scheduler : IOScheduler.getDefault();
+    }
+
+    private Lane newLane(Appender appender) {
+        IOScheduler own = dedicated();
+        return new Lane(appender, own, (own != null ? own : scheduler()).newLane());
+    }
+
+    //Отдельный планировщик на один поток для очереди, null если планировщик на виртуальных потоках и очереди и так не мешают друг другу.
+    private IOScheduler dedicated() {
+        return scheduler().isVirtual() ? null : new IOScheduler(1, false);
+    }
+
+
+    //Очередь одного Appender'а со своей ёмкостью и счётчиками.
+    private static final class Lane {
+        private final Appender appender;
+        private final IOScheduler own;
+        private final IOScheduler.Lane lane;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        private Lane(Appender appender, IOScheduler own, IOScheduler.Lane lane) {
+            this.appender = appender;
+            this.own = own;
+            this.lane = lane;
+        }
+
+        //Уже поставленные строки доставляются, после чего поток завершается.
+        private void close() {
+            lane.close();
+            if (own != null) own.shutdown();
+        }
+
+        private void offer(LogEvent event, int capacity) {
+            if (queued.incrementAndGet() > capacity || !lane.execute(() -> deliver(event))) {
+                queued.decrementAndGet();
+                dropped.incrementAndGet();
+            }
+        }
+
+        private void deliver(LogEvent event) {
+            try {
+                if (appender.append(event)) delivered.incrementAndGet();
+                else failed.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+    }
+}
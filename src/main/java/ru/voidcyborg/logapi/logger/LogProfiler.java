@@ -0,0 +1,359 @@
+package ru.voidcyborg.logapi.logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс {@code LogProfiler} измеряет, сколько времени и памяти тратит {@code Logger} на каждое место вызова:
+ * проверку уровня, поиск места вызова, форматирование и передачу Appender'ам.
+ * <p>
+ * The {@code LogProfiler} class measures how much time and memory {@code Logger} spends on each call site:
+ * the level check, the call site lookup, formatting and passing to Appenders.
+ * <p>
+ * Измеряется только случайная выборка событий, в среднем каждое N-е, поэтому профилирование можно держать включённым в продакшене.
+ * Оценка полной стоимости места вызова - это измеренная стоимость, умноженная на N.
+ * <p>
+ * Only a random sample of events is measured, every Nth on average, so profiling can be kept on in production.
+ * The estimated full cost of a call site is the measured cost multiplied by N.
+ * <p>
+ * Профилирование включается настройкой {@code ProfileSampling=N} или методом {@code setSampling(int every)}.
+ * Отчёт о самых дорогих местах вызова возвращает {@code getReport(int top)}, при {@code LoggerFactory.shutdown} он выводится в {@code System.err},
+ * количество мест в нём задаёт настройка {@code ProfileTop}, по умолчанию 10.
+ * <p>
+ * Profiling is enabled with the {@code ProfileSampling=N} setting or the {@code setSampling(int every)} method.
+ * The report on the most expensive call sites is returned by {@code getReport(int top)}, on {@code LoggerFactory.shutdown} it is printed to {@code System.err},
+ * the number of sites in it is set by the {@code ProfileTop} setting, 10 by default.
+ * <p>
+ * Профилировщик один на процесс. Если настройки применяют несколько {@code LoggingContext}, то действуют последние из них.
+ * <p>
+ * The profiler is one per process. If several {@code LoggingContext}s apply settings, the last of them wins.
+ * <p>
+ * Память измеряется через {@code jdk.management}. Модуль не обязателен: на модульном пути его нужно добавить
+ * через {@code --add-modules jdk.management}, без него измеряется только время.
+ * <p>
+ * Memory is measured with {@code jdk.management}. The module is optional: on the module path it must be added
+ * with {@code --add-modules jdk.management}, without it only time is measured.
+ * <p>
+ * События, отброшенные проверкой уровня, не доходят до поиска места вызова и в отчёт не попадают, их стоимость - одна проверка бита.
+ * <p>
+ * Events rejected by the level check never reach the call site lookup and are not in the report, their cost is one bit check.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.Logger
+ * @see ru.voidcyborg.logapi.logger.LoggerFactory
+ */
+public final class LogProfiler {
+
+    //Ограничение количества мест вызова, чтобы сгенерированные строки в месте вызова не съели память.
+    private static final int MAX_SITES = 4096;
+    private static final String OTHER = "#other";
+    private static final Phase[] PHASES = Phase.values();
+    private static final ConcurrentHashMap<String, Site> sites = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Sample> samples = ThreadLocal.withInitial(Sample::new);
+    private static final com.sun.management.ThreadMXBean memory = memoryBean();
+
+    private static volatile int every;
+    private static volatile int top = 10;
+
+
+    private LogProfiler() {
+    }
+
+    /**
+     * Задаёт частоту выборки: измеряется в среднем каждое указанное событие. 0 выключает профилирование.
+     * <p>
+     * Sets the sampling rate: every given event is measured on average. 0 disables profiling.
+     *
+     * @param every Частота выборки. Sampling rate.
+     */
+    public static void setSampling(int every) {
+        LogProfiler.every = Math.max(every, 0);
+    }
+
+    /**
+     * Возвращает частоту выборки, 0 если профилирование выключено.
+     * <p>
+     * Returns the sampling rate, 0 if profiling is disabled.
+     */
+    public static int getSampling() {
+        return every;
+    }
+
+    /**
+     * Возвращает true если профилирование включено.
+     * <p>
+     * Returns true if profiling is enabled.
+     */
+    public static boolean isEnabled() {
+        return every > 0;
+    }
+
+    /**
+     * Задаёт количество мест вызова в отчёте при завершении.
+     * <p>
+     * Sets the number of call sites in the report on shutdown.
+     *
+     * @param top Количество мест вызова. Number of call sites.
+     */
+    public static void setReportSize(int top) {
+        LogProfiler.top = Math.max(top, 1);
+    }
+
+    /**
+     * Возвращает места вызова, отсортированные по оценке потраченного времени, не больше указанного количества.
+     * <p>
+     * Returns call sites sorted by the estimated time spent, no more than the given number.
+     *
+     * @param top Максимальное количество мест вызова. Maximum number of call sites.
+     * @return Снимок счётчиков мест вызова. Snapshot of the call site counters.
+     */
+    public static List<Site> getReport(int top) {
+        List<Site> report = new ArrayList<>(sites.values());
+        report.sort(Comparator.comparingLong((Site site) -> site.getNanos()).reversed());
+        return report.size() > top ? new ArrayList<>(report.subList(0, Math.max(top, 0))) : report;
+    }
+
+    /**
+     * Возвращает отчёт в виде текста: для каждого места вызова оценку числа вызовов, времени и памяти по этапам,
+     * а также долю места и накопленную долю от общего времени логгирования.
+     * <p>
+     * Returns the report as text: for each call site the estimated number of calls, time and memory per phase,
+     * as well as the share of the site and the cumulative share of the total logging time.
+     *
+     * @param top Максимальное количество мест вызова. Maximum number of call sites.
+     * @return Текст отчёта. Text of the report.
+     */
+    public static String formatReport(int top) {
+        long total = 0;
+        for (Site site : sites.values()) total += site.getNanos();
+
+        StringBuilder builder = new StringBuilder("LogAPI profile, sampling every ").append(every).append(" events\n");
+        double cumulative = 0;
+        for (Site site : getReport(top)) {
+            double share = total == 0 ? 0 : site.getNanos() * 100.0 / total;
+            cumulative += share;
+            builder.append(String.format(Locale.ROOT, "%6.2f%% %6.2f%% %-48s calls=%d time=%dus bytes=%d",
+                    share, cumulative, site.getCallSite(), site.getCalls(), site.getNanos() / 1000, site.getBytes()));
+            for (Phase phase : PHASES) {
+                builder.append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append('=')
+                        .append(site.getNanos(phase) / 1000).append("us/").append(site.getBytes(phase)).append('b');
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Очищает накопленные счётчики.
+     * <p>
+     * Clears the accumulated counters.
+     */
+    public static void reset() {
+        sites.clear();
+    }
+
+    //Выводит отчёт при завершении, если что-то было измерено.
+    static void dump() {
+        if (sites.isEmpty()) return;
+        System.err.print(formatReport(top));
+    }
+
+    //Возвращает начатое измерение, если событие попало в выборку, иначе null. Без профилирования - одно чтение volatile поля.
+    static Sample sample() {
+        int every = LogProfiler.every;
+        if (every == 0) return null;
+        if (every > 1 && ThreadLocalRandom.current().nextInt(every) != 0) return null;
+        Sample sample = samples.get();
+        sample.begin(every);
+        return sample;
+    }
+
+    //jdk.management подключён как requires static, поэтому его классов может не быть. Тогда любая ошибка означает, что память не измеряется.
+    private static com.sun.management.ThreadMXBean memoryBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean memory = (com.sun.management.ThreadMXBean) bean;
+                if (memory.isThreadAllocatedMemorySupported() && memory.isThreadAllocatedMemoryEnabled()) return memory;
+            }
+        } catch (Throwable ignore) {
+        }
+        return null;
+    }
+
+
+    /**
+     * Этапы записи события, которые измеряются отдельно.
+     * <p>
+     * Phases of writing an event, which are measured separately.
+     */
+    public enum Phase {
+        /**
+         * Проверка уровня и меток. Level and marker check.
+         */
+        LEVEL_CHECK,
+        /**
+         * Поиск класса, метода и строки места вызова. Lookup of the class, method and line of the call site.
+         */
+        LOCATION,
+        /**
+         * Форматирование строки. Formatting of the line.
+         */
+        FORMAT,
+        /**
+         * Схлопывание повторов и передача Appender'ам или в очередь группы. Collapsing repeats and passing to Appenders or the group queue.
+         */
+        DISPATCH
+    }
+
+
+    /**
+     * Счётчики одного места вызова. Время и память - оценки для всех вызовов, а не только измеренных.
+     * <p>
+     * Counters of one call site. Time and memory are estimates for all calls, not only the measured ones.
+     */
+    public static final class Site {
+        private final String callSite;
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder[] nanos = new LongAdder[PHASES.length];
+        private final LongAdder[] bytes = new LongAdder[PHASES.length];
+
+        private Site(String callSite) {
+            this.callSite = callSite;
+            for (int i = 0; i < PHASES.length; i++) {
+                nanos[i] = new LongAdder();
+                bytes[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Возвращает место вызова в виде {@code File.java:method:line}.
+         * <p>
+         * Returns the call site as {@code File.java:method:line}.
+         */
+        public String getCallSite() {
+            return callSite;
+        }
+
+        /**
+         * Возвращает количество измеренных событий.
+         * <p>
+         * Returns the number of measured events.
+         */
+        public long getSamples() {
+            return samples.sum();
+        }
+
+        /**
+         * Возвращает оценку количества вызовов.
+         * <p>
+         * Returns the estimated number of calls.
+         */
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        /**
+         * Возвращает оценку времени в наносекундах на всех этапах.
+         * <p>
+         * Returns the estimated time in nanoseconds over all phases.
+         */
+        public long getNanos() {
+            long sum = 0;
+            for (LongAdder adder : nanos) sum += adder.sum();
+            return sum;
+        }
+
+        /**
+         * Возвращает оценку времени в наносекундах на этапе.
+         * <p>
+         * Returns the estimated time in nanoseconds in the phase.
+         */
+        public long getNanos(Phase phase) {
+            return nanos[phase.ordinal()].sum();
+        }
+
+        /**
+         * Возвращает оценку выделенной памяти в байтах на всех этапах, 0 если JVM не умеет её измерять.
+         * <p>
+         * Returns the estimated allocated memory in bytes over all phases, 0 if the JVM can't measure it.
+         */
+        public long getBytes() {
+            long sum = 0;
+            for (LongAdder adder : bytes) sum += adder.sum();
+            return sum;
+        }
+
+        /**
+         * Возвращает оценку выделенной памяти в байтах на этапе.
+         * <p>
+         * Returns the estimated allocated memory in bytes in the phase.
+         */
+        public long getBytes(Phase phase) {
+            return bytes[phase.ordinal()].sum();
+        }
+
+        @Override
+        public String toString() {
+            return callSite + "{calls=" + getCalls() + ", nanos=" + getNanos() + ", bytes=" + getBytes() + '}';
+        }
+    }
+
+
+    //Измерение одного события, своё у каждого потока. Этап получает время и память, прошедшие с конца предыдущего этапа.
+    static final class Sample {
+        private final long[] nanos = new long[PHASES.length];
+        private final long[] bytes = new long[PHASES.length];
+        private int weight;
+        private long lastNanos;
+        private long lastBytes;
+
+        private void begin(int weight) {
+            this.weight = weight;
+            for (int i = 0; i < nanos.length; i++) {
+                nanos[i] = 0;
+                bytes[i] = 0;
+            }
+            lastBytes = allocated();
+            lastNanos = System.nanoTime();
+        }
+
+        void mark(Phase phase) {
+            long now = System.nanoTime();
+            long allocated = allocated();
+            nanos[phase.ordinal()] += now - lastNanos;
+            bytes[phase.ordinal()] += allocated - lastBytes;
+            lastBytes = allocated;
+            lastNanos = System.nanoTime();
+        }
+
+        void finish(String[] clazzMethodLine) {
+            if (clazzMethodLine == null) return;
+            String key = clazzMethodLine[0] + ':' + clazzMethodLine[1] + ':' + clazzMethodLine[2];
+            Site site = sites.get(key);
+            if (site == null) {
+                if (sites.size() >= MAX_SITES) key = OTHER;
+                site = sites.computeIfAbsent(key, Site::new);
+            }
+            site.samples.increment();
+            site.calls.add(weight);
+            for (int i = 0; i < nanos.length; i++) {
+                if (nanos[i] != 0) site.nanos[i].add(nanos[i] * weight);
+                if (bytes[i] != 0) site.bytes[i].add(bytes[i] * weight);
+            }
+        }
+
+        private static long allocated() {
+            return memory == null ? 0 : memory.getCurrentThreadAllocatedBytes();
+        }
+    }
+}
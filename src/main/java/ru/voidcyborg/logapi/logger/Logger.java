@@ -1,12 +1,16 @@
 package ru.voidcyborg.logapi.logger;
 
 import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.LogEvent;
 import ru.voidcyborg.logapi.level.LogLevel;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Класс {@code Logger} предствляет из себя объект, который передаёт строки и объекты Appender'ам, которые уже их записывают.
@@ -48,30 +52,31 @@ import java.util.TimeZone;
 public final class Logger {
 
     private final SimpleDateFormat date = new SimpleDateFormat("[dd-MM-yyyy][HH:mm:ss]");
-    private final Set<Appender> appenders;
-    private final LogLevel level;
+    private final LoggerGroup group;
+    private final Class<?> clazz;
     private final TimeZone zone;
+    private final RepeatCollapser repeats;
+    private final StackTraceCache traces;
+    private final ThrowableRenderer renderer;
+    private final Dispatcher dispatcher;
+    private final Backtrace backtrace;
+    private Route route;
 
-    private final boolean fatal;
-    private final boolean error;
-    private final boolean warn;
-    private final boolean info;
-    private final boolean debug;
-    private final boolean trace;
-
-    //Может быть вызвано только в LoggerGroup. Set<Appender> не будет редактироваться, нужен только для чтения.
-    Logger(Set<Appender> appenders, LogLevel level, TimeZone zone) {
-        this.appenders = appenders;
-        this.level = level;
-        this.zone = zone;
+    //Может быть вызвано только в LoggerGroup. Уровень и Appender'ы читаются из группы при каждом событии, так как их можно заменить.
+    //RepeatCollapser, StackTraceCache, ThrowableRenderer и Dispatcher общие для всех логгеров группы, так как у них общие Appender'ы.
+    //Класс нужен фильтрам Appender'ов по префиксу класса логгера.
+    Logger(LoggerGroup group, Class<?> clazz) {
+        this.group = group;
+        this.clazz = clazz;
+        this.route = new Route(group.state, clazz);
+        this.zone = group.zone;
+        this.repeats = group.repeats;
+        this.traces = group.traces;
+        this.renderer = group.renderer;
+        this.dispatcher = group.dispatcher;
+        this.backtrace = group.backtrace;
 
         this.date.setTimeZone(this.zone);
-        fatal = shouldLog(LogLevel.FATAL);
-        error = shouldLog(LogLevel.ERROR);
-        warn = shouldLog(LogLevel.WARN);
-        info = shouldLog(LogLevel.INFO);
-        debug = shouldLog(LogLevel.DEBUG);
-        trace = shouldLog(LogLevel.TRACE);
     }
 
     /**
@@ -80,7 +85,7 @@ public final class Logger {
      * This method returns the logging level.
      */
     public LogLevel getLogLevel() {
-        return level;
+        return group.state.level;
     }
 
     /**
@@ -109,17 +114,7 @@ public final class Logger {
      * @param message Строка которую необходимо записать. The string to be logged.
      */
     public void trace(String message) {
-        if (!trace) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.TRACE.toString(), message, null, false));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.TRACE, null, message, null, false);
     }
 
 
@@ -140,17 +135,7 @@ public final class Logger {
      * @param obj     Любой объект который, также необходимо записать. Any object that also needs to be recorded.
      */
     public void trace(String message, Object obj) {
-        if (!trace) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.TRACE.toString(), message, obj, true));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.TRACE, null, message, obj, true);
     }
 
     /**
@@ -169,17 +154,7 @@ public final class Logger {
      * @param message Строка которую необходимо записать. The string to be logged.
      */
     public void debug(String message) {
-        if (!debug) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.DEBUG.toString(), message, null, false));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.DEBUG, null, message, null, false);
     }
 
     /**
@@ -199,17 +174,7 @@ public final class Logger {
      * @param obj     Любой объект который, также необходимо записать. Any object that also needs to be recorded.
      */
     public void debug(String message, Object obj) {
-        if (!debug) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.DEBUG.toString(), message, obj, true));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.DEBUG, null, message, obj, true);
     }
 
     /**
@@ -228,17 +193,7 @@ public final class Logger {
      * @param message Строка которую необходимо записать. The string to be logged.
      */
     public void info(String message) {
-        if (!info) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.INFO.toString(), message, null, false));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.INFO, null, message, null, false);
     }
 
     /**
@@ -258,17 +213,7 @@ public final class Logger {
      * @param obj     Любой объект который, также необходимо записать. Any object that also needs to be recorded.
      */
     public void info(String message, Object obj) {
-        if (!info) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.INFO.toString(), message, obj, true));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.INFO, null, message, obj, true);
     }
 
     /**
@@ -287,17 +232,7 @@ public final class Logger {
      * @param message Строка которую необходимо записать. The string to be logged.
      */
     public void warn(String message) {
-        if (!warn) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.WARN.toString(), message, null, false));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.WARN, null, message, null, false);
     }
 
     /**
@@ -317,17 +252,7 @@ public final class Logger {
      * @param obj     Любой объект который, также необходимо записать. Any object that also needs to be recorded.
      */
     public void warn(String message, Object obj) {
-        if (!warn) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.WARN.toString(), message, obj, true));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.WARN, null, message, obj, true);
     }
 
     /**
@@ -346,18 +271,7 @@ public final class Logger {
      * @param message Строка которую необходимо записать. The string to be logged.
      */
     public void error(String message) {
-        if (!error) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.ERROR.toString(), message, null, false));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
+        log(LogLevel.ERROR, null, message, null, false);
     }
 
     /**
@@ -377,17 +291,7 @@ public final class Logger {
      * @param obj     Любой объект который, также необходимо записать. Any object that also needs to be recorded.
      */
     public void error(String message, Object obj) {
-        if (!error) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.ERROR.toString(), message, obj, true));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.ERROR, null, message, obj, true);
     }
 
     /**
@@ -406,17 +310,7 @@ public final class Logger {
      * @param message Строка которую необходимо записать. The string to be logged.
      */
     public void fatal(String message) {
-        if (!fatal) return;
-        try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.FATAL.toString(), message, null, false));
-                } catch (Exception ignore) {
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        log(LogLevel.FATAL, null, message, null, false);
     }
 
     /**
@@ -436,61 +330,363 @@ public final class Logger {
      * @param obj     Любой объект который, также необходимо записать. Any object that also needs to be recorded.
      */
     public void fatal(String message, Object obj) {
-        if (!fatal) return;
+        log(LogLevel.FATAL, null, message, obj, true);
+    }
+
+    /**
+     * Данный метод записывает сообщение с меткой в те Appender'ы, фильтры которых пропускают данную метку.
+     * Если уровень логгирования данного метода выше или равен уровню логгирования LoggerGroup.
+     * <p>
+     * This method writes a message with a marker to the Appenders whose filters pass this marker.
+     * If the logging level of this method is higher or equal to the logging level of LoggerGroup.
+     * <p>
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param level   Уровень события. Level of the event.
+     * @param marker  Метка события, может быть null. Marker of the event, can be null.
+     * @param message Строка которую необходимо записать. The string to be logged.
+     */
+    public void log(LogLevel level, Marker marker, String message) {
+        log(level, marker, message, null, false);
+    }
+
+    /**
+     * Данный метод записывает сообщение с меткой в те Appender'ы, фильтры которых пропускают данную метку.
+     * Если уровень логгирования данного метода выше или равен уровню логгирования LoggerGroup.
+     * <p>
+     * This method writes a message with a marker to the Appenders whose filters pass this marker.
+     * If the logging level of this method is higher or equal to the logging level of LoggerGroup.
+     * <p>
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param level   Уровень события. Level of the event.
+     * @param marker  Метка события, может быть null. Marker of the event, can be null.
+     * @param message Строка которую необходимо записать. The string to be logged.
+     * @param obj     Любой объект который, также необходимо записать. Any object that also needs to be recorded.
+     */
+    public void log(LogLevel level, Marker marker, String message, Object obj) {
+        log(level, marker, message, obj, true);
+    }
+
+    //Нужно ли хоть одному Appender'у событие без метки с данным уровнем, или его нужно запомнить в Backtrace.
+    //Одна проверка бита в заранее посчитанных масках.
+    private boolean isEnabled(LogLevel type) {
+        return ((route().mask | backtrace.mask()) & (1 << type.ordinal())) != 0;
+    }
+
+    //Appender'ы события с меткой, или null если событие никому не нужно. Результат используется при записи, чтобы не искать их второй раз.
+    //Для события без метки Appender'ы не нужны, при записи они берутся из маски уровней, поэтому возвращается пустой массив.
+    private Appender[] targets(LogLevel type, Marker marker) {
+        if (type == null || type == LogLevel.ALL || type == LogLevel.OFF) return null;
+        if (marker == null) return isEnabled(type) ? Route.NONE : null;
+        LoggerGroup.State state = group.state;
+        if (!state.isEnabled(type)) return null;
+        Appender[] targets = route(state).targets(type, marker);
+        return targets.length > 0 ? targets : null;
+    }
+
+    private Route route() {
+        return route(group.state);
+    }
+
+    //Маска пересчитывается только при замене состояния группы. Гонка безопасна, Route неизменяемый.
+    private Route route(LoggerGroup.State state) {
+        Route route = this.route;
+        if (route.state != state) this.route = route = new Route(state, clazz);
+        return route;
+    }
+
+    //Записывает событие во все Appender'ы. Вызывается только из публичных методов, от этого зависит глубина стека при поиске места вызова.
+    //События с меткой не схлопываются, так как итог серии повторов записывается без метки.
+    //Проверка уровня выполняется здесь, после выборки профилировщика, чтобы замерялась сама проверка, а не её повтор.
+    //Этапы отмечаются по ходу записи. Место вызова событий из выборки ищется всегда, после последнего этапа, чтобы они попали в отчёт.
+    private void log(LogLevel type, Marker marker, String message, Object obj, boolean formatObject) {
+        LogProfiler.Sample sample = LogProfiler.sample();
+        Appender[] marked = targets(type, marker);
+        if (marked == null) return;
+        String[] clazzMethodLine = null;
         try {
-            for (Appender appender : appenders) {
-                try {
-                    appender.append(format(LogLevel.FATAL.toString(), message, obj, true));
-                } catch (Exception ignore) {
+            if (sample != null) sample.mark(LogProfiler.Phase.LEVEL_CHECK);
+            long now = System.currentTimeMillis();
+            int bit = 1 << type.ordinal();
+            Route route = route();
+
+            //Событие нужно только Appender'ам без строки: оно не форматируется, а место вызова ищется, только если нужно им.
+            //Если за это время Appender'ы заменили на те, которым строка нужна, то событие пишется обычным путём ниже.
+            //Схлопывание повторов и ошибка при включённом Backtrace тоже идут обычным путём.
+            boolean textless;
+            boolean site;
+            if (marker == null) {
+                textless = (route.mask & ~route.textMask & bit) != 0 && !repeats.isEnabled();
+                site = (route.siteMask & bit) != 0;
+            } else {
+                textless = !Route.needsText(marked);
+                site = Route.needsCallSite(marked);
+            }
+            if (textless && (backtrace.mask() == 0 || !Backtrace.isTrigger(type))) {
+                if (site) clazzMethodLine = LoggerFactory.getClassMethodLine(3);
+                if (sample != null) sample.mark(LogProfiler.Phase.LOCATION);
+                if (write(type, type, marker, null, clazzMethodLine, message)) {
+                    if (sample != null) sample.mark(LogProfiler.Phase.DISPATCH);
+                    return;
                 }
             }
+
+            if (clazzMethodLine == null) clazzMethodLine = LoggerFactory.getClassMethodLine(3);
+            if (sample != null) sample.mark(LogProfiler.Phase.LOCATION);
+
+            //Событие прошло проверку только ради Backtrace, значит оно не пишется, а запоминается.
+            if (marker == null && (route.mask & bit) == 0) {
+                if ((backtrace.mask() & bit) != 0) {
+                    String text = format(type.toString(), null, message, obj, formatObject, clazzMethodLine, now);
+                    if (sample != null) sample.mark(LogProfiler.Phase.FORMAT);
+                    backtrace.record(type, text, now);
+                    if (sample != null) sample.mark(LogProfiler.Phase.DISPATCH);
+                }
+                return;
+            }
+
+            if (marker == null && repeats.isEnabled()) {
+                RepeatCollapser.Run run = repeats.offer(this, type, message, obj, clazzMethodLine, now);
+                if (run == RepeatCollapser.SUPPRESSED) {
+                    if (sample != null) sample.mark(LogProfiler.Phase.DISPATCH);
+                    return;
+                }
+                if (run != null) writeRepeats(run);
+            }
+
+            if (Backtrace.isTrigger(type)) backtrace.drain((level, text) -> write(type, level, null, text, null, null), now);
+            if (sample != null) sample.mark(LogProfiler.Phase.DISPATCH);
+            String text = format(type.toString(), marker, message, obj, formatObject, clazzMethodLine, now);
+            if (sample != null) sample.mark(LogProfiler.Phase.FORMAT);
+            write(type, type, marker, text, clazzMethodLine, message);
+            if (sample != null) sample.mark(LogProfiler.Phase.DISPATCH);
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            if (sample != null) sample.finish(clazzMethodLine != null ? clazzMethodLine : LoggerFactory.getClassMethodLine(3));
         }
     }
 
-    //Вызывается 1 раз при создании класса, для того, чтобы установить boolean нужно ли логгировать с данным уровнем.
-    //Важен порядок элементов в enum LogLevel.
-    private boolean shouldLog(LogLevel currentLevel) {
-        if (this.level == LogLevel.ALL) return true;
-        if (this.level == LogLevel.OFF) return false;
-        return currentLevel.ordinal() >= this.level.ordinal();
+    //Передаёт уже отформатированную строку всем Appender'ам. Ошибка одного Appender'а не мешает остальным.
+    //Если включена асинхронная доставка, то вызывающий поток только ставит строку в очередь группы.
+    //Пока строка пишется, группа не уничтожит Appender'ы этого состояния даже если их заменили.
+    //Уровень проверяется ещё раз по тому же состоянию, чтобы событие не попало в новые Appender'ы по старому уровню.
+    //Строка передаётся только тем Appender'ам, фильтры которых её пропускают.
+    //Вместе со строкой Appender'ы получают её признаки, чтобы могли раскладывать события не разбирая строку.
+    //Запомненные Backtrace события пишутся в Appender'ы ошибки, но со своим уровнем в LogEvent.
+    //Без строки событие пишется, только если она не нужна ни одному Appender'у, иначе возвращается false и ничего не пишется.
+    private boolean write(LogLevel type, LogLevel level, Marker marker, String text, String[] callSite, String message) {
+        LoggerGroup.State state = group.enter();
+        try {
+            if (!state.isEnabled(type)) return true;
+            Route route = route(state);
+            Appender[] targets = marker == null ? route.targets[type.ordinal()] : route.targets(type, marker);
+            if (targets.length == 0) return true;
+            if (text == null) {
+                int bit = 1 << type.ordinal();
+                if (marker == null ? (route.textMask & bit) != 0 : Route.needsText(targets)) return false;
+                if (callSite == null && (marker == null ? (route.siteMask & bit) != 0 : Route.needsCallSite(targets))) return false;
+            }
+            LogEvent event = new LogEvent(text, level, group.name, clazz, marker == null ? null : marker.getName(), System.currentTimeMillis(),
+                    ThreadContext.getSnapshot(), callSite, message);
+            if (dispatcher.isEnabled() && dispatcher.dispatch(event, targets)) return true;
+
+            for (Appender appender : targets) {
+                try {
+                    appender.append(event);
+                } catch (Exception ignore) {
+                }
+            }
+            return true;
+        } finally {
+            state.exit();
+        }
+    }
+
+    //Записывает итог серии повторов, начатой этим логгером. Вызывается также из LoggerGroup и по таймеру RepeatCollapser.
+    void writeRepeats(RepeatCollapser.Run run) {
+        try {
+            write(run.level, run.level, null, formatRepeats(run), run.callSite, null);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     //Добавляет форматирование строки, оно неизменно.
-    private String format(String type, String message, Object obj, boolean formatObject) {
-        Date now = new Date();
-        String[] clazzMethodLine = LoggerFactory.getClassMethodLine(3);
+    //Метка, если она есть, записывается сразу после уровня.
+    private String format(String type, Marker marker, String message, Object obj, boolean formatObject, String[] clazzMethodLine, long time) {
         StringBuilder builder = new StringBuilder()
-                .append(date.format(now))
-                .append('[').append(type)
-                .append("][")
+                .append(date.format(new Date(time)))
+                .append('[').append(type);
+        if (marker != null) builder.append("][").append(marker.getName());
+        builder.append("][")
                 .append(Thread.currentThread().getName())
                 .append("][").append(clazzMethodLine[0])
                 .append("][").append(clazzMethodLine[1])
                 .append(':').append(clazzMethodLine[2])
-                .append("] ").append(message)
+                .append(']');
+        appendContext(builder);
+        builder.append(' ').append(message)
                 .append('\n');
-        if (formatObject) builder.append(objToString(obj));
+        if (formatObject) appendObject(builder, obj, time);
 
         return builder.toString();
     }
 
-    //Превращает объект в строку, если это Throwable то расписывает весь StackTrace.
-    private static String objToString(Object obj) {
-        if (obj == null) return "null\n";
+    //Ключи контекста потока записываются после места вызова в порядке настройки, отсутствующие пропускаются.
+    private void appendContext(StringBuilder builder) {
+        String[] keys = group.contextKeys;
+        if (keys.length == 0) return;
+        Map<String, String> context = ThreadContext.getSnapshot();
+        if (context.isEmpty()) return;
+
+        if (keys.length == 1 && keys[0].equals("*")) {
+            for (Map.Entry<String, String> entry : context.entrySet()) {
+                builder.append('[').append(entry.getKey()).append('=').append(entry.getValue()).append(']');
+            }
+            return;
+        }
+        for (String key : keys) {
+            String value = context.get(key);
+            if (value != null) builder.append('[').append(key).append('=').append(value).append(']');
+        }
+    }
+
+    //Строка с итогом серии повторов: сколько раз было подавлено сообщение и время первого и последнего повтора.
+    private String formatRepeats(RepeatCollapser.Run run) {
+        return format(run.level.toString(), null, "Last message repeated " + run.count + " times, first at "
+                + date.format(new Date(run.first)) + ", last at " + date.format(new Date(run.last)), null, false, run.callSite, run.last);
+    }
+
+    //Превращает объект в строку, если это Throwable то расписывает StackTrace вместе с причинами.
+    //Если включён кеш StackTrace'ов, то повторно встреченный StackTrace заменяется короткой ссылкой.
+    private void appendObject(StringBuilder builder, Object obj, long time) {
+        if (obj == null) {
+            builder.append("null\n");
+            return;
+        }
         if (obj instanceof Throwable throwable) {
-            StringBuilder builder = new StringBuilder();
-            builder.append(throwable.getClass().getName());
-            if (throwable.getLocalizedMessage() != null) builder.append(": ").append(throwable.getLocalizedMessage());
-            builder.append('\n');
-            for (StackTraceElement element : throwable.getStackTrace()) {
-                builder.append("\tat ").append(element).append('\n');
+            ThrowableRenderer.appendHeader(builder, throwable);
+
+            if (traces.isEnabled()) {
+                StackTraceCache.Sighting sighting = traces.see(StackTraceCache.fingerprint(throwable), time);
+                builder.append(" [").append(sighting.id);
+                if (!sighting.full) {
+                    builder.append(" seen ").append(sighting.seen).append("x]\n");
+                    return;
+                }
+                builder.append(']');
             }
-            return builder.toString();
+
+            builder.append('\n');
+            renderer.renderBody(builder, throwable);
+            return;
         }
-        return obj + "\n";
+        builder.append(obj).append('\n');
     }
 
 
+    //Какие Appender'ы нужны событиям без метки данного логгера в данном состоянии группы, по уровням.
+    //mask - биты уровней, для которых есть хоть один Appender, по ней публичные методы отбрасывают событие до форматирования.
+    //textMask - биты уровней, Appender'ам которых нужна строка, siteMask - нужно место вызова.
+    //Appender'ы событий с меткой считаются при первом событии с этой меткой и запоминаются, метки и так хранятся в Marker.of.
+    private static final class Route {
+        private static final Appender[] NONE = new Appender[0];
+
+        private final LoggerGroup.State state;
+        private final Class<?> clazz;
+        private final Appender[][] targets;
+        private final Map<Marker, Appender[][]> marked = new ConcurrentHashMap<>();
+        private final int mask;
+        private final int textMask;
+        private final int siteMask;
+
+        private Route(LoggerGroup.State state, Class<?> clazz) {
+            this.state = state;
+            this.clazz = clazz;
+            this.targets = new Appender[LogLevel.values().length][];
+
+            int mask = 0;
+            int textMask = 0;
+            int siteMask = 0;
+            for (LogLevel type : LogLevel.values()) {
+                int bit = 1 << type.ordinal();
+                List<Appender> result = new ArrayList<>();
+                if (state.isEnabled(type)) {
+                    for (int i = 0; i < state.appenders.length; i++) {
+                        AppenderFilter filter = state.filters[i];
+                        if ((filter.levelMask() & bit) != 0 && filter.acceptsUnmarked() && filter.acceptsLogger(clazz))
+                            result.add(state.appenders[i]);
+                    }
+                }
+                targets[type.ordinal()] = result.toArray(new Appender[0]);
+                if (!result.isEmpty()) mask |= bit;
+                for (Appender appender : result) {
+                    if (needsText(appender)) textMask |= bit;
+                    else if (needsCallSite(appender)) siteMask |= bit;
+                }
+            }
+            this.mask = mask;
+            this.textMask = textMask;
+            this.siteMask = siteMask;
+        }
+
+        private static boolean needsText(Appender[] appenders) {
+            for (Appender appender : appenders) {
+                if (needsText(appender)) return true;
+            }
+            return false;
+        }
+
+        private static boolean needsCallSite(Appender[] appenders) {
+            for (Appender appender : appenders) {
+                if (needsText(appender) || needsCallSite(appender)) return true;
+            }
+            return false;
+        }
+
+        //Appender чужой реализации не должен ломать маршрут, при ошибке считается, что ему нужно всё.
+        private static boolean needsText(Appender appender) {
+            try {
+                return appender.needsText();
+            } catch (Exception e) {
+                return true;
+            }
+        }
+
+        private static boolean needsCallSite(Appender appender) {
+            try {
+                return appender.needsCallSite();
+            } catch (Exception e) {
+                return true;
+            }
+        }
+
+        //Appender'ы для события с меткой данного уровня.
+        private Appender[] targets(LogLevel type, Marker marker) {
+            return marked.computeIfAbsent(marker, this::targets)[type.ordinal()];
+        }
+
+        //Appender'ы для событий с меткой по уровням. Уровень группы здесь не учитывается, он проверяется отдельно.
+        private Appender[][] targets(Marker marker) {
+            Appender[][] result = new Appender[LogLevel.values().length][];
+            for (LogLevel type : LogLevel.values()) {
+                List<Appender> list = new ArrayList<>();
+                for (int i = 0; i < state.appenders.length; i++) {
+                    if (state.filters[i].accepts(type, clazz, marker)) list.add(state.appenders[i]);
+                }
+                result[type.ordinal()] = list.isEmpty() ? NONE : list.toArray(new Appender[0]);
+            }
+            return result;
+        }
+    }
 }
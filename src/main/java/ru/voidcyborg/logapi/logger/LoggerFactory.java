@@ -1,6 +1,5 @@
 package ru.voidcyborg.logapi.logger;
 
-import ru.voidcyborg.logapi.appender.Appender;
 import ru.voidcyborg.logapi.level.LogLevel;
 import ru.voidcyborg.logapi.settings.Settings;
 import ru.voidcyborg.logapi.settings.SettingsInitException;
@@ -9,8 +8,8 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -40,9 +39,17 @@ import java.util.concurrent.ConcurrentHashMap;
  * </pre></blockquote><p>
  * Нельзя задавать настройки более 1 раза.
  * При попытке переопределить их будет выбрашена ошибка.
+ * Изменить настройки из файла можно через {@code reloadSettings(String path)} или {@code WatchSettings=true}.
  * <p>
  * You cannot set the settings more than once.
  * If you try to override them, an error will be thrown.
+ * Settings from a file can be changed with {@code reloadSettings(String path)} or {@code WatchSettings=true}.
+ * <p>
+ * Все статические методы работают с контекстом по умолчанию {@code LoggingContext.getDefault()}.
+ * Для нескольких независимых конфигураций в одной JVM создаются свои экземпляры {@code LoggingContext}.
+ * <p>
+ * All static methods work with the default context {@code LoggingContext.getDefault()}.
+ * For several independent configurations in one JVM, separate {@code LoggingContext} instances are created.
  * <p>
  *
  * @author VoidCyborg
@@ -50,18 +57,14 @@ import java.util.concurrent.ConcurrentHashMap;
  * @see ru.voidcyborg.logapi.appender.Appender
  * @see ru.voidcyborg.logapi.logger.Logger
  * @see ru.voidcyborg.logapi.logger.LoggerGroup
+ * @see ru.voidcyborg.logapi.logger.LoggingContext
  * @see java.text.SimpleDateFormat
  * @see java.util.Map
  * @see java.lang.String
  */
 public final class LoggerFactory {
 
-    private static final Map<String, LoggerGroup> loggerGroups = new ConcurrentHashMap<>();
-    private static volatile Appender[] appenders;
-    private static volatile Settings settings;
-    private static volatile LogLevel level;
-    private static volatile TimeZone zone = TimeZone.getTimeZone("Europe/Moscow");//Нужно, чтобы мог работать метод createCustomLoggerGroup(LogLevel level);
-    private static volatile boolean initialized;
+    private static final LoggingContext context = LoggingContext.getDefault();
 
 
     /**
@@ -80,17 +83,8 @@ public final class LoggerFactory {
      *
      * @param path Путь к файлу. The path to the file.
      */
-    public synchronized static void setSettings(String path) throws SettingsInitException {
-        if (path == null) throw new SettingsInitException("Path to settings can't be null");
-        if (initialized) throw new SettingsInitException("Settings is already initialized!");
-
-        Settings parsedSettings = parseSettings(path, null);
-
-        appenders = parsedSettings.getAppenders();
-        level = parsedSettings.getLevel();
-        zone = parsedSettings.getTimeZone();
-        settings = parsedSettings;
-        initialized = true;
+    public static void setSettings(String path) throws SettingsInitException {
+        context.setSettings(path);
     }
 
     /**
@@ -109,17 +103,8 @@ public final class LoggerFactory {
      *
      * @param stream Стрим к файлу с настройками. InputStream to file with settings
      */
-    public synchronized static void setSettings(InputStream stream) throws SettingsInitException {
-        if (stream == null) throw new SettingsInitException("stream to settings can't be null");
-        if (initialized) throw new SettingsInitException("Settings is already initialized!");
-
-        Settings parsedSettings = parseSettings(null, stream);
-
-        appenders = parsedSettings.getAppenders();
-        level = parsedSettings.getLevel();
-        zone = parsedSettings.getTimeZone();
-        settings = parsedSettings;
-        initialized = true;
+    public static void setSettings(InputStream stream) throws SettingsInitException {
+        context.setSettings(stream);
     }
 
     /**
@@ -134,10 +119,8 @@ public final class LoggerFactory {
      * @return Настройки системы логгирования. Logging system settings.
      * @throws ru.voidcyborg.logapi.settings.SettingsInitException
      */
-    public synchronized static Settings getSettings() throws SettingsInitException {
-        if (settings == null || !initialized)
-            throw new SettingsInitException("Log API settings not initialized properly. Settings is null");
-        return settings;
+    public static Settings getSettings() throws SettingsInitException {
+        return context.getSettings();
     }
 
 
@@ -153,10 +136,8 @@ public final class LoggerFactory {
      * @return Уровень логгирования из файла. Logging level from a file.
      * @throws ru.voidcyborg.logapi.settings.SettingsInitException
      */
-    public synchronized static LogLevel getLogLevel() throws SettingsInitException {
-        if (level == null || !initialized)
-            throw new SettingsInitException("Log API settings not initialized properly. LogLevel is null");
-        return level;
+    public static LogLevel getLogLevel() throws SettingsInitException {
+        return context.getLogLevel();
     }
 
     /**
@@ -174,11 +155,101 @@ public final class LoggerFactory {
      * @return Группу логгирования с настройками из файла. Logging group with settings from a file.
      * @throws java.lang.NullPointerException
      */
-    public synchronized static LoggerGroup getLoggerGroup(String name) throws NullPointerException {
-        if (appenders == null || !initialized)
-            throw new NullPointerException("Log API settings not initialized properly. Appenders is null");
-        if (name == null) throw new NullPointerException("LoggerGroup name can't be null");
-        return loggerGroups.computeIfAbsent(name, s -> new LoggerGroup(level, zone).addAppenders(appenders));
+    public static LoggerGroup getLoggerGroup(String name) throws NullPointerException {
+        return context.getLoggerGroup(name);
+    }
+
+    /**
+     * Перечитывает файл настроек и применяет их ко всем группам, созданным через {@code getLoggerGroup(String name)}.
+     * Уровень логгирования и Appender'ы из старых настроек заменяются атомарно, Appender'ы добавленные вручную остаются.
+     * События, уже переданные старым Appender'ам, дописываются, и только после этого старые Appender'ы уничтожаются.
+     * Логгирование при этом не блокируется. Часовой пояс и параметры {@code IOThreads}, {@code IOMode} не перезагружаются.
+     * <p>
+     * Re-reads the settings file and applies it to all groups created with {@code getLoggerGroup(String name)}.
+     * The logging level and the Appenders from the old settings are replaced atomically, manually added Appenders stay.
+     * Events already passed to the old Appenders are written out, and only after that the old Appenders are destroyed.
+     * Logging is not blocked meanwhile. The time zone and the {@code IOThreads}, {@code IOMode} parameters are not reloaded.
+     * <p>
+     * Если новые настройки некорректны, то выкидывает ошибку {@code SettingsInitException} и старые настройки продолжают работать.
+     * <p>
+     * If the new settings are incorrect, throws {@code SettingsInitException} and the old settings keep working.
+     *
+     * @param path Путь к файлу. The path to the file.
+     * @return Количество событий, которые старые Appender'ы не успели записать. Number of events the old Appenders did not write in time.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    public static long reloadSettings(String path) throws SettingsInitException {
+        return context.reloadSettings(path);
+    }
+
+    /**
+     * Начинает следить за файлом настроек. При каждом изменении файла настройки перезагружаются в фоновом потоке
+     * через {@code reloadSettings(String path)}. Если в настройках указано {@code WatchSettings=true},
+     * то {@code setSettings(String path)} вызывает данный метод сам.
+     * <p>
+     * Starts watching the settings file. On every change of the file the settings are reloaded on a background thread
+     * with {@code reloadSettings(String path)}. If {@code WatchSettings=true} is specified in the settings,
+     * {@code setSettings(String path)} calls this method itself.
+     *
+     * @param path Путь к файлу. The path to the file.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    public static void watchSettings(String path) throws SettingsInitException {
+        context.watchSettings(path);
+    }
+
+    /**
+     * Перестаёт следить за файлом настроек.
+     * <p>
+     * Stops watching the settings file.
+     */
+    public static void stopWatchingSettings() {
+        context.stopWatchingSettings();
+    }
+
+    /**
+     * Регистрирует хук завершения JVM, который записывает уже переданные строки во всех Appender'ах и уничтожает их.
+     * Если в настройках указан {@code ShutdownTimeout}, хук регистрируется автоматически.
+     * Если строки были потеряны, их количество выводится в {@code System.err}.
+     * <p>
+     * Registers a JVM shutdown hook that writes the strings already passed in all Appenders and destroys them.
+     * If {@code ShutdownTimeout} is specified in the settings, the hook is registered automatically.
+     * If strings were lost, their number is printed to {@code System.err}.
+     * <p>
+     *
+     * @param timeout Максимальное время ожидания записи. Maximum time to wait for writing.
+     */
+    public static void registerShutdownHook(Duration timeout) {
+        context.registerShutdownHook(timeout);
+    }
+
+    /**
+     * Удаляет ранее зарегистрированный хук завершения JVM.
+     * <p>
+     * Removes the previously registered JVM shutdown hook.
+     */
+    public static void unregisterShutdownHook() {
+        context.unregisterShutdownHook();
+    }
+
+    /**
+     * Записывает уже переданные строки во всех Appender'ах всех групп и уничтожает Appender'ы.
+     * Appender'ы сбрасываются параллельно, общее время ожидания не превышает указанного.
+     * <p>
+     * Writes the strings already passed in all Appenders of all groups and destroys the Appenders.
+     * The Appenders are flushed in parallel, the total wait time does not exceed the given one.
+     * <p>
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param timeout Максимальное время ожидания. Maximum time to wait.
+     * @return Количество строк, которые не успели записаться. Number of strings not written in time.
+     */
+    public static long shutdown(Duration timeout) {
+        return context.shutdown(timeout);
     }
 
     /**
@@ -196,31 +267,24 @@ public final class LoggerFactory {
      * @return Настройки для системы логгирования. Settings for the logging system.
      */
     public static Settings parseSettings(String path, InputStream stream) throws SettingsInitException {
+        return new Settings(readSettings(path, stream));
+    }
+
+    //Читает строки настроек из файла или стрима.
+    static String[] readSettings(String path, InputStream stream) throws SettingsInitException {
         if (path == null && stream == null)
             throw new SettingsInitException("Path to settings and input stream can't be null");
 
         List<String> lines = new ArrayList<>();
-        if (stream != null) {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    lines.add(line);
-                }
-            } catch (Exception e) {
-                throw new SettingsInitException(e.toString());
-            }
-        } else {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path)))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    lines.add(line);
-                }
-            } catch (Exception e) {
-                throw new SettingsInitException(e.toString());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream != null ? stream : new FileInputStream(path)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
             }
+        } catch (Exception e) {
+            throw new SettingsInitException(e.toString());
         }
-
-        return new Settings(lines.toArray(new String[0]));
+        return lines.toArray(new String[0]);
     }
 
     /**
@@ -235,8 +299,7 @@ public final class LoggerFactory {
      * @return Новую уникальную группу логгирования. New unique logging group.
      */
     public static LoggerGroup createCustomLoggerGroup(LogLevel level) {
-        if (level == null) return new LoggerGroup(LoggerFactory.getDefaultLevel(), zone);
-        return new LoggerGroup(level, zone);
+        return context.createCustomLoggerGroup(level);
     }
 
     /**
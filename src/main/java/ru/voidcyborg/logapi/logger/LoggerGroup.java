@@ -1,10 +1,15 @@
 package ru.voidcyborg.logapi.logger;
 
 import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.IOScheduler;
 import ru.voidcyborg.logapi.level.LogLevel;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
@@ -48,18 +53,30 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public final class LoggerGroup {
 
-    private final LogLevel level;
-    private final TimeZone zone;
-    private final Set<Appender> appenders = ConcurrentHashMap.newKeySet();
+    //Поля без модификатора читает Logger.
+    //Уровень и Appender'ы лежат в неизменяемом State, поэтому их можно заменить одной записью без блокировок в Logger.
+    final String name;
+    final TimeZone zone;
+    final RepeatCollapser repeats;
+    final StackTraceCache traces = new StackTraceCache();
+    final ThrowableRenderer renderer = new ThrowableRenderer();
+    final Dispatcher dispatcher;
+    final Backtrace backtrace = new Backtrace();
+    volatile String[] contextKeys = new String[0];
+    volatile State state;
     private final Map<Class<?>, Logger> loggers = new ConcurrentHashMap<>();
     private final Logger defaultLogger;
 
 
-    //Передаваемый уровень и зона не должны быть null.
-    LoggerGroup(LogLevel level, TimeZone zone) {
+    //Передаваемый уровень и зона не должны быть null. Имя null у групп созданных через createCustomLoggerGroup.
+    //Планировщик контекста нужен асинхронной доставке, null - общий планировщик.
+    LoggerGroup(String name, LogLevel level, TimeZone zone, IOScheduler scheduler) {
+        this.name = name;
         this.zone = zone;
-        this.level = level;
-        this.defaultLogger = loggers.computeIfAbsent(LoggerGroup.class, clazz -> new Logger(this.appenders, this.level, this.zone));
+        this.dispatcher = new Dispatcher(scheduler);
+        this.repeats = new RepeatCollapser(scheduler);
+        this.state = new State(level, new Appender[0], new AppenderFilter[0]);
+        this.defaultLogger = loggers.computeIfAbsent(LoggerGroup.class, clazz -> new Logger(this, clazz));
     }
 
 
@@ -87,16 +104,117 @@ public final class LoggerGroup {
         }
 
         return loggers.computeIfAbsent(frame, clazz -> {
-            defaultLogger.trace("Created new logger - " + clazz.getSimpleName() + " - " + this.level + " - " + this.zone);
-            return new Logger(this.appenders, this.level, this.zone);
+            defaultLogger.trace("Created new logger - " + clazz.getSimpleName() + " - " + this.state.level + " - " + this.zone);
+            return new Logger(this, clazz);
         });
     }
 
 
+    /**
+     * Данный метод ожидает, пока все Appender'ы данной группы запишут уже переданные строки, но не дольше указанного времени.
+     * Время ожидания общее для всех Appender'ов группы.
+     * <p>
+     * This method waits until all Appenders of this group write the strings already passed, but no longer than the given time.
+     * The wait time is shared by all Appenders of the group.
+     * <p>
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param timeout Максимальное время ожидания. Maximum time to wait.
+     * @return Количество строк, которые не успели записаться. Number of strings not written in time.
+     */
+    public long flush(Duration timeout) {
+        long lost = 0;
+        try {
+            flushRepeats();
+            long deadline = System.nanoTime() + Math.max(timeout.toNanos(), 0);
+            lost += this.dispatcher.flush(timeout);
+
+            for (Appender appender : this.state.appenders) {
+                try {
+                    lost += appender.flush(Duration.ofNanos(Math.max(deadline - System.nanoTime(), 0)));
+                } catch (Exception ignore) {
+                }
+            }
+        } catch (Exception ignore) {
+        }
+        return lost;
+    }
+
+    //Записывает итог незавершённой серии повторов.
+    void flushRepeats() {
+        RepeatCollapser.Run run = this.repeats.drain();
+        if (run != null) run.logger.writeRepeats(run);
+    }
+
+    //Ожидает доставки строк из очередей асинхронной доставки, но не записи самими Appender'ами.
+    long flushDispatch(Duration timeout) {
+        return this.dispatcher.flush(timeout);
+    }
+
+    //Appender'ы группы, нужны LoggerFactory для параллельного сброса при завершении приложения.
+    List<Appender> getAppenders() {
+        return List.of(this.state.appenders);
+    }
+
+    //Атомарно заменяет уровень и Appender'ы группы: убирает remove, добавляет add с фильтрами filters, остальные Appender'ы остаются.
+    //filters может быть null или короче add, тогда новый Appender получает все события, а у уже добавленного остаётся прежний фильтр.
+    //Возвращает старое состояние, события которого ещё могут записываться в старые Appender'ы.
+    synchronized State swap(LogLevel level, Appender[] remove, Appender[] add, AppenderFilter[] filters) {
+        Set<Appender> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (remove != null) removed.addAll(Arrays.asList(remove));
+
+        Map<Appender, AppenderFilter> result = new LinkedHashMap<>();
+        State old = this.state;
+        for (int i = 0; i < old.appenders.length; i++) {
+            if (!removed.contains(old.appenders[i])) result.put(old.appenders[i], old.filters[i]);
+        }
+        if (add != null) {
+            for (int i = 0; i < add.length; i++) {
+                if (add[i] == null) continue;
+                AppenderFilter filter = filters != null && i < filters.length ? filters[i] : null;
+                if (filter == null) filter = result.getOrDefault(add[i], AppenderFilter.ACCEPT_ALL);
+                result.put(add[i], filter);
+            }
+        }
+
+        Appender[] appenders = result.keySet().toArray(new Appender[0]);
+        this.dispatcher.prepare(appenders);
+        this.state = new State(level == null ? old.level : level, appenders, result.values().toArray(new AppenderFilter[0]));
+        return old;
+    }
+
+    //Возвращает текущее состояние и отмечает, что поток начал запись в его Appender'ы.
+    //Если состояние заменили между чтением и отметкой, то отметка снимается и берётся новое состояние,
+    //поэтому после замены в старое состояние новые записи не попадают.
+    State enter() {
+        while (true) {
+            State state = this.state;
+            state.active.increment();
+            if (state == this.state) return state;
+            state.active.decrement();
+        }
+    }
+
+    //Ожидает, пока потоки допишут события старого состояния и асинхронная доставка раздаст их Appender'ам.
+    //Возвращает количество событий, которые не успели доставиться.
+    long retire(State old, Duration timeout) {
+        long deadline = System.nanoTime() + Math.max(timeout.toNanos(), 0);
+        boolean drained = old.awaitIdle(deadline);
+        long lost = this.dispatcher.flush(Duration.ofNanos(Math.max(deadline - System.nanoTime(), 0)));
+        this.dispatcher.forget(old.appenders, this.state.appenders);
+        return drained ? lost : lost + 1;
+    }
+
     /**
      * Данный метод уничтожает группу логгирования.
+     * При асинхронной доставке перед уничтожением Appender'ов до одной секунды ожидается доставка уже поставленных строк.
      * <p>
      * This method destroy the logging group.
+     * With asynchronous delivery, up to one second is spent delivering the strings already queued before the Appenders are destroyed.
      * <p>
      * <p>
      * Не должно быть выбрашено каких-либо исключений.
@@ -106,16 +224,208 @@ public final class LoggerGroup {
      */
     public void destroy() {
         try {
-            List<Appender> cashed = new ArrayList<>(this.appenders);
-            this.appenders.clear();
+            flushRepeats();
+            this.repeats.close();
+            State old = swap(null, this.state.appenders, null, null);
+            old.awaitIdle(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+            if (this.dispatcher.isEnabled()) this.dispatcher.flush(Duration.ofSeconds(1));
+            this.dispatcher.clear();
 
-            for (Appender appender : cashed) {
+            for (Appender appender : old.appenders) {
                 appender.destroy();
             }
         } catch (Exception ignore) {
         }
     }
 
+    /**
+     * Данный метод задаёт окно схлопывания повторяющихся сообщений в миллисекундах.
+     * Подряд идущие события с одинаковым уровнем, сообщением, объектом и местом вызова внутри окна не записываются,
+     * вместо них записывается одна строка с количеством повторов, временем первого и последнего события.
+     * Итог записывается следующим другим событием, или по таймеру по истечении окна.
+     * Значение 0 или меньше отключает схлопывание.
+     * <p>
+     * This method sets the window for collapsing repeated messages in milliseconds.
+     * Consecutive events with the same level, message, object and call site within the window are not written,
+     * instead a single line with the number of repeats and the time of the first and last event is written.
+     * The summary is written by the next different event, or by a timer when the window expires.
+     * A value of 0 or less disables collapsing.
+     * <p>
+     *
+     * @param millis Окно в миллисекундах. Window in milliseconds.
+     * @return Данную группу логгирования. This logging group.
+     */
+    public LoggerGroup setRepeatWindow(long millis) {
+        if (millis <= 0) flushRepeats();
+        this.repeats.setWindow(millis);
+        return this;
+    }
+
+    /**
+     * Данный метод включает запоминание событий, которые не проходят по уровню группы.
+     * События с уровнем от {@code level} и ниже уровня группы хранятся в кольце фиксированного размера отдельно для каждого потока
+     * и записываются по порядку перед ERROR или FATAL в этом же потоке. В остальное время они никуда не пишутся.
+     * {@code LogLevel.OFF} или размер 0 выключают запоминание. События старше минуты перед ошибкой не записываются.
+     * Кольцо потока хранит ссылки на строки событий и живёт до смерти потока или до {@code clearBacktrace()} в нём.
+     * <p>
+     * This method enables remembering events that do not pass the group level.
+     * Events with a level from {@code level} and below the group level are kept in a ring of fixed size separately for every thread
+     * and are written in order before an ERROR or FATAL on the same thread. The rest of the time they are not written anywhere.
+     * {@code LogLevel.OFF} or size 0 disable remembering. Events older than a minute are not written before an error.
+     * The ring of a thread keeps references to the event strings and lives until the thread dies or {@code clearBacktrace()} is called on it.
+     * <p>
+     *
+     * @param level Минимальный уровень запоминаемых событий. Minimum level of remembered events.
+     * @param size  Количество событий на поток. Number of events per thread.
+     * @return Данную группу логгирования. This logging group.
+     */
+    public LoggerGroup setBacktrace(LogLevel level, int size) {
+        return setBacktrace(level, size, 60_000);
+    }
+
+    /**
+     * То же, что и {@code setBacktrace(LogLevel level, int size)}, но события старше {@code maxAge} перед ошибкой не записываются.
+     * Так ошибка не тянет за собой события давно завершённой работы этого же потока. 0 снимает ограничение.
+     * <p>
+     * The same as {@code setBacktrace(LogLevel level, int size)}, but events older than {@code maxAge} are not written before an error.
+     * This way an error does not bring along events of long finished work of the same thread. 0 removes the limit.
+     * <p>
+     *
+     * @param level  Минимальный уровень запоминаемых событий. Minimum level of remembered events.
+     * @param size   Количество событий на поток. Number of events per thread.
+     * @param maxAge Возраст события в миллисекундах. Age of an event in milliseconds.
+     * @return Данную группу логгирования. This logging group.
+     */
+    public LoggerGroup setBacktrace(LogLevel level, int size, long maxAge) {
+        this.backtrace.configure(level, size, maxAge);
+        return this;
+    }
+
+    /**
+     * Забывает запомненные события текущего потока и освобождает его кольцо. Вызывается в конце задачи в пуле потоков,
+     * чтобы ошибка следующей задачи не записала события предыдущей, а кольцо не висело в потоке, который больше не логгирует.
+     * <p>
+     * Forgets the remembered events of the current thread and frees its ring. It is called at the end of a task in a thread pool,
+     * so that an error of the next task does not write events of the previous one, and the ring does not stay in a thread that no longer logs.
+     */
+    public void clearBacktrace() {
+        this.backtrace.clear();
+    }
+
+    /**
+     * Данный метод задаёт ключи контекста потока {@code ThreadContext}, которые записываются в строку после места вызова: {@code [requestId=42]}.
+     * Ключи записываются в указанном порядке, отсутствующие в контексте пропускаются. {@code "*"} записывает все ключи контекста.
+     * Без ключей контекст в строку не записывается, но Appender'ы всё равно получают его в {@code LogEvent}.
+     * <p>
+     * This method sets the keys of the thread context {@code ThreadContext} that are written into the line after the call site: {@code [requestId=42]}.
+     * Keys are written in the given order, keys missing from the context are skipped. {@code "*"} writes all keys of the context.
+     * Without keys the context is not written into the line, but Appenders still receive it in {@code LogEvent}.
+     * <p>
+     *
+     * @param keys Ключи контекста. Keys of the context.
+     * @return Данную группу логгирования. This logging group.
+     */
+    public LoggerGroup setContextKeys(String... keys) {
+        this.contextKeys = keys == null ? new String[0] : Arrays.stream(keys)
+                .filter(s -> s != null && !s.isBlank())
+                .map(String::trim)
+                .toArray(String[]::new);
+        return this;
+    }
+
+    /**
+     * Данный метод настраивает кеш StackTrace'ов.
+     * Впервые встреченный StackTrace записывается полностью вместе с идентификатором {@code [trace#9f1c2a7b3e4d5c6f]},
+     * повторно встреченный записывается короткой ссылкой {@code [trace#9f1c2a7b3e4d5c6f seen 523x]}.
+     * Когда кеш заполнен, вытесняется StackTrace который дольше всех не встречался.
+     * <p>
+     * This method configures the stack trace cache.
+     * A stack trace seen for the first time is written in full together with the id {@code [trace#9f1c2a7b3e4d5c6f]},
+     * a repeated one is written as a short reference {@code [trace#9f1c2a7b3e4d5c6f seen 523x]}.
+     * When the cache is full, the least recently seen stack trace is evicted.
+     * <p>
+     *
+     * @param maxSize Максимальное количество StackTrace'ов в кеше, 0 или меньше отключает кеш. Maximum number of cached stack traces, 0 or less disables the cache.
+     * @param expire  Через сколько миллисекунд StackTrace снова будет записан полностью, 0 - никогда. After how many milliseconds the stack trace is written in full again, 0 - never.
+     * @return Данную группу логгирования. This logging group.
+     */
+    public LoggerGroup setTraceCache(int maxSize, long expire) {
+        this.traces.configure(maxSize, expire);
+        return this;
+    }
+
+    /**
+     * Данный метод настраивает запись исключений.
+     * Причины и подавленные исключения записываются до указанной глубины вложенности,
+     * кадры общие с внешним исключением заменяются строкой {@code ... N common frames omitted},
+     * а подряд идущие кадры из указанных пакетов заменяются строкой {@code ... N filtered frames}.
+     * <p>
+     * This method configures how exceptions are written.
+     * Causes and suppressed exceptions are written up to the given nesting depth,
+     * frames in common with the enclosing exception are replaced with the line {@code ... N common frames omitted},
+     * and consecutive frames from the given packages are replaced with the line {@code ... N filtered frames}.
+     * <p>
+     *
+     * @param maxDepth         Максимальная глубина вложенности причин, 0 - только само исключение. Maximum nesting depth of causes, 0 - only the exception itself.
+     * @param filteredPackages Префиксы пакетов, кадры которых не записываются. Prefixes of packages whose frames are not written.
+     * @return Данную группу логгирования. This logging group.
+     */
+    public LoggerGroup setThrowableRendering(int maxDepth, String... filteredPackages) {
+        this.renderer.setMaxDepth(maxDepth);
+        this.renderer.setFilteredPackages(filteredPackages);
+        return this;
+    }
+
+    /**
+     * Данный метод включает асинхронную доставку строк Appender'ам.
+     * Поток приложения только ставит строку в очередь группы, а каждый Appender получает её из своей очереди,
+     * которую разбирает свой поток. Медленный или зависший Appender не задерживает остальные.
+     * Если очередь Appender'а заполнена, строка для него отбрасывается и учитывается в {@code getAppenderStats()}.
+     * Значение 0 или меньше оставляет синхронную доставку в потоке приложения.
+     * <p>
+     * This method enables asynchronous delivery of strings to Appenders.
+     * The application thread only enqueues the string into the group queue, and each Appender gets it from its own queue,
+     * drained by its own thread. A slow or stuck Appender does not delay the others.
+     * If the queue of an Appender is full, the string is dropped for it and counted in {@code getAppenderStats()}.
+     * A value of 0 or less keeps synchronous delivery on the application thread.
+     * <p>
+     *
+     * @param capacity Ёмкость очереди каждого Appender'а. Queue capacity of each Appender.
+     * @return Данную группу логгирования. This logging group.
+     */
+    public synchronized LoggerGroup setAsyncDispatch(int capacity) {
+        this.dispatcher.setCapacity(capacity, this.state.appenders);
+        return this;
+    }
+
+    /**
+     * Данный метод возвращает снимок счётчиков очередей Appender'ов при асинхронной доставке.
+     * При синхронной доставке возвращает пустой список.
+     * <p>
+     * This method returns a snapshot of the Appender queue counters with asynchronous delivery.
+     * With synchronous delivery it returns an empty list.
+     *
+     * @return Счётчики очередей. Queue counters.
+     */
+    public List<AppenderStats> getAppenderStats() {
+        return this.dispatcher.getStats();
+    }
+
+    /**
+     * Данный метод возвращает количество строк, отброшенных из-за переполнения общей очереди группы при асинхронной доставке.
+     * Такие строки не попали ни в один Appender. Сюда же считаются строки, которые не доставлены Appender'у, убранному из группы,
+     * пока строка ждала в общей очереди.
+     * <p>
+     * This method returns the number of strings dropped because the shared group queue was full with asynchronous delivery.
+     * Such strings did not reach any Appender. Strings not delivered to an Appender that was removed from the group
+     * while the string waited in the shared queue are counted here as well.
+     *
+     * @return Количество отброшенных строк. Number of dropped strings.
+     */
+    public long getDispatchDropped() {
+        return this.dispatcher.getDropped();
+    }
+
     /**
      * Данный метод добавляет новый Appender в данную группу логгирования.
      * <p>
@@ -132,7 +442,31 @@ public final class LoggerGroup {
      */
     public LoggerGroup addAppender(Appender appender) {
         if (appender != null) {
-            appenders.add(appender);
+            swap(null, null, new Appender[]{appender}, null);
+        }
+        return this;
+    }
+
+    /**
+     * Данный метод добавляет новый Appender в данную группу логгирования вместе с фильтром событий.
+     * Appender получает только те события, которые проходят через фильтр. Если Appender уже есть в группе, то его фильтр заменяется.
+     * <p>
+     * This method adds a new Appender to the given logging group together with an event filter.
+     * The Appender receives only the events that pass the filter. If the Appender is already in the group, its filter is replaced.
+     * <p>
+     * <p>
+     * Не должно быть выбрашено каких-либо исключений.
+     * <p>
+     * No exceptions should be thrown.
+     * <p>
+     *
+     * @param appender Appender который необходимо добавить. Appender to be added.
+     * @param filter   Фильтр событий, null - все события. Event filter, null - all events.
+     * @return Данную группу логгирования. This logging group.
+     */
+    public LoggerGroup addAppender(Appender appender, AppenderFilter filter) {
+        if (appender != null) {
+            swap(null, null, new Appender[]{appender}, new AppenderFilter[]{filter});
         }
         return this;
     }
@@ -155,9 +489,7 @@ public final class LoggerGroup {
         if (appenders == null) return this;
 
         try {
-            for (Appender appender : appenders) {
-                if (appender != null) this.appenders.add(appender);
-            }
+            swap(null, null, appenders, null);
         } catch (Exception e) {
             this.defaultLogger.error("Failed to add Appenders to LoggerGroup.");
         }
@@ -165,4 +497,71 @@ public final class LoggerGroup {
         return this;
     }
 
+
+    //Неизменяемое состояние группы. Logger читает его одной volatile записью и не берёт блокировок.
+    //Счётчик active показывает, сколько потоков сейчас пишут события этого состояния,
+    //по нему при замене состояния ожидается запись событий уже переданных старым Appender'ам.
+    static final class State {
+        final LogLevel level;
+        final Appender[] appenders;
+        final AppenderFilter[] filters;
+        final boolean fatal;
+        final boolean error;
+        final boolean warn;
+        final boolean info;
+        final boolean debug;
+        final boolean trace;
+        private final LongAdder active = new LongAdder();
+
+        private State(LogLevel level, Appender[] appenders, AppenderFilter[] filters) {
+            this.level = level;
+            this.appenders = appenders;
+            this.filters = filters;
+            fatal = shouldLog(LogLevel.FATAL);
+            error = shouldLog(LogLevel.ERROR);
+            warn = shouldLog(LogLevel.WARN);
+            info = shouldLog(LogLevel.INFO);
+            debug = shouldLog(LogLevel.DEBUG);
+            trace = shouldLog(LogLevel.TRACE);
+        }
+
+        //Важен порядок элементов в enum LogLevel.
+        private boolean shouldLog(LogLevel currentLevel) {
+            if (this.level == LogLevel.ALL) return true;
+            if (this.level == LogLevel.OFF) return false;
+            return currentLevel.ordinal() >= this.level.ordinal();
+        }
+
+        boolean isEnabled(LogLevel type) {
+            return switch (type) {
+                case FATAL -> fatal;
+                case ERROR -> error;
+                case WARN -> warn;
+                case INFO -> info;
+                case DEBUG -> debug;
+                case TRACE -> trace;
+                default -> false;
+            };
+        }
+
+        //Поток закончил запись событий этого состояния.
+        void exit() {
+            active.decrement();
+        }
+
+        //Ожидает, пока все начатые записи закончатся. Сумма LongAdder не атомарна, поэтому ноль проверяется дважды.
+        private boolean awaitIdle(long deadline) {
+            int zeros = 0;
+            while (zeros < 2) {
+                if (active.sum() == 0) {
+                    zeros++;
+                } else {
+                    zeros = 0;
+                    if (System.nanoTime() - deadline > 0) return false;
+                }
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+            return true;
+        }
+    }
 }
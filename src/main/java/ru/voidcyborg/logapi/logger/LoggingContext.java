@@ -0,0 +1,552 @@
+package ru.voidcyborg.logapi.logger;
+
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.IOScheduler;
+import ru.voidcyborg.logapi.level.LogLevel;
+import ru.voidcyborg.logapi.settings.Settings;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Класс {@code LoggingContext} представляет из себя независимую систему логгирования: свои настройки, группы, Appender'ы и потоки записи.
+ * В одной JVM может быть несколько контекстов, например для каждого арендатора или плагина.
+ * Статические методы {@code LoggerFactory} работают с контекстом по умолчанию, который возвращает {@code getDefault()}.
+ * <p>
+ * The {@code LoggingContext} class is an independent logging system: its own settings, groups, Appenders and writer threads.
+ * There can be several contexts in one JVM, for example one per tenant or plugin.
+ * The static methods of {@code LoggerFactory} work with the default context returned by {@code getDefault()}.
+ * <p>
+ * Контекст по умолчанию пишет в общем планировщике {@code IOScheduler.getDefault()}.
+ * Остальные контексты создают свой планировщик по настройкам {@code IOThreads} и {@code IOMode} и останавливают его в {@code shutdown}.
+ * <p>
+ * The default context writes in the shared scheduler {@code IOScheduler.getDefault()}.
+ * Other contexts create their own scheduler from the {@code IOThreads} and {@code IOMode} settings and stop it in {@code shutdown}.
+ * <p>
+ * Настройки контекста лежат в одном неизменяемом снимке, поэтому {@code getSettings()}, {@code getLogLevel()} и получение
+ * уже созданной группы через {@code getLoggerGroup(String name)} не берут блокировок. Блокировка нужна только при создании группы,
+ * чтобы новая группа не разминулась с перезагрузкой настроек.
+ * <p>
+ * The settings of a context are kept in one immutable snapshot, so {@code getSettings()}, {@code getLogLevel()} and getting
+ * an already created group with {@code getLoggerGroup(String name)} take no locks. A lock is only needed to create a group,
+ * so that a new group does not miss a settings reload.
+ * <p>
+ * Профилировщик {@code LogProfiler} один на процесс: настройки {@code ProfileSampling} и {@code ProfileTop} любого контекста
+ * применяются ко всем, действует последняя применённая, в том числе 0 - выключение.
+ * <p>
+ * The {@code LogProfiler} is one per process: the {@code ProfileSampling} and {@code ProfileTop} settings of any context
+ * apply to all of them, the last applied one wins, including 0 - disabling.
+ * <p>
+ * Пример использования:
+ * <p>
+ * Usage example:
+ * <blockquote><pre>
+ *     LoggingContext tenant = new LoggingContext("tenant-a");
+ *     tenant.setSettings("/etc/tenant-a/logger.settings");
+ *     Logger logger = tenant.getLoggerGroup("Billing").getLogger();
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.LoggerFactory
+ * @see ru.voidcyborg.logapi.logger.LoggerGroup
+ * @see ru.voidcyborg.logapi.settings.Settings
+ * @see ru.voidcyborg.logapi.appender.IOScheduler
+ */
+public final class LoggingContext {
+
+    private static final LoggingContext defaultContext = new LoggingContext(null, false);
+
+    //Сколько при перезагрузке настроек ждать записи событий, уже переданных старым Appender'ам.
+    private static final Duration RELOAD_DRAIN_TIMEOUT = Duration.ofSeconds(5);
+
+    //Отметка задачи runParallel, которая ещё выполняется.
+    private static final long RUNNING = Long.MIN_VALUE;
+
+    private final String name;
+    private final boolean isolated;
+    private final Map<String, LoggerGroup> loggerGroups = new ConcurrentHashMap<>();
+    private volatile Config config = new Config();
+    private IOScheduler scheduler;
+    private Thread shutdownHook;
+    private SettingsWatcher watcher;
+
+
+    /**
+     * Создаёт новый контекст без настроек. Группы из настроек можно получать после {@code setSettings}.
+     * <p>
+     * Creates a new context without settings. Groups from the settings can be obtained after {@code setSettings}.
+     *
+     * @param name Имя контекста, используется в именах потоков. Name of the context, used in thread names.
+     * @throws java.lang.NullPointerException
+     */
+    public LoggingContext(String name) throws NullPointerException {
+        this(Objects.requireNonNull(name, "LoggingContext name can't be null"), true);
+    }
+
+    private LoggingContext(String name, boolean isolated) {
+        this.name = name;
+        this.isolated = isolated;
+    }
+
+    /**
+     * Возвращает контекст по умолчанию, с которым работает {@code LoggerFactory}.
+     * <p>
+     * Returns the default context {@code LoggerFactory} works with.
+     */
+    public static LoggingContext getDefault() {
+        return defaultContext;
+    }
+
+    /**
+     * Возвращает имя контекста, null у контекста по умолчанию.
+     * <p>
+     * Returns the name of the context, null for the default context.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * То же, что и {@code LoggerFactory.setSettings(String path)}, для данного контекста.
+     * <p>
+     * The same as {@code LoggerFactory.setSettings(String path)}, for this context.
+     *
+     * @param path Путь к файлу. The path to the file.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    public synchronized void setSettings(String path) throws SettingsInitException {
+        if (path == null) throw new SettingsInitException("Path to settings can't be null");
+        if (config.initialized) throw new SettingsInitException("Settings is already initialized!");
+
+        Settings parsedSettings = parseSettings(path, null);
+
+        apply(parsedSettings, parsedSettings.getTimeZone());
+        if (parsedSettings.isWatchSettings()) watchSettings(path);
+    }
+
+    /**
+     * То же, что и {@code LoggerFactory.setSettings(InputStream stream)}, для данного контекста.
+     * <p>
+     * The same as {@code LoggerFactory.setSettings(InputStream stream)}, for this context.
+     *
+     * @param stream Стрим к файлу с настройками. InputStream to file with settings
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    public synchronized void setSettings(InputStream stream) throws SettingsInitException {
+        if (stream == null) throw new SettingsInitException("stream to settings can't be null");
+        if (config.initialized) throw new SettingsInitException("Settings is already initialized!");
+
+        Settings parsedSettings = parseSettings(null, stream);
+
+        apply(parsedSettings, parsedSettings.getTimeZone());
+    }
+
+    /**
+     * Возвращает настройки данного контекста. Не берёт блокировок.
+     * <p>
+     * Returns the settings of this context. Takes no locks.
+     *
+     * @return Настройки системы логгирования. Logging system settings.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    public Settings getSettings() throws SettingsInitException {
+        Config config = this.config;
+        if (config.settings == null || !config.initialized)
+            throw new SettingsInitException("Log API settings not initialized properly. Settings is null");
+        return config.settings;
+    }
+
+    /**
+     * Возвращает уровень логгирования из настроек данного контекста. Не берёт блокировок.
+     * <p>
+     * Returns the logging level from the settings of this context. Takes no locks.
+     *
+     * @return Уровень логгирования из файла. Logging level from a file.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    public LogLevel getLogLevel() throws SettingsInitException {
+        Config config = this.config;
+        if (config.level == null || !config.initialized)
+            throw new SettingsInitException("Log API settings not initialized properly. LogLevel is null");
+        return config.level;
+    }
+
+    /**
+     * Возвращает группу логгирования данного контекста с определённым именем, при первом обращении создаёт её по настройкам.
+     * Уже созданная группа возвращается без блокировок.
+     * <p>
+     * Returns the logging group of this context with the specified name, creates it from the settings on the first call.
+     * An already created group is returned without locks.
+     *
+     * @param name Имя для группы логгирования. Name for the logging group.
+     * @return Группу логгирования с настройками из файла. Logging group with settings from a file.
+     * @throws java.lang.NullPointerException
+     */
+    public LoggerGroup getLoggerGroup(String name) throws NullPointerException {
+        if (name == null) throw new NullPointerException("LoggerGroup name can't be null");
+        LoggerGroup group = loggerGroups.get(name);
+        if (group != null) return group;
+
+        //Создание группы и перезагрузка настроек не должны пересекаться, иначе группа получит старые Appender'ы.
+        synchronized (this) {
+            Config config = this.config;
+            if (config.appenders == null || !config.initialized)
+                throw new NullPointerException("Log API settings not initialized properly. Appenders is null");
+            return loggerGroups.computeIfAbsent(name, s -> configure(newGroup(s, config), config));
+        }
+    }
+
+    /**
+     * То же, что и {@code LoggerFactory.reloadSettings(String path)}, для групп данного контекста.
+     * <p>
+     * The same as {@code LoggerFactory.reloadSettings(String path)}, for the groups of this context.
+     *
+     * @param path Путь к файлу. The path to the file.
+     * @return Количество событий, которые старые Appender'ы не успели записать. Number of events the old Appenders did not write in time.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    public long reloadSettings(String path) throws SettingsInitException {
+        if (path == null) throw new SettingsInitException("Path to settings can't be null");
+
+        Appender[] old;
+        Map<LoggerGroup, LoggerGroup.State> retired = new IdentityHashMap<>();
+        synchronized (this) {
+            if (!config.initialized) throw new SettingsInitException("Settings is not initialized yet!");
+            Settings parsedSettings = parseSettings(path, null);
+
+            old = config.appenders;
+            Config config = apply(parsedSettings, this.config.zone);
+            for (LoggerGroup group : loggerGroups.values()) {
+                group.flushRepeats();
+                retired.put(group, group.swap(config.level, old, config.appenders, config.filters));
+                configure(group, config);
+            }
+        }
+
+        //Старые Appender'ы дописывают уже переданные события вне блокировки, новые группы в это время создаются без ожидания.
+        long deadline = System.nanoTime() + RELOAD_DRAIN_TIMEOUT.toNanos();
+        long lost = 0;
+        for (Map.Entry<LoggerGroup, LoggerGroup.State> entry : retired.entrySet()) {
+            lost += entry.getKey().retire(entry.getValue(), remaining(deadline));
+        }
+        for (Appender appender : old) {
+            try {
+                lost += appender.flush(remaining(deadline));
+                appender.destroy();
+            } catch (Exception ignore) {
+            }
+        }
+        return lost;
+    }
+
+    /**
+     * То же, что и {@code LoggerFactory.watchSettings(String path)}, для данного контекста.
+     * <p>
+     * The same as {@code LoggerFactory.watchSettings(String path)}, for this context.
+     *
+     * @param path Путь к файлу. The path to the file.
+     * @throws ru.voidcyborg.logapi.settings.SettingsInitException
+     */
+    public synchronized void watchSettings(String path) throws SettingsInitException {
+        if (path == null) throw new SettingsInitException("Path to settings can't be null");
+        stopWatchingSettings();
+
+        try {
+            watcher = new SettingsWatcher(Path.of(path), () -> {
+                try {
+                    long lost = reloadSettings(path);
+                    if (lost > 0) System.err.println("LogAPI: " + lost + " log events were lost on settings reload");
+                } catch (SettingsInitException e) {
+                    System.err.println("LogAPI: settings were not reloaded, because of " + e.getMessage());
+                }
+            }).start();
+        } catch (Exception e) {
+            throw new SettingsInitException("Failed to watch settings file " + path + " because of " + e);
+        }
+    }
+
+    /**
+     * Перестаёт следить за файлом настроек данного контекста.
+     * <p>
+     * Stops watching the settings file of this context.
+     */
+    public synchronized void stopWatchingSettings() {
+        if (watcher == null) return;
+        watcher.close();
+        watcher = null;
+    }
+
+    /**
+     * То же, что и {@code LoggerFactory.registerShutdownHook(Duration timeout)}, для данного контекста.
+     * <p>
+     * The same as {@code LoggerFactory.registerShutdownHook(Duration timeout)}, for this context.
+     *
+     * @param timeout Максимальное время ожидания записи. Maximum time to wait for writing.
+     */
+    public synchronized void registerShutdownHook(Duration timeout) {
+        if (timeout == null) throw new NullPointerException("Shutdown timeout can't be null");
+        unregisterShutdownHook();
+
+        Thread hook = new Thread(() -> {
+            long lost = shutdown(timeout);
+            if (lost > 0) System.err.println("LogAPI" + (name == null ? "" : " " + name) + ": " + lost + " log events were lost on shutdown");
+        }, name == null ? "LogAPI-Shutdown" : "LogAPI-Shutdown-" + name);
+        Runtime.getRuntime().addShutdownHook(hook);
+        shutdownHook = hook;
+    }
+
+    /**
+     * Удаляет ранее зарегистрированный хук завершения JVM данного контекста.
+     * <p>
+     * Removes the previously registered JVM shutdown hook of this context.
+     */
+    public synchronized void unregisterShutdownHook() {
+        if (shutdownHook == null) return;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (Exception ignore) {
+        }
+        shutdownHook = null;
+    }
+
+    /**
+     * То же, что и {@code LoggerFactory.shutdown(Duration timeout)}, для Appender'ов данного контекста.
+     * Собственный планировщик контекста после этого останавливается.
+     * Appender, который не успел сбросить строки к концу таймаута, не уничтожается, а его ещё не записанные строки считаются потерянными.
+     * <p>
+     * The same as {@code LoggerFactory.shutdown(Duration timeout)}, for the Appenders of this context.
+     * The own scheduler of the context is stopped afterwards.
+     * An Appender that has not flushed its strings by the end of the timeout is not destroyed, and its strings not yet written are counted as lost.
+     *
+     * @param timeout Максимальное время ожидания. Maximum time to wait.
+     * @return Количество строк, которые не успели записаться. Number of strings not written in time.
+     */
+    public long shutdown(Duration timeout) {
+        stopWatchingSettings();
+        long deadline = System.nanoTime() + Math.max(timeout.toNanos(), 0);
+        Set<Appender> unique = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<LoggerGroup> groups = new ArrayList<>();
+        try {
+            Appender[] appenders = config.appenders;
+            if (appenders != null) unique.addAll(Arrays.asList(appenders));
+            for (LoggerGroup group : loggerGroups.values()) {
+                group.flushRepeats();
+                unique.addAll(group.getAppenders());
+                groups.add(group);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        //Сначала строки доставляются из очередей групп в Appender'ы, потом Appender'ы дописывают их.
+        //Если задача не успела к дедлайну, то потерянными считаются строки, которые в этот момент ещё ждут записи.
+        long lost = 0;
+        List<LongSupplier> dispatches = new ArrayList<>();
+        for (LoggerGroup group : groups) {
+            dispatches.add(() -> group.flushDispatch(remaining(deadline)));
+        }
+        long[] dispatched = runParallel(dispatches, deadline);
+        for (int i = 0; i < dispatched.length; i++) {
+            LoggerGroup group = groups.get(i);
+            lost += dispatched[i] >= 0 ? dispatched[i] : pending(() -> group.flushDispatch(Duration.ZERO));
+        }
+
+        List<Appender> all = new ArrayList<>(unique);
+        List<LongSupplier> flushes = new ArrayList<>();
+        for (Appender appender : all) {
+            flushes.add(() -> appender.flush(remaining(deadline)));
+        }
+        long[] flushed = runParallel(flushes, deadline);
+        for (int i = 0; i < flushed.length; i++) {
+            Appender appender = all.get(i);
+            lost += flushed[i] >= 0 ? flushed[i] : pending(() -> appender.flush(Duration.ZERO));
+        }
+        if (LogProfiler.isEnabled()) LogProfiler.dump();
+
+        //Appender, который ещё пишет в потоке сброса, не уничтожается, чтобы не закрыть файл или сокет под ним.
+        for (int i = 0; i < all.size(); i++) {
+            if (flushed[i] < 0) continue;
+            try {
+                all.get(i).destroy();
+            } catch (Exception ignore) {
+            }
+        }
+        synchronized (this) {
+            if (scheduler != null) scheduler.shutdown();
+        }
+        return lost;
+    }
+
+    /**
+     * Создает уникальную новую группу логгирования без Appender'ов с часовым поясом и планировщиком данного контекста.
+     * <p>
+     * Creates a unique new logging group without Appenders with the time zone and the scheduler of this context.
+     *
+     * @param level Необходимый уровень логгирования, null - {@code LoggerFactory.getDefaultLevel()}. Required logging level, null - {@code LoggerFactory.getDefaultLevel()}.
+     * @return Новую уникальную группу логгирования. New unique logging group.
+     */
+    public LoggerGroup createCustomLoggerGroup(LogLevel level) {
+        IOScheduler scheduler;
+        synchronized (this) {
+            scheduler = this.scheduler;
+        }
+        return new LoggerGroup(null, level == null ? LoggerFactory.getDefaultLevel() : level, config.zone, scheduler);
+    }
+
+    //Изолированный контекст разбирает настройки в своём планировщике, при первой настройке он создаётся по IOThreads и IOMode.
+    private Settings parseSettings(String path, InputStream stream) throws SettingsInitException {
+        String[] lines = LoggerFactory.readSettings(path, stream);
+        if (!isolated) return new Settings(lines);
+
+        Settings parsed = new Settings(lines, scheduler);
+        scheduler = parsed.getScheduler();
+        return parsed;
+    }
+
+    //Публикует новый снимок настроек, из него создаются новые группы. Профилировщик общий, поэтому его настройки перезаписываются для всех контекстов.
+    private Config apply(Settings parsedSettings, TimeZone zone) {
+        Config config = new Config(parsedSettings, zone);
+        LogProfiler.setSampling(parsedSettings.getProfileSampling());
+        LogProfiler.setReportSize(parsedSettings.getProfileTop());
+        this.config = config;
+        if (parsedSettings.getShutdownTimeout() > 0)
+            registerShutdownHook(Duration.ofMillis(parsedSettings.getShutdownTimeout()));
+        return config;
+    }
+
+    //Группа с уровнем, Appender'ами и их фильтрами из настроек.
+    private LoggerGroup newGroup(String name, Config config) {
+        LoggerGroup group = new LoggerGroup(name, config.level, config.zone, scheduler);
+        group.swap(null, null, config.appenders, config.filters);
+        return group;
+    }
+
+    //Применяет к группе настройки контекста, кроме уровня и Appender'ов.
+    private static LoggerGroup configure(LoggerGroup group, Config config) {
+        return group.setRepeatWindow(config.repeatWindow)
+                .setTraceCache(config.traceCacheSize, config.traceCacheExpire)
+                .setThrowableRendering(config.throwableMaxDepth, config.throwableFilter)
+                .setAsyncDispatch(config.dispatchQueueSize)
+                .setBacktrace(config.backtraceLevel, config.backtraceSize, config.backtraceMaxAge)
+                .setContextKeys(config.contextKeys);
+    }
+
+    //Выполняет задачи в отдельных потоках и ждёт их не дольше дедлайна. Возвращает результаты задач,
+    //-1 у задач, которые не успели завершиться. Результат и отметка о невыполнении ставятся CAS'ом, поэтому задача,
+    //завершившаяся сразу после дедлайна, не посчитается дважды.
+    private static long[] runParallel(List<LongSupplier> tasks, long deadline) {
+        AtomicLongArray results = new AtomicLongArray(tasks.size());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            int index = i;
+            LongSupplier task = tasks.get(i);
+            results.set(index, RUNNING);
+            Thread thread = new Thread(() -> {
+                long result = 0;
+                try {
+                    result = Math.max(task.getAsLong(), 0);
+                } catch (Exception ignore) {
+                } finally {
+                    results.compareAndSet(index, RUNNING, result);
+                }
+            }, "LogAPI-Flush");
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            try {
+                thread.join(remaining(deadline).toMillis() + 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        long[] done = new long[tasks.size()];
+        for (int i = 0; i < done.length; i++) {
+            done[i] = results.compareAndSet(i, RUNNING, -1) ? -1 : results.get(i);
+        }
+        return done;
+    }
+
+    //Сколько строк ещё ждут записи, без ожидания.
+    private static long pending(LongSupplier pending) {
+        try {
+            return Math.max(pending.getAsLong(), 0);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static Duration remaining(long deadline) {
+        return Duration.ofNanos(Math.max(deadline - System.nanoTime(), 0));
+    }
+
+
+    //Неизменяемый снимок настроек контекста. Замена снимка - одна запись volatile поля, поэтому чтение не требует блокировок.
+    //Часовой пояс берётся из первых настроек и не перезагружается, до настроек он нужен createCustomLoggerGroup.
+    private static final class Config {
+        private final boolean initialized;
+        private final Settings settings;
+        private final Appender[] appenders;
+        private final AppenderFilter[] filters;
+        private final LogLevel level;
+        private final TimeZone zone;
+        private final long repeatWindow;
+        private final int traceCacheSize;
+        private final long traceCacheExpire;
+        private final int throwableMaxDepth;
+        private final String[] throwableFilter;
+        private final int dispatchQueueSize;
+        private final LogLevel backtraceLevel;
+        private final int backtraceSize;
+        private final long backtraceMaxAge;
+        private final String[] contextKeys;
+
+        private Config() {
+            this.initialized = false;
+            this.settings = null;
+            this.appenders = null;
+            this.filters = null;
+            this.level = null;
+            this.zone = TimeZone.getTimeZone("Europe/Moscow");
+            this.repeatWindow = 0;
+            this.traceCacheSize = 0;
+            this.traceCacheExpire = 0;
+            this.throwableMaxDepth = 16;
+            this.throwableFilter = new String[0];
+            this.dispatchQueueSize = 0;
+            this.backtraceLevel = LogLevel.OFF;
+            this.backtraceSize = 0;
+            this.backtraceMaxAge = 0;
+            this.contextKeys = new String[0];
+        }
+
+        private Config(Settings settings, TimeZone zone) {
+            this.initialized = true;
+            this.settings = settings;
+            this.appenders = settings.getAppenders();
+            this.filters = settings.getAppenderFilters();
+            this.level = settings.getLevel();
+            this.zone = zone;
+            this.repeatWindow = settings.getRepeatWindow();
+            this.traceCacheSize = settings.getTraceCacheSize();
+            this.traceCacheExpire = settings.getTraceCacheExpire();
+            this.throwableMaxDepth = settings.getThrowableMaxDepth();
+            this.throwableFilter = settings.getThrowableFilter();
+            this.dispatchQueueSize = settings.getDispatchQueueSize();
+            this.backtraceLevel = settings.getBacktraceLevel();
+            this.backtraceSize = settings.getBacktraceSize();
+            this.backtraceMaxAge = settings.getBacktraceMaxAge();
+            this.contextKeys = settings.getContextKeys();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.voidcyborg.logapi.logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Класс {@code Marker} представляет из себя именованную метку события, например {@code AUDIT} или {@code SECURITY}.
+ * По меткам Appender'ы могут отбирать события независимо от уровня логгирования.
+ * Метки с одинаковым именем - это один и тот же объект, поэтому их можно сравнивать через {@code ==}.
+ * <p>
+ * The {@code Marker} class is a named tag of an event, for example {@code AUDIT} or {@code SECURITY}.
+ * Appenders can select events by markers regardless of the logging level.
+ * Markers with the same name are the same object, so they can be compared with {@code ==}.
+ * <p>
+ * Пример использования:
+ * <p>
+ * Usage example:
+ * <blockquote><pre>
+ *     private static final Marker AUDIT = Marker.of("AUDIT");
+ *
+ *     logger.log(LogLevel.INFO, AUDIT, "User logged in");
+ * </pre></blockquote><p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.Logger
+ * @see ru.voidcyborg.logapi.logger.AppenderFilter
+ */
+public final class Marker {
+
+    private static final Map<String, Marker> markers = new ConcurrentHashMap<>();
+
+    private final String name;
+
+
+    private Marker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Возвращает метку с указанным именем, при первом вызове создаёт её.
+     * <p>
+     * Returns the marker with the given name, creates it on the first call.
+     *
+     * @param name Имя метки. Name of the marker.
+     * @return Метка. The marker.
+     * @throws java.lang.NullPointerException
+     */
+    public static Marker of(String name) throws NullPointerException {
+        if (name == null || name.isBlank()) throw new NullPointerException("Marker name can't be null or blank");
+        return markers.computeIfAbsent(name.trim(), Marker::new);
+    }
+
+    /**
+     * Возвращает имя метки.
+     * <p>
+     * Returns the name of the marker.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
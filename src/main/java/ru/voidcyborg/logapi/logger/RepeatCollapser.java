@@ -0,0 +1,206 @@
+package ru.voidcyborg.logapi.logger;
+
+import ru.voidcyborg.logapi.appender.IOScheduler;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Класс {@code RepeatCollapser} схлопывает подряд идущие одинаковые события в одну итоговую строку.
+ * Событие считается повтором, если совпадают уровень, сообщение, объект и место вызова, а с начала серии не прошло окно времени.
+ * Сообщения и строки сравниваются по хешу и длине. Неизменяемые объекты - обёртки примитивов и enum - сравниваются через {@code equals},
+ * а у остальных объектов по хешу и длине сравнивается строковое представление, которое считается один раз для каждого события,
+ * поэтому изменившийся изменяемый объект не считается повтором.
+ * <p>
+ * Пока идёт серия, хранятся только хеши, длины, неизменяемый объект и место вызова, но не строки и не изменяемые объекты.
+ * Если серия не прервана новым событием, то её итог записывается по таймеру планировщика по истечении окна.
+ * <p>
+ * The {@code RepeatCollapser} class collapses consecutive identical events into a single summary line.
+ * An event is a repeat if the level, message, object and call site match and the window since the start of the run has not passed.
+ * Messages and strings are compared by hash and length. Immutable objects, primitive wrappers and enums, are compared with {@code equals},
+ * and for other objects the string representation, computed once per event, is compared by hash and length,
+ * so a mutable object whose state changed is not a repeat.
+ * <p>
+ * While a run lasts, only hashes, lengths, the immutable object and the call site are kept, but neither strings nor mutable objects.
+ * If the run is not interrupted by a new event, its summary is written by the scheduler timer when the window expires.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.Logger
+ * @see ru.voidcyborg.logapi.logger.LoggerGroup
+ */
+final class RepeatCollapser {
+
+    //Возвращается из offer, если событие является повтором и его не нужно записывать.
+    static final Run SUPPRESSED = new Run(null, null, null, 0, 0, 0);
+
+    private final IOScheduler scheduler;
+    private volatile long window;
+
+    private boolean active;
+    private Logger logger;
+    private Key key;
+    private int count;
+    private long first;
+    private long last;
+    private IOScheduler.Lane lane;
+    private boolean expiring;
+
+
+    //Планировщик нужен таймеру, который записывает итог истёкшей серии. null - общий планировщик.
+    RepeatCollapser(IOScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+
+    //Окно в миллисекундах, 0 или меньше отключает схлопывание.
+    void setWindow(long window) {
+        this.window = window;
+    }
+
+    long getWindow() {
+        return window;
+    }
+
+    boolean isEnabled() {
+        return window > 0;
+    }
+
+    //Возвращает SUPPRESSED если событие повтор, null если событие нужно записать,
+    //или завершённую серию повторов, итог которой нужно записать перед событием.
+    //Логгер запоминается, чтобы итог серии записал тот же логгер, через те же фильтры Appender'ов.
+    //Строковое представление объекта считается до блокировки, в вызывающем потоке.
+    Run offer(Logger logger, LogLevel level, String message, Object obj, String[] callSite, long time) {
+        return offer(logger, new Key(level, message, obj, callSite), time);
+    }
+
+    private synchronized Run offer(Logger logger, Key key, long time) {
+        long window = this.window;
+        if (window <= 0) return drainRun();
+
+        if (active && time - first < window && this.key.equals(key)) {
+            count++;
+            last = time;
+            return SUPPRESSED;
+        }
+
+        Run run = drainRun();
+        this.active = true;
+        this.logger = logger;
+        this.key = key;
+        this.count = 0;
+        this.first = time;
+        this.last = time;
+        if (!expiring) expiring = expireLater(window);
+        return run;
+    }
+
+    //Завершает текущую серию. Возвращает её итог если были повторы, иначе null.
+    synchronized Run drain() {
+        return drainRun();
+    }
+
+    //Закрывает очередь таймера. Если после этого начнётся новая серия, то будет создана новая очередь.
+    synchronized void close() {
+        if (lane != null) lane.close();
+        lane = null;
+        expiring = false;
+    }
+
+    //Ставит проверку серии на момент окончания окна.
+    private boolean expireLater(long delay) {
+        if (lane == null) lane = (scheduler != null ? scheduler : IOScheduler.getDefault()).newLane();
+        return lane.executeLater(this::expire, Duration.ofMillis(delay));
+    }
+
+    //Срабатывает по таймеру. Если серия истекла, то записывает её итог, иначе ждёт окончания окна текущей серии.
+    private void expire() {
+        Run run;
+        synchronized (this) {
+            expiring = false;
+            if (!active) return;
+            long left = first + window - System.currentTimeMillis();
+            if (window > 0 && left > 0) {
+                expiring = expireLater(left);
+                return;
+            }
+            run = drainRun();
+        }
+        if (run != null) run.logger.writeRepeats(run);
+    }
+
+    private Run drainRun() {
+        if (!active) return null;
+        active = false;
+        Run run = count == 0 ? null : new Run(logger, key.level, key.callSite, count, first, last);
+        logger = null;
+        key = null;
+        return run;
+    }
+
+
+    //Признаки события, по которым ищутся повторы. Строки и изменяемые объекты не хранятся, от них остаются хеш и длина.
+    private static final class Key {
+        private final LogLevel level;
+        private final String[] callSite;
+        private final int messageHash;
+        private final int messageLength;
+        private final Class<?> type;
+        private final Object value;
+        private final int hash;
+        private final int length;
+
+        private Key(LogLevel level, String message, Object obj, String[] callSite) {
+            this.level = level;
+            this.callSite = callSite;
+            this.messageHash = message == null ? 0 : message.hashCode();
+            this.messageLength = message == null ? -1 : message.length();
+            this.type = obj == null ? null : obj.getClass();
+            this.value = isImmutable(obj) ? obj : null;
+            String text = obj == null || value != null ? null : String.valueOf(obj);
+            this.hash = text == null ? 0 : text.hashCode();
+            this.length = text == null ? -1 : text.length();
+        }
+
+        //Обёртки примитивов и enum не меняются и малы, поэтому их можно держать и сравнивать без строкового представления.
+        private static boolean isImmutable(Object obj) {
+            return obj instanceof Integer || obj instanceof Long || obj instanceof Boolean || obj instanceof Character
+                    || obj instanceof Double || obj instanceof Float || obj instanceof Short || obj instanceof Byte || obj instanceof Enum;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key other)) return false;
+            return level == other.level && messageHash == other.messageHash && messageLength == other.messageLength
+                    && type == other.type && Objects.equals(value, other.value) && hash == other.hash && length == other.length
+                    && Arrays.equals(callSite, other.callSite);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(level, messageHash, type, value, hash);
+        }
+    }
+
+
+    //Итог серии повторов: сколько раз событие было подавлено и время первого и последнего появления.
+    static final class Run {
+        final Logger logger;
+        final LogLevel level;
+        final String[] callSite;
+        final int count;
+        final long first;
+        final long last;
+
+        private Run(Logger logger, LogLevel level, String[] callSite, int count, long first, long last) {
+            this.logger = logger;
+            this.level = level;
+            this.callSite = callSite;
+            this.count = count;
+            this.first = first;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ru.voidcyborg.logapi.logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс {@code SettingsWatcher} следит за файлом настроек через {@code WatchService} и в фоновом потоке
+ * вызывает перезагрузку настроек, когда файл изменён или заменён.
+ * Несколько событий подряд, например при сохранении файла редактором, схлопываются в одну перезагрузку.
+ * <p>
+ * The {@code SettingsWatcher} class watches the settings file with {@code WatchService} and on a background thread
+ * triggers a settings reload when the file is modified or replaced.
+ * Several events in a row, for example when an editor saves the file, are collapsed into one reload.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.LoggerFactory
+ */
+final class SettingsWatcher {
+
+    //Сколько ждать тишины после последнего события, прежде чем перечитать файл.
+    private static final long QUIET_MILLIS = 200;
+
+    private final Path file;
+    private final Runnable onChange;
+    private final WatchService service;
+    private final Thread thread;
+
+
+    //Подписывается на каталог файла, так как WatchService не умеет следить за отдельным файлом.
+    SettingsWatcher(Path file, Runnable onChange) throws IOException {
+        this.file = file.toAbsolutePath().normalize();
+        this.onChange = onChange;
+
+        Path parent = this.file.getParent();
+        if (parent == null) throw new IOException("Settings file has no parent directory: " + file);
+        this.service = FileSystems.getDefault().newWatchService();
+        try {
+            parent.register(service, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException | RuntimeException e) {
+            service.close();
+            throw e;
+        }
+
+        this.thread = new Thread(this::run, "LogAPI-SettingsWatcher");
+        this.thread.setDaemon(true);
+    }
+
+    SettingsWatcher start() {
+        thread.start();
+        return this;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    void close() {
+        try {
+            service.close();
+        } catch (IOException ignore) {
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                if (!isOurs(service.take())) continue;
+
+                //Ждём, пока файл перестанут писать, лишние события просто выбираются.
+                WatchKey next;
+                while ((next = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    isOurs(next);
+                }
+
+                try {
+                    onChange.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignore) {
+        }
+    }
+
+    //Возвращает true если среди событий ключа есть событие нашего файла. Ключ после этого снова готов к событиям.
+    private boolean isOurs(WatchKey key) {
+        boolean ours = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path name && file.getFileName().equals(name)) ours = true;
+        }
+        key.reset();
+        return ours;
+    }
+}
@@ -0,0 +1,115 @@
+package ru.voidcyborg.logapi.logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Класс {@code StackTraceCache} запоминает отпечатки уже записанных StackTrace'ов.
+ * При первом появлении StackTrace записывается полностью вместе с его идентификатором,
+ * при повторах записывается только короткая ссылка {@code [trace#9f1c2a7b3e4d5c6f seen 523x]}.
+ * Кеш ограничен по размеру и вытесняет давно не встречавшиеся отпечатки (LRU).
+ * <p>
+ * The {@code StackTraceCache} class remembers fingerprints of stack traces that have already been written.
+ * On first sight the stack trace is written in full together with its id,
+ * on repeats only a short reference {@code [trace#9f1c2a7b3e4d5c6f seen 523x]} is written.
+ * The cache is bounded in size and evicts the least recently seen fingerprints (LRU).
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.Logger
+ * @see ru.voidcyborg.logapi.logger.LoggerGroup
+ */
+final class StackTraceCache {
+
+    private static final int MAX_THROWABLES = 64;
+
+    private volatile int maxSize;
+    private volatile long expire;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+
+    //Размер кеша, 0 или меньше отключает кеш. Время в миллисекундах, после которого StackTrace снова пишется полностью, 0 - никогда.
+    synchronized void configure(int maxSize, long expire) {
+        this.maxSize = Math.max(maxSize, 0);
+        this.expire = Math.max(expire, 0);
+        if (this.maxSize == 0) entries.clear();
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    //Отпечаток StackTrace'а вместе с подавленными исключениями и цепочкой причин. Сообщения исключений не учитываются.
+    //Учитывается не больше MAX_THROWABLES исключений, это же защищает от циклов в причинах.
+    static long fingerprint(Throwable throwable) {
+        long result = hash(1125899906842597L, throwable, new int[]{MAX_THROWABLES});
+        result ^= (result >>> 33);
+        result *= 0xff51afd7ed558ccdL;
+        result ^= (result >>> 33);
+        return result;
+    }
+
+    //Добавляет к хешу исключение, его подавленные исключения и причину. left - сколько исключений ещё можно учесть.
+    private static long hash(long result, Throwable throwable, int[] left) {
+        for (Throwable t = throwable; t != null && left[0] > 0; t = t.getCause()) {
+            left[0]--;
+            result = 31 * result + t.getClass().getName().hashCode();
+            for (StackTraceElement element : t.getStackTrace()) {
+                result = 31 * result + element.hashCode();
+            }
+            Throwable[] suppressed = t.getSuppressed();
+            result = 31 * result + suppressed.length;
+            for (Throwable other : suppressed) {
+                result = hash(result, other, left);
+            }
+        }
+        return result;
+    }
+
+    //Отмечает появление StackTrace'а и возвращает снимок записи о нём.
+    //Если запись новая или устарела, то StackTrace нужно записать полностью.
+    synchronized Sighting see(long fingerprint, long time) {
+        Entry entry = entries.get(fingerprint);
+        if (entry == null) {
+            entry = new Entry("trace#" + Long.toHexString(fingerprint));
+            entries.put(fingerprint, entry);
+        }
+
+        entry.seen++;
+        long expire = this.expire;
+        boolean full = entry.seen == 1 || (expire > 0 && time - entry.printed >= expire);
+        if (full) entry.printed = time;
+        return new Sighting(entry.id, entry.seen, full);
+    }
+
+
+    //Запись о StackTrace'е, изменяется только под замком кеша.
+    private static final class Entry {
+        private final String id;
+        private long seen;
+        private long printed;
+
+        private Entry(String id) {
+            this.id = id;
+        }
+    }
+
+    //Неизменяемый снимок записи на момент появления StackTrace'а.
+    static final class Sighting {
+        final String id;
+        final long seen;
+        final boolean full;
+
+        private Sighting(String id, long seen, boolean full) {
+            this.id = id;
+            this.seen = seen;
+            this.full = full;
+        }
+    }
+}
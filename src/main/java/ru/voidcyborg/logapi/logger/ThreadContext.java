@@ -0,0 +1,288 @@
+package ru.voidcyborg.logapi.logger;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Класс {@code ThreadContext} хранит диагностический контекст потока, например идентификатор запроса или арендатора,
+ * который добавляется к каждому событию этого потока без конкатенации строк в месте вызова.
+ * <p>
+ * The {@code ThreadContext} class holds the diagnostic context of a thread, for example a request or tenant ID,
+ * which is attached to every event of this thread without string concatenation at the call site.
+ * <p>
+ * Контекст потока - это неизменяемый снимок. Изменение контекста создаёт новый снимок, а событие просто получает ссылку на текущий,
+ * поэтому захват контекста для события не выделяет память и не зависит от количества ключей.
+ * <p>
+ * The context of a thread is an immutable snapshot. Changing the context creates a new snapshot, and an event just gets a reference to the current one,
+ * so capturing the context for an event allocates nothing and does not depend on the number of keys.
+ * <p>
+ * Контекст не наследуется новыми потоками сам, для передачи в пулы потоков и виртуальные потоки есть методы {@code wrap},
+ * {@code wrapExecutor} и {@code wrapThreadFactory}.
+ * <p>
+ * The context is not inherited by new threads on its own, the {@code wrap}, {@code wrapExecutor} and {@code wrapThreadFactory} methods
+ * pass it to thread pools and virtual threads.
+ * <p>
+ * Пример использования:
+ * <p>
+ * Usage example:
+ * <blockquote><pre>
+ *     try (ThreadContext.Scope scope = ThreadContext.with("requestId", id)) {
+ *         logger.info("Request accepted");
+ *         executor.execute(ThreadContext.wrap(() -> logger.info("Processed in background")));
+ *     }
+ * </pre></blockquote><p>
+ * Чтобы контекст попал в строку, ключи перечисляются в настройке {@code ContextKeys=requestId,tenant} или {@code ContextKeys=*} для всех ключей.
+ * <p>
+ * For the context to get into the line, keys are listed in the {@code ContextKeys=requestId,tenant} setting, or {@code ContextKeys=*} for all keys.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.Logger
+ * @see ru.voidcyborg.logapi.appender.LogEvent
+ */
+public final class ThreadContext {
+
+    private static final ThreadLocal<Map<String, String>> context = ThreadLocal.withInitial(Map::of);
+
+
+    private ThreadContext() {
+    }
+
+    /**
+     * Возвращает неизменяемый снимок контекста текущего потока. Не выделяет память.
+     * <p>
+     * Returns an immutable snapshot of the context of the current thread. Allocates nothing.
+     *
+     * @return Снимок контекста. Snapshot of the context.
+     */
+    public static Map<String, String> getSnapshot() {
+        return context.get();
+    }
+
+    /**
+     * Заменяет контекст текущего потока снимком, ранее полученным через {@code getSnapshot()}.
+     * Любая другая карта копируется, чтобы её последующие изменения не попали в уже записанные события. Ключи и значения null пропускаются.
+     * <p>
+     * Replaces the context of the current thread with a snapshot previously obtained with {@code getSnapshot()}.
+     * Any other map is copied, so that its later changes do not get into already written events. Null keys and values are skipped.
+     *
+     * @param snapshot Снимок контекста, null очищает контекст. Snapshot of the context, null clears the context.
+     */
+    public static void setSnapshot(Map<String, String> snapshot) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            context.remove();
+            return;
+        }
+        if (snapshot instanceof Snapshot) {
+            context.set(snapshot);
+            return;
+        }
+        Map<String, String> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) copy.put(entry.getKey(), entry.getValue());
+        }
+        setSnapshot(copy.isEmpty() ? null : new Snapshot(copy));
+    }
+
+    /**
+     * Возвращает значение ключа в контексте текущего потока или null.
+     * <p>
+     * Returns the value of the key in the context of the current thread or null.
+     *
+     * @param key Ключ. The key.
+     * @return Значение. The value.
+     */
+    public static String get(String key) {
+        return key == null ? null : context.get().get(key);
+    }
+
+    /**
+     * Добавляет или заменяет значение в контексте текущего потока. Значение null удаляет ключ.
+     * <p>
+     * Adds or replaces a value in the context of the current thread. A null value removes the key.
+     *
+     * @param key   Ключ. The key.
+     * @param value Значение. The value.
+     * @throws java.lang.NullPointerException
+     */
+    public static void put(String key, String value) throws NullPointerException {
+        if (key == null) throw new NullPointerException("Context key can't be null");
+        Map<String, String> current = context.get();
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        if (value.equals(current.get(key))) return;
+
+        Map<String, String> copy = new LinkedHashMap<>(current);
+        copy.put(key, value);
+        context.set(new Snapshot(copy));
+    }
+
+    /**
+     * Удаляет ключ из контекста текущего потока.
+     * <p>
+     * Removes the key from the context of the current thread.
+     *
+     * @param key Ключ. The key.
+     */
+    public static void remove(String key) {
+        Map<String, String> current = context.get();
+        if (key == null || !current.containsKey(key)) return;
+
+        Map<String, String> copy = new LinkedHashMap<>(current);
+        copy.remove(key);
+        setSnapshot(copy.isEmpty() ? null : new Snapshot(copy));
+    }
+
+    /**
+     * Очищает контекст текущего потока.
+     * <p>
+     * Clears the context of the current thread.
+     */
+    public static void clear() {
+        context.remove();
+    }
+
+    /**
+     * Добавляет значение в контекст текущего потока до закрытия возвращённого {@code Scope}, после чего восстанавливает прежний контекст.
+     * <p>
+     * Adds a value to the context of the current thread until the returned {@code Scope} is closed, after which the previous context is restored.
+     *
+     * @param key   Ключ. The key.
+     * @param value Значение. The value.
+     * @return Область действия значения. Scope of the value.
+     */
+    public static Scope with(String key, String value) {
+        Scope scope = new Scope(context.get());
+        put(key, value);
+        return scope;
+    }
+
+    /**
+     * Возвращает задачу, которая выполнится с контекстом текущего потока на момент вызова данного метода, в каком бы потоке она ни запускалась.
+     * После выполнения контекст потока-исполнителя восстанавливается.
+     * <p>
+     * Returns a task that runs with the context the current thread has at the moment of this call, whatever thread it runs on.
+     * After it runs, the context of the executing thread is restored.
+     *
+     * @param task Задача. The task.
+     * @return Задача с контекстом. Task with the context.
+     */
+    public static Runnable wrap(Runnable task) {
+        Map<String, String> snapshot = context.get();
+        return () -> {
+            Map<String, String> previous = context.get();
+            setSnapshot(snapshot);
+            try {
+                task.run();
+            } finally {
+                setSnapshot(previous);
+            }
+        };
+    }
+
+    /**
+     * То же, что и {@code wrap(Runnable task)}, для задач с результатом.
+     * <p>
+     * The same as {@code wrap(Runnable task)}, for tasks with a result.
+     *
+     * @param task Задача. The task.
+     * @return Задача с контекстом. Task with the context.
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Map<String, String> snapshot = context.get();
+        return () -> {
+            Map<String, String> previous = context.get();
+            setSnapshot(snapshot);
+            try {
+                return task.call();
+            } finally {
+                setSnapshot(previous);
+            }
+        };
+    }
+
+    /**
+     * Возвращает Executor, который передаёт каждой задаче контекст потока, поставившего её в очередь.
+     * <p>
+     * Returns an Executor that passes every task the context of the thread that submitted it.
+     *
+     * @param executor Исходный Executor. The original Executor.
+     * @return Executor с передачей контекста. Executor with context propagation.
+     */
+    public static Executor wrapExecutor(Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+
+    /**
+     * Возвращает ThreadFactory, потоки которой начинают работу с контекстом потока, создавшего поток.
+     * Подходит и для фабрики виртуальных потоков {@code Thread.ofVirtual().factory()}.
+     * <p>
+     * Returns a ThreadFactory whose threads start with the context of the thread that created the thread.
+     * It also suits the virtual thread factory {@code Thread.ofVirtual().factory()}.
+     *
+     * @param factory Исходная фабрика. The original factory.
+     * @return Фабрика с передачей контекста. Factory with context propagation.
+     */
+    public static ThreadFactory wrapThreadFactory(ThreadFactory factory) {
+        return task -> factory.newThread(wrap(task));
+    }
+
+
+    //Снимок, созданный этим классом. Карта внутри больше никому не доступна, поэтому снимок можно передавать без копирования.
+    private static final class Snapshot extends AbstractMap<String, String> {
+        private final Map<String, String> map;
+
+        private Snapshot(Map<String, String> map) {
+            this.map = Collections.unmodifiableMap(map);
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return map.entrySet();
+        }
+
+        @Override
+        public String get(Object key) {
+            return map.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+    }
+
+
+    /**
+     * Область действия значения, добавленного через {@code with(String key, String value)}.
+     * Закрытие восстанавливает контекст, который был до её создания.
+     * <p>
+     * Scope of a value added with {@code with(String key, String value)}.
+     * Closing it restores the context that was there before it was created.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Map<String, String> previous;
+
+        private Scope(Map<String, String> previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            setSnapshot(previous);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ru.voidcyborg.logapi.logger;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Класс {@code ThrowableRenderer} записывает Throwable вместе с цепочкой причин и подавленных исключений в компактном виде.
+ * Общие с внешним исключением кадры заменяются строкой {@code ... N common frames omitted},
+ * подряд идущие кадры из отфильтрованных пакетов заменяются строкой {@code ... N filtered frames},
+ * глубина вложенности причин ограничена.
+ * Запись идёт сразу в переданный {@code StringBuilder}, промежуточные строки не создаются.
+ * <p>
+ * The {@code ThrowableRenderer} class writes a Throwable together with its chain of causes and suppressed exceptions in a compact form.
+ * Frames in common with the enclosing exception are replaced with the line {@code ... N common frames omitted},
+ * consecutive frames from filtered packages are replaced with the line {@code ... N filtered frames},
+ * the nesting depth of causes is limited.
+ * Output goes directly into the given {@code StringBuilder}, no intermediate strings are created.
+ * <p>
+ *
+ * @author VoidCyborg
+ * @see ru.voidcyborg.logapi.logger.Logger
+ * @see ru.voidcyborg.logapi.logger.LoggerGroup
+ */
+final class ThrowableRenderer {
+
+    private static final StackTraceElement[] EMPTY = new StackTraceElement[0];
+
+    private volatile int maxDepth = 16;
+    private volatile String[] filteredPackages = new String[0];
+
+
+    //Максимальная глубина вложенности причин и подавленных исключений, 0 - записывается только само исключение.
+    void setMaxDepth(int maxDepth) {
+        this.maxDepth = Math.max(maxDepth, 0);
+    }
+
+    //Префиксы пакетов, кадры которых не записываются. Пример: java.lang.reflect.
+    void setFilteredPackages(String... packages) {
+        if (packages == null) {
+            this.filteredPackages = new String[0];
+            return;
+        }
+        this.filteredPackages = Arrays.stream(packages)
+                .filter(s -> s != null && !s.isBlank())
+                .map(String::trim)
+                .toArray(String[]::new);
+    }
+
+    //Записывает кадры и цепочку причин. Первая строка с именем исключения уже записана вызывающим.
+    void renderBody(StringBuilder builder, Throwable throwable) {
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        seen.add(throwable);
+
+        StackTraceElement[] trace = throwable.getStackTrace();
+        appendFrames(builder, trace, EMPTY, "");
+        appendEnclosed(builder, throwable, trace, "", 1, seen);
+    }
+
+    //Записывает подавленные исключения и причину данного исключения.
+    private void appendEnclosed(StringBuilder builder, Throwable throwable, StackTraceElement[] trace,
+                                String prefix, int depth, Set<Throwable> seen) {
+        for (Throwable suppressed : throwable.getSuppressed()) {
+            append(builder, suppressed, trace, "Suppressed: ", prefix + '\t', depth, seen);
+        }
+
+        Throwable cause = throwable.getCause();
+        if (cause != null) append(builder, cause, trace, "Caused by: ", prefix, depth, seen);
+    }
+
+    private void append(StringBuilder builder, Throwable throwable, StackTraceElement[] enclosing,
+                        String caption, String prefix, int depth, Set<Throwable> seen) {
+        builder.append(prefix).append(caption);
+        if (depth > maxDepth) {
+            builder.append("... depth limit ").append(maxDepth).append(" reached\n");
+            return;
+        }
+        if (!seen.add(throwable)) {
+            builder.append("[CIRCULAR REFERENCE: ");
+            appendHeader(builder, throwable);
+            builder.append("]\n");
+            return;
+        }
+
+        appendHeader(builder, throwable);
+        builder.append('\n');
+
+        StackTraceElement[] trace = throwable.getStackTrace();
+        appendFrames(builder, trace, enclosing, prefix);
+        appendEnclosed(builder, throwable, trace, prefix, depth + 1, seen);
+    }
+
+    //Записывает имя класса исключения и сообщение.
+    static void appendHeader(StringBuilder builder, Throwable throwable) {
+        builder.append(throwable.getClass().getName());
+        String message = throwable.getLocalizedMessage();
+        if (message != null) builder.append(": ").append(message);
+    }
+
+    //Записывает кадры, которых нет в конце стека внешнего исключения. Кадры из отфильтрованных пакетов схлопываются.
+    private void appendFrames(StringBuilder builder, StackTraceElement[] trace, StackTraceElement[] enclosing, String prefix) {
+        int m = trace.length - 1;
+        int n = enclosing.length - 1;
+        while (m >= 0 && n >= 0 && trace[m].equals(enclosing[n])) {
+            m--;
+            n--;
+        }
+        int common = trace.length - 1 - m;
+
+        String[] filters = this.filteredPackages;
+        int filtered = 0;
+        for (int i = 0; i <= m; i++) {
+            StackTraceElement element = trace[i];
+            if (isFiltered(element, filters)) {
+                filtered++;
+                continue;
+            }
+            if (filtered > 0) {
+                builder.append(prefix).append("\t... ").append(filtered).append(" filtered frames\n");
+                filtered = 0;
+            }
+            builder.append(prefix).append("\tat ");
+            appendFrame(builder, element);
+            builder.append('\n');
+        }
+        if (filtered > 0) builder.append(prefix).append("\t... ").append(filtered).append(" filtered frames\n");
+        if (common > 0) builder.append(prefix).append("\t... ").append(common).append(" common frames omitted\n");
+    }
+
+    private static boolean isFiltered(StackTraceElement element, String[] filters) {
+        if (filters.length == 0) return false;
+        String className = element.getClassName();
+        for (String filter : filters) {
+            if (className.startsWith(filter)) return true;
+        }
+        return false;
+    }
+
+    //Аналог StackTraceElement.toString() без создания промежуточной строки.
+    private static void appendFrame(StringBuilder builder, StackTraceElement element) {
+        builder.append(element.getClassName()).append('.').append(element.getMethodName()).append('(');
+        if (element.isNativeMethod()) {
+            builder.append("Native Method");
+        } else if (element.getFileName() == null) {
+            builder.append("Unknown Source");
+        } else {
+            builder.append(element.getFileName());
+            if (element.getLineNumber() >= 0) builder.append(':').append(element.getLineNumber());
+        }
+        builder.append(')');
+    }
+}
@@ -1,10 +1,20 @@
 package ru.voidcyborg.logapi.settings;
 
 import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.AppenderProvider;
+import ru.voidcyborg.logapi.appender.BufferPool;
+import ru.voidcyborg.logapi.appender.IOScheduler;
 import ru.voidcyborg.logapi.level.LogLevel;
+import ru.voidcyborg.logapi.logger.AppenderFilter;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.TimeZone;
 
 
@@ -34,6 +44,12 @@ import java.util.TimeZone;
  * <p>
  * The settings themselves can be obtained using the {@code HashMap<String, String> getAppenderSettings();} method.
  * <p>
+ * Appender указывается коротким именем из {@code AppenderProvider}, например {@code appender=rollingFile},
+ * или полным именем класса. Классы без провайдера создаются через рефлексию.
+ * <p>
+ * An Appender is specified by a short name from {@code AppenderProvider}, for example {@code appender=rollingFile},
+ * or by the full class name. Classes without a provider are created with reflection.
+ * <p>
  *
  * @author VoidCyborg
  * @see ru.voidcyborg.logapi.logger.LoggerFactory
@@ -48,8 +64,29 @@ public final class Settings {
     private final String[] args;
     private final LogLevel level;
     private final TimeZone zone;
+    private final long repeatWindow;
+    private final int traceCacheSize;
+    private final long traceCacheExpire;
+    private final int throwableMaxDepth;
+    private final String[] throwableFilter;
+    private final int ioThreads;
+    private final boolean ioVirtual;
+    private final long shutdownTimeout;
+    private final int dispatchQueueSize;
+    private final boolean watchSettings;
+    private final long bufferPoolSize;
+    private final LogLevel backtraceLevel;
+    private final int backtraceSize;
+    private final long backtraceMaxAge;
+    private final String[] contextKeys;
+    private final int profileSampling;
+    private final int profileTop;
+    private final IOScheduler scheduler;
+    private final HashMap<String, String> values = new HashMap<>();
+    private final LinkedHashMap<String, String> appenderClasses = new LinkedHashMap<>();
+    private final HashMap<String, HashMap<String, String>> appenderSettings = new HashMap<>();
     private final HashMap<String, Appender> appenders;
-    private final HashMap<String, HashMap<String, String>> appenderSettings;
+    private final HashMap<String, AppenderFilter> appenderFilters = new HashMap<>();
 
     /**
      * Конструктор данного класа требует передачи пар ключ-значение с разделителем в виде '='.
@@ -63,19 +100,72 @@ public final class Settings {
      * Any syntax violation will throw {@code SettingsInitException}.
      */
     public Settings(String[] args) throws SettingsInitException {
+        this(args, null, false);
+    }
+
+    /**
+     * То же, что и {@code Settings(String[] args)}, но Appender'ы данных настроек пишут в указанном планировщике, а не в общем.
+     * Если планировщик null, то создаётся новый по настройкам {@code IOThreads} и {@code IOMode}.
+     * Так настраиваются изолированные {@code LoggingContext} со своими потоками записи.
+     * <p>
+     * The same as {@code Settings(String[] args)}, but the Appenders of these settings write in the given scheduler instead of the shared one.
+     * If the scheduler is null, a new one is created from the {@code IOThreads} and {@code IOMode} settings.
+     * This is how isolated {@code LoggingContext}s with their own writer threads are configured.
+     */
+    public Settings(String[] args, IOScheduler scheduler) throws SettingsInitException {
+        this(args, scheduler, true);
+    }
+
+    private Settings(String[] args, IOScheduler scheduler, boolean isolated) throws SettingsInitException {
         if (args == null) throw new SettingsInitException("Parameters can't be null");
         this.args = args.clone();
+        tokenize();
         this.level = parseLevel();
         this.zone = parseZone();
+        this.repeatWindow = parseLong("RepeatWindow", 0);
+        this.traceCacheSize = parseInt("TraceCacheSize", 0);
+        this.traceCacheExpire = parseLong("TraceCacheExpire", 0);
+        this.throwableMaxDepth = parseInt("ThrowableMaxDepth", 16);
+        this.throwableFilter = parseList("ThrowableFilter");
+        this.ioThreads = parseInt("IOThreads", 2);
+        this.ioVirtual = parseIOMode();
+        this.shutdownTimeout = parseLong("ShutdownTimeout", 0);
+        this.dispatchQueueSize = parseInt("DispatchQueueSize", 0);
+        this.watchSettings = parseBoolean("WatchSettings");
+        this.bufferPoolSize = parseLong("BufferPoolSize", 32L << 20);
+        this.backtraceLevel = parseBacktraceLevel();
+        this.backtraceSize = parseInt("BacktraceSize", 256);
+        this.backtraceMaxAge = parseLong("BacktraceMaxAge", 60_000);
+        this.contextKeys = parseList("ContextKeys");
+        this.profileSampling = parseInt("ProfileSampling", 0);
+        this.profileTop = parseInt("ProfileTop", 10);
+        //Общий планировщик и пул буферов нужно настроить до создания Appender'ов, так как они ими пользуются.
+        //Appender'ы запоминают планировщик в parseSettings, поэтому на это время к потоку привязывается планировщик данных настроек.
+        //Общие планировщик и пул после запуска не перенастраиваются, тогда настройка только сообщает, что она не применена.
+        if (!isolated && !IOScheduler.configureDefault(this.ioThreads, this.ioVirtual)) {
+            IOScheduler running = IOScheduler.getDefault();
+            System.err.println("LogAPI: IOThreads=" + this.ioThreads + " and IOMode were not applied, the shared scheduler is already running with "
+                    + running.getThreads() + (running.isVirtual() ? " virtual" : " platform") + " threads");
+        }
+        this.scheduler = isolated ? (scheduler != null ? scheduler : new IOScheduler(this.ioThreads, this.ioVirtual)) : null;
+        if (!BufferPool.configureDefault(this.bufferPoolSize)) {
+            System.err.println("LogAPI: BufferPoolSize=" + this.bufferPoolSize + " was not applied, the shared buffer pool is already limited to "
+                    + BufferPool.getDefault().getMaxOffHeapBytes() + " bytes");
+        }
         this.appenders = createAppenders();
-        this.appenderSettings = parseAppenderSettings();
 
+        IOScheduler previous = IOScheduler.setCurrent(this.scheduler);
         try {
             for (Map.Entry<String, Appender> entry : appenders.entrySet()) {
                 entry.getValue().parseSettings(this.appenderSettings.get(entry.getKey()));
             }
         } catch (Exception e) {
             throw new SettingsInitException("Failed to init settings in Appenders. " + e);
+        } finally {
+            IOScheduler.setCurrent(previous);
+        }
+        for (String name : appenders.keySet()) {
+            appenderFilters.put(name, AppenderFilter.parse(this.appenderSettings.get(name)));
         }
     }
 
@@ -119,6 +209,24 @@ public final class Settings {
         return appenders.values().toArray(new Appender[0]);
     }
 
+    /**
+     * Возвращает фильтры событий Appender'ов из настроек {@code appenderX.level}, {@code appenderX.loggers} и {@code appenderX.markers}.
+     * Фильтры идут в том же порядке, что и Appender'ы в {@code getAppenders()}.
+     * <p>
+     * Returns the event filters of the Appenders from the {@code appenderX.level}, {@code appenderX.loggers} and {@code appenderX.markers} settings.
+     * The filters are in the same order as the Appenders in {@code getAppenders()}.
+     *
+     * @return Массив фильтров. <p> Array of filters.
+     */
+    public AppenderFilter[] getAppenderFilters() {
+        AppenderFilter[] result = new AppenderFilter[appenders.size()];
+        int i = 0;
+        for (String name : appenders.keySet()) {
+            result[i++] = appenderFilters.get(name);
+        }
+        return result;
+    }
+
     /**
      * Возвращает уровень логгирования указанный в настройках.
      * <p>
@@ -141,85 +249,364 @@ public final class Settings {
         return zone;
     }
 
+    /**
+     * Возвращает окно схлопывания повторяющихся сообщений в миллисекундах указанное в настройках {@code RepeatWindow}.
+     * Если настройка не указана, возвращает 0 - схлопывание выключено.
+     * <p>
+     * Returns the repeated message collapsing window in milliseconds specified in the {@code RepeatWindow} setting.
+     * If the setting is not specified, returns 0 - collapsing is disabled.
+     *
+     * @return Окно в миллисекундах. <p> Window in milliseconds.
+     */
+    public long getRepeatWindow() {
+        return repeatWindow;
+    }
+
+    /**
+     * Возвращает размер кеша StackTrace'ов указанный в настройках {@code TraceCacheSize}.
+     * Если настройка не указана, возвращает 0 - кеш выключен.
+     * <p>
+     * Returns the stack trace cache size specified in the {@code TraceCacheSize} setting.
+     * If the setting is not specified, returns 0 - the cache is disabled.
+     *
+     * @return Максимальное количество StackTrace'ов в кеше. <p> Maximum number of cached stack traces.
+     */
+    public int getTraceCacheSize() {
+        return traceCacheSize;
+    }
 
-    //Прохожусь по строкам и ищу упоминания LogLevel= и пытаюсь получить уровень.
-    //Если указанно несколько значений то будет взято первое попавшееся.
-    private LogLevel parseLevel() throws SettingsInitException {
-        try {
-            LogLevel level;
-            for (String line : args) {
-                if (line == null) continue;
-                try {
-                    line = line.replace(" ", "");
-                    if (!line.startsWith("LogLevel=")) continue;
-                    line = line.replace("LogLevel=", "");
-                    level = LogLevel.valueOf(line);
+    /**
+     * Возвращает время в миллисекундах указанное в настройках {@code TraceCacheExpire}, через которое StackTrace снова записывается полностью.
+     * Если настройка не указана, возвращает 0 - StackTrace записывается полностью только один раз.
+     * <p>
+     * Returns the time in milliseconds specified in the {@code TraceCacheExpire} setting after which a stack trace is written in full again.
+     * If the setting is not specified, returns 0 - the stack trace is written in full only once.
+     *
+     * @return Время в миллисекундах. <p> Time in milliseconds.
+     */
+    public long getTraceCacheExpire() {
+        return traceCacheExpire;
+    }
 
-                    return level;
-                } catch (Exception ignore) {
-                }
+    /**
+     * Возвращает максимальную глубину вложенности причин исключений указанную в настройках {@code ThrowableMaxDepth}.
+     * Если настройка не указана, возвращает 16.
+     * <p>
+     * Returns the maximum nesting depth of exception causes specified in the {@code ThrowableMaxDepth} setting.
+     * If the setting is not specified, returns 16.
+     *
+     * @return Максимальная глубина вложенности. <p> Maximum nesting depth.
+     */
+    public int getThrowableMaxDepth() {
+        return throwableMaxDepth;
+    }
+
+    /**
+     * Возвращает копию префиксов пакетов указанных в настройках {@code ThrowableFilter}, кадры которых не записываются.
+     * <p>
+     * Returns a copy of the package prefixes specified in the {@code ThrowableFilter} setting whose frames are not written.
+     *
+     * @return Префиксы пакетов. <p> Package prefixes.
+     */
+    public String[] getThrowableFilter() {
+        return throwableFilter.clone();
+    }
+
+    /**
+     * Возвращает количество потоков общего планировщика ввода-вывода указанное в настройках {@code IOThreads}.
+     * Если настройка не указана, возвращает 2.
+     * После запуска общего планировщика настройка больше не применяется, об этом выводится сообщение в {@code System.err}.
+     * <p>
+     * Returns the number of threads of the shared I/O scheduler specified in the {@code IOThreads} setting.
+     * If the setting is not specified, returns 2.
+     * Once the shared scheduler is running, the setting is not applied any more and a message is printed to {@code System.err}.
+     *
+     * @return Количество потоков. <p> Number of threads.
+     */
+    public int getIOThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Возвращает true если в настройках указано {@code IOMode=virtual}.
+     * <p>
+     * Returns true if {@code IOMode=virtual} is specified in the settings.
+     *
+     * @return Использовать ли виртуальные потоки. <p> Whether to use virtual threads.
+     */
+    public boolean isIOVirtual() {
+        return ioVirtual;
+    }
+
+    /**
+     * Возвращает время в миллисекундах указанное в настройках {@code ShutdownTimeout}, в течение которого при завершении приложения
+     * ожидается запись уже переданных строк. Если настройка не указана, возвращает 0 - хук завершения не регистрируется.
+     * <p>
+     * Returns the time in milliseconds specified in the {@code ShutdownTimeout} setting during which, on application exit,
+     * the strings already passed are awaited. If the setting is not specified, returns 0 - no shutdown hook is registered.
+     *
+     * @return Время в миллисекундах. <p> Time in milliseconds.
+     */
+    public long getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+
+    /**
+     * Возвращает ёмкость очереди каждого Appender'а при асинхронной доставке, указанную в настройках {@code DispatchQueueSize}.
+     * Если настройка не указана, возвращает 0 - строки доставляются синхронно в потоке приложения.
+     * <p>
+     * Returns the queue capacity of each Appender with asynchronous delivery, specified in the {@code DispatchQueueSize} setting.
+     * If the setting is not specified, returns 0 - strings are delivered synchronously on the application thread.
+     *
+     * @return Ёмкость очереди. <p> Queue capacity.
+     */
+    public int getDispatchQueueSize() {
+        return dispatchQueueSize;
+    }
+
+    /**
+     * Возвращает true если в настройках указано {@code WatchSettings=true}.
+     * Тогда при изменении файла настроек они перечитываются и применяются без перезапуска приложения.
+     * <p>
+     * Returns true if {@code WatchSettings=true} is specified in the settings.
+     * Then when the settings file changes, it is re-read and applied without restarting the application.
+     *
+     * @return Следить ли за файлом настроек. <p> Whether to watch the settings file.
+     */
+    public boolean isWatchSettings() {
+        return watchSettings;
+    }
+
+    /**
+     * Возвращает лимит прямой памяти общего пула буферов в байтах, указанный в настройках {@code BufferPoolSize}.
+     * Если настройка не указана, возвращает 32 МБ.
+     * После создания общего пула настройка больше не применяется, об этом выводится сообщение в {@code System.err}.
+     * <p>
+     * Returns the direct memory limit of the shared buffer pool in bytes, specified in the {@code BufferPoolSize} setting.
+     * If the setting is not specified, returns 32 MB.
+     * Once the shared pool is created, the setting is not applied any more and a message is printed to {@code System.err}.
+     *
+     * @return Лимит в байтах. <p> Limit in bytes.
+     */
+    public long getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    /**
+     * Возвращает минимальный уровень событий, которые запоминаются для записи перед ошибкой, указанный в настройках {@code Backtrace}.
+     * Если настройка не указана, возвращает {@code LogLevel.OFF} - запоминание выключено.
+     * <p>
+     * Returns the minimum level of events remembered to be written before an error, specified in the {@code Backtrace} setting.
+     * If the setting is not specified, returns {@code LogLevel.OFF} - remembering is disabled.
+     *
+     * @return Уровень. <p> The level.
+     */
+    public LogLevel getBacktraceLevel() {
+        return backtraceLevel;
+    }
+
+    /**
+     * Возвращает количество запоминаемых событий на поток, указанное в настройках {@code BacktraceSize}.
+     * Если настройка не указана, возвращает 256.
+     * <p>
+     * Returns the number of remembered events per thread, specified in the {@code BacktraceSize} setting.
+     * If the setting is not specified, returns 256.
+     *
+     * @return Количество событий. <p> Number of events.
+     */
+    public int getBacktraceSize() {
+        return backtraceSize;
+    }
+
+    /**
+     * Возвращает возраст в миллисекундах, после которого запомненное событие не записывается перед ошибкой, указанный в настройках {@code BacktraceMaxAge}.
+     * Если настройка не указана, возвращает 60000. 0 снимает ограничение.
+     * <p>
+     * Returns the age in milliseconds after which a remembered event is not written before an error, specified in the {@code BacktraceMaxAge} setting.
+     * If the setting is not specified, returns 60000. 0 removes the limit.
+     *
+     * @return Возраст в миллисекундах. <p> The age in milliseconds.
+     */
+    public long getBacktraceMaxAge() {
+        return backtraceMaxAge;
+    }
+
+    /**
+     * Возвращает копию ключей контекста потока, которые записываются в строку, указанных в настройках {@code ContextKeys}.
+     * Если настройка не указана, возвращает пустой массив.
+     * <p>
+     * Returns a copy of the thread context keys written into the line, specified in the {@code ContextKeys} setting.
+     * If the setting is not specified, returns an empty array.
+     *
+     * @return Ключи контекста. <p> Keys of the context.
+     */
+    public String[] getContextKeys() {
+        return contextKeys.clone();
+    }
+
+    /**
+     * Возвращает планировщик, в котором пишут Appender'ы данных настроек.
+     * <p>
+     * Returns the scheduler the Appenders of these settings write in.
+     *
+     * @return Планировщик. <p> The scheduler.
+     */
+    public IOScheduler getScheduler() {
+        return scheduler != null ? scheduler : IOScheduler.getDefault();
+    }
+
+    /**
+     * Возвращает частоту выборки профилировщика, указанную в настройках {@code ProfileSampling}: измеряется в среднем каждое N-е событие.
+     * Если настройка не указана, возвращает 0 - профилирование выключено.
+     * Профилировщик общий для процесса, поэтому для всех контекстов действует значение последних применённых настроек.
+     * <p>
+     * Returns the profiler sampling rate, specified in the {@code ProfileSampling} setting: every Nth event is measured on average.
+     * If the setting is not specified, returns 0 - profiling is disabled.
+     * The profiler is shared by the whole process, so the value of the last applied settings wins for all contexts.
+     *
+     * @return Частота выборки. <p> Sampling rate.
+     */
+    public int getProfileSampling() {
+        return profileSampling;
+    }
+
+    /**
+     * Возвращает количество мест вызова в отчёте профилировщика при завершении, указанное в настройках {@code ProfileTop}.
+     * Если настройка не указана, возвращает 10.
+     * <p>
+     * Returns the number of call sites in the profiler report on shutdown, specified in the {@code ProfileTop} setting.
+     * If the setting is not specified, returns 10.
+     *
+     * @return Количество мест вызова. <p> Number of call sites.
+     */
+    public int getProfileTop() {
+        return profileTop;
+    }
+
+
+    //Один проход по строкам: каждая строка разбивается на ключ и значение по первому '=' и раскладывается по индексу.
+    //appender*=класс - объявление Appender'а, appender*.key=value - его настройка, остальные ключи берутся по первому вхождению.
+    //Пробелы в ключах убираются, в значениях настроек Appender'ов сохраняются, так как там могут быть пути к файлам.
+    private void tokenize() throws SettingsInitException {
+        HashMap<String, HashMap<String, String>> nested = new HashMap<>();
+
+        for (String line : args) {
+            if (line == null || line.isBlank() || line.strip().startsWith("#")) continue;
+            int separator = line.indexOf('=');
+            if (separator < 0) {
+                if (line.strip().startsWith("appender")) throw new SettingsInitException("Wrong settings syntax: " + line);
+                continue;
+            }
+
+            String key = line.substring(0, separator).replace(" ", "");
+            String value = line.substring(separator + 1);
+            int dot = key.indexOf('.');
+            if (dot > 0) {
+                nested.computeIfAbsent(key.substring(0, dot), name -> new HashMap<>()).put(key.substring(dot + 1), value);
+            } else if (key.startsWith("appender")) {
+                if (appenderClasses.containsKey(key)) throw new SettingsInitException("Appender already initialized: " + line);
+                appenderClasses.put(key, value.replace(" ", ""));
+            } else {
+                values.putIfAbsent(key, value.replace(" ", ""));
             }
-        } catch (Exception e) {
-            throw new SettingsInitException("Failed to find LogLevel in settings, because of " + e);
         }
 
-        throw new SettingsInitException("Failed to find LogLevel in settings");
+        for (String name : appenderClasses.keySet()) {
+            appenderSettings.put(name, nested.getOrDefault(name, new HashMap<>()));
+        }
     }
 
-    //Прохожусь по строкам и ищу упоминания TimeZone= и пытаюсь получить временную зону.
-    //Если указанно несколько значений то будет взято первое.
+    //Получаю уровень из LogLevel=. Настройка обязательна.
+    private LogLevel parseLevel() throws SettingsInitException {
+        String value = values.get("LogLevel");
+        if (value == null) throw new SettingsInitException("Failed to find LogLevel in settings");
+        try {
+            return LogLevel.valueOf(value);
+        } catch (Exception e) {
+            throw new SettingsInitException("Failed to parse LogLevel in settings, because of " + e);
+        }
+    }
+
+    //Получаю временную зону из TimeZone=. Настройка обязательна.
     //Если значение будет указанно не корректно то будет взято GMT.
     private TimeZone parseZone() throws SettingsInitException {
+        String value = values.get("TimeZone");
+        if (value == null) throw new SettingsInitException("Failed to find TimeZone in settings");
+        return TimeZone.getTimeZone(value);
+    }
+
+    //Получаю уровень запоминаемых событий из Backtrace=. Пример: Backtrace=DEBUG
+    //Настройка не обязательна, если её нет то запоминание выключено.
+    private LogLevel parseBacktraceLevel() throws SettingsInitException {
+        String value = values.get("Backtrace");
+        if (value == null) return LogLevel.OFF;
         try {
-            TimeZone zone;
-            for (String line : args) {
-                if (line == null) continue;
-                try {
-                    line = line.replace(" ", "");
-                    if (!line.startsWith("TimeZone=")) continue;
-                    line = line.replace("TimeZone=", "");
-                    zone = TimeZone.getTimeZone(line);
+            return LogLevel.valueOf(value);
+        } catch (Exception e) {
+            throw new SettingsInitException("Failed to parse Backtrace in settings: " + value);
+        }
+    }
 
-                    return zone;
-                } catch (Exception ignore) {
-                }
-            }
+    //То же, что и parseLong, но число должно помещаться в int, иначе оно молча обрезалось бы при приведении.
+    private int parseInt(String key, int defaultValue) throws SettingsInitException {
+        long value = parseLong(key, defaultValue);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new SettingsInitException("Failed to parse " + key + " in settings, because " + value + " is out of int range");
+        return (int) value;
+    }
+
+    //Получаю число из key=. Пример: RepeatWindow=5000
+    //Настройка не обязательна, если её нет то возвращаю значение по умолчанию.
+    private long parseLong(String key, long defaultValue) throws SettingsInitException {
+        String value = values.get(key);
+        if (value == null) return defaultValue;
+        try {
+            return Long.parseLong(value.replace("_", ""));
         } catch (Exception e) {
-            throw new SettingsInitException("Failed to find TimeZone in settings, because of " + e);
+            throw new SettingsInitException("Failed to parse " + key + " in settings, because of " + e);
         }
+    }
 
-        throw new SettingsInitException("Failed to find TimeZone in settings");
+    //Получаю список значений через запятую из key=. Пример: ThrowableFilter=java.lang.reflect.,sun.reflect
+    //Настройка не обязательна, если её нет то возвращаю пустой массив.
+    private String[] parseList(String key) {
+        String value = values.get(key);
+        if (value == null || value.isEmpty()) return new String[0];
+        return value.split(",");
     }
 
-    //Прохожусь по строкам и ищу упоминания appender*= и пытаюсь получить путь к классу Appender'а.
-    //Все указанные Appender'ы будут созданы. Если не удастся создать хоть один, то выкидываю ошибку.
-    //Если встречаю дубликаты выкидываю ошибку.
-    private HashMap<String, Appender> createAppenders() throws SettingsInitException {
-        HashMap<String, Appender> appenders = new HashMap<>();
+    //Получаю true или false из key=. Пример: WatchSettings=true
+    //Настройка не обязательна, если её нет то возвращаю false.
+    private boolean parseBoolean(String key) throws SettingsInitException {
+        String[] value = parseList(key);
+        if (value.length == 0 || value[0].equalsIgnoreCase("false")) return false;
+        if (value[0].equalsIgnoreCase("true")) return true;
+        throw new SettingsInitException("Failed to parse " + key + " in settings: " + value[0]);
+    }
 
-        try {
-            String prefix = "appender";
-
-            for (String s : this.args) {
-                if (s == null) continue;
-                s = s.replace(" ", "");
-                if (!s.startsWith(prefix)) continue;
-                String[] parts = s.split("=");
-                if (parts.length != 2) throw new SettingsInitException("Wrong settings syntax: " + s);
-                if (parts[0].contains(".")) continue;
-                if (appenders.containsKey(parts[0]))
-                    throw new SettingsInitException("Appender already initialized: " + s);
+    //Получаю режим планировщика из IOMode=: platform или virtual.
+    //Настройка не обязательна, если её нет то используются платформенные потоки.
+    private boolean parseIOMode() throws SettingsInitException {
+        String[] mode = parseList("IOMode");
+        if (mode.length == 0 || mode[0].equalsIgnoreCase("platform")) return false;
+        if (mode[0].equalsIgnoreCase("virtual")) return true;
+        throw new SettingsInitException("Unknown IOMode in settings: " + mode[0]);
+    }
 
-                try {
-                    Appender appender = (Appender) Class.forName(parts[1]).getDeclaredConstructor().newInstance();
-                    appenders.put(parts[0], appender);
-                } catch (Exception e) {
-                    throw new SettingsInitException("Failed to create an Appender: " + s);
-                }
+    //Создаю все объявленные Appender'ы в порядке объявления. Если не удастся создать хоть один, то выкидываю ошибку.
+    private HashMap<String, Appender> createAppenders() throws SettingsInitException {
+        HashMap<String, Appender> appenders = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> entry : appenderClasses.entrySet()) {
+            try {
+                AppenderProvider provider = Providers.find(entry.getValue());
+                Appender appender = provider != null ? provider.create()
+                        : (Appender) Class.forName(entry.getValue()).getDeclaredConstructor().newInstance();
+                if (appender == null) throw new NullPointerException();
+                appenders.put(entry.getKey(), appender);
+            } catch (Exception e) {
+                throw new SettingsInitException("Failed to create an Appender: " + entry.getKey() + "=" + entry.getValue());
             }
-        } catch (Exception e) {
-            if (e instanceof SettingsInitException) throw e;
-            throw new SettingsInitException("Wrong settings because of " + e);
         }
 
         if (appenders.isEmpty()) throw new SettingsInitException("No single path to the Appender class.");
@@ -227,31 +614,31 @@ public final class Settings {
         return appenders;
     }
 
-    //Прохожусь по строкам и ищу упоминания appender*. и создаю набор пар ключ-значение. Пример: appender1.key=value или appender.key=value
-    //При любом нарушении синтаксиса выкидывает ошибку.
-    private HashMap<String, HashMap<String, String>> parseAppenderSettings() throws SettingsInitException {
-        HashMap<String, HashMap<String, String>> appenderSettings = new HashMap<>();
-
-        String[] parts;
 
-        try {
-            for (String name : appenders.keySet()) {
-                HashMap<String, String> settings = new HashMap<>();
+    //Провайдеры Appender'ов, найденные через ServiceLoader. Загружаются один раз при первом создании настроек.
+    //Ключи - имя провайдера в нижнем регистре и полное имя класса Appender'а.
+    private static final class Providers {
+        private static final Map<String, AppenderProvider> BY_NAME = load();
 
-                for (String s : args) {
-                    if (!s.startsWith(name)) continue;
-                    parts = s.split("=");
-                    if (parts.length != 2) throw new SettingsInitException("Wrong settings syntax:" + s);
-                    if (!parts[0].replace(name, "").startsWith(".")) continue;
+        private static AppenderProvider find(String name) {
+            AppenderProvider provider = BY_NAME.get(name);
+            return provider != null ? provider : BY_NAME.get(name.toLowerCase(Locale.ROOT));
+        }
 
-                    settings.put(parts[0].substring(name.length() + 1), parts[1]);
+        //Провайдер, который не удалось загрузить, пропускаю, чтобы одна сломанная библиотека не ломала все настройки.
+        private static Map<String, AppenderProvider> load() {
+            HashMap<String, AppenderProvider> providers = new HashMap<>();
+            Iterator<AppenderProvider> iterator = ServiceLoader.load(AppenderProvider.class, Settings.class.getClassLoader()).iterator();
+            while (true) {
+                try {
+                    if (!iterator.hasNext()) break;
+                    AppenderProvider provider = iterator.next();
+                    providers.putIfAbsent(provider.getName().toLowerCase(Locale.ROOT), provider);
+                    providers.putIfAbsent(provider.getType().getName(), provider);
+                } catch (ServiceConfigurationError | RuntimeException ignore) {
                 }
-                appenderSettings.put(name, settings);
             }
-        } catch (Exception e) {
-            throw new SettingsInitException("Wrong setting syntax:" + e);
+            return Collections.unmodifiableMap(providers);
         }
-
-        return appenderSettings;
     }
 }
@@ -0,0 +1,83 @@
+package ru.voidcyborg.logapi.appender;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferPoolTest {
+
+    @Test
+    void reuseAndLimit() {
+        BufferPool pool = new BufferPool(4096, false);
+
+        ByteBuffer first = pool.acquire(300);
+        assertTrue(first.isDirect());
+        assertEquals(512, first.capacity());
+        pool.release(first);
+        assertSame(first, pool.acquire(400));
+        pool.release(first);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            buffers.add(pool.acquire(1024));
+        }
+        assertEquals(512 + 3 * 1024, pool.getOffHeapBytes());
+        assertTrue(buffers.get(2).isDirect());
+        assertFalse(buffers.get(3).isDirect());
+        assertFalse(pool.acquire(1 << 20).isDirect());
+    }
+
+    @Test
+    void encode() {
+        BufferPool pool = new BufferPool(1 << 20, true);
+        String text = "строка log line ✓\n".repeat(100);
+
+        ByteBuffer buffer = pool.encode(text);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertEquals(text, new String(bytes, StandardCharsets.UTF_8));
+
+        assertEquals(1, pool.getLeaks().size());
+        pool.release(buffer);
+        assertEquals(0, pool.getLeaks().size());
+        assertThrows(IllegalStateException.class, () -> pool.release(buffer));
+    }
+
+    //Поток приложения кешем не пользуется, а кеш потока планировщика возвращается в общий пул, когда поток завершается.
+    @Test
+    void threadCaches() throws Exception {
+        BufferPool pool = new BufferPool(1 << 20, false);
+        ByteBuffer first = pool.acquire(256);
+        pool.release(first);
+        Thread thread = new Thread(() -> pool.release(pool.acquire(256)));
+        thread.start();
+        thread.join();
+        assertSame(first, pool.acquire(256));
+        pool.release(first);
+
+        IOScheduler scheduler = new IOScheduler(1, false);
+        AtomicReference<ByteBuffer> cached = new AtomicReference<>();
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        IOScheduler.Lane lane = scheduler.newLane();
+        lane.execute(() -> {
+            worker.set(Thread.currentThread());
+            cached.set(pool.acquire(1024));
+            pool.release(cached.get());
+        });
+        lane.await(Duration.ofSeconds(5));
+        scheduler.shutdown();
+        worker.get().join(5000);
+        assertSame(cached.get(), pool.acquire(1024));
+    }
+}
@@ -0,0 +1,81 @@
+package ru.voidcyborg.logapi.appender;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+//Appender для тестов, который складывает строки или события в переданный список.
+//Может ждать защёлку перед каждой строкой, чтобы изображать медленную запись, или обходиться без строки, как счётчики.
+public final class CollectingAppender implements Appender {
+
+    private final List<String> lines;
+    private final List<LogEvent> events;
+    private final CountDownLatch gate;
+    private final boolean text;
+
+
+    private CollectingAppender(List<String> lines, List<LogEvent> events, CountDownLatch gate, boolean text) {
+        this.lines = lines;
+        this.events = events;
+        this.gate = gate;
+        this.text = text;
+    }
+
+    //Складывает строки событий.
+    public static CollectingAppender of(List<String> lines) {
+        return new CollectingAppender(lines, null, null, true);
+    }
+
+    //Складывает строки, но каждая ждёт открытия защёлки. null - не ждать.
+    public static CollectingAppender gated(List<String> lines, CountDownLatch gate) {
+        return new CollectingAppender(lines, null, gate, true);
+    }
+
+    //Складывает события целиком.
+    public static CollectingAppender events(List<LogEvent> events) {
+        return new CollectingAppender(null, events, null, true);
+    }
+
+    //Складывает события, которым не нужны строка и место вызова.
+    public static CollectingAppender textless(List<LogEvent> events) {
+        return new CollectingAppender(null, events, null, false);
+    }
+
+    @Override
+    public void parseSettings(Map<String, String> settings) {
+    }
+
+    @Override
+    public boolean append(String text) {
+        if (lines == null) return false;
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return lines.add(text);
+    }
+
+    @Override
+    public boolean append(LogEvent event) {
+        if (event == null) return false;
+        if (events != null) return events.add(event);
+        return append(event.getText());
+    }
+
+    @Override
+    public boolean needsText() {
+        return text;
+    }
+
+    @Override
+    public boolean needsCallSite() {
+        return text;
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,150 @@
+package ru.voidcyborg.logapi.appender;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IOSchedulerTest {
+
+    @Test
+    void orderInsideLane() throws Exception {
+        IOScheduler scheduler = new IOScheduler(4, false);
+        IOScheduler.Lane lane = scheduler.newLane();
+        List<Integer> result = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        for (int i = 0; i < 10_000; i++) {
+            int value = i;
+            lane.execute(() -> result.add(value));
+        }
+        lane.execute(done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, result.get(i));
+        }
+        scheduler.shutdown();
+    }
+
+    @Test
+    void roundRobin() throws Exception {
+        IOScheduler scheduler = new IOScheduler(1, false);
+        IOScheduler.Lane busy = scheduler.newLane();
+        IOScheduler.Lane quiet = scheduler.newLane();
+        AtomicBoolean busyFinished = new AtomicBoolean();
+        AtomicBoolean quietBeforeBusy = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(2);
+
+        for (int i = 0; i < 10_000; i++) {
+            busy.execute(() -> Work.spin(1_000));
+        }
+        busy.execute(() -> {
+            busyFinished.set(true);
+            done.countDown();
+        });
+        quiet.execute(() -> {
+            quietBeforeBusy.set(!busyFinished.get());
+            done.countDown();
+        });
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(quietBeforeBusy.get());
+        scheduler.shutdown();
+    }
+
+    @Test
+    void closedLane() {
+        IOScheduler scheduler = new IOScheduler(1, false);
+        IOScheduler.Lane lane = scheduler.newLane();
+        lane.close();
+
+        assertFalse(lane.execute(() -> {
+        }));
+        scheduler.shutdown();
+    }
+
+    //Сравнение общего планировщика с отдельным потоком на каждый Appender.
+    //Время только выводится, проверяется, что все задачи выполнены, а потоков у планировщика не больше, чем очередей.
+    @Test
+    void benchmark() throws Exception {
+        int lanes = 64;
+        int tasks = 2_000;
+
+        System.out.println("dedicated threads: " + runDedicated(lanes, tasks));
+        for (int threads : new int[]{1, 2, 4}) {
+            System.out.println("platform x" + threads + ": " + runScheduler(new IOScheduler(threads, false), lanes, tasks));
+        }
+        IOScheduler virtual = new IOScheduler(2, true);
+        if (virtual.isVirtual()) System.out.println("virtual: " + runScheduler(virtual, lanes, tasks));
+        else System.out.println("virtual: not supported by this Java version");
+    }
+
+    private static String runScheduler(IOScheduler scheduler, int lanes, int tasks) throws Exception {
+        int before = Thread.activeCount();
+        AtomicLong sink = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(lanes);
+
+        long start = System.nanoTime();
+        for (int l = 0; l < lanes; l++) {
+            IOScheduler.Lane lane = scheduler.newLane();
+            for (int i = 0; i < tasks; i++) {
+                lane.execute(() -> sink.addAndGet(Work.spin(100)));
+            }
+            lane.execute(done::countDown);
+        }
+        int threads = Thread.activeCount() - before;
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long time = System.nanoTime() - start;
+        scheduler.shutdown();
+        assertEquals((long) lanes * tasks * Work.spin(100), sink.get());
+        assertTrue(threads < lanes);
+
+        return (time / ((long) lanes * tasks)) + " ns/task, +" + threads + " threads";
+    }
+
+    private static String runDedicated(int lanes, int tasks) throws Exception {
+        int before = Thread.activeCount();
+        AtomicLong sink = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(lanes);
+        List<ExecutorService> executors = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int l = 0; l < lanes; l++) {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            executors.add(executor);
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(() -> sink.addAndGet(Work.spin(100)));
+            }
+            executor.execute(done::countDown);
+        }
+        int threads = Thread.activeCount() - before;
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long time = System.nanoTime() - start;
+        executors.forEach(ExecutorService::shutdown);
+        assertEquals((long) lanes * tasks * Work.spin(100), sink.get());
+
+        return (time / ((long) lanes * tasks)) + " ns/task, +" + threads + " threads";
+    }
+
+    //Имитация небольшой работы ввода-вывода.
+    private static final class Work {
+        static long spin(int iterations) {
+            long result = 0;
+            for (int i = 0; i < iterations; i++) {
+                result += i ^ result;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.level.LogLevel;
+import ru.voidcyborg.logapi.logger.Logger;
+import ru.voidcyborg.logapi.logger.LoggerFactory;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsAppenderTest {
+
+    private static final long MINUTE = 60_000;
+
+    @Test
+    void countsPerMinute() throws Exception {
+        MetricsAppender appender = appender(Map.of("minutes", "2"));
+        long start = System.currentTimeMillis() / MINUTE * MINUTE + MINUTE;
+        String[] callSite = {"Billing.java", "charge", "42"};
+
+        for (int i = 0; i < 5; i++) appender.append(event(LogLevel.INFO, callSite, "charged", start));
+        appender.append(event(LogLevel.WARN, callSite, "charged", start + 1000));
+        appender.append(event(LogLevel.INFO, callSite, "charged", start + MINUTE));
+        appender.append(event(LogLevel.INFO, callSite, "charged", start + 3 * MINUTE));
+
+        List<MetricsAppender.Counter> counters = appender.getSnapshot();
+        counters.forEach(System.out::println);
+        assertEquals(4, counters.size());
+        assertEquals(start, counters.get(0).getMinute());
+        assertEquals(LogLevel.INFO, counters.get(0).getLevel());
+        assertEquals(5, counters.get(0).getCount());
+        assertEquals("Billing.java:charge:42", counters.get(0).getCallSite());
+        assertEquals("charged", counters.get(0).getMessage());
+        assertEquals(MetricsAppenderTest.class.getName(), counters.get(0).getLogger());
+        assertEquals(LogLevel.WARN, counters.get(1).getLevel());
+        assertEquals(start + 3 * MINUTE, counters.get(3).getMinute());
+
+        //Хранится не больше двух завершённых минут.
+        appender.append(event(LogLevel.INFO, callSite, "charged", start + 5 * MINUTE));
+        assertEquals(List.of(start + MINUTE, start + 3 * MINUTE, start + 5 * MINUTE),
+                appender.getSnapshot().stream().map(MetricsAppender.Counter::getMinute).toList());
+        assertEquals(1, appender.getSnapshot(start + 4 * MINUTE).size());
+    }
+
+    @Test
+    void cardinalityGuard() throws Exception {
+        MetricsAppender appender = appender(Map.of("maxSeries", "3", "keys", "level,message"));
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(appender.append(event(LogLevel.ERROR, null, "user " + i + " failed", now)));
+        }
+
+        List<MetricsAppender.Counter> counters = appender.getSnapshot();
+        counters.forEach(System.out::println);
+        assertEquals(4, counters.size());
+        assertEquals("#other", counters.get(0).getCallSite());
+        assertEquals(97, counters.get(0).getCount());
+        assertNull(counters.get(0).getLogger());
+        assertEquals(100, counters.stream().mapToLong(MetricsAppender.Counter::getCount).sum());
+
+        appender.destroy();
+        assertFalse(appender.append(event(LogLevel.ERROR, null, "after destroy", now)));
+        assertThrows(SettingsInitException.class, () -> appender(Map.of("keys", "level,thread")));
+    }
+
+    //Logger передаёт в событие место вызова и сообщение до форматирования.
+    @Test
+    void countsLoggerEvents() throws Exception {
+        MetricsAppender appender = appender(Map.of("keys", "callSite,message"));
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG).addAppender(appender).getLogger();
+        AtomicReference<String> line = new AtomicReference<>();
+        for (int i = 0; i < 3; i++) {
+            logger.debug("cache miss", i);
+            line.set(String.valueOf(new Throwable().getStackTrace()[0].getLineNumber() - 1));
+        }
+
+        List<MetricsAppender.Counter> counters = appender.getSnapshot();
+        counters.forEach(System.out::println);
+        assertEquals(1, counters.size());
+        assertEquals("MetricsAppenderTest.java:countsLoggerEvents:" + line.get(), counters.get(0).getCallSite());
+        assertEquals("cache miss", counters.get(0).getMessage());
+        assertEquals(3, counters.get(0).getCount());
+    }
+
+    private static MetricsAppender appender(Map<String, String> settings) throws SettingsInitException {
+        MetricsAppender appender = new MetricsAppender();
+        appender.parseSettings(new HashMap<>(settings));
+        return appender;
+    }
+
+    private static LogEvent event(LogLevel level, String[] callSite, String message, long time) {
+        return new LogEvent(message, level, null, MetricsAppenderTest.class, null, time, Map.of(), callSite, message);
+    }
+}
@@ -1,10 +1,25 @@
 package ru.voidcyborg.logapi.appender.appenders;
 
 import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
 
+import java.io.EOFException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 class RollingFileAppenderTest {
@@ -41,4 +56,92 @@ class RollingFileAppenderTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void flush() throws Exception {
+        Path folder = Files.createTempDirectory("rolling");
+        Map<String, String> settings = new HashMap<>();
+        settings.put("fileName", "flush.txt");
+        settings.put("maxFileSize", "1024000");
+        settings.put("maxFiles", "0");
+        settings.put("folderPath", folder.toString());
+
+        RollingFileAppender appender = new RollingFileAppender();
+        appender.parseSettings(settings);
+        for (int i = 0; i < 1000; i++) {
+            appender.append("line " + i + "\n");
+        }
+
+        assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+        try (Stream<Path> files = Files.list(folder)) {
+            long lines = 0;
+            for (Path file : files.toList()) {
+                lines += Files.readAllLines(file).size();
+            }
+            assertEquals(1000, lines);
+        }
+        appender.destroy();
+    }
+
+    @Test
+    void lazyStart() throws Exception {
+        Path folder = Files.createTempDirectory("rolling").resolve("lazy");
+        Map<String, String> settings = new HashMap<>();
+        settings.put("fileName", "lazy.txt");
+        settings.put("maxFileSize", "1024000");
+        settings.put("maxFiles", "0");
+        settings.put("folderPath", folder.toString());
+
+        RollingFileAppender appender = new RollingFileAppender();
+        appender.parseSettings(settings);
+        assertFalse(Files.exists(folder));
+
+        appender.append("first\n");
+        assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+        assertTrue(Files.isDirectory(folder));
+        appender.destroy();
+    }
+
+    //Редкие строки попадают в сжатый файл по таймеру, без flush и закрытия.
+    @Test
+    void compressFlushInterval() throws Exception {
+        Path folder = Files.createTempDirectory("rolling");
+        Map<String, String> settings = new HashMap<>();
+        settings.put("fileName", "app.gz");
+        settings.put("maxFileSize", "1024000");
+        settings.put("maxFiles", "0");
+        settings.put("folderPath", folder.toString());
+        settings.put("compress", "gzip");
+        settings.put("compressFlushInterval", "50");
+
+        RollingFileAppender appender = new RollingFileAppender();
+        appender.parseSettings(settings);
+        appender.append("first\n");
+        appender.append("second\n");
+
+        Path file = folder.resolve(RollingFileWriter.PID + "-app-0.gz");
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        String text = "";
+        while (System.nanoTime() < deadline && !(text = gunzip(file)).equals("first\nsecond\n")) {
+            Thread.sleep(20);
+        }
+        assertEquals("first\nsecond\n", text);
+        appender.destroy();
+
+        Map<String, String> conflicting = new HashMap<>(settings);
+        conflicting.put("preallocate", "true");
+        assertThrows(SettingsInitException.class, () -> new RollingFileAppender().parseSettings(conflicting));
+    }
+
+    private static String gunzip(Path file) throws Exception {
+        if (!Files.exists(file)) return "";
+        StringBuilder builder = new StringBuilder();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] block = new byte[8192];
+            int read;
+            while ((read = in.read(block)) > 0) builder.append(new String(block, 0, read, StandardCharsets.UTF_8));
+        } catch (EOFException ignore) {
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,121 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+//Несколько потоков пишут в один RollingFileAppender с маленьким maxFileSize, чтобы файлы ротировались сотни раз.
+//Каждая строка помечена потоком и порядковым номером, после записи все файлы читаются и проверяется,
+//что ни одна строка не потеряна, не повторена и не разорвана между файлами. Выводит строки в секунду и p99 постановки в очередь.
+class RollingFileStressTest {
+
+    private static final int THREADS = 8;
+    private static final int LINES = 25_000;
+    private static final int MAX_FILE_SIZE = 64 * 1024;
+    private static final String PAYLOAD = "x".repeat(60);
+
+    @Test
+    void rollover(@TempDir Path folder) throws Exception {
+        stress(folder, false);
+    }
+
+    @Test
+    void rolloverPreallocated(@TempDir Path folder) throws Exception {
+        stress(folder, true);
+    }
+
+    private static void stress(Path folder, boolean preallocate) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("fileName", "stress.log");
+        settings.put("maxFileSize", String.valueOf(MAX_FILE_SIZE));
+        settings.put("maxFiles", "0");
+        settings.put("folderPath", folder.toString());
+        settings.put("preallocate", String.valueOf(preallocate));
+        RollingFileAppender appender = new RollingFileAppender();
+        appender.parseSettings(settings);
+
+        long[][] latencies = new long[THREADS][LINES];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            producers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < LINES; i++) {
+                    String line = "T" + thread + " #" + i + " " + PAYLOAD + "\n";
+                    long begin = System.nanoTime();
+                    if (!appender.append(line)) fail("Line was not accepted: " + line);
+                    latencies[thread][i] = System.nanoTime() - begin;
+                }
+            });
+            producers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread producer : producers) producer.join();
+        assertEquals(0, appender.flush(Duration.ofSeconds(60)));
+        long nanos = System.nanoTime() - begin;
+        appender.destroy();
+
+        int files = verify(folder);
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        long total = (long) THREADS * LINES;
+        System.out.printf("RollingFileAppender%s: %d lines in %d files, %d ms, %.0f lines/s, enqueue p50 %d ns, p99 %d ns, max %d us%n",
+                preallocate ? " (preallocated)" : "", total, files, nanos / 1_000_000, total * 1e9 / nanos,
+                all[all.length / 2], all[(int) (all.length * 0.99)], all[all.length - 1] / 1000);
+        assertTrue(files > 200, "Expected hundreds of rollovers, got " + files + " files");
+    }
+
+    //Возвращает количество файлов. Строки каждого потока должны идти по порядку без пропусков и повторов.
+    private static int verify(Path folder) throws Exception {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(folder)) {
+            files = stream.sorted((a, b) -> Long.compare(index(a), index(b))).toList();
+        }
+
+        int[] next = new int[THREADS];
+        for (Path file : files) {
+            assertTrue(Files.size(file) <= MAX_FILE_SIZE, file + " is larger than maxFileSize");
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            assertTrue(content.endsWith("\n"), file + " ends with a torn line");
+            for (String line : content.split("\n")) {
+                int space = line.indexOf(' ');
+                int end = line.indexOf(' ', space + 1);
+                if (!line.startsWith("T") || space < 0 || end < 0 || !line.substring(end + 1).equals(PAYLOAD))
+                    fail("Torn line in " + file + ": " + line);
+                int thread = Integer.parseInt(line.substring(1, space));
+                int sequence = Integer.parseInt(line.substring(space + 2, end));
+                assertEquals(next[thread], sequence, "Lost or duplicated line of thread " + thread);
+                next[thread]++;
+            }
+        }
+        for (int count : next) assertEquals(LINES, count);
+        return files.size();
+    }
+
+    //Номер файла из имени PID-name-index.type.
+    private static long index(Path file) {
+        String name = file.getFileName().toString();
+        name = name.substring(0, name.lastIndexOf('.'));
+        return Long.parseLong(name.substring(name.lastIndexOf('-') + 1));
+    }
+}
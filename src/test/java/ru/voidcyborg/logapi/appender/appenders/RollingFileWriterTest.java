@@ -0,0 +1,179 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingFileWriterTest {
+
+    @Test
+    void preallocateAndTruncate() throws Exception {
+        Path folder = Files.createTempDirectory("prealloc");
+        RollingFileWriter writer = new RollingFileWriter(folder, "pre", ".log", 4 << 20, 0, true);
+        Path file = folder.resolve(RollingFileWriter.PID + "-pre-0.log");
+
+        writer.write(bytes("first line\n"));
+        assertEquals(RollingFileWriter.PREALLOCATE_CHUNK, Files.size(file));
+        writer.write(bytes("second line\n"));
+        assertEquals(RollingFileWriter.PREALLOCATE_CHUNK, Files.size(file));
+
+        writer.close();
+        assertEquals("first line\nsecond line\n", Files.readString(file));
+
+        //Как после падения: хвост из нулей не обрезан.
+        Files.write(file, new byte[100_000], StandardOpenOption.APPEND);
+        RollingFileWriter restarted = new RollingFileWriter(folder, "pre", ".log", 4 << 20, 0, true);
+        restarted.write(bytes("after restart\n"));
+        restarted.close();
+        assertEquals("first line\nsecond line\nafter restart\n", Files.readString(file));
+    }
+
+    //Процесс с другим PID упал, не обрезав предвыделенный хвост. Файл, который держит живой писатель, не трогается.
+    @Test
+    void truncateLeftoversOfCrashedProcess() throws Exception {
+        Path folder = Files.createTempDirectory("prealloc");
+        Path crashed = folder.resolve("999999999-pre-0.log");
+        Files.write(crashed, "crashed line\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(crashed, new byte[RollingFileWriter.PREALLOCATE_CHUNK], StandardOpenOption.APPEND);
+
+        Path other = folder.resolve("999999999-other-0.log");
+        Files.write(other, new byte[1000]);
+
+        RollingFileWriter live = new RollingFileWriter(folder, "pre-live", ".log", 4 << 20, 0, true);
+        live.write(bytes("live line\n"));
+        Path liveFile = folder.resolve(RollingFileWriter.PID + "-pre-live-0.log");
+        Files.move(liveFile, folder.resolve("888888888-pre-0.log"));
+
+        RollingFileWriter writer = new RollingFileWriter(folder, "pre", ".log", 4 << 20, 0, true);
+        writer.write(bytes("new line\n"));
+        writer.close();
+
+        assertEquals("crashed line\n", Files.readString(crashed));
+        assertEquals(1000, Files.size(other));
+        assertEquals(RollingFileWriter.PREALLOCATE_CHUNK, Files.size(folder.resolve("888888888-pre-0.log")));
+        live.close();
+    }
+
+    @Test
+    void rolloverTruncates() throws Exception {
+        Path folder = Files.createTempDirectory("prealloc");
+        RollingFileWriter writer = new RollingFileWriter(folder, "roll", ".log", 2048, 0, true);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(writer.write(bytes("line number " + i + "\n")));
+        }
+        writer.close();
+
+        try (Stream<Path> files = Files.list(folder)) {
+            List<Path> list = files.toList();
+            long lines = 0;
+            for (Path file : list) {
+                assertTrue(Files.size(file) <= 2048);
+                String text = Files.readString(file);
+                assertTrue(text.indexOf('\0') < 0, file.toString());
+                lines += text.lines().count();
+            }
+            System.out.println("Files: " + list.size());
+            assertEquals(100, lines);
+        }
+    }
+
+    //Сжатый файл читается до закрытия после SYNC_FLUSH и продолжается новым gzip-потоком после повторного открытия.
+    @Test
+    void gzipStream() throws Exception {
+        Path folder = Files.createTempDirectory("gzip");
+        RollingFileWriter writer = new RollingFileWriter(folder, "zip", ".gz", 4 << 20, 0, false, true, 1 << 20);
+        Path file = folder.resolve(RollingFileWriter.PID + "-zip-0.gz");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String line = "2024-01-01 12:00:00 INFO  [main] Service.java:run:42 - request " + i + " done\n";
+            expected.append(line);
+            assertTrue(writer.write(bytes(line)));
+        }
+        writer.syncFlush();
+        assertEquals(expected.toString(), gunzip(file));
+
+        writer.close();
+        writer.write(bytes("after reopen\n"));
+        writer.close();
+        expected.append("after reopen\n");
+        assertEquals(expected.toString(), gunzip(file));
+        System.out.println("Compressed " + expected.length() + " bytes to " + Files.size(file));
+        assertTrue(Files.size(file) * 5 < expected.length());
+    }
+
+    @Test
+    void gzipRolloverOnCompressedSize() throws Exception {
+        Path folder = Files.createTempDirectory("gzip");
+        RollingFileWriter writer = new RollingFileWriter(folder, "roll", ".gz", 4096, 0, false, true, 4096);
+        long plain = 0;
+        for (int i = 0; i < 20_000; i++) {
+            String line = "line number " + i + " with some repeated text\n";
+            plain += line.length();
+            assertTrue(writer.write(bytes(line)));
+        }
+        writer.close();
+
+        try (Stream<Path> files = Files.list(folder)) {
+            List<Path> list = files.toList();
+            long lines = 0;
+            for (Path file : list) {
+                assertTrue(Files.size(file) < 4096 * 3, file + " " + Files.size(file));
+                lines += gunzip(file).lines().count();
+            }
+            System.out.println("Files: " + list.size() + ", plain bytes per file: " + plain / list.size());
+            assertTrue(plain / list.size() > 4096 * 2);
+            assertEquals(20_000, lines);
+        }
+    }
+
+    //Пока файл занят другим писателем, строка сверх MAX_BACKLOG не откладывается, а учитывается как отброшенная.
+    @Test
+    void countsDroppedBacklog() throws Exception {
+        Path folder = Files.createTempDirectory("backlog");
+        RollingFileWriter old = new RollingFileWriter(folder, "busy", ".log", 4 << 20, 0);
+        RollingFileWriter writer = new RollingFileWriter(folder, "busy", ".log", 4 << 20, 0);
+        assertTrue(old.write(bytes("old line\n")));
+
+        assertTrue(writer.write(bytes("kept line\n")));
+        assertFalse(writer.write(ByteBuffer.allocate(RollingFileWriter.MAX_BACKLOG)));
+        assertEquals(1, writer.getBacklog());
+        assertEquals(1, writer.takeDropped());
+        assertEquals(0, writer.takeDropped());
+
+        old.close();
+        assertTrue(writer.retry());
+        writer.close();
+        assertEquals(0, writer.takeDropped());
+        assertEquals("old line\nkept line\n", Files.readString(folder.resolve(RollingFileWriter.PID + "-busy-0.log")));
+    }
+
+    //Распаковывает всё, что можно прочитать, в том числе незавершённый gzip-поток.
+    private static String gunzip(Path file) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] block = new byte[8192];
+            int read;
+            while ((read = in.read(block)) > 0) out.write(block, 0, read);
+        } catch (EOFException ignore) {
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
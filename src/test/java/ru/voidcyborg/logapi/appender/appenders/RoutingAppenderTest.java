@@ -0,0 +1,131 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingAppenderTest {
+
+    @Test
+    void boundedOpenFiles() throws Exception {
+        Path folder = Files.createTempDirectory("routing");
+        RoutingAppender appender = new RoutingAppender();
+        appender.parseSettings(settings(folder, "3", "60000"));
+
+        int routes = 50;
+        for (int i = 0; i < 2000; i++) {
+            String tenant = "tenant" + (i % routes);
+            appender.append(new LogEvent(tenant + " line " + i + "\n", LogLevel.INFO, tenant, RoutingAppenderTest.class, null, 0));
+            if (i % 100 == 0) assertTrue(appender.getOpenFiles() <= 3);
+        }
+        assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+        System.out.println("Open files: " + appender.getOpenFiles());
+        assertTrue(appender.getOpenFiles() <= 3);
+
+        try (Stream<Path> files = Files.list(folder)) {
+            List<Path> list = files.toList();
+            assertEquals(routes, list.size());
+            for (Path file : list) {
+                List<String> lines = Files.readAllLines(file);
+                assertEquals(2000 / routes, lines.size());
+                String tenant = lines.get(0).substring(0, lines.get(0).indexOf(' '));
+                assertTrue(file.getFileName().toString().contains("log-" + tenant + "-"), file.toString());
+                for (String line : lines) assertTrue(line.startsWith(tenant + " "));
+            }
+        }
+        appender.destroy();
+    }
+
+    @Test
+    void idleFilesClosed() throws Exception {
+        Path folder = Files.createTempDirectory("routing");
+        RoutingAppender appender = new RoutingAppender();
+        appender.parseSettings(settings(folder, "10", "100"));
+
+        appender.append(new LogEvent("a\n", LogLevel.INFO, "a", RoutingAppenderTest.class, null, 0));
+        appender.append(new LogEvent("b\n", LogLevel.INFO, "b", RoutingAppenderTest.class, null, 0));
+        assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+        assertEquals(2, appender.getOpenFiles());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (appender.getOpenFiles() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertEquals(0, appender.getOpenFiles());
+
+        appender.append(new LogEvent("a again\n", LogLevel.INFO, "a", RoutingAppenderTest.class, null, 0));
+        assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+        try (Stream<Path> files = Files.list(folder)) {
+            assertEquals(2, files.count());
+        }
+        appender.destroy();
+    }
+
+    //Значения, которые дают одинаковое имя файла после замены символов, и служебные имена не должны попасть в один файл.
+    @Test
+    void distinctFileNames() throws Exception {
+        assertEquals("tenant1", RoutingAppender.sanitize("tenant1"));
+        assertNotEquals(RoutingAppender.sanitize("a/b"), RoutingAppender.sanitize("a:b"));
+        assertNotEquals("default", RoutingAppender.sanitize("default"));
+
+        Path folder = Files.createTempDirectory("routing");
+        RoutingAppender appender = new RoutingAppender();
+        appender.parseSettings(settings(folder, "10", "60000"));
+        for (String group : new String[]{"a/b", "a:b", "default", "overflow"}) {
+            appender.append(new LogEvent(group + "\n", LogLevel.INFO, group, RoutingAppenderTest.class, null, 0));
+        }
+        appender.append("no group\n");
+        assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+        assertEquals(5, appender.getOpenFiles());
+        appender.destroy();
+
+        try (Stream<Path> files = Files.list(folder)) {
+            List<Path> list = files.toList();
+            assertEquals(5, list.size());
+            for (Path file : list) assertEquals(1, Files.readAllLines(file).size(), file.toString());
+        }
+    }
+
+    //Маршруты сверх лимита пишутся в один файл и занимают в LRU одно место.
+    @Test
+    void overflowRoute() throws Exception {
+        Path folder = Files.createTempDirectory("routing");
+        RoutingAppender appender = new RoutingAppender();
+        Map<String, String> settings = settings(folder, "10", "60000");
+        settings.put("maxRoutes", "2");
+        appender.parseSettings(settings);
+
+        for (int i = 0; i < 6; i++) {
+            appender.append(new LogEvent("line " + i + "\n", LogLevel.INFO, "tenant" + i, RoutingAppenderTest.class, null, 0));
+        }
+        assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+        assertEquals(3, appender.getOpenFiles());
+        appender.destroy();
+
+        try (Stream<Path> files = Files.list(folder)) {
+            assertEquals(3, files.count());
+        }
+    }
+
+    private static Map<String, String> settings(Path folder, String maxOpenFiles, String idleTimeout) {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("routeBy", "group");
+        settings.put("fileName", "log-{route}.txt");
+        settings.put("maxFileSize", "1024000");
+        settings.put("maxFiles", "0");
+        settings.put("folderPath", folder.toString());
+        settings.put("maxOpenFiles", maxOpenFiles);
+        settings.put("idleTimeout", idleTimeout);
+        return settings;
+    }
+}
@@ -0,0 +1,156 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.voidcyborg.logapi.appender.CollectingAppender;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedRingTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void mergeProducers() throws Exception {
+        Path path = dir.resolve("app.ring");
+        List<String> lines = new CopyOnWriteArrayList<>();
+        SharedRingCollector collector = new SharedRingCollector(path, 256, 128, 5000, CollectingAppender.of(lines)).start();
+
+        int producers = 4;
+        int count = 5_000;
+        Thread[] threads = new Thread[producers];
+        SharedRingAppender[] appenders = new SharedRingAppender[producers];
+        for (int p = 0; p < producers; p++) {
+            SharedRingAppender appender = new SharedRingAppender();
+            appender.parseSettings(settings(path));
+            appenders[p] = appender;
+
+            int id = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    String text = id + ":" + i + (i % 10 == 0 ? ":" + "x".repeat(300) : "") + "\n";
+                    while (!appender.append(text)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (lines.size() < producers * count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        collector.destroy();
+        for (SharedRingAppender appender : appenders) {
+            appender.destroy();
+        }
+
+        assertEquals(producers * count, lines.size());
+        Set<String> unique = new HashSet<>(lines);
+        assertEquals(producers * count, unique.size());
+        assertTrue(unique.contains("3:10:" + "x".repeat(300) + "\n"));
+    }
+
+    @Test
+    void skipCrashedProducer() throws Exception {
+        Path path = dir.resolve("app.ring");
+        List<String> lines = new CopyOnWriteArrayList<>();
+
+        SharedRingAppender appender = new SharedRingAppender();
+        appender.parseSettings(settings(path));
+        appender.append("before\n");
+
+        //Имитирую писателя, который захватил слот и упал до публикации.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 192);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putLong(64, buffer.getLong(64) + 1);
+        }
+        appender.append("after\n");
+
+        SharedRingCollector collector = new SharedRingCollector(path, 256, 128, 50, CollectingAppender.of(lines)).start();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (lines.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        collector.destroy();
+        appender.destroy();
+
+        assertEquals(List.of("before\n", "after\n"), lines);
+        assertEquals(1, collector.getLost());
+    }
+
+    @Test
+    void singleCollector() throws Exception {
+        Path path = dir.resolve("app.ring");
+        SharedRingCollector collector = new SharedRingCollector(path);
+
+        assertThrows(Exception.class, () -> new SharedRingCollector(path));
+        collector.destroy();
+    }
+
+    //Писатель завис после захвата слота, читатель пропустил слот, а следующий круг занял его.
+    //Опоздавший писатель не должен испортить чужую запись.
+    @Test
+    void rejectStalePublish() throws Exception {
+        SharedRing ring = SharedRing.open(dir.resolve("stale.ring"), 4, 64);
+        byte[] stale = "stale\n".getBytes(StandardCharsets.UTF_8);
+        long claim = ring.claim(1);
+
+        assertTrue(ring.skip(claim));
+        ring.release(claim + 1);
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(ring.offer(("line " + i + "\n").getBytes(StandardCharsets.UTF_8)));
+        }
+
+        assertFalse(ring.publish(claim, ByteBuffer.wrap(stale), 0, stale.length, 1));
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(ring.isCommitted(claim + i));
+            assertEquals("line " + i + "\n", ring.read(claim + i, 1));
+        }
+        ring.close();
+    }
+
+    //Слишком длинная строка обрезается по границе символа UTF-8.
+    @Test
+    void truncateAtCodePoint() throws Exception {
+        SharedRing ring = SharedRing.open(dir.resolve("long.ring"), 4, 64);
+        int capacity = ring.getSlotSize() - 16;
+        String text = "a" + "ж".repeat(capacity);
+        assertTrue(ring.offer(text.getBytes(StandardCharsets.UTF_8)));
+
+        String read = ring.read(0, ring.parts(0));
+        assertEquals(text.substring(0, capacity / 2), read);
+        ring.close();
+    }
+
+    private static Map<String, String> settings(Path path) {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("filePath", path.toString());
+        settings.put("slots", "256");
+        settings.put("slotSize", "128");
+        return settings;
+    }
+}
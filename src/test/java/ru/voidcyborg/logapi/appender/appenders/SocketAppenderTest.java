@@ -0,0 +1,195 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SocketAppenderTest {
+
+    @Test
+    void lengthFraming() throws Exception {
+        try (Collector collector = new Collector(new InetSocketAddress("127.0.0.1", 0), true)) {
+            SocketAppender appender = appender(collector.port(), "length");
+            for (int i = 0; i < 1000; i++) {
+                appender.append("line " + i + "\n  at multi-line\n");
+            }
+            assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+            collector.await(1000);
+            assertEquals("line 999\n  at multi-line\n", collector.lines.get(999));
+            assertEquals(1000, appender.getSent());
+            appender.destroy();
+        }
+    }
+
+    @Test
+    void reconnect() throws Exception {
+        InetSocketAddress address;
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            probe.bind(new InetSocketAddress("127.0.0.1", 0));
+            address = (InetSocketAddress) probe.getLocalAddress();
+        }
+
+        SocketAppender appender = appender(address.getPort(), "newline");
+        for (int i = 0; i < 100; i++) {
+            assertTrue(appender.append("buffered " + i));
+        }
+        Thread.sleep(300);
+        assertEquals(100, appender.flush(Duration.ZERO));
+
+        try (Collector collector = new Collector(address, false)) {
+            assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+            collector.await(100);
+            assertEquals("buffered 0", collector.lines.get(0));
+            assertEquals("buffered 99", collector.lines.get(99));
+        }
+        appender.destroy();
+    }
+
+    @Test
+    void spillDuringOutage(@TempDir Path spillPath) throws Exception {
+        InetSocketAddress address;
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            probe.bind(new InetSocketAddress("127.0.0.1", 0));
+            address = (InetSocketAddress) probe.getLocalAddress();
+        }
+
+        Map<String, String> settings = new HashMap<>();
+        settings.put("spillPath", spillPath.toString());
+        settings.put("bufferSize", "4096");
+        settings.put("spillSegmentSize", "8192");
+        SocketAppender appender = appender(address.getPort(), "newline", settings);
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            while (!appender.append("outage " + i)) Thread.onSpinWait();
+        }
+        Thread.sleep(200);
+        assertEquals(count, appender.flush(Duration.ZERO));
+        assertTrue(appender.getSpilled() > 0);
+        appender.destroy();
+        //После остановки строки из памяти тоже лежат на диске.
+        assertEquals(0, appender.flush(Duration.ofSeconds(5)));
+        assertEquals(count, appender.getSpilled());
+
+        //Новый запуск отправляет строки, оставшиеся на диске и в памяти, в том же порядке.
+        try (Collector collector = new Collector(address, false)) {
+            SocketAppender restarted = appender(address.getPort(), "newline", settings);
+            restarted.append("after restart");
+            assertEquals(0, restarted.flush(Duration.ofSeconds(10)));
+            collector.await(count + 1);
+            for (int i = 0; i < count; i++) {
+                assertEquals("outage " + i, collector.lines.get(i));
+            }
+            assertEquals("after restart", collector.lines.get(count));
+            assertEquals(0, restarted.getDropped());
+            System.out.println("Spilled " + appender.getSpilled() + " lines, delivered after restart " + collector.lines.size());
+            restarted.destroy();
+        }
+    }
+
+    @Test
+    void throughputBenchmark() throws Exception {
+        try (Collector collector = new Collector(new InetSocketAddress("127.0.0.1", 0), false)) {
+            SocketAppender appender = appender(collector.port(), "newline");
+            String line = "[19-10-2026][12:00:00][INFO ][main][Benchmark.java][run:42] benchmark line with some payload\n";
+            int count = 200_000;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                while (!appender.append(line)) Thread.onSpinWait();
+            }
+            assertEquals(0, appender.flush(Duration.ofSeconds(30)));
+            long nanos = System.nanoTime() - start;
+            collector.await(count);
+
+            System.out.printf("SocketAppender: %d lines in %d ms, %.0f lines/s%n", count, nanos / 1_000_000, count * 1e9 / nanos);
+            appender.destroy();
+        }
+    }
+
+    private static SocketAppender appender(int port, String framing) throws Exception {
+        return appender(port, framing, new HashMap<>());
+    }
+
+    private static SocketAppender appender(int port, String framing, Map<String, String> extra) throws Exception {
+        Map<String, String> settings = new HashMap<>(extra);
+        settings.put("host", "127.0.0.1");
+        settings.put("port", String.valueOf(port));
+        settings.put("framing", framing);
+        settings.put("reconnectDelay", "20");
+        settings.put("maxReconnectDelay", "100");
+        SocketAppender appender = new SocketAppender();
+        appender.parseSettings(settings);
+        return appender;
+    }
+
+    //Коллектор в этом же процессе, принимает одно соединение и складывает строки в список.
+    private static final class Collector implements AutoCloseable {
+        private final ServerSocketChannel server;
+        private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        private final Thread thread;
+
+        private Collector(InetSocketAddress address, boolean length) throws IOException {
+            server = ServerSocketChannel.open();
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(address);
+            thread = new Thread(() -> read(length));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private int port() throws IOException {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        }
+
+        private void read(boolean length) {
+            try (SocketChannel channel = server.accept();
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+                if (length) {
+                    while (true) {
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        lines.add(new String(bytes, StandardCharsets.UTF_8));
+                    }
+                }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) lines.add(line);
+            } catch (EOFException ignore) {
+            } catch (IOException ignore) {
+            }
+        }
+
+        private void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (lines.size() < count && System.currentTimeMillis() < deadline) Thread.sleep(5);
+            assertEquals(count, lines.size());
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillBufferTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void readsInOrderAcrossSegments() throws Exception {
+        SpillBuffer spill = new SpillBuffer(folder, 1 << 20, 4096);
+        assertEquals(0, spill.open());
+        for (int i = 0; i < 1000; i++) assertTrue(spill.write(bytes("event " + i)));
+        spill.flush();
+        assertTrue(segments().size() > 1);
+
+        for (int i = 0; i < 1000; i++) assertEquals("event " + i, string(spill.read()));
+        assertNull(spill.read());
+        assertTrue(spill.isEmpty());
+        assertEquals(0, segments().size());
+        spill.close();
+    }
+
+    @Test
+    void closeKeepsOlderFirst() throws Exception {
+        SpillBuffer spill = new SpillBuffer(folder, 1 << 20, 1 << 20);
+        spill.open();
+        for (int i = 0; i < 10; i++) spill.write(bytes("disk " + i));
+        assertEquals("disk 0", string(spill.read()));
+        assertEquals("disk 1", string(spill.read()));
+        assertTrue(spill.close(List.of(bytes("memory 0"), bytes("memory 1"))));
+
+        SpillBuffer recovered = new SpillBuffer(folder, 1 << 20, 1 << 20);
+        assertEquals(10, recovered.open());
+        assertEquals("memory 0", string(recovered.read()));
+        assertEquals("memory 1", string(recovered.read()));
+        for (int i = 2; i < 10; i++) assertEquals("disk " + i, string(recovered.read()));
+        assertNull(recovered.read());
+        recovered.close();
+    }
+
+    @Test
+    void limit() throws Exception {
+        SpillBuffer spill = new SpillBuffer(folder, 100, 4096);
+        spill.open();
+        assertTrue(spill.write(new byte[60]));
+        assertFalse(spill.write(new byte[60]));
+        assertEquals(1, spill.size());
+        spill.close();
+    }
+
+    @Test
+    void recoversAfterRestartAndSkipsCorruption() throws Exception {
+        SpillBuffer spill = new SpillBuffer(folder, 1 << 20, 4096);
+        spill.open();
+        for (int i = 0; i < 1000; i++) spill.write(bytes("event " + i));
+        spill.close();
+
+        //Портим одну запись в середине первого сегмента.
+        Path first = segments().get(0);
+        try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), 8 * 16 + 50);
+        }
+
+        SpillBuffer recovered = new SpillBuffer(folder, 1 << 20, 4096);
+        long count = recovered.open();
+        assertTrue(count > 0 && count < 1000);
+
+        long read = 0;
+        byte[] frame;
+        String last = null;
+        while ((frame = recovered.read()) != null) {
+            last = string(frame);
+            read++;
+        }
+        assertEquals(count, read);
+        assertEquals("event 999", last);
+        assertEquals(1, recovered.getCorrupted());
+        System.out.println("Recovered " + read + " of 1000 records after corruption");
+        recovered.close();
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
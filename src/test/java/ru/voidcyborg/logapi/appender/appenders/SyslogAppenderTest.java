@@ -0,0 +1,114 @@
+package ru.voidcyborg.logapi.appender.appenders;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyslogAppenderTest {
+
+    @Test
+    void udp() throws Exception {
+        try (DatagramChannel receiver = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress("127.0.0.1", 0));
+            SyslogAppender appender = appender("udp", ((InetSocketAddress) receiver.getLocalAddress()).getPort());
+
+            appender.append(new LogEvent("disk failed\n", LogLevel.ERROR, "Storage", SyslogAppenderTest.class, null, 0));
+            appender.append(new LogEvent("details\n", LogLevel.DEBUG, "Storage", SyslogAppenderTest.class, null, 1_500));
+            assertEquals(0, appender.flush(Duration.ofSeconds(10)));
+
+            String first = receive(receiver);
+            String second = receive(receiver);
+            System.out.println(first);
+            System.out.println(second);
+            assertEquals("<131>1 1970-01-01T00:00:00.000Z test-host billing " + RollingFileWriter.PID + " - - disk failed", first);
+            assertTrue(second.startsWith("<135>1 1970-01-01T00:00:01.500Z "));
+            appender.destroy();
+        }
+    }
+
+    @Test
+    void tcpBenchmark() throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            List<String> messages = Collections.synchronizedList(new ArrayList<>());
+            Thread reader = new Thread(() -> read(server, messages));
+            reader.setDaemon(true);
+            reader.start();
+
+            SyslogAppender appender = appender("tcp", ((InetSocketAddress) server.getLocalAddress()).getPort());
+            int count = 200_000;
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                LogEvent event = new LogEvent("message " + i + "\n", LogLevel.WARN, "Bench", SyslogAppenderTest.class, null, System.currentTimeMillis());
+                while (!appender.append(event)) Thread.onSpinWait();
+            }
+            assertEquals(0, appender.flush(Duration.ofSeconds(30)));
+            long nanos = System.nanoTime() - start;
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (messages.size() < count && System.currentTimeMillis() < deadline) Thread.sleep(5);
+            assertEquals(count, messages.size());
+            assertTrue(messages.get(count - 1).startsWith("<132>1 "));
+            assertTrue(messages.get(count - 1).endsWith(" - - message " + (count - 1)));
+            System.out.printf("SyslogAppender tcp: %d messages in %d ms, %.0f messages/s%n", count, nanos / 1_000_000, count * 1e9 / nanos);
+            appender.destroy();
+        }
+    }
+
+    private static SyslogAppender appender(String protocol, int port) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("host", "127.0.0.1");
+        settings.put("port", String.valueOf(port));
+        settings.put("protocol", protocol);
+        settings.put("facility", "16");
+        settings.put("appName", "billing");
+        settings.put("hostname", "test-host");
+        SyslogAppender appender = new SyslogAppender();
+        appender.parseSettings(settings);
+        return appender;
+    }
+
+    private static String receive(DatagramChannel receiver) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        receiver.receive(buffer);
+        buffer.flip();
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    //Разбирает рамки octet-counting: "LEN SP MSG".
+    private static void read(ServerSocketChannel server, List<String> messages) {
+        try (SocketChannel channel = server.accept();
+             InputStream in = new BufferedInputStream(Channels.newInputStream(channel))) {
+            while (true) {
+                int length = 0;
+                int c;
+                while ((c = in.read()) != ' ') {
+                    if (c < 0) return;
+                    length = length * 10 + (c - '0');
+                }
+                messages.add(new String(in.readNBytes(length), StandardCharsets.UTF_8));
+            }
+        } catch (IOException ignore) {
+        }
+    }
+}
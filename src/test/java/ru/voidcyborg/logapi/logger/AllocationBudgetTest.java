@@ -0,0 +1,101 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.voidcyborg.logapi.appender.appenders.RollingFileAppender;
+import ru.voidcyborg.logapi.appender.appenders.VoidAppender;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+//Бюджеты памяти на один вызов горячего пути логгирования. Если изменение добавляет мусор в каждый вызов, тест падает.
+//Бюджет - измеренное значение с запасом. Если бюджет стал меньше из-за оптимизации, его нужно уменьшить.
+class AllocationBudgetTest {
+
+    private static final int WARMUP = 50_000;
+    private static final int CALLS = 20_000;
+    private static com.sun.management.ThreadMXBean memory;
+
+    @BeforeAll
+    static void memory() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) memory = bean;
+    }
+
+    @Test
+    void disabledDebug() {
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.INFO).addAppender(new VoidAppender()).getLogger();
+        assertBudget("disabled debug", 0, () -> logger.debug("not written"));
+    }
+
+    @Test
+    void enabledInfo() {
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.INFO).addAppender(new VoidAppender()).getLogger();
+        assertBudget("info to VoidAppender", 2700, () -> logger.info("written to nowhere"));
+    }
+
+    @Test
+    void infoWithThrowable() {
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.INFO).addAppender(new VoidAppender()).getLogger();
+        //Глубина стека зависит от того, как запущены тесты, поэтому у исключения свой стек постоянной глубины.
+        Exception exception = new IllegalStateException("failed");
+        StackTraceElement[] trace = new StackTraceElement[20];
+        for (int i = 0; i < trace.length; i++) trace[i] = new StackTraceElement("ru.example.Service", "call" + i, "Service.java", 100 + i);
+        exception.setStackTrace(trace);
+        assertBudget("info with Throwable", 6700, () -> logger.info("request failed", exception));
+    }
+
+    @Test
+    void fileAppenderEnqueue(@TempDir Path folder) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("fileName", "budget.log");
+        settings.put("maxFileSize", "104857600");
+        settings.put("maxFiles", "0");
+        settings.put("folderPath", folder.toString());
+        RollingFileAppender appender = new RollingFileAppender();
+        appender.parseSettings(settings);
+        String line = "[19-10-2026][12:00:00][INFO ][main][Budget.java][run:42] line\n";
+
+        //Очередь не должна расти во время замера, иначе в счёт попадёт расширение структур очереди.
+        assertBudget("file appender enqueue", 56, () -> {
+            appender.append(line);
+        }, () -> assertEquals(0, appender.flush(Duration.ofSeconds(10))));
+        appender.destroy();
+    }
+
+    private static void assertBudget(String name, long budget, Runnable call) {
+        assertBudget(name, budget, call, () -> {
+        });
+    }
+
+    //Прогрев даёт JIT скомпилировать путь и убрать то, что уходит escape-анализом, затем считается среднее на вызов.
+    private static void assertBudget(String name, long budget, Runnable call, Runnable settle) {
+        assumeTrue(memory != null, "Thread allocation measurement is not supported");
+        for (int i = 0; i < WARMUP; i++) {
+            call.run();
+            if (i % 1000 == 0) settle.run();
+        }
+        settle.run();
+
+        long perCall = Long.MAX_VALUE;
+        //Лучший из нескольких замеров, чтобы не учитывать разовые выделения, например компиляцию или расширение ThreadLocal.
+        for (int attempt = 0; attempt < 3; attempt++) {
+            long before = memory.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < CALLS; i++) call.run();
+            long after = memory.getCurrentThreadAllocatedBytes();
+            settle.run();
+            perCall = Math.min(perCall, (after - before) / CALLS);
+        }
+        System.out.println(name + ": " + perCall + " bytes per call, budget " + budget);
+        assertTrue(perCall <= budget, name + " allocates " + perCall + " bytes per call, budget is " + budget);
+    }
+}
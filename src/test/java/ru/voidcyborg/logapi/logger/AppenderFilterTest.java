@@ -0,0 +1,108 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.CollectingAppender;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AppenderFilterTest {
+
+    @Test
+    void perAppenderLevelAndMarker() {
+        List<String> file = new CopyOnWriteArrayList<>();
+        List<String> sink = new CopyOnWriteArrayList<>();
+        List<String> audit = new CopyOnWriteArrayList<>();
+        List<String> foreign = new CopyOnWriteArrayList<>();
+
+        LoggerGroup group = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.of(file), AppenderFilter.level(LogLevel.INFO))
+                .addAppender(CollectingAppender.of(sink), AppenderFilter.level(LogLevel.WARN))
+                .addAppender(CollectingAppender.of(audit), AppenderFilter.ACCEPT_ALL.markers("AUDIT"))
+                .addAppender(CollectingAppender.of(foreign), AppenderFilter.ACCEPT_ALL.loggers("com.example."));
+        Logger logger = group.getLogger();
+
+        AtomicInteger formatted = new AtomicInteger();
+        Object expensive = new Object() {
+            @Override
+            public String toString() {
+                formatted.incrementAndGet();
+                return "expensive";
+            }
+        };
+
+        logger.debug("debug", expensive);
+        logger.info("info");
+        logger.warn("warn");
+        logger.log(LogLevel.INFO, Marker.of("AUDIT"), "login");
+        logger.log(LogLevel.INFO, Marker.of("OTHER"), "other");
+
+        assertEquals(0, formatted.get());
+        assertEquals(4, file.size());
+        assertEquals(1, sink.size());
+        assertTrue(sink.get(0).contains("warn"));
+        assertEquals(1, audit.size());
+        assertTrue(audit.get(0).contains("[AUDIT]"));
+        assertEquals(0, foreign.size());
+    }
+
+    @Test
+    void parse() throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("level", "WARN");
+        settings.put("loggers", "ru.voidcyborg., com.example.");
+        AppenderFilter filter = AppenderFilter.parse(settings);
+        System.out.println(filter);
+
+        assertTrue(filter.accepts(LogLevel.ERROR, AppenderFilterTest.class, null));
+        assertTrue(!filter.accepts(LogLevel.INFO, AppenderFilterTest.class, null));
+        assertTrue(!filter.accepts(LogLevel.ERROR, String.class, null));
+        assertEquals(AppenderFilter.ACCEPT_ALL, AppenderFilter.parse(new HashMap<>()));
+    }
+
+    //События с меткой COUNTED только считаются: в файл они не попадают и не форматируются, место вызова не ищется.
+    @Test
+    void excludedMarkerAndTextlessTarget() {
+        List<String> file = new CopyOnWriteArrayList<>();
+        List<LogEvent> counted = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.of(file), AppenderFilter.ACCEPT_ALL.markers("!COUNTED"))
+                .addAppender(CollectingAppender.textless(counted), AppenderFilter.ACCEPT_ALL.markers("COUNTED"))
+                .getLogger();
+
+        AtomicInteger formatted = new AtomicInteger();
+        Object expensive = new Object() {
+            @Override
+            public String toString() {
+                formatted.incrementAndGet();
+                return "expensive";
+            }
+        };
+        logger.log(LogLevel.INFO, Marker.of("COUNTED"), "hit", expensive);
+        logger.info("plain");
+
+        assertEquals(1, file.size());
+        assertTrue(file.get(0).contains("plain"));
+        assertEquals(1, counted.size());
+        assertEquals(0, formatted.get());
+        assertNull(counted.get(0).getText());
+        assertNull(counted.get(0).getCallerFile());
+        assertEquals("hit", counted.get(0).getMessage());
+        assertEquals("COUNTED", counted.get(0).getMarker());
+
+        AppenderFilter filter = AppenderFilter.ACCEPT_ALL.markers(" !COUNTED ");
+        assertTrue(filter.accepts(LogLevel.INFO, AppenderFilterTest.class, null));
+        assertTrue(filter.accepts(LogLevel.INFO, AppenderFilterTest.class, Marker.of("AUDIT")));
+        assertFalse(filter.accepts(LogLevel.INFO, AppenderFilterTest.class, Marker.of("COUNTED")));
+    }
+}
@@ -0,0 +1,80 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.CollectingAppender;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BacktraceTest {
+
+    @Test
+    void dumpOnError() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.INFO)
+                .addAppender(CollectingAppender.of(lines))
+                .setBacktrace(LogLevel.DEBUG, 3)
+                .getLogger();
+
+        for (int i = 0; i < 5; i++) {
+            logger.debug("step " + i);
+        }
+        logger.trace("not remembered");
+        logger.info("working");
+        assertEquals(1, lines.size());
+
+        //Ошибка в другом потоке не выгружает события этого потока.
+        Thread other = new Thread(() -> logger.error("other thread failed"));
+        other.start();
+        other.join();
+        assertEquals(2, lines.size());
+
+        logger.error("failed");
+        lines.forEach(System.out::print);
+        assertEquals(6, lines.size());
+        assertTrue(lines.get(2).contains("[DEBUG]") && lines.get(2).contains("step 2"));
+        assertTrue(lines.get(4).contains("step 4"));
+        assertTrue(lines.get(5).contains("failed"));
+
+        logger.fatal("again");
+        assertEquals(7, lines.size());
+    }
+
+    @Test
+    void disabledByDefault() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.INFO).addAppender(CollectingAppender.of(lines)).getLogger();
+
+        logger.debug("hidden");
+        logger.error("failed");
+
+        assertEquals(1, lines.size());
+    }
+
+    @Test
+    void skipsOldAndCleared() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        LoggerGroup group = LoggerFactory.createCustomLoggerGroup(LogLevel.INFO)
+                .addAppender(CollectingAppender.of(lines))
+                .setBacktrace(LogLevel.DEBUG, 8, 50);
+        Logger logger = group.getLogger();
+
+        logger.debug("stale");
+        Thread.sleep(100);
+        logger.debug("fresh");
+        logger.error("failed");
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("fresh"));
+
+        //Конец задачи в пуле: события предыдущей задачи не попадают к ошибке следующей.
+        logger.debug("previous task");
+        group.clearBacktrace();
+        logger.error("next task failed");
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(2).contains("next task failed"));
+    }
+}
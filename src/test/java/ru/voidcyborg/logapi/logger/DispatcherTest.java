@@ -0,0 +1,111 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.CollectingAppender;
+import ru.voidcyborg.logapi.appender.IOScheduler;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DispatcherTest {
+
+    @Test
+    void slowAppenderIsolated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> fast = new CopyOnWriteArrayList<>();
+        List<String> slow = new CopyOnWriteArrayList<>();
+
+        LoggerGroup group = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.gated(fast, null))
+                .addAppender(CollectingAppender.gated(slow, release))
+                .setAsyncDispatch(16);
+        Logger logger = group.getLogger();
+
+        //Каждые 10 событий поток ждёт быстрый Appender, чтобы под нагрузкой его очередь не переполнялась. Медленный всё это время стоит.
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + 10_000;
+        for (int i = 0; i < 100; i++) {
+            logger.info("event " + i);
+            while (i % 10 == 9 && fast.size() <= i && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        long callerTime = System.nanoTime() - start;
+        assertEquals(100, fast.size());
+        assertTrue(callerTime < TimeUnit.SECONDS.toNanos(5));
+
+        release.countDown();
+        assertEquals(0, group.flush(Duration.ofSeconds(10)));
+
+        long dropped = 0;
+        for (AppenderStats stats : group.getAppenderStats()) {
+            System.out.println(stats);
+            dropped += stats.getDropped();
+        }
+        assertEquals(0, group.getDispatchDropped());
+        assertTrue(dropped > 0);
+        assertEquals(100, slow.size() + dropped);
+    }
+
+    //Зависших Appender'ов больше, чем потоков общего планировщика, но быстрый Appender и файловые очереди продолжают работать.
+    @Test
+    void blockedAppendersDoNotStarvePool() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> fast = new CopyOnWriteArrayList<>();
+        LoggerGroup group = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG).setAsyncDispatch(64);
+        int blocked = IOScheduler.getDefault().getThreads() + 2;
+        for (int i = 0; i < blocked; i++) {
+            group.addAppender(CollectingAppender.gated(new CopyOnWriteArrayList<>(), release));
+        }
+        group.addAppender(CollectingAppender.gated(fast, null));
+        Logger logger = group.getLogger();
+
+        try {
+            for (int i = 0; i < 50; i++) {
+                logger.info("event " + i);
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (fast.size() < 50 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(50, fast.size());
+
+            IOScheduler.Lane file = IOScheduler.getDefault().newLane();
+            CountDownLatch written = new CountDownLatch(1);
+            file.execute(written::countDown);
+            assertTrue(written.await(5, TimeUnit.SECONDS));
+            file.close();
+        } finally {
+            release.countDown();
+            group.destroy();
+        }
+    }
+
+    //Событие, поставленное для уже убранного Appender'а, не создаёт ему очередь заново и не доставляется, а считается отброшенным.
+    @Test
+    void removedAppenderGetsNoLane() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        Appender appender = CollectingAppender.of(lines);
+        Dispatcher dispatcher = new Dispatcher(null);
+        dispatcher.setCapacity(16, new Appender[]{appender});
+        assertEquals(1, dispatcher.getStats().size());
+
+        dispatcher.forget(new Appender[]{appender}, new Appender[0]);
+        assertTrue(dispatcher.dispatch(new LogEvent("late", LogLevel.INFO, "group", DispatcherTest.class, null, 0), new Appender[]{appender}));
+        assertEquals(0, dispatcher.flush(Duration.ofSeconds(5)));
+
+        assertTrue(dispatcher.getStats().isEmpty());
+        assertTrue(lines.isEmpty());
+        assertEquals(1, dispatcher.getDropped());
+        dispatcher.clear();
+    }
+}
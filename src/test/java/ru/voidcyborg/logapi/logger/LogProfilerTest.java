@@ -0,0 +1,93 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.CollectingAppender;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogProfilerTest {
+
+    @AfterEach
+    void disable() {
+        LogProfiler.setSampling(0);
+        LogProfiler.reset();
+    }
+
+    @Test
+    void expensiveCallSiteFirst() {
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.INFO).addAppender(discard()).getLogger();
+        LogProfiler.reset();
+        LogProfiler.setSampling(4);
+
+        String payload = "x".repeat(2000);
+        for (int i = 0; i < 20_000; i++) {
+            logger.info("cheap");
+            if (i % 10 == 0) logger.info("expensive " + i, Map.of("payload", payload, "index", i));
+            logger.debug("filtered");
+        }
+
+        List<LogProfiler.Site> report = LogProfiler.getReport(10);
+        System.out.print(LogProfiler.formatReport(10));
+        assertEquals(2, report.size());
+        LogProfiler.Site cheap = report.stream().filter(site -> site.getCalls() > 10_000).findFirst().orElseThrow();
+        assertTrue(cheap.getCallSite().startsWith("LogProfilerTest.java:expensiveCallSiteFirst:"));
+        assertTrue(cheap.getSamples() > 3_000 && cheap.getSamples() < 7_000);
+        assertTrue(cheap.getNanos(LogProfiler.Phase.LOCATION) > 0 && cheap.getNanos(LogProfiler.Phase.FORMAT) > 0);
+        //Объект с длинной строкой форматируется дороже на вызов.
+        LogProfiler.Site expensive = report.get(report.get(0) == cheap ? 1 : 0);
+        assertTrue(expensive.getBytes(LogProfiler.Phase.FORMAT) / expensive.getCalls() > cheap.getBytes(LogProfiler.Phase.FORMAT) / cheap.getCalls());
+    }
+
+    //Событие, которому не нужны ни строка, ни место вызова, всё равно попадает в отчёт со своим местом вызова и проверкой уровня.
+    @Test
+    void textlessEventsReported() {
+        List<LogEvent> events = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.INFO).addAppender(CollectingAppender.textless(events)).getLogger();
+        LogProfiler.reset();
+        LogProfiler.setSampling(1);
+
+        for (int i = 0; i < 1000; i++) logger.info("counted");
+
+        List<LogProfiler.Site> report = LogProfiler.getReport(10);
+        assertEquals(1000, events.size());
+        assertEquals(1, report.size());
+        assertTrue(report.get(0).getCallSite().startsWith("LogProfilerTest.java:textlessEventsReported:"));
+        assertEquals(1000, report.get(0).getCalls());
+        assertTrue(report.get(0).getNanos(LogProfiler.Phase.LEVEL_CHECK) > 0);
+        assertEquals(0, report.get(0).getNanos(LogProfiler.Phase.FORMAT));
+    }
+
+    @Test
+    void disabledByDefault() {
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.INFO).addAppender(discard()).getLogger();
+        LogProfiler.reset();
+        for (int i = 0; i < 1000; i++) logger.info("not profiled");
+        assertTrue(LogProfiler.getReport(10).isEmpty());
+    }
+
+    private static Appender discard() {
+        return new Appender() {
+            @Override
+            public void parseSettings(Map<String, String> settings) {
+            }
+
+            @Override
+            public boolean append(String text) {
+                return true;
+            }
+
+            @Override
+            public void destroy() {
+            }
+        };
+    }
+}
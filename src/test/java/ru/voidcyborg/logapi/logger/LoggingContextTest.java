@@ -0,0 +1,194 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.level.LogLevel;
+import ru.voidcyborg.logapi.settings.SettingsInitException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoggingContextTest {
+
+    @Test
+    void isolatedContexts(@TempDir Path dir) throws Exception {
+        LoggingContext first = context(dir, "first", "INFO");
+        LoggingContext second = context(dir, "second", "ERROR");
+
+        assertEquals(LogLevel.INFO, first.getLogLevel());
+        assertEquals(LogLevel.ERROR, second.getLogLevel());
+        assertNotSame(first.getSettings().getScheduler(), second.getSettings().getScheduler());
+        assertThrows(SettingsInitException.class, () -> first.setSettings(dir.resolve("first.settings").toString()));
+
+        first.getLoggerGroup("Billing").getLogger().info("first context");
+        second.getLoggerGroup("Billing").getLogger().info("not written");
+        second.getLoggerGroup("Billing").getLogger().error("second context");
+        assertNotSame(first.getLoggerGroup("Billing"), second.getLoggerGroup("Billing"));
+        assertSame(first.getLoggerGroup("Billing"), first.getLoggerGroup("Billing"));
+
+        assertEquals(0, first.shutdown(Duration.ofSeconds(5)));
+        assertEquals(0, second.shutdown(Duration.ofSeconds(5)));
+        List<String> firstLines = Files.readAllLines(logFile(dir.resolve("first")));
+        List<String> secondLines = Files.readAllLines(logFile(dir.resolve("second")));
+        assertEquals(1, firstLines.size());
+        assertTrue(firstLines.get(0).contains("first context"));
+        assertEquals(1, secondLines.size());
+        assertTrue(secondLines.get(0).contains("second context"));
+    }
+
+    @Test
+    void reloadRacesWithLookups(@TempDir Path dir) throws Exception {
+        LoggingContext context = context(dir, "reload", "INFO");
+        Path settings = dir.resolve("reload.settings");
+
+        //Группы создаются во время перезагрузок, каждая должна получить уровень последних настроек.
+        ConcurrentHashMap<String, LoggerGroup> groups = new ConcurrentHashMap<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread lookups = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000; i++) groups.put("group" + i, context.getLoggerGroup("group" + i));
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        lookups.start();
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(settings, settings("reload", i % 2 == 0 ? "WARN" : "DEBUG", dir));
+            context.reloadSettings(settings.toString());
+        }
+        lookups.join();
+        assertEquals(null, failure.get());
+
+        for (LoggerGroup group : groups.values()) {
+            assertEquals(LogLevel.DEBUG, group.getLogger().getLogLevel());
+        }
+        context.shutdown(Duration.ofSeconds(5));
+    }
+
+    //Новый Appender того же файла не может взять замок, пока старый дописывает свои строки. Строки, записанные в это время, не теряются,
+    //а если под нагрузкой что-то всё же отброшено, то оно учтено в результатах перезагрузки и завершения.
+    @Test
+    void reloadKeepsLinesDuringSwap(@TempDir Path dir) throws Exception {
+        LoggingContext context = context(dir, "swap", "INFO");
+        Path settings = dir.resolve("swap.settings");
+        Logger logger = context.getLoggerGroup("Swap").getLogger();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger logged = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                int line = logged.getAndIncrement();
+                logger.info("line " + line);
+                if (line % 50 == 49) LockSupport.parkNanos(1_000_000);
+            }
+        });
+        writer.setDaemon(true);
+        writer.start();
+        long lost = 0;
+        try {
+            for (int i = 0; i < 5; i++) {
+                Thread.sleep(20);
+                lost += context.reloadSettings(settings.toString());
+            }
+            Thread.sleep(20);
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        lost += context.shutdown(Duration.ofSeconds(10));
+
+        Set<String> lines = new HashSet<>();
+        try (var files = Files.list(dir.resolve("swap"))) {
+            for (Path file : files.toList()) {
+                for (String line : Files.readAllLines(file)) lines.add(line.substring(line.indexOf(" line ") + 1));
+            }
+        }
+        System.out.println("Logged " + logged.get() + " lines during 5 reloads, lost " + lost);
+        assertTrue(lines.size() <= logged.get());
+        assertTrue(lines.size() + lost >= logged.get(), "Unreported loss: " + (logged.get() - lines.size()) + " lines, reported " + lost);
+    }
+
+    //Appender завис в flush дольше таймаута: его строки считаются потерянными, а сам он не уничтожается.
+    @Test
+    void shutdownCountsStuckFlush(@TempDir Path dir) throws Exception {
+        LoggingContext context = context(dir, "stuck", "INFO");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean destroyed = new AtomicBoolean();
+        context.getLoggerGroup("Stuck").addAppender(new Appender() {
+            @Override
+            public void parseSettings(Map<String, String> settings) {
+            }
+
+            @Override
+            public boolean append(String text) {
+                return true;
+            }
+
+            @Override
+            public long flush(Duration timeout) {
+                if (timeout.isZero()) return 3;
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {
+                }
+                return 0;
+            }
+
+            @Override
+            public void destroy() {
+                destroyed.set(true);
+            }
+        });
+
+        try {
+            assertEquals(3, context.shutdown(Duration.ofMillis(200)));
+            assertFalse(destroyed.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static LoggingContext context(Path dir, String name, String level) throws Exception {
+        Path file = dir.resolve(name + ".settings");
+        Files.writeString(file, settings(name, level, dir));
+        LoggingContext context = new LoggingContext(name);
+        context.setSettings(file.toString());
+        return context;
+    }
+
+    private static String settings(String name, String level, Path dir) {
+        return "appender=ru.voidcyborg.logapi.appender.appenders.RollingFileAppender\n"
+                + "LogLevel=" + level + "\n"
+                + "TimeZone=UTC\n"
+                + "IOThreads=1\n"
+                + "appender.maxFileSize=1024000\n"
+                + "appender.maxFiles=0\n"
+                + "appender.fileName=" + name + ".log\n"
+                + "appender.folderPath=" + dir.resolve(name).toString().replace('\\', '/') + "\n";
+    }
+
+    private static Path logFile(Path folder) throws Exception {
+        try (var files = Files.list(folder)) {
+            return files.findFirst().orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.CollectingAppender;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RepeatCollapserTest {
+
+    @Test
+    void collapseRepeats() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        LoggerGroup group = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.of(lines))
+                .setRepeatWindow(60_000);
+        Logger logger = group.getLogger();
+
+        for (int i = 0; i < 5; i++) {
+            logger.error("Connection refused");
+        }
+        logger.info("Recovered");
+
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("Connection refused"));
+        assertTrue(lines.get(1).contains("Last message repeated 4 times"));
+        assertTrue(lines.get(2).contains("Recovered"));
+    }
+
+    @Test
+    void flushOnDestroy() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        LoggerGroup group = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.of(lines))
+                .setRepeatWindow(60_000);
+        Logger logger = group.getLogger();
+
+        for (int i = 0; i < 3; i++) {
+            logger.warn("Disk is almost full");
+        }
+        group.destroy();
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).contains("Last message repeated 2 times"));
+    }
+
+    //Одинаковый шаблон с разными объектами не является повтором, одинаковые по строке объекты - являются.
+    @Test
+    void comparesPayload() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.of(lines))
+                .setRepeatWindow(60_000)
+                .getLogger();
+
+        for (int i = 0; i < 3; i++) {
+            logger.info("User id", i);
+        }
+        for (int i = 0; i < 3; i++) {
+            logger.info("User id", new StringBuilder("42"));
+        }
+        logger.info("Done");
+
+        assertEquals(6, lines.size());
+        assertTrue(lines.get(2).endsWith("User id\n2\n"));
+        assertTrue(lines.get(3).endsWith("User id\n42\n"));
+        assertTrue(lines.get(4).contains("Last message repeated 2 times"));
+    }
+
+    //Один и тот же изменяемый объект, состояние которого изменилось между вызовами, не является повтором.
+    @Test
+    void mutablePayloadChanged() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.of(lines))
+                .setRepeatWindow(60_000)
+                .getLogger();
+
+        StringBuilder stats = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            stats.setLength(0);
+            stats.append("size=").append(Math.min(i, 2));
+            logger.info("queue", stats);
+        }
+        logger.info("Done");
+
+        assertEquals(5, lines.size());
+        assertTrue(lines.get(2).endsWith("queue\nsize=2\n"));
+        assertTrue(lines.get(3).contains("Last message repeated 1 times"));
+    }
+
+    //Итог серии записывается по таймеру, даже если следующего события нет.
+    @Test
+    void flushExpiredRun() throws InterruptedException {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.of(lines))
+                .setRepeatWindow(100)
+                .getLogger();
+
+        for (int i = 0; i < 4; i++) {
+            logger.error("Timeout");
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (lines.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).contains("Last message repeated 3 times"));
+    }
+
+    @Test
+    void disabledByDefault() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG).addAppender(CollectingAppender.of(lines)).getLogger();
+
+        for (int i = 0; i < 3; i++) {
+            logger.info("Same");
+        }
+
+        assertEquals(3, lines.size());
+    }
+}
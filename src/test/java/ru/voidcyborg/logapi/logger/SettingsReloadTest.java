@@ -0,0 +1,112 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SettingsReloadTest {
+
+    @Test
+    void swapDrainsOldAppenders() throws Exception {
+        Counting old = new Counting();
+        Counting fresh = new Counting();
+        LoggerGroup group = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG).addAppender(old);
+        Logger logger = group.getLogger();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    logger.info("info");
+                    logger.warn("warn");
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        Thread.sleep(50);
+        LoggerGroup.State state = group.swap(LogLevel.WARN, new Appender[]{old}, new Appender[]{fresh}, null);
+        assertEquals(0, group.retire(state, Duration.ofSeconds(5)));
+        old.destroy();
+        long before = old.appended.get();
+        Thread.sleep(50);
+
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.println("Old appender: " + before + ", new appender: " + fresh.appended.get() + ", after destroy: " + old.afterDestroy.get());
+        assertEquals(0, old.afterDestroy.get());
+        assertEquals(before, old.appended.get());
+        assertTrue(fresh.appended.get() > 0);
+        assertEquals(fresh.appended.get(), fresh.warn.get());
+        assertEquals(LogLevel.WARN, logger.getLogLevel());
+    }
+
+    @Test
+    void watcherReactsToChange() throws Exception {
+        Path dir = Files.createTempDirectory("logapi-settings");
+        Path file = dir.resolve("logger.settings");
+        Files.writeString(file, "LogLevel=INFO\n");
+
+        AtomicInteger reloads = new AtomicInteger();
+        CountDownLatch changed = new CountDownLatch(1);
+        SettingsWatcher watcher = new SettingsWatcher(file, () -> {
+            reloads.incrementAndGet();
+            changed.countDown();
+        }).start();
+        try {
+            Files.writeString(dir.resolve("other.txt"), "ignored");
+            Files.writeString(file, "LogLevel=WARN\n");
+            assertTrue(changed.await(30, TimeUnit.SECONDS));
+        } finally {
+            watcher.close();
+        }
+        System.out.println("Reloads: " + reloads.get());
+    }
+
+    private static final class Counting implements Appender {
+        private final AtomicLong appended = new AtomicLong();
+        private final AtomicLong warn = new AtomicLong();
+        private final AtomicLong afterDestroy = new AtomicLong();
+        private volatile boolean destroyed;
+
+        @Override
+        public void parseSettings(Map<String, String> settings) {
+        }
+
+        @Override
+        public boolean append(String text) {
+            if (destroyed) {
+                afterDestroy.incrementAndGet();
+                return false;
+            }
+            appended.incrementAndGet();
+            if (text.contains("[WARN ]")) warn.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+        }
+    }
+}
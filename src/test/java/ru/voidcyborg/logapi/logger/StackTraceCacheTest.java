@@ -0,0 +1,77 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.CollectingAppender;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StackTraceCacheTest {
+
+    @Test
+    void referenceOnRepeat() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.of(lines))
+                .setTraceCache(16, 0)
+                .getLogger();
+
+        for (int i = 0; i < 3; i++) {
+            logger.error("Failed", fail());
+        }
+
+        lines.forEach(System.out::print);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\tat "));
+        assertFalse(lines.get(2).contains("\tat "));
+        assertTrue(lines.get(2).contains(" seen 3x]"));
+    }
+
+    @Test
+    void eviction() {
+        StackTraceCache cache = new StackTraceCache();
+        cache.configure(1, 0);
+
+        assertTrue(cache.see(1, 0).full);
+        assertFalse(cache.see(1, 0).full);
+        assertTrue(cache.see(2, 0).full);
+        assertTrue(cache.see(1, 0).full);
+    }
+
+    @Test
+    void expire() {
+        StackTraceCache cache = new StackTraceCache();
+        cache.configure(4, 1000);
+
+        assertTrue(cache.see(1, 0).full);
+        assertFalse(cache.see(1, 999).full);
+        assertTrue(cache.see(1, 1000).full);
+    }
+
+    //Исключения, которые отличаются только подавленными, имеют разные отпечатки. Отпечатки с одинаковыми младшими 32 битами - разные идентификаторы.
+    @Test
+    void suppressedAndFullId() {
+        Exception plain = fail();
+        Exception same = fail();
+        Exception withSuppressed = fail();
+        same.setStackTrace(plain.getStackTrace());
+        withSuppressed.setStackTrace(plain.getStackTrace());
+        withSuppressed.addSuppressed(new IllegalArgumentException("close failed"));
+        assertEquals(StackTraceCache.fingerprint(plain), StackTraceCache.fingerprint(same));
+        assertNotEquals(StackTraceCache.fingerprint(plain), StackTraceCache.fingerprint(withSuppressed));
+
+        StackTraceCache cache = new StackTraceCache();
+        cache.configure(4, 0);
+        assertNotEquals(cache.see(0x1_0000_0001L, 0).id, cache.see(0x2_0000_0001L, 0).id);
+    }
+
+    private static Exception fail() {
+        return new IllegalStateException("Broken");
+    }
+}
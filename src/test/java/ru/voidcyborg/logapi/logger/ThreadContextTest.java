@@ -0,0 +1,91 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.CollectingAppender;
+import ru.voidcyborg.logapi.appender.LogEvent;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThreadContextTest {
+
+    @Test
+    void snapshotAndRendering() {
+        List<LogEvent> events = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG)
+                .addAppender(CollectingAppender.events(events))
+                .setContextKeys("requestId", "tenant")
+                .getLogger();
+
+        try (ThreadContext.Scope scope = ThreadContext.with("requestId", "42")) {
+            ThreadContext.put("tenant", "acme");
+            ThreadContext.put("user", "bob");
+            Map<String, String> snapshot = ThreadContext.getSnapshot();
+            logger.info("first");
+            logger.info("second");
+
+            events.forEach(System.out::print);
+            assertSame(snapshot, events.get(0).getContext());
+            assertSame(events.get(0).getContext(), events.get(1).getContext());
+            assertTrue(events.get(0).getText().contains("[requestId=42][tenant=acme] first"));
+            assertFalse(events.get(0).getText().contains("user"));
+
+            ThreadContext.put("tenant", "other");
+            assertEquals("acme", snapshot.get("tenant"));
+        }
+        assertTrue(ThreadContext.getSnapshot().isEmpty());
+
+        logger.info("third");
+        assertTrue(events.get(2).getText().contains("] third"));
+    }
+
+    //Чужая карта копируется, снимок самого ThreadContext передаётся как есть.
+    @Test
+    void setSnapshotCopies() {
+        Map<String, String> mutable = new HashMap<>(Map.of("requestId", "42"));
+        ThreadContext.setSnapshot(mutable);
+        mutable.put("requestId", "43");
+        assertEquals("42", ThreadContext.get("requestId"));
+        assertThrows(UnsupportedOperationException.class, () -> ThreadContext.getSnapshot().put("tenant", "acme"));
+
+        Map<String, String> snapshot = ThreadContext.getSnapshot();
+        ThreadContext.clear();
+        ThreadContext.setSnapshot(snapshot);
+        assertSame(snapshot, ThreadContext.getSnapshot());
+        ThreadContext.clear();
+    }
+
+    @Test
+    void propagation() throws Exception {
+        List<LogEvent> events = new CopyOnWriteArrayList<>();
+        Logger logger = LoggerFactory.createCustomLoggerGroup(LogLevel.DEBUG).addAppender(CollectingAppender.events(events)).getLogger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (ThreadContext.Scope scope = ThreadContext.with("requestId", "7")) {
+            ThreadContext.wrapExecutor(executor).execute(() -> logger.info("in pool"));
+            Thread thread = ThreadContext.wrapThreadFactory(Executors.defaultThreadFactory()).newThread(() -> logger.info("in thread"));
+            thread.start();
+            thread.join();
+        }
+        executor.submit(() -> logger.info("pool without context"));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(3, events.size());
+        long withContext = events.stream().filter(e -> "7".equals(e.getContext().get("requestId"))).count();
+        assertEquals(2, withContext);
+        assertTrue(events.stream().anyMatch(e -> e.getText().contains("pool without context") && e.getContext().isEmpty()));
+    }
+}
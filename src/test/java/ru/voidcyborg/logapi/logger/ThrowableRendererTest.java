@@ -0,0 +1,71 @@
+package ru.voidcyborg.logapi.logger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThrowableRendererTest {
+
+    @Test
+    void causeChain() {
+        Exception cause = new IllegalArgumentException("Bad input");
+        Exception top = new IllegalStateException("Failed", cause);
+        top.addSuppressed(new RuntimeException("Close failed"));
+
+        String text = render(new ThrowableRenderer(), top);
+        System.out.print(text);
+
+        assertTrue(text.contains("Caused by: java.lang.IllegalArgumentException: Bad input"));
+        assertTrue(text.contains("\tSuppressed: java.lang.RuntimeException: Close failed"));
+        assertTrue(text.contains("common frames omitted"));
+    }
+
+    @Test
+    void filteredPackages() {
+        ThrowableRenderer renderer = new ThrowableRenderer();
+        renderer.setFilteredPackages("org.junit.", "java.lang.reflect.", "jdk.internal.reflect.");
+
+        String text = render(renderer, new RuntimeException("Filtered"));
+        System.out.print(text);
+
+        assertTrue(text.contains("filtered frames"));
+        assertFalse(text.contains("at org.junit."));
+    }
+
+    @Test
+    void depthLimit() {
+        Exception chain = new RuntimeException("0");
+        for (int i = 1; i < 10; i++) {
+            chain = new RuntimeException(String.valueOf(i), chain);
+        }
+        ThrowableRenderer renderer = new ThrowableRenderer();
+        renderer.setMaxDepth(2);
+
+        String text = render(renderer, chain);
+        System.out.print(text);
+
+        assertTrue(text.contains("Caused by: java.lang.RuntimeException: 7"));
+        assertFalse(text.contains("Caused by: java.lang.RuntimeException: 6"));
+        assertTrue(text.contains("depth limit 2 reached"));
+    }
+
+    @Test
+    void circularReference() {
+        Exception first = new RuntimeException("First");
+        Exception second = new RuntimeException("Second", first);
+        first.initCause(second);
+
+        String text = render(new ThrowableRenderer(), first);
+
+        assertTrue(text.contains("[CIRCULAR REFERENCE: java.lang.RuntimeException: First]"));
+    }
+
+    private static String render(ThrowableRenderer renderer, Throwable throwable) {
+        StringBuilder builder = new StringBuilder();
+        ThrowableRenderer.appendHeader(builder, throwable);
+        builder.append('\n');
+        renderer.renderBody(builder, throwable);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package ru.voidcyborg.logapi.settings;
+
+import org.junit.jupiter.api.Test;
+import ru.voidcyborg.logapi.appender.Appender;
+import ru.voidcyborg.logapi.appender.appenders.ConsoleAppender;
+import ru.voidcyborg.logapi.appender.appenders.VoidAppender;
+import ru.voidcyborg.logapi.level.LogLevel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SettingsTest {
+
+    @Test
+    void parse() throws Exception {
+        Settings settings = new Settings(new String[]{
+                "# comment=ignored",
+                "appender2.maxSize=15",
+                "LogLevel = WARN",
+                "TimeZone=UTC",
+                "LogLevel=INFO",
+                "ThrowableFilter=java.lang.reflect., sun.reflect",
+                "appender=ru.voidcyborg.logapi.appender.appenders.VoidAppender",
+                "appender.folderPath=my logs",
+                "appender2=ru.voidcyborg.logapi.appender.appenders.ConsoleAppender",
+                "appender3.orphan=1"
+        });
+
+        assertEquals(LogLevel.WARN, settings.getLevel());
+        assertEquals("UTC", settings.getTimeZone().getID());
+        assertArrayEquals(new String[]{"java.lang.reflect.", "sun.reflect"}, settings.getThrowableFilter());
+        assertArrayEquals(new String[]{"appender", "appender2"}, settings.getAppenderNames());
+        assertEquals("my logs", settings.getAppenderSettings("appender").get("folderPath"));
+        assertEquals("15", settings.getAppenderSettings("appender2").get("maxSize"));
+        assertEquals(null, settings.getAppenderSettings("appender3"));
+
+        assertThrows(SettingsInitException.class, () -> new Settings(new String[]{
+                "LogLevel=INFO", "TimeZone=UTC",
+                "appender=ru.voidcyborg.logapi.appender.appenders.VoidAppender",
+                "appender=ru.voidcyborg.logapi.appender.appenders.ConsoleAppender"}));
+        assertThrows(SettingsInitException.class, () -> new Settings(new String[]{
+                "LogLevel=LOUD", "TimeZone=UTC",
+                "appender=ru.voidcyborg.logapi.appender.appenders.VoidAppender"}));
+
+        //Число вне int не обрезается молча.
+        assertThrows(SettingsInitException.class, () -> new Settings(new String[]{
+                "LogLevel=INFO", "TimeZone=UTC", "appender=void", "BacktraceSize=4294967296"}));
+        new Settings(new String[]{"LogLevel=INFO", "TimeZone=UTC", "appender=void", "BacktraceSize=2_147_483_647"});
+    }
+
+    //Время создания настроек с большим количеством Appender'ов, файлы и потоки при этом не создаются.
+    @Test
+    void startupBenchmark() throws Exception {
+        Path folder = Files.createTempDirectory("startup").resolve("logs");
+        List<String> lines = new ArrayList<>();
+        lines.add("LogLevel=INFO");
+        lines.add("TimeZone=UTC");
+        for (int i = 0; i < 100; i++) {
+            lines.add("appender" + i + "=ru.voidcyborg.logapi.appender.appenders.RollingFileAppender");
+            lines.add("appender" + i + ".fileName=app" + i + ".log");
+            lines.add("appender" + i + ".maxFileSize=1024000");
+            lines.add("appender" + i + ".maxFiles=10");
+            lines.add("appender" + i + ".folderPath=" + folder);
+        }
+        String[] args = lines.toArray(new String[0]);
+
+        for (int i = 0; i < 50; i++) {
+            new Settings(args);
+        }
+        int runs = 200;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            new Settings(args);
+        }
+        long perRun = (System.nanoTime() - start) / runs;
+
+        System.out.println("Settings with 100 RollingFileAppenders (" + args.length + " lines): " + perRun / 1000 + " us per parse");
+        assertFalse(Files.exists(folder));
+    }
+
+    //Appender'ы по имени провайдера в любом регистре и по полному имени класса.
+    @Test
+    void providers() throws Exception {
+        Settings settings = new Settings(new String[]{
+                "LogLevel=INFO", "TimeZone=UTC",
+                "appender1=void", "appender2=Console", "appender3=ru.voidcyborg.logapi.appender.appenders.VoidAppender"});
+        Appender[] appenders = settings.getAppenders();
+        assertEquals(3, appenders.length);
+        assertInstanceOf(VoidAppender.class, appenders[0]);
+        assertInstanceOf(ConsoleAppender.class, appenders[1]);
+        assertInstanceOf(VoidAppender.class, appenders[2]);
+
+        SettingsInitException e = assertThrows(SettingsInitException.class, () -> new Settings(new String[]{
+                "LogLevel=INFO", "TimeZone=UTC", "appender=noSuchAppender"}));
+        System.out.println(e.getMessage());
+    }
+}